@@ -71,7 +71,6 @@ public class SwiftBlockFileSystem extends FileSystem {
 
     if (store == null) {
       store = new SwiftBlockFileSystemStore();
-      store.initialize(uri, conf);
     }
     store.initialize(uri, conf);
     this.uri = URI.create(String.format("bswift://%s:%d", uri.getHost(), uri.getPort()));
@@ -79,6 +78,21 @@ public class SwiftBlockFileSystem extends FileSystem {
             makeQualified(uri, new Path(System.getProperty("user.name")));
   }
 
+  /**
+   * Close the filesystem and the store underneath.
+   * @throws IOException on a problem
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      if (store != null) {
+        store.close();
+      }
+    }
+  }
+
   /**
    * @return fs URI
    */
@@ -24,9 +24,12 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.s3.Block;
 import org.apache.hadoop.fs.s3.FileSystemStore;
 import org.apache.hadoop.fs.s3.INode;
+import org.apache.hadoop.fs.swift.buffer.OutputBuffer;
+import org.apache.hadoop.fs.swift.buffer.OutputBufferFactory;
 import org.apache.hadoop.fs.swift.exceptions.SwiftException;
 import org.apache.hadoop.fs.swift.http.SwiftRestClient;
 import org.apache.hadoop.fs.swift.snative.SwiftNativeFileSystemStore;
+import org.apache.hadoop.fs.swift.snative.SwiftObjectFileStatus;
 import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
 
 import java.io.*;
@@ -48,11 +51,32 @@ public class SwiftBlockFileSystemStore implements FileSystemStore {
 
   private int bufferSize;
 
+  private OutputBufferFactory bufferFactory;
+
   public void initialize(URI uri, Configuration conf) throws IOException {
     this.conf = conf;
     this.uri = uri;
     this.swiftRestClient = SwiftRestClient.getInstance(uri, conf);
     this.bufferSize = conf.getInt(IO_FILE_BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+    this.bufferFactory = new OutputBufferFactory(conf);
+  }
+
+  /**
+   * Get the factory of the buffers blocks are written to
+   * @return the buffer factory
+   */
+  public OutputBufferFactory getBufferFactory() {
+    return bufferFactory;
+  }
+
+  /**
+   * Close the store, releasing the pooled HTTP connections
+   * of the REST client.
+   */
+  public void close() {
+    if (swiftRestClient != null) {
+      swiftRestClient.close();
+    }
   }
 
   public String getVersion() throws IOException {
@@ -127,7 +151,8 @@ public class SwiftBlockFileSystemStore implements FileSystemStore {
    */
   private InputStream get(String key, long byteRangeStart, long length) throws IOException {
 
-    return swiftRestClient.getDataAsInputStream(SwiftObjectPath.fromPath(uri, keyToPath(key)), byteRangeStart, length);
+    return swiftRestClient.getDataAsInputStream(SwiftObjectPath.fromPath(uri, keyToPath(key)), byteRangeStart, length,
+            SwiftRestClient.NEWEST);
   }
 
   public INode retrieveINode(Path path) throws IOException {
@@ -210,19 +235,18 @@ public class SwiftBlockFileSystemStore implements FileSystemStore {
       uriString += Path.SEPARATOR;
     }
 
-    final byte[] buffer;
+    final List<SwiftObjectFileStatus> listing;
     try {
-      buffer =
+      listing =
         swiftRestClient.findObjectsByPrefix(SwiftObjectPath.fromPath(uri, path),
                                             null);
     } catch (FileNotFoundException e) {
       return Collections.emptySet();
     }
-    final StringTokenizer tokenizer = new StringTokenizer(new String(buffer), "\n");
 
     final Set<Path> paths = new HashSet<Path>();
-    while (tokenizer.hasMoreTokens()) {
-      paths.add(new Path(tokenizer.nextToken()));
+    for (SwiftObjectFileStatus entry : listing) {
+      paths.add(new Path(entry.getEntryName()));
     }
 
     return paths;
@@ -248,6 +272,22 @@ public class SwiftBlockFileSystemStore implements FileSystemStore {
     }
   }
 
+  /**
+   * Store a block from an output buffer. The buffer is not released.
+   * @param block block
+   * @param buffer buffer holding the data of the block
+   * @throws IOException on a failure to read the buffer or upload the block
+   */
+  public void storeBlock(Block block, OutputBuffer buffer) throws IOException {
+    InputStream in = null;
+    try {
+      in = buffer.getInputStream();
+      put(blockToKey(block), in, buffer.length());
+    } finally {
+      closeQuietly(in);
+    }
+  }
+
   public List<URI> getObjectLocation(Path path) throws IOException {
     final byte[] objectLocation;
     try {
@@ -5,16 +5,22 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.s3.Block;
 import org.apache.hadoop.fs.s3.FileSystemStore;
 import org.apache.hadoop.fs.s3.INode;
+import org.apache.hadoop.fs.swift.util.ByteBufferReadable;
 
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
- * Wrapper of InputStream for Block FS implementation
+ * Wrapper of InputStream for Block FS implementation.
+ * Reads into byte buffers go through the channel of the local block
+ * file, so direct buffers are filled without an intermediate array.
  */
-public class SwiftBlockInputStream extends FSInputStream {
+public class SwiftBlockInputStream extends FSInputStream
+  implements ByteBufferReadable {
   /**
    * FS store instance
    */
@@ -50,6 +56,11 @@ public class SwiftBlockInputStream extends FSInputStream {
    */
   private DataInputStream blockStream;
 
+  /**
+   * Channel of the block file, sharing its position with blockStream
+   */
+  private FileChannel blockChannel;
+
   /**
    * block end marker
    */
@@ -141,6 +152,38 @@ public class SwiftBlockInputStream extends FSInputStream {
     return -1;
   }
 
+  @Override
+  public synchronized int read(ByteBuffer buf) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (!buf.hasRemaining()) {
+      return 0;
+    }
+    if (pos < fileLength) {
+      if (pos > blockEnd) {
+        blockSeekTo(pos);
+      }
+      int realLen = (int) Math.min(buf.remaining(), blockEnd - pos + 1);
+      int limit = buf.limit();
+      buf.limit(buf.position() + realLen);
+      int result;
+      try {
+        result = blockChannel.read(buf);
+      } finally {
+        buf.limit(limit);
+      }
+      if (result >= 0) {
+        pos += result;
+      }
+      if (stats != null && result > 0) {
+        stats.incrementBytesRead(result);
+      }
+      return result;
+    }
+    return -1;
+  }
+
   /**
    * Seeks and retrieves need block of data from Swift
    *
@@ -174,7 +217,9 @@ public class SwiftBlockInputStream extends FSInputStream {
 
     this.pos = target;
     this.blockEnd = targetBlockEnd;
-    this.blockStream = new DataInputStream(new FileInputStream(blockFile));
+    FileInputStream blockIn = new FileInputStream(blockFile);
+    this.blockStream = new DataInputStream(blockIn);
+    this.blockChannel = blockIn.getChannel();
   }
 
   @Override
@@ -185,6 +230,7 @@ public class SwiftBlockInputStream extends FSInputStream {
     if (blockStream != null) {
       blockStream.close();
       blockStream = null;
+      blockChannel = null;
     }
     if (blockFile != null) {
       blockFile.delete();
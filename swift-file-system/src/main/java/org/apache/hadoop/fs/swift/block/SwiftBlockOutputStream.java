@@ -21,11 +21,10 @@ package org.apache.hadoop.fs.swift.block;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.s3.Block;
-import org.apache.hadoop.fs.s3.FileSystemStore;
 import org.apache.hadoop.fs.s3.INode;
+import org.apache.hadoop.fs.swift.buffer.OutputBuffer;
+import org.apache.hadoop.fs.swift.buffer.OutputBufferFactory;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -49,7 +48,7 @@ public class SwiftBlockOutputStream extends OutputStream {
   /**
    * FS store instance
    */
-  private FileSystemStore store;
+  private SwiftBlockFileSystemStore store;
 
   /**
    * Destination path
@@ -62,14 +61,14 @@ public class SwiftBlockOutputStream extends OutputStream {
   private long blockSize;
 
   /**
-   * backup where data is writing before streaming in Swift
+   * factory of the block buffers
    */
-  private File backupFile;
+  private OutputBufferFactory bufferFactory;
 
   /**
-   * output stream
+   * buffer where data is written before streaming in Swift
    */
-  private OutputStream backupStream;
+  private OutputBuffer backupBuffer;
 
   /**
    * random for generating next id for block
@@ -119,35 +118,18 @@ public class SwiftBlockOutputStream extends OutputStream {
    * @param buffersize size of buffer
    * @throws IOException
    */
-  public SwiftBlockOutputStream(Configuration conf, FileSystemStore store, Path path, long blockSize,
-                                int buffersize) throws IOException {
+  public SwiftBlockOutputStream(Configuration conf, SwiftBlockFileSystemStore store, Path path,
+                                long blockSize, int buffersize) throws IOException {
     this.conf = conf;
     this.store = store;
     this.path = path;
     this.blockSize = blockSize;
-    this.backupFile = newBackupFile();
-    this.backupStream = new FileOutputStream(backupFile);
+    this.bufferFactory = store.getBufferFactory();
+    this.backupBuffer = bufferFactory.create();
     this.bufferSize = buffersize;
     this.outBuf = new byte[bufferSize];
   }
 
-  /**
-   * method for creating backup file of 64mb where
-   * buffers are accumulated before streaming to Swift
-   *
-   * @return File
-   * @throws IOException
-   */
-  private File newBackupFile() throws IOException {
-    File dir = new File(conf.get("hadoop.tmp.dir"));
-    if (!dir.exists() && !dir.mkdirs()) {
-      throw new IOException("Cannot create Swift buffer directory: " + dir);
-    }
-    File result = File.createTempFile("output-", ".tmp", dir);
-    result.deleteOnExit();
-    return result;
-  }
-
   public long getPos() throws IOException {
     return filePos;
   }
@@ -213,7 +195,7 @@ public class SwiftBlockOutputStream extends OutputStream {
       //
       // To the local block backup, write just the bytes
       //
-      backupStream.write(outBuf, 0, workingPos);
+      backupBuffer.write(outBuf, 0, workingPos);
 
       //
       // Track position
@@ -230,23 +212,17 @@ public class SwiftBlockOutputStream extends OutputStream {
    * @throws IOException
    */
   private synchronized void endBlock() throws IOException {
-    //
-    // Done with local copy
-    //
-    backupStream.close();
-
     //
     // Send it to Swift
     nextBlockOutputStream();
-    store.storeBlock(nextBlock, backupFile);
+    store.storeBlock(nextBlock, backupBuffer);
     internalClose();
 
     //
-    // Delete local backup, start new one
+    // Release local backup, start new one
     //
-    backupFile.delete();
-    backupFile = newBackupFile();
-    backupStream = new FileOutputStream(backupFile);
+    backupBuffer.release();
+    backupBuffer = bufferFactory.create();
     bytesWrittenToBlock = 0;
   }
 
@@ -281,14 +257,15 @@ public class SwiftBlockOutputStream extends OutputStream {
       return;
     }
 
-    flush();
-    if (filePos == 0 || bytesWrittenToBlock != 0) {
-      endBlock();
+    try {
+      flush();
+      if (filePos == 0 || bytesWrittenToBlock != 0) {
+        endBlock();
+      }
+    } finally {
+      backupBuffer.release();
     }
 
-    backupStream.close();
-    backupFile.delete();
-
     super.close();
 
     closed = true;
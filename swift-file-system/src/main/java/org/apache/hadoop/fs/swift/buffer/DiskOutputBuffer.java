@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.buffer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.swift.exceptions.SwiftException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Buffer held in a temporary file on local disk.
+ */
+public class DiskOutputBuffer extends OutputBuffer {
+  private static final Log LOG = LogFactory.getLog(DiskOutputBuffer.class);
+
+  private final File file;
+  private OutputStream out;
+  private long length;
+
+  /**
+   * Create a buffer in a new temporary file
+   * @param dir directory for the file; created if needed
+   * @throws IOException on a failure to create the file
+   */
+  public DiskOutputBuffer(File dir) throws IOException {
+    if (!dir.mkdirs() && !dir.exists()) {
+      throw new SwiftException("Cannot create Swift buffer directory: " + dir);
+    }
+    file = File.createTempFile("swift-output-", ".tmp", dir);
+    file.deleteOnExit();
+    out = new BufferedOutputStream(new FileOutputStream(file));
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (out == null) {
+      throw new SwiftException("Buffer is closed for writing: " + file);
+    }
+    out.write(b, off, len);
+    length += len;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (out != null) {
+      out.flush();
+    }
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+    return new BufferedInputStream(new FileInputStream(file));
+  }
+
+  @Override
+  public void release() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        LOG.debug("Failed to close " + file, e);
+      }
+      out = null;
+    }
+    if (file.exists() && !file.delete()) {
+      LOG.warn("Could not delete " + file);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "DiskOutputBuffer " + file + " (" + length + " bytes)";
+  }
+}
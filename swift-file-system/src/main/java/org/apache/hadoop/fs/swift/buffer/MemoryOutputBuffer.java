@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.buffer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.swift.exceptions.SwiftException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buffer held in memory as a list of fixed size chunks, either on the
+ * heap or off-heap, as allocated by the factory.
+ * <p/>
+ * Each chunk counts against the memory limit of the factory. If a chunk
+ * cannot be allocated within that limit, the buffer spills: the data
+ * written so far is copied to a disk buffer, the chunks are released, and
+ * everything after that goes to disk. Small and medium sized objects
+ * therefore never touch the disk, while the memory used by large ones
+ * stays bounded.
+ */
+public class MemoryOutputBuffer extends OutputBuffer {
+  private static final Log LOG = LogFactory.getLog(MemoryOutputBuffer.class);
+
+  private final OutputBufferFactory factory;
+  private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+  private DiskOutputBuffer spill;
+  private long length;
+  private boolean readable;
+  private boolean released;
+
+  MemoryOutputBuffer(OutputBufferFactory factory) {
+    this.factory = factory;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (readable || released) {
+      throw new SwiftException("Buffer is closed for writing");
+    }
+    if (spill != null) {
+      spill.write(b, off, len);
+      length += len;
+      return;
+    }
+    while (len > 0) {
+      ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+      if (chunk == null || !chunk.hasRemaining()) {
+        chunk = factory.allocateChunk();
+        if (chunk == null) {
+          spillToDisk();
+          spill.write(b, off, len);
+          length += len;
+          return;
+        }
+        chunks.add(chunk);
+      }
+      int toWrite = Math.min(len, chunk.remaining());
+      chunk.put(b, off, toWrite);
+      off += toWrite;
+      len -= toWrite;
+      length += toWrite;
+    }
+  }
+
+  /**
+   * Move the data written so far to a disk buffer, releasing the chunks
+   * @throws IOException on a failure to write to the disk
+   */
+  private void spillToDisk() throws IOException {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Memory limit reached: spilling " + length
+                + " bytes to disk");
+    }
+    spill = factory.createDiskBuffer();
+    boolean success = false;
+    try {
+      byte[] copy = new byte[OutputBufferFactory.CHUNK_SIZE];
+      for (ByteBuffer chunk : chunks) {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+          int toCopy = Math.min(copy.length, chunk.remaining());
+          chunk.get(copy, 0, toCopy);
+          spill.write(copy, 0, toCopy);
+        }
+      }
+      success = true;
+    } finally {
+      releaseChunks();
+      if (!success) {
+        spill.release();
+      }
+    }
+  }
+
+  /**
+   * Has the buffer spilled to disk?
+   * @return true if the data is on disk
+   */
+  public boolean isSpilled() {
+    return spill != null;
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    if (released) {
+      throw new SwiftException("Buffer has been released");
+    }
+    readable = true;
+    if (spill != null) {
+      return spill.getInputStream();
+    }
+    List<ByteBuffer> data = new ArrayList<ByteBuffer>(chunks.size());
+    for (ByteBuffer chunk : chunks) {
+      ByteBuffer view = chunk.duplicate();
+      view.flip();
+      data.add(view);
+    }
+    return new ChunkInputStream(data);
+  }
+
+  @Override
+  public void release() {
+    if (released) {
+      return;
+    }
+    released = true;
+    releaseChunks();
+    if (spill != null) {
+      spill.release();
+    }
+  }
+
+  private void releaseChunks() {
+    for (ByteBuffer chunk : chunks) {
+      factory.releaseChunk(chunk);
+    }
+    chunks.clear();
+  }
+
+  @Override
+  public String toString() {
+    return "MemoryOutputBuffer (" + length + " bytes"
+           + (spill != null ? ", spilled to disk)" : ")");
+  }
+
+  /**
+   * Stream reading back a list of chunks
+   */
+  private static final class ChunkInputStream extends InputStream {
+    private final List<ByteBuffer> data;
+    private int index;
+
+    private ChunkInputStream(List<ByteBuffer> data) {
+      this.data = data;
+    }
+
+    private ByteBuffer current() {
+      while (index < data.size() && !data.get(index).hasRemaining()) {
+        index++;
+      }
+      return index < data.size() ? data.get(index) : null;
+    }
+
+    @Override
+    public int read() {
+      ByteBuffer chunk = current();
+      return chunk == null ? -1 : (chunk.get() & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      ByteBuffer chunk = current();
+      if (chunk == null) {
+        return -1;
+      }
+      int toRead = Math.min(len, chunk.remaining());
+      chunk.get(b, off, toRead);
+      return toRead;
+    }
+
+    @Override
+    public int available() {
+      ByteBuffer chunk = current();
+      return chunk == null ? 0 : chunk.remaining();
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A buffer holding the data of an object (or part of one) while it is
+ * written, until it is uploaded.
+ * <p/>
+ * A buffer is written by one thread; once {@link #getInputStream()} has
+ * been called it may be read by another, such as an upload thread.
+ * {@link #release()} must always be called to free the memory or file
+ * behind the buffer.
+ */
+public abstract class OutputBuffer extends OutputStream {
+
+  /**
+   * Get the number of bytes written
+   * @return the length of the data
+   */
+  public abstract long length();
+
+  /**
+   * Finish writing and open a stream to read back the data.
+   * No more data may be written after this call.
+   * @return a stream which must be closed after use
+   * @throws IOException on a failure to read the buffer
+   */
+  public abstract InputStream getInputStream() throws IOException;
+
+  /**
+   * Free the resources of the buffer. This is idempotent.
+   */
+  public abstract void release();
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public abstract void write(byte[] b, int off, int len) throws IOException;
+
+  /**
+   * Closing the stream does not release the buffer; the data
+   * remains readable.
+   * @throws IOException on a failure to flush the data
+   */
+  @Override
+  public void close() throws IOException {
+    flush();
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.buffer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.swift.exceptions.SwiftConfigurationException;
+import org.apache.hadoop.fs.swift.http.SwiftProtocolConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the buffers used by output streams, according to the
+ * configured buffer type:
+ * <ol>
+ *   <li><code>disk</code>: temporary files under <code>hadoop.tmp.dir</code>.</li>
+ *   <li><code>array</code>: chunks of heap memory.</li>
+ *   <li><code>bytebuffer</code>: chunks of off-heap memory (direct
+ *   byte buffers). Released chunks are kept for reuse, as direct memory
+ *   is slow to allocate and is only freed by garbage collection.</li>
+ * </ol>
+ * All the memory buffers of a factory share one memory limit; a buffer
+ * which would exceed it spills to disk.
+ */
+public class OutputBufferFactory {
+
+  public static final String BUFFER_DISK = "disk";
+  public static final String BUFFER_ARRAY = "array";
+  public static final String BUFFER_BYTEBUFFER = "bytebuffer";
+  public static final String DEFAULT_BUFFER = BUFFER_ARRAY;
+
+  /**
+   * Default limit of the memory used by all buffers: {@value}
+   */
+  public static final long DEFAULT_MEMORY_LIMIT = 64 * 1024 * 1024;
+
+  /**
+   * Size of a memory chunk: {@value}
+   */
+  static final int CHUNK_SIZE = 256 * 1024;
+
+  private final String bufferType;
+  private final long memoryLimit;
+  private final File dir;
+  private final AtomicLong memoryUsed = new AtomicLong(0);
+
+  /**
+   * Direct chunks free for reuse
+   */
+  private final List<ByteBuffer> freeDirectChunks = new ArrayList<ByteBuffer>();
+
+  /**
+   * Create a factory from the configuration
+   * @param conf configuration
+   * @throws SwiftConfigurationException if the buffer options are invalid
+   */
+  public OutputBufferFactory(Configuration conf)
+    throws SwiftConfigurationException {
+    this(conf.get(SwiftProtocolConstants.SWIFT_OUTPUT_BUFFER, DEFAULT_BUFFER),
+         conf.getLong(SwiftProtocolConstants.SWIFT_OUTPUT_BUFFER_MEMORY_LIMIT,
+                      DEFAULT_MEMORY_LIMIT),
+         new File(conf.get("hadoop.tmp.dir")));
+  }
+
+  /**
+   * Create a factory
+   * @param bufferType type of buffer
+   * @param memoryLimit limit of the memory used by all buffers
+   * @param dir directory for disk buffers
+   * @throws SwiftConfigurationException if the options are invalid
+   */
+  public OutputBufferFactory(String bufferType, long memoryLimit, File dir)
+    throws SwiftConfigurationException {
+    bufferType = bufferType.trim().toLowerCase();
+    if (!BUFFER_DISK.equals(bufferType)
+        && !BUFFER_ARRAY.equals(bufferType)
+        && !BUFFER_BYTEBUFFER.equals(bufferType)) {
+      throw new SwiftConfigurationException(
+        "Unknown value of " + SwiftProtocolConstants.SWIFT_OUTPUT_BUFFER
+        + ": " + bufferType);
+    }
+    if (memoryLimit < 0) {
+      throw new SwiftConfigurationException(
+        "Invalid value of "
+        + SwiftProtocolConstants.SWIFT_OUTPUT_BUFFER_MEMORY_LIMIT
+        + ": " + memoryLimit);
+    }
+    this.bufferType = bufferType;
+    this.memoryLimit = memoryLimit;
+    this.dir = dir;
+  }
+
+  /**
+   * Create a buffer of the configured type
+   * @return a new buffer
+   * @throws IOException on a failure to create a disk buffer
+   */
+  public OutputBuffer create() throws IOException {
+    if (BUFFER_DISK.equals(bufferType)) {
+      return createDiskBuffer();
+    }
+    return new MemoryOutputBuffer(this);
+  }
+
+  /**
+   * Create a buffer on disk, whatever the configured type
+   * @return a new disk buffer
+   * @throws IOException on a failure to create the file
+   */
+  public DiskOutputBuffer createDiskBuffer() throws IOException {
+    return new DiskOutputBuffer(dir);
+  }
+
+  /**
+   * Allocate a memory chunk, if the memory limit allows it
+   * @return the chunk, or null if the limit has been reached
+   */
+  ByteBuffer allocateChunk() {
+    long used;
+    do {
+      used = memoryUsed.get();
+      if (used + CHUNK_SIZE > memoryLimit) {
+        return null;
+      }
+    } while (!memoryUsed.compareAndSet(used, used + CHUNK_SIZE));
+    if (BUFFER_BYTEBUFFER.equals(bufferType)) {
+      synchronized (freeDirectChunks) {
+        if (!freeDirectChunks.isEmpty()) {
+          return freeDirectChunks.remove(freeDirectChunks.size() - 1);
+        }
+      }
+      return ByteBuffer.allocateDirect(CHUNK_SIZE);
+    }
+    return ByteBuffer.allocate(CHUNK_SIZE);
+  }
+
+  /**
+   * Release a chunk allocated by {@link #allocateChunk()}
+   * @param chunk chunk
+   */
+  void releaseChunk(ByteBuffer chunk) {
+    if (chunk.isDirect()) {
+      chunk.clear();
+      synchronized (freeDirectChunks) {
+        freeDirectChunks.add(chunk);
+      }
+    }
+    memoryUsed.addAndGet(-CHUNK_SIZE);
+  }
+
+  /**
+   * Get the configured buffer type
+   * @return the buffer type
+   */
+  public String getBufferType() {
+    return bufferType;
+  }
+
+  /**
+   * Get the memory currently allocated to buffers
+   * @return the number of bytes in use
+   */
+  public long getMemoryUsed() {
+    return memoryUsed.get();
+  }
+
+  @Override
+  public String toString() {
+    return "OutputBufferFactory type=" + bufferType
+           + " memory used=" + memoryUsed.get() + "/" + memoryLimit;
+  }
+}
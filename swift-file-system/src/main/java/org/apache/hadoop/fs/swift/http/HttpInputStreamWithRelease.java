@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.fs.swift.http;
 
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,6 +38,16 @@ import java.net.URI;
  * The thread safety logic here is to ensure that even if somebody ignores
  * that rule, the release code does not get entered twice -and that
  * any release in one thread is picked up by read operations in all others.
+ * <p/>
+ * Closing the stream before all its data has been read has to abort the
+ * connection, or releasing it would read the rest of the body -which may
+ * be gigabytes. If no more than the drain threshold is left, it is
+ * cheaper to read and discard it so that the connection can be reused
+ * than to set up a new one for the next request.
+ * <p/>
+ * Streams which are never closed are found by the
+ * {@link HttpStreamLeakTracker} once they are garbage collected, and
+ * their connections released.
  */
 public class HttpInputStreamWithRelease extends InputStream {
 
@@ -51,13 +62,59 @@ public class HttpInputStreamWithRelease extends InputStream {
   private volatile boolean dataConsumed;
   private InputStream inStream;
 
+  /**
+   * Largest remainder of the body which is drained rather than aborted
+   */
+  private final long drainThreshold;
+
+  /**
+   * Statistics to update on release; may be null
+   */
+  private final HttpReleaseStatistics statistics;
+
+  /**
+   * Length of the body, or -1 if unknown
+   */
+  private final long contentLength;
+
+  /**
+   * Bytes of the body read so far
+   */
+  private volatile long bytesRead;
+
+  /**
+   * Registration with the leak tracker, cleared on release
+   */
+  private final HttpStreamLeakTracker.Tracked tracked;
+
   public HttpInputStreamWithRelease(URI uri, HttpMethod method) throws
                                                                 IOException {
+    this(uri, method, 0, null);
+  }
+
+  /**
+   * Create a stream
+   * @param uri URI of the request, for messages
+   * @param method executed method
+   * @param drainThreshold largest number of unread bytes which are
+   * drained on release, rather than aborting the connection
+   * @param statistics statistics to update on release; may be null
+   * @throws IOException if the response body cannot be read
+   */
+  public HttpInputStreamWithRelease(URI uri,
+                                    HttpMethod method,
+                                    long drainThreshold,
+                                    HttpReleaseStatistics statistics)
+    throws IOException {
     this.uri = uri;
     this.method = method;
+    this.drainThreshold = drainThreshold;
+    this.statistics = statistics;
     if (method == null) {
       throw new NullPointerException("Null 'method' parameter ");
     }
+    this.contentLength = getContentLength(method);
+    this.tracked = HttpStreamLeakTracker.get().track(this, uri, method);
     try {
       inStream = method.getResponseBodyAsStream();
     } catch (IOException e) {
@@ -87,7 +144,21 @@ public class HttpInputStreamWithRelease extends InputStream {
         }
         if (method != null) {
           if (!dataConsumed) {
-            method.abort();
+            long remaining = contentLength >= 0
+                             ? contentLength - bytesRead
+                             : -1;
+            //after a failure the connection is not worth saving
+            if (ex == null && remaining >= 0 && remaining <= drainThreshold
+                && drain()) {
+              if (statistics != null) {
+                statistics.drained(remaining);
+              }
+            } else {
+              method.abort();
+              if (statistics != null) {
+                statistics.aborted(Math.max(remaining, 0));
+              }
+            }
           }
           method.releaseConnection();
         }
@@ -103,12 +174,59 @@ public class HttpInputStreamWithRelease extends InputStream {
         //to try and do anything in advance.
         released = true;
         dataConsumed = true;
+        tracked.closed();
       }
     } else {
       return false;
     }
   }
 
+  /**
+   * Read and discard the rest of the body, so that the connection
+   * can be reused
+   * @return true if the end of the body was reached
+   */
+  private boolean drain() {
+    if (inStream == null) {
+      return false;
+    }
+    byte[] buffer = new byte[(int) Math.min(Math.max(drainThreshold, 1),
+                                            8192)];
+    long drained = 0;
+    try {
+      int read;
+      while ((read = inStream.read(buffer)) >= 0) {
+        drained += read;
+        if (drained > drainThreshold) {
+          //more than the headers promised
+          return false;
+        }
+      }
+      return true;
+    } catch (IOException e) {
+      LOG.debug("Failed to drain " + uri + ": " + e);
+      return false;
+    }
+  }
+
+  /**
+   * Get the length of the response body from its headers
+   * @param method method
+   * @return the length, or -1 if it is not known
+   */
+  private static long getContentLength(HttpMethod method) {
+    Header header =
+      method.getResponseHeader(SwiftProtocolConstants.HEADER_CONTENT_LENGTH);
+    if (header == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(header.getValue().trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
   /**
    * Release the method, using the exception as a cause
    * @param operation operation that failed
@@ -159,6 +277,9 @@ public class HttpInputStreamWithRelease extends InputStream {
     } catch (IOException e) {
       throw releaseAndRethrow("read()", e);
     }
+    if (read >= 0) {
+      bytesRead++;
+    }
     if (read < 0) {
       dataConsumed = true;
       release("read() -all data consumed", null);
@@ -175,6 +296,9 @@ public class HttpInputStreamWithRelease extends InputStream {
     } catch (IOException e) {
       throw releaseAndRethrow("read(b, off, " + len + ")", e);
     }
+    if (read > 0) {
+      bytesRead += read;
+    }
     if (read < 0) {
       dataConsumed = true;
       release("read() -all data consumed", null);
@@ -182,28 +306,10 @@ public class HttpInputStreamWithRelease extends InputStream {
     return read;
   }
 
-  /**
-   * Finalizer does release the stream, but also logs at WARN level
-   * including the URI at fault
-   * @throws IOException if so
-   */
-  @Override
-  protected void finalize() {
-    try {
-      if (release("finalize()", null)) {
-        LOG.warn("input stream of " + uri
-                 + " not closed properly -cleaned up in finalize()");
-      }
-    } catch (Exception e) {
-      //swallow anything that failed here
-      LOG.warn("Exception while releasing " + uri + "in finalizer",
-               e);
-    }
-  }
-
   @Override
   public String toString() {
     return "HttpInputStreamWithRelease working with " + uri
-      +" released=" + released;
+      +" released=" + released
+      + " read=" + bytesRead + " of " + contentLength;
   }
 }
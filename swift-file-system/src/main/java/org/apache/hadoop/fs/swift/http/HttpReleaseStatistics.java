@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how the connections of response streams closed before the end
+ * of their data were released: drained, so that they could go back to
+ * the pool, or aborted. Comparing the two shows whether the drain
+ * threshold suits the workload.
+ */
+public class HttpReleaseStatistics {
+  private final AtomicLong drainCount = new AtomicLong();
+  private final AtomicLong drainedBytes = new AtomicLong();
+  private final AtomicLong abortCount = new AtomicLong();
+  private final AtomicLong abortedBytes = new AtomicLong();
+
+  /**
+   * Record a connection drained for reuse
+   * @param bytes bytes read and discarded
+   */
+  void drained(long bytes) {
+    drainCount.incrementAndGet();
+    drainedBytes.addAndGet(bytes);
+  }
+
+  /**
+   * Record a connection aborted
+   * @param bytes bytes left unread, if known; otherwise 0
+   */
+  void aborted(long bytes) {
+    abortCount.incrementAndGet();
+    abortedBytes.addAndGet(bytes);
+  }
+
+  /**
+   * @return the number of connections drained for reuse
+   */
+  public long getDrainCount() {
+    return drainCount.get();
+  }
+
+  /**
+   * @return the bytes read and discarded to drain connections
+   */
+  public long getDrainedBytes() {
+    return drainedBytes.get();
+  }
+
+  /**
+   * @return the number of connections aborted
+   */
+  public long getAbortCount() {
+    return abortCount.get();
+  }
+
+  /**
+   * @return the bytes left unread in aborted connections, where known
+   */
+  public long getAbortedBytes() {
+    return abortedBytes.get();
+  }
+
+  @Override
+  public String toString() {
+    return "drained=" + drainCount + " (" + drainedBytes + " bytes)"
+           + " aborted=" + abortCount + " (" + abortedBytes + " bytes)";
+  }
+}
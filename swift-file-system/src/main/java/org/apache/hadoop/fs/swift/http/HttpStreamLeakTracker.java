@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.http;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the HTTP response streams which are open, and releases the
+ * connections of those which are garbage collected without having been
+ * closed.
+ * <p/>
+ * Each stream is registered with a phantom reference holding what is
+ * needed to release its connection -but not the stream itself. Closing
+ * the stream clears the reference, so the common path costs a map
+ * insertion and removal; unlike a finalizer, it does not delay the
+ * collection of the stream. A reference whose stream was leaked is
+ * queued by the collector and picked up by a daemon thread, which aborts
+ * the connection at once, rather than whenever the finalizer thread gets
+ * round to it.
+ * <p/>
+ * When debug logging is enabled for this class, the stack of the code
+ * which opened each stream is recorded and logged if the stream leaks.
+ */
+public final class HttpStreamLeakTracker {
+  private static final Log LOG =
+    LogFactory.getLog(HttpStreamLeakTracker.class);
+
+  private static final HttpStreamLeakTracker INSTANCE =
+    new HttpStreamLeakTracker();
+
+  private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+  /**
+   * The references of open streams; this keeps the references themselves
+   * reachable until their stream is closed or collected
+   */
+  private final Set<Tracked> open =
+    Collections.newSetFromMap(new ConcurrentHashMap<Tracked, Boolean>());
+
+  private final AtomicLong leakCount = new AtomicLong();
+
+  private HttpStreamLeakTracker() {
+    Thread reaper = new Thread("swift-stream-leak-reaper") {
+      @Override
+      public void run() {
+        while (true) {
+          try {
+            ((Tracked) queue.remove()).leaked();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    };
+    reaper.setDaemon(true);
+    reaper.start();
+  }
+
+  /**
+   * Get the tracker shared by all clients
+   * @return the tracker
+   */
+  public static HttpStreamLeakTracker get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Start tracking a stream
+   * @param stream the stream
+   * @param uri URI of its request, for messages
+   * @param method method whose connection is released if the stream leaks
+   * @return the handle to pass to {@link Tracked#closed()} when the
+   * stream is closed
+   */
+  Tracked track(Object stream, URI uri, HttpMethod method) {
+    Exception allocation = null;
+    if (LOG.isDebugEnabled()) {
+      allocation = new Exception("Stream of " + uri + " opened here");
+    }
+    Tracked tracked = new Tracked(stream, queue, uri, method, allocation);
+    open.add(tracked);
+    return tracked;
+  }
+
+  /**
+   * Get the number of streams which were garbage collected without
+   * having been closed
+   * @return the leak count
+   */
+  public long getLeakCount() {
+    return leakCount.get();
+  }
+
+  /**
+   * Get the number of streams which are open -or which have leaked, but
+   * whose connections have not been released yet
+   * @return the open stream count
+   */
+  public int getOpenCount() {
+    return open.size();
+  }
+
+  @Override
+  public String toString() {
+    return "open streams=" + getOpenCount() + " leaked=" + getLeakCount();
+  }
+
+  /**
+   * The reference to a tracked stream
+   */
+  final class Tracked extends PhantomReference<Object> {
+    private final URI uri;
+    private final HttpMethod method;
+    private final Exception allocation;
+
+    private Tracked(Object stream,
+                    ReferenceQueue<Object> queue,
+                    URI uri,
+                    HttpMethod method,
+                    Exception allocation) {
+      super(stream, queue);
+      this.uri = uri;
+      this.method = method;
+      this.allocation = allocation;
+    }
+
+    /**
+     * Stop tracking the stream, which has released its connection
+     */
+    void closed() {
+      open.remove(this);
+      clear();
+    }
+
+    /**
+     * Release the connection of a stream which was collected
+     * without having been closed
+     */
+    private void leaked() {
+      if (!open.remove(this)) {
+        return;
+      }
+      leakCount.incrementAndGet();
+      LOG.warn("input stream of " + uri + " not closed properly"
+               + " -releasing its connection", allocation);
+      try {
+        method.abort();
+        method.releaseConnection();
+      } catch (RuntimeException e) {
+        //swallow anything that failed here
+        LOG.warn("Exception while releasing " + uri, e);
+      }
+    }
+  }
+}
@@ -162,6 +162,13 @@ public final class RestClientBindings {
     // copy in parameters that apply to all services
     copy(conf, SWIFT_CONNECTION_TIMEOUT, props, SWIFT_CONNECTION_TIMEOUT, false);
     copy(conf, SWIFT_RETRY_COUNT, props, SWIFT_RETRY_COUNT, false);
+    copy(conf, SWIFT_MAX_CONNECTIONS, props, SWIFT_MAX_CONNECTIONS, false);
+    copy(conf, SWIFT_MAX_CONNECTIONS_PER_HOST, props,
+         SWIFT_MAX_CONNECTIONS_PER_HOST, false);
+    copy(conf, SWIFT_CONNECTION_IDLE_TIMEOUT, props,
+         SWIFT_CONNECTION_IDLE_TIMEOUT, false);
+    copy(conf, SWIFT_LISTING_PAGE_SIZE, props, SWIFT_LISTING_PAGE_SIZE, false);
+    copy(conf, SWIFT_DRAIN_THRESHOLD, props, SWIFT_DRAIN_THRESHOLD, false);
 
     return props;
 
@@ -38,6 +38,9 @@ public class SwiftProtocolConstants {
   public static final String HEADER_RANGE = "Range";
   public static final String HEADER_DESTINATION = "Destination";
   public static final String HEADER_CONTENT_LENGTH = "Content-Length";
+  public static final String HEADER_ETAG = "ETag";
+  public static final String HEADER_IF_MATCH = "If-Match";
+  public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
   public static final String HEADER_LAST_MODIFIED = "Last-Modified";
   public static final String SWIFT_RANGE_HEADER_FORMAT_PATTERN = "bytes=%d-%d";
   public static final String SERVICE_CATALOG_SWIFT = "swift";
@@ -46,6 +49,23 @@ public class SwiftProtocolConstants {
   public static final String SWIFT_OBJECT_AUTH_ENDPOINT =
     "/object_endpoint/";
   public static final String X_OBJECT_MANIFEST = "X-Object-Manifest";
+
+  /**
+   * Query to PUT a Static Large Object manifest: {@value}
+   */
+  public static final String MULTIPART_MANIFEST_PUT = "multipart-manifest=put";
+
+  /**
+   * Query to GET the JSON manifest of a Static Large Object, rather than
+   * its data: {@value}
+   */
+  public static final String MULTIPART_MANIFEST_GET = "multipart-manifest=get";
+
+  /**
+   * Header set on a Static Large Object: {@value}
+   */
+  public static final String X_STATIC_LARGE_OBJECT = "X-Static-Large-Object";
+
   public static final String X_CONTAINER_OBJECT_COUNT =
     "X-Container-Object-Count";
   public static final String X_CONTAINER_BYTES_USED = "X-Container-Bytes-Used";
@@ -73,6 +93,308 @@ public class SwiftProtocolConstants {
   public static final String SWIFT_RETRY_COUNT =
     FS_SWIFT + "connect.retry.count";
 
+  /**
+   * Maximum number of HTTP connections pooled by a client: {@value}
+   */
+  public static final String SWIFT_MAX_CONNECTIONS =
+    FS_SWIFT + ".connect.max.total";
+
+  /**
+   * Maximum number of HTTP connections pooled per host: {@value}
+   */
+  public static final String SWIFT_MAX_CONNECTIONS_PER_HOST =
+    FS_SWIFT + ".connect.max.per.host";
+
+  /**
+   * Time in milliseconds after which an idle pooled connection
+   * is closed: {@value}
+   */
+  public static final String SWIFT_CONNECTION_IDLE_TIMEOUT =
+    FS_SWIFT + ".connect.idle.timeout";
+
+  /**
+   * Largest number of unread bytes which are read and discarded when a
+   * response is closed early, so that its connection can be reused;
+   * larger remainders abort the connection: {@value}
+   */
+  public static final String SWIFT_DRAIN_THRESHOLD =
+    FS_SWIFT + ".connect.drain.threshold";
+
+  /**
+   * Maximum number of entries requested in one page of a
+   * container listing: {@value}
+   */
+  public static final String SWIFT_LISTING_PAGE_SIZE =
+    FS_SWIFT + ".listing.page.size";
+
+  /**
+   * Time in milliseconds for which the statuses of objects and pages of
+   * listings are cached; 0 disables the metadata cache: {@value}
+   */
+  public static final String SWIFT_METADATA_CACHE_TTL =
+    FS_SWIFT + ".metadata.cache.ttl";
+
+  /**
+   * Time in milliseconds for which the absence of an object is cached;
+   * defaults to the time to live of statuses: {@value}
+   */
+  public static final String SWIFT_METADATA_CACHE_NEGATIVE_TTL =
+    FS_SWIFT + ".metadata.cache.negative.ttl";
+
+  /**
+   * Number of statuses, and of listing pages, kept by the metadata
+   * cache: {@value}
+   */
+  public static final String SWIFT_METADATA_CACHE_SIZE =
+    FS_SWIFT + ".metadata.cache.size";
+
+  /**
+   * When reads ask for the newest replica: "always", or "recent", which
+   * asks only for objects this filesystem has recently changed: {@value}
+   */
+  public static final String SWIFT_CONSISTENCY_MODE =
+    FS_SWIFT + ".consistency.mode";
+
+  /**
+   * Time in milliseconds for which reads of an object changed through
+   * this filesystem ask for the newest replica, in the "recent"
+   * consistency mode: {@value}
+   */
+  public static final String SWIFT_CONSISTENCY_WINDOW =
+    FS_SWIFT + ".consistency.window";
+
+  /**
+   * Number of recently changed objects remembered in the "recent"
+   * consistency mode: {@value}
+   */
+  public static final String SWIFT_CONSISTENCY_TRACKED =
+    FS_SWIFT + ".consistency.tracked";
+
+  /**
+   * Should create() leave the check for an existing file to the PUT
+   * which writes it, when the file must not be overwritten? The failure
+   * is then raised when the stream is closed: {@value}
+   */
+  public static final String SWIFT_CREATE_DEFERRED_CHECKS =
+    FS_SWIFT + ".create.deferred.checks";
+
+  /**
+   * Are directories marked with empty objects? If false, directories
+   * exist only as the prefixes of the objects under them: {@value}
+   */
+  public static final String SWIFT_DIRECTORY_MARKERS =
+    FS_SWIFT + ".directory.markers";
+
+  /**
+   * Number of threads listing key ranges in parallel during recursive
+   * listings; 1 lists sequentially: {@value}
+   */
+  public static final String SWIFT_LISTING_THREADS =
+    FS_SWIFT + ".listing.threads";
+
+  /**
+   * Size in bytes of the parts into which large files are divided
+   * on upload: {@value}
+   */
+  public static final String SWIFT_PARTITION_SIZE =
+    FS_SWIFT + ".partsize";
+
+  /**
+   * Number of threads uploading file parts in the background: {@value}
+   */
+  public static final String SWIFT_UPLOAD_THREADS =
+    FS_SWIFT + ".upload.threads";
+
+  /**
+   * Maximum number of parts of a single output stream which may be
+   * uploading at the same time: {@value}
+   */
+  public static final String SWIFT_UPLOAD_MAX_INFLIGHT =
+    FS_SWIFT + ".upload.max.inflight";
+
+  /**
+   * Time in milliseconds for which closing a filesystem waits for the
+   * uploads still in progress to finish before abandoning them: {@value}
+   */
+  public static final String SWIFT_UPLOAD_CLOSE_TIMEOUT =
+    FS_SWIFT + ".upload.close.timeout";
+
+  /**
+   * Type of manifest written for a file uploaded in parts:
+   * "dlo" (X-Object-Manifest) or "slo" (JSON manifest): {@value}
+   */
+  public static final String SWIFT_MANIFEST_TYPE =
+    FS_SWIFT + ".manifest.type";
+
+  /**
+   * Size in bytes of the range requested by each GET of an input
+   * stream: {@value}
+   */
+  public static final String SWIFT_READAHEAD_RANGE =
+    FS_SWIFT + ".readahead.range";
+
+  /**
+   * Largest gap in bytes which a forward seek skips by reading on
+   * in the open stream, rather than by opening a new one: {@value}
+   */
+  public static final String SWIFT_SEEK_FORWARD_SKIP =
+    FS_SWIFT + ".seek.forward.skip";
+
+  /**
+   * Input policy of streams: "sequential", "random" or "adaptive",
+   * which switches between the two as the pattern of seeks
+   * changes: {@value}
+   */
+  public static final String SWIFT_INPUT_POLICY =
+    FS_SWIFT + ".input.policy";
+
+  /**
+   * Number of chunks which input streams fetch ahead of a sequential
+   * reader, concurrently; 0 disables prefetching: {@value}
+   */
+  public static final String SWIFT_PREFETCH_DEPTH =
+    FS_SWIFT + ".prefetch.depth";
+
+  /**
+   * Size in bytes of each chunk fetched ahead: {@value}
+   */
+  public static final String SWIFT_PREFETCH_CHUNK_SIZE =
+    FS_SWIFT + ".prefetch.chunk.size";
+
+  /**
+   * Number of times an input stream resumes a read which failed, with a
+   * new request from the same position, before giving up: {@value}
+   */
+  public static final String SWIFT_READ_RETRY_LIMIT =
+    FS_SWIFT + ".read.retry.limit";
+
+  /**
+   * Time in milliseconds to wait before the first retry of a failed
+   * read; it doubles with each further retry: {@value}
+   */
+  public static final String SWIFT_READ_RETRY_INTERVAL =
+    FS_SWIFT + ".read.retry.interval";
+
+  /**
+   * Number of threads making the concurrent reads of input streams
+   * -prefetched chunks and vectored reads- shared by all the streams
+   * of a filesystem: {@value}
+   */
+  public static final String SWIFT_READ_THREADS =
+    FS_SWIFT + ".read.threads";
+
+  /**
+   * Largest gap in bytes between two ranges of a vectored read which
+   * are still fetched by a single request: {@value}
+   */
+  public static final String SWIFT_VECTORED_READ_MIN_SEEK =
+    FS_SWIFT + ".vectored.read.min.seek.size";
+
+  /**
+   * Largest range in bytes which the ranges of a vectored read are
+   * merged into: {@value}
+   */
+  public static final String SWIFT_VECTORED_READ_MAX_MERGED =
+    FS_SWIFT + ".vectored.read.max.merged.size";
+
+  /**
+   * Should the input streams of large objects written as manifests read
+   * the segments directly: {@value}
+   */
+  public static final String SWIFT_READ_SEGMENTS =
+    FS_SWIFT + ".read.segments";
+
+  /**
+   * Number of chunks which the input streams of large objects fetch
+   * concurrently from their segments ahead of a sequential reader, if
+   * that is more than the prefetch depth: {@value}
+   */
+  public static final String SWIFT_SEGMENT_READ_DEPTH =
+    FS_SWIFT + ".segment.read.depth";
+
+  /**
+   * Comma-separated list of local directories holding the blocks of the
+   * disk cache of objects; the cache is disabled if empty: {@value}
+   */
+  public static final String SWIFT_CACHE_DISK_DIRS =
+    FS_SWIFT + ".cache.disk.dirs";
+
+  /**
+   * Total size in bytes of the blocks kept in the disk cache: {@value}
+   */
+  public static final String SWIFT_CACHE_DISK_SIZE =
+    FS_SWIFT + ".cache.disk.size";
+
+  /**
+   * Size in bytes of the blocks of objects stored in the disk
+   * cache: {@value}
+   */
+  public static final String SWIFT_CACHE_DISK_BLOCK_SIZE =
+    FS_SWIFT + ".cache.disk.block.size";
+
+  /**
+   * Local directory shared by all the processes on a node, holding the
+   * memory-mapped cache of objects; the cache is disabled if
+   * empty: {@value}
+   */
+  public static final String SWIFT_CACHE_SHARED_DIR =
+    FS_SWIFT + ".cache.shared.dir";
+
+  /**
+   * Number of blocks the shared cache holds: {@value}
+   */
+  public static final String SWIFT_CACHE_SHARED_SLOTS =
+    FS_SWIFT + ".cache.shared.slots";
+
+  /**
+   * Size in bytes of the blocks of objects stored in the shared
+   * cache: {@value}
+   */
+  public static final String SWIFT_CACHE_SHARED_BLOCK_SIZE =
+    FS_SWIFT + ".cache.shared.block.size";
+
+  /**
+   * Total size in bytes of the blocks of objects kept in the in-memory
+   * cache; 0 disables it: {@value}
+   */
+  public static final String SWIFT_CACHE_MEMORY_SIZE =
+    FS_SWIFT + ".cache.memory.size";
+
+  /**
+   * Size in bytes of the blocks of objects stored in the in-memory
+   * cache: {@value}
+   */
+  public static final String SWIFT_CACHE_MEMORY_BLOCK_SIZE =
+    FS_SWIFT + ".cache.memory.block.size";
+
+  /**
+   * Number of trailing bytes of files opened for random reads which the
+   * in-memory cache admits on first read, and pins: {@value}
+   */
+  public static final String SWIFT_CACHE_MEMORY_FOOTER_SIZE =
+    FS_SWIFT + ".cache.memory.footer.size";
+
+  /**
+   * Should the in-memory cache hold its blocks in direct buffers, outside
+   * the heap: {@value}
+   */
+  public static final String SWIFT_CACHE_MEMORY_DIRECT =
+    FS_SWIFT + ".cache.memory.direct";
+
+  /**
+   * How output is buffered before upload: "disk", "array"
+   * or "bytebuffer": {@value}
+   */
+  public static final String SWIFT_OUTPUT_BUFFER =
+    FS_SWIFT + ".output.buffer";
+
+  /**
+   * Limit in bytes of the memory used by all output buffers of a
+   * filesystem; buffers which would exceed it spill to disk: {@value}
+   */
+  public static final String SWIFT_OUTPUT_BUFFER_MEMORY_LIMIT =
+    FS_SWIFT + ".output.buffer.memory.limit";
+
   /**
    * Key for passing the service name as a property -not read from the
    * configuration : {@value}
@@ -25,6 +25,8 @@ import org.apache.commons.httpclient.HttpHost;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpMethodBase;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.HeadMethod;
@@ -32,10 +34,12 @@ import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.PutMethod;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.apache.commons.httpclient.protocol.DefaultProtocolSocketFactory;
 import org.apache.commons.httpclient.protocol.Protocol;
 import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -58,6 +62,8 @@ import org.apache.hadoop.fs.swift.exceptions.SwiftConnectionException;
 import org.apache.hadoop.fs.swift.exceptions.SwiftException;
 import org.apache.hadoop.fs.swift.exceptions.SwiftInternalStateException;
 import org.apache.hadoop.fs.swift.exceptions.SwiftInvalidResponseException;
+import org.apache.hadoop.fs.swift.exceptions.SwiftObjectChangedException;
+import org.apache.hadoop.fs.swift.snative.SwiftObjectFileStatus;
 import org.apache.hadoop.fs.swift.ssl.EasySSLProtocolSocketFactory;
 import org.apache.hadoop.fs.swift.util.JSONUtil;
 import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
@@ -71,6 +77,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 
@@ -98,6 +105,21 @@ public final class SwiftRestClient {
   private static final Log LOG = LogFactory.getLog(SwiftRestClient.class);
   private static final int DEFAULT_RETRY_COUNT = 3;
   private static final int DEFAULT_CONNECT_TIMEOUT = 15000;
+  private static final int DEFAULT_MAX_CONNECTIONS = 64;
+  private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 16;
+  private static final int DEFAULT_CONNECTION_IDLE_TIMEOUT = 60000;
+  private static final int DEFAULT_DRAIN_THRESHOLD = 64 * 1024;
+
+  /**
+   * The default page size of listings; this is also the largest page
+   * which Swift returns.
+   */
+  public static final int DEFAULT_LISTING_PAGE_SIZE = 10000;
+
+  /**
+   * The shortest interval between two scans for idle connections
+   */
+  private static final int MIN_IDLE_SCAN_INTERVAL = 1000;
 
   /**
    * Header that says "use newest version" -ensures that
@@ -189,6 +211,60 @@ public final class SwiftRestClient {
    */
   private int proxyPort;
 
+  /**
+   * Maximum number of connections in the pool
+   */
+  private final int maxConnections;
+
+  /**
+   * Maximum number of connections in the pool to any single host
+   */
+  private final int maxConnectionsPerHost;
+
+  /**
+   * How long (in milliseconds) a pooled connection may be idle before
+   * it is closed
+   */
+  private final int idleConnectionTimeout;
+
+  /**
+   * Maximum number of entries to ask for in one page of a listing
+   */
+  private final int listingPageSize;
+
+  /**
+   * Largest number of unread bytes drained from a response closed early,
+   * so that its connection can be reused, rather than aborted
+   */
+  private final int drainThreshold;
+
+  /**
+   * How the connections of responses closed early were released
+   */
+  private final HttpReleaseStatistics releaseStatistics =
+    new HttpReleaseStatistics();
+
+  /**
+   * Pool of connections shared by all requests of this client
+   */
+  private final MultiThreadedHttpConnectionManager connectionManager;
+
+  /**
+   * The HTTP client; this is thread safe and shared across all operations
+   */
+  private final HttpClient client;
+
+  /**
+   * Thread to close connections which have been idle too long.
+   * Null once the client is closed.
+   */
+  private IdleConnectionTimeoutThread idleConnectionReaper;
+
+  /**
+   * Flag set when the client is closed
+   */
+  private volatile boolean closed;
+
   /**
    * objects query endpoint. This is synchronized
    * to handle a simultaneous update of all auth data in one
@@ -266,6 +342,16 @@ public final class SwiftRestClient {
     protected void setup(M method) throws IOException {
     }
 
+    /**
+     * Override point: does the result of {@link #extractResult(HttpMethod)}
+     * take over the connection? If not, the connection is returned to the
+     * pool as soon as the result has been extracted.
+     * @return true if the result is responsible for releasing the connection
+     */
+    protected boolean isConnectionRetained() {
+      return false;
+    }
+
     /**
      * Override point: what are the status codes that this operation supports
      * @return the list of status codes to accept
@@ -402,13 +488,34 @@ public final class SwiftRestClient {
     proxyHost = props.getProperty(SWIFT_PROXY_HOST_PROPERTY, null);
     proxyPort = getIntOption(props, SWIFT_PROXY_PORT_PROPERTY, 8080);
 
+    maxConnections = getPositiveIntOption(props, SWIFT_MAX_CONNECTIONS,
+                                          DEFAULT_MAX_CONNECTIONS);
+    maxConnectionsPerHost = getPositiveIntOption(props,
+                                          SWIFT_MAX_CONNECTIONS_PER_HOST,
+                                          DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    idleConnectionTimeout = getPositiveIntOption(props,
+                                          SWIFT_CONNECTION_IDLE_TIMEOUT,
+                                          DEFAULT_CONNECTION_IDLE_TIMEOUT);
+    listingPageSize = getPositiveIntOption(props,
+                                          SWIFT_LISTING_PAGE_SIZE,
+                                          DEFAULT_LISTING_PAGE_SIZE);
+    drainThreshold = getIntOption(props, SWIFT_DRAIN_THRESHOLD,
+                                  DEFAULT_DRAIN_THRESHOLD);
+    if (drainThreshold < 0) {
+      throw new SwiftConfigurationException("Value of property "
+                                            + SWIFT_DRAIN_THRESHOLD
+                                            + " must not be negative: "
+                                            + drainThreshold);
+    }
+
     if (LOG.isDebugEnabled()) {
       //everything you need for diagnostics. The password is omitted.
       LOG.debug(String.format(
         "Service={%s} container={%s} uri={%s}"
         + " tenant={%s} user={%s} region={%s}"
         + " publicURL={%b}"
-        + " connect timeout={%d}, retry count={%d}",
+        + " connect timeout={%d}, retry count={%d}"
+        + " max connections={%d}, max connections per host={%d}",
         serviceProvider,
         container,
         stringAuthUri,
@@ -417,7 +524,9 @@ public final class SwiftRestClient {
         region != null ? region : "(none)",
         usePublicURL,
         connectTimeout,
-        retryCount));
+        retryCount,
+        maxConnections,
+        maxConnectionsPerHost));
     }
     try {
       this.authUri = new URI(stringAuthUri);
@@ -426,6 +535,85 @@ public final class SwiftRestClient {
                                             + " property was incorrect: "
                                             + stringAuthUri, e);
     }
+    connectionManager = createConnectionManager();
+    client = createHttpClient(connectionManager);
+    idleConnectionReaper = startIdleConnectionReaper(connectionManager);
+  }
+
+  /**
+   * Create the connection pool. Stale checking is enabled so that
+   * connections closed by the far end while pooled are not handed out.
+   * @return the connection manager
+   */
+  private MultiThreadedHttpConnectionManager createConnectionManager() {
+    MultiThreadedHttpConnectionManager manager =
+      new MultiThreadedHttpConnectionManager();
+    HttpConnectionManagerParams params = manager.getParams();
+    params.setMaxTotalConnections(maxConnections);
+    params.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+    params.setConnectionTimeout(connectTimeout);
+    params.setStaleCheckingEnabled(true);
+    return manager;
+  }
+
+  /**
+   * Create the HTTP client which all operations are executed through.
+   * @param manager connection manager to bind to
+   * @return a new client
+   */
+  private HttpClient createHttpClient(
+    MultiThreadedHttpConnectionManager manager) {
+    HttpClient httpClient = new HttpClient(manager);
+    //don't block forever waiting for a connection from an exhausted pool
+    httpClient.getParams().setConnectionManagerTimeout(connectTimeout);
+    if (proxyHost != null) {
+      httpClient.getParams().setParameter(HTTP_ROUTE_DEFAULT_PROXY,
+                                          new HttpHost(proxyHost, proxyPort));
+    }
+    return httpClient;
+  }
+
+  /**
+   * Start the (daemon) thread which closes connections that have been
+   * idle for longer than {@link #idleConnectionTimeout}.
+   * @param manager connection manager to scan
+   * @return the started thread
+   */
+  private IdleConnectionTimeoutThread startIdleConnectionReaper(
+    MultiThreadedHttpConnectionManager manager) {
+    IdleConnectionTimeoutThread reaper = new IdleConnectionTimeoutThread();
+    reaper.setName("Swift idle connection reaper for " + filesystemURI);
+    reaper.setConnectionTimeout(idleConnectionTimeout);
+    reaper.setTimeoutInterval(Math.max(MIN_IDLE_SCAN_INTERVAL,
+                                       idleConnectionTimeout / 2));
+    reaper.addConnectionManager(manager);
+    reaper.start();
+    return reaper;
+  }
+
+  /**
+   * Close the client: stop the idle connection thread and
+   * close all pooled connections. The client cannot be used afterwards.
+   * This method is idempotent.
+   */
+  public void close() {
+    IdleConnectionTimeoutThread reaper;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      reaper = idleConnectionReaper;
+      idleConnectionReaper = null;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Closing " + this + "; early releases: " + releaseStatistics
+                + "; " + HttpStreamLeakTracker.get());
+    }
+    if (reaper != null) {
+      reaper.shutdown();
+    }
+    connectionManager.shutdown();
   }
 
   /**
@@ -457,6 +645,26 @@ public final class SwiftRestClient {
     }
   }
 
+  /**
+   * Get an integer option which must be greater than zero
+   * @param props property set
+   * @param key key
+   * @param def default value
+   * @return the value in the property file, or the default.
+   * @throws SwiftConfigurationException if the value cannot be parsed
+   * or is not positive
+   */
+  private int getPositiveIntOption(Properties props, String key, int def)
+    throws SwiftConfigurationException {
+    int val = getIntOption(props, key, def);
+    if (val <= 0) {
+      throw new SwiftConfigurationException("Value of property " + key
+                                            + " must be greater than zero: "
+                                            + val);
+    }
+    return val;
+  }
+
   /**
    * Get a AuthenticationMethod option from the property object
    *
@@ -497,11 +705,17 @@ public final class SwiftRestClient {
    * @param path   path to object
    * @param offset offset from file beginning
    * @param length file length
+   * @param requestHeaders more http headers, such as If-Match
+   * or X-Newest
    * @return The input stream -which must be closed afterwards.
+   * @throws SwiftObjectChangedException if an If-Match header
+   * did not match
    */
   public InputStream getDataAsInputStream(SwiftObjectPath path,
                                           long offset,
-                                          long length) throws IOException {
+                                          long length,
+                                          Header... requestHeaders)
+    throws IOException {
     if (offset < 0) {
       throw new IOException("Invalid offset: " + offset + ".");
     }
@@ -512,9 +726,10 @@ public final class SwiftRestClient {
     final String range = String.format(SWIFT_RANGE_HEADER_FORMAT_PATTERN,
                                        offset,
                                        offset + length - 1);
-    return getDataAsInputStream(path,
-                                new Header(HEADER_RANGE, range),
-                                SwiftRestClient.NEWEST);
+    Header[] headers = new Header[requestHeaders.length + 1];
+    headers[0] = new Header(HEADER_RANGE, range);
+    System.arraycopy(requestHeaders, 0, headers, 1, requestHeaders.length);
+    return getDataAsInputStream(path, headers);
   }
 
   /**
@@ -627,93 +842,217 @@ public final class SwiftRestClient {
   }
 
   /**
-   * Find objects under a prefix
+   * Find all objects under a prefix.
+   * The listing is fetched a page at a time until it is complete,
+   * so it is not truncated at the server's page size.
    *
    * @param path path prefix
    * @param delimiter delimiter of path, can be null
    * @param requestHeaders optional request headers
-   * @return  byte[] file data or null if the object was not found
+   * @return the entries of the listing; empty if nothing matched
    * @throws IOException on IO Faults
-   * @throws FileNotFoundException if nothing is at the end of the URI -that is,
-   * the directory is empty
+   * @throws FileNotFoundException if the container does not exist
    */
-  public byte[] findObjectsByPrefix(SwiftObjectPath path,
-                                    String delimiter,
-                                    final Header... requestHeaders) throws IOException {
+  public List<SwiftObjectFileStatus> findObjectsByPrefix(SwiftObjectPath path,
+                                                         String delimiter,
+                                                         final Header... requestHeaders)
+    throws IOException {
+    preRemoteCommand("findObjectsByPrefix");
+    List<SwiftObjectFileStatus> result = new ArrayList<SwiftObjectFileStatus>();
+    String marker = null;
+    List<SwiftObjectFileStatus> page;
+    do {
+      page = findObjectsByPrefix(path, delimiter, marker, listingPageSize,
+                                 requestHeaders);
+      result.addAll(page);
+      if (!page.isEmpty()) {
+        marker = page.get(page.size() - 1).getEntryName();
+      }
+    } while (page.size() >= listingPageSize);
+    return result;
+  }
+
+  /**
+   * Find one page of the objects under a prefix.
+   *
+   * @param path path prefix
+   * @param delimiter delimiter of path, can be null
+   * @param marker only list entries after this name; can be null
+   * @param limit maximum number of entries to return; ignored if not positive
+   * @param requestHeaders optional request headers
+   * @return the entries of the page; empty if nothing matched
+   * @throws IOException on IO Faults
+   * @throws FileNotFoundException if the container does not exist
+   */
+  public List<SwiftObjectFileStatus> findObjectsByPrefix(SwiftObjectPath path,
+                                                         String delimiter,
+                                                         String marker,
+                                                         int limit,
+                                                         final Header... requestHeaders)
+    throws IOException {
+    return findObjectsByPrefix(path, delimiter, marker, null, limit,
+                               requestHeaders);
+  }
+
+  /**
+   * Find one page of the objects under a prefix whose names lie
+   * in a range.
+   *
+   * @param path path prefix
+   * @param delimiter delimiter of path, can be null
+   * @param marker only list entries after this name; can be null
+   * @param endMarker only list entries before this name; can be null
+   * @param limit maximum number of entries to return; ignored if not positive
+   * @param requestHeaders optional request headers
+   * @return the entries of the page; empty if nothing matched
+   * @throws IOException on IO Faults
+   * @throws FileNotFoundException if the container does not exist
+   */
+  public List<SwiftObjectFileStatus> findObjectsByPrefix(SwiftObjectPath path,
+                                                         String delimiter,
+                                                         String marker,
+                                                         String endMarker,
+                                                         int limit,
+                                                         final Header... requestHeaders)
+    throws IOException {
 
     preRemoteCommand("findObjectsByPrefix");
     if (LOG.isDebugEnabled()) {
-      LOG.debug("findObjectsByPrefix path=" + path + " delimiter=" + delimiter);
+      LOG.debug("findObjectsByPrefix path=" + path + " delimiter=" + delimiter
+                + " marker=" + marker + " end_marker=" + endMarker
+                + " limit=" + limit);
     }
-    String endpoint = getEndpointURI().toString();
-    StringBuilder dataLocationURI = new StringBuilder();
-    dataLocationURI.append(endpoint);
     String object = path.getObject();
     if (object.startsWith("/")) {
       object = object.substring(1);
     }
-    dataLocationURI = dataLocationURI.append("/")
-                                     .append(path.getContainer());
-
-    maybeAppendPrefix(dataLocationURI, object);
-
-    if (delimiter != null) {
-      dataLocationURI.append("&delimiter=/").append(delimiter);
-    }
-    return findObjects(dataLocationURI.toString(), requestHeaders);
-  }
-
-  private void maybeAppendPrefix(StringBuilder dataLocationURI, String object) {
-    if (!object.isEmpty() && !"/".equals(object)) {
-      dataLocationURI.append("/?prefix=")
-                     .append(object);
-    }
+    return findObjects(listingURI(path.getContainer(), object, delimiter,
+                                  marker, endMarker, limit),
+                       requestHeaders);
   }
 
   /**
-   * Find objects in a directory
+   * Find all objects in a directory
    *
    * @param path path prefix
    * @param requestHeaders optional request headers
-   * @return byte[] file data or null if the object was not found
+   * @return the entries of the listing; empty if nothing matched
    * @throws IOException on IO Faults
-   * @throws FileNotFoundException if nothing is at the end of the URI -that is,
-   * the directory is empty
+   * @throws FileNotFoundException if the container does not exist
    */
-  public byte[] listObjectsInDirectory(SwiftObjectPath path,
-                                       final Header... requestHeaders) throws IOException {
+  public List<SwiftObjectFileStatus> listObjectsInDirectory(SwiftObjectPath path,
+                                                            final Header... requestHeaders)
+    throws IOException {
     preRemoteCommand("listObjectsInPath");
     if (LOG.isDebugEnabled()) {
       LOG.debug("listObjectsInDirectory path=" + path );
     }
-    String endpoint = getEndpointURI().toString();
-    StringBuilder dataLocationURI1 = new StringBuilder();
-    dataLocationURI1.append(endpoint);
+    return findObjectsByPrefix(toDirectoryPrefix(path), "/", requestHeaders);
+  }
+
+  /**
+   * Find one page of the objects in a directory
+   *
+   * @param path path prefix
+   * @param marker only list entries after this name; can be null
+   * @param limit maximum number of entries to return; ignored if not positive
+   * @param requestHeaders optional request headers
+   * @return the entries of the page; empty if nothing matched
+   * @throws IOException on IO Faults
+   * @throws FileNotFoundException if the container does not exist
+   */
+  public List<SwiftObjectFileStatus> listObjectsInDirectory(SwiftObjectPath path,
+                                                            String marker,
+                                                            int limit,
+                                                            final Header... requestHeaders)
+    throws IOException {
+    return findObjectsByPrefix(toDirectoryPrefix(path), "/", marker, limit,
+                               requestHeaders);
+  }
+
+  /**
+   * Get the listing prefix of a directory: its path with a trailing /
+   * @param path directory path
+   * @return the path to use as a listing prefix
+   */
+  private static SwiftObjectPath toDirectoryPrefix(SwiftObjectPath path) {
     String object = path.getObject();
-    if (object.startsWith("/")) {
-      object = object.substring(1);
-    }
-    if (!object.endsWith("/")) {
-      object = object.concat("/");
+    if (object.isEmpty() || object.endsWith("/")) {
+      return path;
     }
+    return new SwiftObjectPath(path.getContainer(), object.concat("/"));
+  }
 
-    dataLocationURI1 = dataLocationURI1.append("/")
-                                     .append(path.getContainer());
-    maybeAppendPrefix(dataLocationURI1, object);
-    StringBuilder dataLocationURI = dataLocationURI1;
-    dataLocationURI.append("&delimiter=/");
-    return findObjects(dataLocationURI.toString(), requestHeaders);
+  /**
+   * Get the number of entries asked for in one page of a listing
+   * @return the listing page size
+   */
+  public int getListingPageSize() {
+    return listingPageSize;
   }
 
   /**
-   * Find objects in a location
+   * Get the statistics of connections released before the end of
+   * their response
+   * @return the release statistics
+   */
+  public HttpReleaseStatistics getReleaseStatistics() {
+    return releaseStatistics;
+  }
+
+  /**
+   * Build the URI of a JSON container listing.
+   * @param container container to list
+   * @param prefix prefix of the listing; ignored if empty or "/"
+   * @param delimiter delimiter, can be null
+   * @param marker only list entries after this name; can be null
+   * @param endMarker only list entries before this name; can be null
+   * @param limit maximum number of entries to return; ignored if not positive
+   * @return the URI of the listing
+   * @throws IOException if the URI cannot be built
+   */
+  private String listingURI(String container,
+                            String prefix,
+                            String delimiter,
+                            String marker,
+                            String endMarker,
+                            int limit)
+    throws IOException {
+    StringBuilder location = new StringBuilder();
+    location.append(getEndpointURI().toString())
+            .append("/")
+            .append(container)
+            .append("/?format=json");
+    if (!prefix.isEmpty() && !"/".equals(prefix)) {
+      location.append("&prefix=").append(encodeQueryValue(prefix));
+    }
+    if (delimiter != null) {
+      location.append("&delimiter=").append(encodeQueryValue(delimiter));
+    }
+    if (marker != null) {
+      location.append("&marker=").append(encodeQueryValue(marker));
+    }
+    if (endMarker != null) {
+      location.append("&end_marker=").append(encodeQueryValue(endMarker));
+    }
+    if (limit > 0) {
+      location.append("&limit=").append(limit);
+    }
+    return location.toString();
+  }
+
+  /**
+   * Find objects in a location.
+   * The JSON listing is parsed as it is read, so the response body is
+   * never held in memory as a whole.
    * @param location URI
    * @param requestHeaders optional request headers
-   * @return the body of te response
+   * @return the entries of the listing
    * @throws IOException IO problems
    */
-  private byte[] findObjects(String location, final Header[] requestHeaders) throws
-          IOException {
+  private List<SwiftObjectFileStatus> findObjects(String location,
+                                                  final Header[] requestHeaders)
+    throws IOException {
     preRemoteCommand("findObjects");
     URI uri;
     try {
@@ -722,20 +1061,30 @@ public final class SwiftRestClient {
       throw new SwiftException("Bad URI: " + location, e);
     }
 
-    return perform(uri, new GetMethodProcessor<byte[]>() {
+    return perform(uri, new GetMethodProcessor<List<SwiftObjectFileStatus>>() {
       @Override
-      public byte[] extractResult(GetMethod method) throws IOException {
-        if (method.getStatusCode() == SC_NOT_FOUND) {
+      public List<SwiftObjectFileStatus> extractResult(GetMethod method)
+        throws IOException {
+        int statusCode = method.getStatusCode();
+        if (statusCode == SC_NOT_FOUND) {
           //no result
           throw new FileNotFoundException("Not found " + method.getURI());
         }
-        return method.getResponseBody();
+        if (statusCode == SC_NO_CONTENT) {
+          return new ArrayList<SwiftObjectFileStatus>(0);
+        }
+        InputStream body = method.getResponseBodyAsStream();
+        if (body == null) {
+          return new ArrayList<SwiftObjectFileStatus>(0);
+        }
+        return JSONUtil.toObjectList(body, SwiftObjectFileStatus.class);
       }
 
       @Override
       protected int[] getAllowedStatusCodes() {
         return new int[]{
           SC_OK,
+          SC_NO_CONTENT,
           SC_NOT_FOUND
         };
       }
@@ -785,15 +1134,53 @@ public final class SwiftRestClient {
    * @param data           object data
    * @param length         length of data
    * @param requestHeaders http headers
+   * @return the ETag of the object written, or null if the server
+   * did not return one
    * @throws IOException on IO Faults
    */
-  public void upload(SwiftObjectPath path,
-                     final InputStream data,
-                     final long length,
-                     final Header... requestHeaders)
+  public String upload(SwiftObjectPath path,
+                       final InputStream data,
+                       final long length,
+                       final Header... requestHeaders)
     throws IOException {
     preRemoteCommand("upload");
-    perform(pathToURI(path), new PutMethodProcessor<byte[]>() {
+    return perform(pathToURI(path), new PutMethodProcessor<String>() {
+      @Override
+      public String extractResult(PutMethod method) throws IOException {
+        Header etag = method.getResponseHeader(SwiftProtocolConstants.HEADER_ETAG);
+        return etag != null ? etag.getValue() : null;
+      }
+
+      @Override
+      protected void setup(PutMethod method) throws
+                                             SwiftInternalStateException {
+        method.setRequestEntity(new InputStreamRequestEntity(data, length));
+        setHeaders(method, requestHeaders);
+      }
+    });
+  }
+
+  /**
+   * Writes the manifest of a Static Large Object. Swift checks that every
+   * segment exists with the given ETag and size before accepting it.
+   *
+   * @param path           path of the large object
+   * @param manifest       JSON list of segments
+   * @param requestHeaders http headers
+   * @throws IOException on IO Faults
+   */
+  public void uploadStaticLargeObjectManifest(SwiftObjectPath path,
+                                              final byte[] manifest,
+                                              final Header... requestHeaders)
+    throws IOException {
+    preRemoteCommand("uploadStaticLargeObjectManifest");
+    URI uri = pathToURI(path);
+    try {
+      uri = new URI(uri.toString() + "?" + SwiftProtocolConstants.MULTIPART_MANIFEST_PUT);
+    } catch (URISyntaxException e) {
+      throw new SwiftException("Failed to create manifest URI from " + uri, e);
+    }
+    perform(uri, new PutMethodProcessor<byte[]>() {
       @Override
       public byte[] extractResult(PutMethod method) throws IOException {
         return method.getResponseBody();
@@ -802,12 +1189,55 @@ public final class SwiftRestClient {
       @Override
       protected void setup(PutMethod method) throws
                                              SwiftInternalStateException {
-        method.setRequestEntity(new InputStreamRequestEntity(data, length));
+        method.setRequestEntity(new ByteArrayRequestEntity(manifest,
+                                                           "application/json"));
         setHeaders(method, requestHeaders);
       }
     });
   }
 
+  /**
+   * Reads the manifest of a Static Large Object: the list of its
+   * segments, each with its full path (<code>/container/object</code>)
+   * as the name, and its size.
+   *
+   * @param path           path of the large object
+   * @param requestHeaders http headers
+   * @return the segments, in order
+   * @throws IOException on IO Faults
+   * @throws FileNotFoundException if there is nothing at the path
+   */
+  public List<SwiftObjectFileStatus> getStaticLargeObjectSegments(
+    SwiftObjectPath path,
+    final Header... requestHeaders) throws IOException {
+    preRemoteCommand("getStaticLargeObjectSegments");
+    URI uri = pathToURI(path);
+    try {
+      uri = new URI(uri.toString() + "?" + SwiftProtocolConstants.MULTIPART_MANIFEST_GET);
+    } catch (URISyntaxException e) {
+      throw new SwiftException("Failed to create manifest URI from " + uri, e);
+    }
+    return perform(uri, new GetMethodProcessor<List<SwiftObjectFileStatus>>() {
+      @Override
+      public List<SwiftObjectFileStatus> extractResult(GetMethod method)
+        throws IOException {
+        if (method.getStatusCode() == SC_NOT_FOUND) {
+          throw new FileNotFoundException("Not found " + method.getURI());
+        }
+        InputStream body = method.getResponseBodyAsStream();
+        if (body == null) {
+          return new ArrayList<SwiftObjectFileStatus>(0);
+        }
+        return JSONUtil.toObjectList(body, SwiftObjectFileStatus.class);
+      }
+
+      @Override
+      protected void setup(GetMethod method) throws
+                                             SwiftInternalStateException {
+        setHeaders(method, requestHeaders);
+      }
+    });
+  }
 
   /**
    * Deletes object from swift.
@@ -1237,6 +1667,7 @@ public final class SwiftRestClient {
                                 retryCount, false));
     methodParams.setSoTimeout(connectTimeout);
 
+    boolean release = true;
     try {
       int statusCode = exec(method);
 
@@ -1254,12 +1685,14 @@ public final class SwiftRestClient {
         throw ioe;
       }
 
-      return processor.extractResult(method);
-    } catch (IOException e) {
-      //release the connection -always
-
-      method.releaseConnection();
-      throw e;
+      R result = processor.extractResult(method);
+      release = !processor.isConnectionRetained();
+      return result;
+    } finally {
+      //return the connection to the pool unless the result now owns it
+      if (release) {
+        method.releaseConnection();
+      }
     }
   }
 
@@ -1301,6 +1734,13 @@ public final class SwiftRestClient {
         fault =  new SwiftBadRequestException("Bad request against " + uri);
         break;
 
+      case SC_PRECONDITION_FAILED:
+        //an If-Match header did not match: the object has changed
+        fault = new SwiftObjectChangedException("Object changed: "
+                                                + method.getName() + " on "
+                                                + uri);
+        break;
+
       case SC_REQUESTED_RANGE_NOT_SATISFIABLE:
         //out of range: end of the message
         fault = new EOFException(method.getStatusText());
@@ -1330,7 +1770,13 @@ public final class SwiftRestClient {
     return perform(uri, new GetMethodProcessor<InputStream>() {
       @Override
       public InputStream extractResult(GetMethod method) throws IOException {
-        return new HttpInputStreamWithRelease(uri, method);
+        return new HttpInputStreamWithRelease(uri, method, drainThreshold,
+                                              releaseStatistics);
+      }
+
+      @Override
+      protected boolean isConnectionRetained() {
+        return true;
       }
 
       @Override
@@ -1417,6 +1863,20 @@ public final class SwiftRestClient {
     return url;
   }
 
+  /**
+   * Encode a query parameter value, including any / and + characters.
+   * @param value value to encode
+   * @return an encoded string
+   * @throws SwiftException if the value cannot be encoded
+   */
+  private static String encodeQueryValue(String value) throws SwiftException {
+    try {
+      return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+    } catch (UnsupportedEncodingException e) {
+      throw new SwiftException("failed to encode query value", e);
+    }
+  }
+
   /**
    * Convert a swift path to a URI relative to the current endpoint.
    * @param path path
@@ -1454,22 +1914,20 @@ public final class SwiftRestClient {
   }
 
   /**
-   * Execute a method in a new HttpClient instance.
+   * Execute a method through the shared, pooled HttpClient instance.
    * If the auth failed, authenticate then retry the method.
    * @param method methot to exec
    * @param <M> Method type
    * @return the status code
    * @throws IOException on any failure
    * @throws SwiftConnectionException failure to connect or authenticate
+   * @throws SwiftInternalStateException if the client has been closed
    */
   private <M extends HttpMethod> int exec(M method)
       throws IOException, SwiftConnectionException {
-    final HttpClient client = new HttpClient();
-    if (proxyHost != null) {
-      client.getParams().setParameter(HTTP_ROUTE_DEFAULT_PROXY,
-                                      new HttpHost(proxyHost, proxyPort));
+    if (closed) {
+      throw new SwiftInternalStateException("Client is closed: " + this);
     }
-
     int statusCode = execWithDebugOutput(method, client);
     if (method.getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
       //unauthed -look at what raised the response
@@ -1488,6 +1946,8 @@ public final class SwiftRestClient {
         if (LOG.isDebugEnabled()) {
           LOG.debug("Reauthenticating");
         }
+        //hand the connection back so authentication doesn't need another
+        method.releaseConnection();
         authenticate();
         if (LOG.isDebugEnabled()) {
           LOG.debug("Retrying original request");
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.hadoop.fs.BufferedFSInputStream;
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.swift.util.ByteBufferReadable;
+import org.apache.hadoop.fs.swift.util.SwiftFileRange;
+import org.apache.hadoop.fs.swift.util.VectoredReadable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Buffered input stream which passes vectored reads and reads into byte
+ * buffers straight through to the stream it buffers, so that callers can
+ * reach them via
+ * {@link org.apache.hadoop.fs.FSDataInputStream#getWrappedStream()}.
+ * A read into a byte buffer only comes from the buffer of this stream
+ * if it holds data which has not been read yet, or if a mark is set:
+ * the buffer then has to keep the data read, so that a reset can
+ * go back to it.
+ */
+class SwiftBufferedInputStream extends BufferedFSInputStream
+  implements ByteBufferReadable, VectoredReadable {
+
+  /**
+   * Create a buffered stream
+   * @param in stream to buffer; must be byte-buffer and
+   * vectored-readable
+   * @param size buffer size
+   */
+  SwiftBufferedInputStream(FSInputStream in, int size) {
+    super(in, size);
+  }
+
+  @Override
+  public synchronized int read(ByteBuffer target) throws IOException {
+    if (buf == null) {
+      throw new IOException("Stream closed");
+    }
+    int buffered = count - pos;
+    if (buffered > 0) {
+      int len = Math.min(buffered, target.remaining());
+      target.put(buf, pos, len);
+      pos += len;
+      return len;
+    }
+    if (markpos < 0) {
+      return ((ByteBufferReadable) in).read(target);
+    }
+    //fill the buffer as a read into an array does, keeping the mark
+    if (target.hasArray()) {
+      int read = read(target.array(), target.arrayOffset() + target.position(),
+                      target.remaining());
+      if (read > 0) {
+        target.position(target.position() + read);
+      }
+      return read;
+    }
+    byte[] bytes = new byte[Math.min(target.remaining(), buf.length)];
+    int read = read(bytes, 0, bytes.length);
+    if (read > 0) {
+      target.put(bytes, 0, read);
+    }
+    return read;
+  }
+
+  @Override
+  public void readVectored(List<? extends SwiftFileRange> ranges)
+    throws IOException {
+    ((VectoredReadable) in).readVectored(ranges);
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.hadoop.fs.swift.exceptions.SwiftConfigurationException;
+import org.apache.hadoop.fs.swift.http.SwiftProtocolConstants;
+
+/**
+ * When reads of objects ask the proxy for the newest replica.
+ */
+public enum SwiftConsistencyMode {
+
+  /**
+   * Send <code>X-Newest</code> with every HEAD and GET of an object, so
+   * that each one waits for all replicas to answer.
+   */
+  always,
+
+  /**
+   * Send <code>X-Newest</code> only for objects which this filesystem
+   * has recently written, copied or deleted, and when retrying a GET
+   * which found nothing; other reads are answered by any one replica.
+   */
+  recent;
+
+  /**
+   * Parse a mode name, ignoring case
+   * @param name mode name
+   * @return the mode
+   * @throws SwiftConfigurationException if the name is unknown
+   */
+  public static SwiftConsistencyMode fromString(String name)
+    throws SwiftConfigurationException {
+    try {
+      return valueOf(name.trim().toLowerCase());
+    } catch (IllegalArgumentException e) {
+      throw new SwiftConfigurationException(
+        "Unknown value of " + SwiftProtocolConstants.SWIFT_CONSISTENCY_MODE
+        + ": " + name);
+    }
+  }
+}
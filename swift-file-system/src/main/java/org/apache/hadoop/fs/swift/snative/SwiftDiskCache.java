@@ -0,0 +1,418 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.swift.exceptions.SwiftException;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.MD5Hash;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of fixed-size blocks of objects in files on local disk.
+ * <p/>
+ * Blocks are keyed by the name and ETag of their object, so a block is
+ * only served for the version of the object it was read from: the ETag
+ * comes from the metadata fetched when the file is opened, and blocks
+ * which are missing are fetched with an <code>If-Match</code> header.
+ * Blocks of older versions are never hit again, and age out.
+ * <p/>
+ * Block files are spread across the cache directories by the hash of
+ * their name, and evicted least recently used first once their total
+ * size exceeds the capacity. Files are written under a temporary name
+ * and renamed into place, so other processes sharing the directories
+ * never see part of a block; the blocks already in the directories are
+ * picked up when a cache is created, so they survive the process which
+ * fetched them.
+ */
+class SwiftDiskCache {
+  private static final Log LOG = LogFactory.getLog(SwiftDiskCache.class);
+
+  private static final String BLOCK_SUFFIX = ".blk";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /**
+   * Age in milliseconds after which a temporary file is assumed to have
+   * been left by a process which died while writing it
+   */
+  private static final long STALE_TEMP_AGE = 60 * 60 * 1000;
+
+  private final File[] dirs;
+  private final long capacity;
+  private final int blockSize;
+
+  /**
+   * Sizes of the cached blocks by file name, least recently used first
+   */
+  private final LinkedHashMap<String, Long> blocks =
+    new LinkedHashMap<String, Long>(16, 0.75f, true);
+  private long used;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * Create a cache, indexing the blocks already in its directories
+   * @param dirs directories to hold the blocks
+   * @param capacity total size in bytes of the blocks to keep
+   * @param blockSize size of a block
+   * @throws IOException if a directory cannot be created
+   */
+  SwiftDiskCache(File[] dirs, long capacity, int blockSize)
+    throws IOException {
+    this.dirs = dirs.clone();
+    this.capacity = capacity;
+    this.blockSize = blockSize;
+    for (File dir : dirs) {
+      if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+        throw new SwiftException("Cannot create cache directory " + dir);
+      }
+    }
+    loadBlocks();
+  }
+
+  /**
+   * Add the blocks found in the cache directories to the index, oldest
+   * first, and delete stale temporary files.
+   */
+  private synchronized void loadBlocks() {
+    List<File> found = new ArrayList<File>();
+    long now = System.currentTimeMillis();
+    for (File dir : dirs) {
+      File[] files = dir.listFiles();
+      if (files == null) {
+        continue;
+      }
+      for (File file : files) {
+        String name = file.getName();
+        if (name.endsWith(BLOCK_SUFFIX)) {
+          found.add(file);
+        } else if (name.endsWith(TEMP_SUFFIX)
+                   && now - file.lastModified() > STALE_TEMP_AGE) {
+          file.delete();
+        }
+      }
+    }
+    Collections.sort(found, new Comparator<File>() {
+      @Override
+      public int compare(File f1, File f2) {
+        long m1 = f1.lastModified();
+        long m2 = f2.lastModified();
+        return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+      }
+    });
+    for (File file : found) {
+      add(file.getName(), file.length());
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Loaded " + this);
+    }
+  }
+
+  /**
+   * Open a range of an object, reading the blocks it covers from the
+   * cache and fetching those which are missing.
+   * @param object name of the object, unique across stores
+   * @param etag ETag of the object
+   * @param objectLength length of the object; blocks fetched short of it
+   * are not cached
+   * @param start starting point
+   * @param length no. of bytes; the stream ends earlier if the object does
+   * @param source source of blocks which are not cached
+   * @return a stream which must be closed
+   */
+  InputStream open(String object,
+                   String etag,
+                   long objectLength,
+                   long start,
+                   long length,
+                   SwiftRangeSource source) {
+    String key = MD5Hash.digest(object + '\u0000' + etag).toString();
+    return new CachedRangeStream(key, objectLength, start,
+                                 Math.min(start + length, objectLength),
+                                 source);
+  }
+
+  int getBlockSize() {
+    return blockSize;
+  }
+
+  long getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Get the total size of the cached blocks
+   * @return the bytes used
+   */
+  synchronized long getUsed() {
+    return used;
+  }
+
+  synchronized int getBlockCount() {
+    return blocks.size();
+  }
+
+  /**
+   * Get the number of blocks served from the cache
+   * @return the hit count
+   */
+  long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Get the number of blocks fetched from the store
+   * @return the miss count
+   */
+  long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Get the number of blocks evicted
+   * @return the eviction count
+   */
+  long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "SwiftDiskCache: " + blocks.size() + " blocks, " + used + " of "
+           + capacity + " bytes; hits=" + hitCount + " misses=" + missCount
+           + " evictions=" + evictionCount;
+  }
+
+  private File fileOf(String name) {
+    int index = (name.hashCode() & Integer.MAX_VALUE) % dirs.length;
+    return new File(dirs[index], name);
+  }
+
+  /**
+   * Open a cached block
+   * @param name file name of the block
+   * @return the stream, or null if the block is not cached
+   */
+  private FileInputStream openCached(String name) {
+    synchronized (this) {
+      if (blocks.get(name) == null) {
+        return null;
+      }
+    }
+    try {
+      return new FileInputStream(fileOf(name));
+    } catch (FileNotFoundException e) {
+      //deleted by another process sharing the directory
+      remove(name);
+      return null;
+    }
+  }
+
+  /**
+   * Fetch a block into the cache
+   * @param name file name of the block
+   * @param source source of the data
+   * @param start start of the block in the object
+   * @param objectLength length of the object
+   * @return a stream reading the new file
+   * @throws IOException on a failure to fetch or store the block,
+   * including the source ending before the block does
+   */
+  private FileInputStream fetch(String name,
+                                SwiftRangeSource source,
+                                long start,
+                                long objectLength) throws IOException {
+    File file = fileOf(name);
+    File temp = File.createTempFile(name, TEMP_SUFFIX, file.getParentFile());
+    FileInputStream result = null;
+    try {
+      InputStream in = source.open(start, blockSize);
+      OutputStream out = new FileOutputStream(temp);
+      try {
+        IOUtils.copyBytes(in, out, 64 * 1024, false);
+      } finally {
+        IOUtils.closeStream(out);
+        in.close();
+      }
+      long expected = Math.min(blockSize, objectLength - start);
+      if (temp.length() != expected) {
+        //a truncated response must not be served to later readers
+        throw new SwiftException("Fetched " + temp.length() + " bytes of "
+                                 + "the block at " + start + " of " + name
+                                 + " instead of " + expected);
+      }
+      //open before the rename, so that an eviction cannot delete the block
+      //before it is read
+      result = new FileInputStream(temp);
+      if (temp.renameTo(file)) {
+        add(name, file.length());
+      } else {
+        LOG.debug("Failed to rename " + temp + " to " + file);
+      }
+      return result;
+    } finally {
+      //only still there if the rename failed
+      temp.delete();
+    }
+  }
+
+  private synchronized void add(String name, long size) {
+    Long previous = blocks.put(name, size);
+    if (previous != null) {
+      used -= previous;
+    }
+    used += size;
+    Iterator<Map.Entry<String, Long>> eldest = blocks.entrySet().iterator();
+    while (used > capacity && eldest.hasNext()) {
+      Map.Entry<String, Long> entry = eldest.next();
+      if (entry.getKey().equals(name)) {
+        //never evict the block just added
+        break;
+      }
+      eldest.remove();
+      used -= entry.getValue();
+      evictionCount.incrementAndGet();
+      fileOf(entry.getKey()).delete();
+    }
+  }
+
+  private synchronized void remove(String name) {
+    Long size = blocks.remove(name);
+    if (size != null) {
+      used -= size;
+    }
+  }
+
+  /**
+   * Stream of a range of an object, opening the block files it spans
+   * as it reaches them
+   */
+  private final class CachedRangeStream extends InputStream {
+    private final String key;
+    private final long objectLength;
+    private final long end;
+    private final SwiftRangeSource source;
+    private long pos;
+    private FileInputStream block;
+    //end of the data of the current block
+    private long blockLimit;
+    private boolean lastBlock;
+    private boolean closed;
+
+    private CachedRangeStream(String key, long objectLength, long start,
+                              long end, SwiftRangeSource source) {
+      this.key = key;
+      this.objectLength = objectLength;
+      this.pos = start;
+      this.end = end;
+      this.source = source;
+    }
+
+    /**
+     * Open the block holding the current position, if need be
+     * @return false if the end of the range or object has been reached
+     * @throws IOException on a failure to fetch the block
+     */
+    private boolean nextBlock() throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      if (pos >= end) {
+        return false;
+      }
+      if (block != null && pos < blockLimit) {
+        return true;
+      }
+      if (block != null) {
+        closeBlock();
+        if (lastBlock) {
+          return false;
+        }
+      }
+      long index = pos / blockSize;
+      long blockStart = index * blockSize;
+      String name = key + "-" + index + BLOCK_SUFFIX;
+      FileInputStream in = openCached(name);
+      if (in != null) {
+        hitCount.incrementAndGet();
+      } else {
+        missCount.incrementAndGet();
+        in = fetch(name, source, blockStart, objectLength);
+      }
+      long size = in.getChannel().size();
+      lastBlock = size < blockSize;
+      blockLimit = Math.min(blockStart + size, end);
+      in.getChannel().position(pos - blockStart);
+      block = in;
+      return pos < blockLimit;
+    }
+
+    private void closeBlock() {
+      IOUtils.closeStream(block);
+      block = null;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      int read = read(b, 0, 1);
+      return read < 0 ? -1 : (b[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!nextBlock()) {
+        return -1;
+      }
+      int read = block.read(b, off, (int) Math.min(len, blockLimit - pos));
+      if (read < 0) {
+        //the file was truncated under us
+        throw new SwiftException("Unexpected end of cached block at " + pos);
+      }
+      pos += read;
+      return read;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      closeBlock();
+    }
+  }
+}
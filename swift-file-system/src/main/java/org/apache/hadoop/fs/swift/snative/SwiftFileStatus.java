@@ -28,6 +28,28 @@ import org.apache.hadoop.fs.permission.FsPermission;
  */
 public class SwiftFileStatus extends FileStatus {
 
+  /**
+   * Value of the X-Object-Manifest header: container/prefix of the
+   * segments of a Dynamic Large Object. Not serialized.
+   */
+  private String objectManifest;
+
+  /**
+   * Is the object a Static Large Object? Not serialized.
+   */
+  private boolean staticLargeObject;
+
+  /**
+   * ETag of the object, if known. Not serialized.
+   */
+  private String etag;
+
+  /**
+   * Is the directory flag authoritative, so that a 0 byte file is
+   * a file? Not serialized.
+   */
+  private boolean typeExplicit;
+
   public SwiftFileStatus() {
   }
 
@@ -62,14 +84,83 @@ public class SwiftFileStatus extends FileStatus {
           access_time, permission, owner, group, symlink, path);
   }
 
+  /**
+   * @return the container/prefix of the segments of a Dynamic Large
+   * Object, or null if the object is not one
+   */
+  public String getObjectManifest() {
+    return objectManifest;
+  }
+
+  /**
+   * @param objectManifest container/prefix of the segments of a Dynamic
+   * Large Object
+   */
+  public void setObjectManifest(String objectManifest) {
+    this.objectManifest = objectManifest;
+  }
+
+  /**
+   * @return true if the object is a Static Large Object
+   */
+  public boolean isStaticLargeObject() {
+    return staticLargeObject;
+  }
+
+  /**
+   * @param staticLargeObject is the object a Static Large Object?
+   */
+  public void setStaticLargeObject(boolean staticLargeObject) {
+    this.staticLargeObject = staticLargeObject;
+  }
+
+  /**
+   * @return the ETag of the object, or null if it is not known
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * @param etag ETag of the object
+   */
+  public void setEtag(String etag) {
+    this.etag = etag;
+  }
+
+  /**
+   * @return true if the directory flag is authoritative: a 0 byte
+   * file is then not taken for a directory
+   */
+  public boolean isTypeExplicit() {
+    return typeExplicit;
+  }
+
+  /**
+   * @param typeExplicit is the directory flag authoritative? This is so
+   * when directories have no marker objects
+   */
+  public void setTypeExplicit(boolean typeExplicit) {
+    this.typeExplicit = typeExplicit;
+  }
+
+  /**
+   * Is the object a large object whose data is held in segments?
+   * @return true for a Dynamic or Static Large Object
+   */
+  public boolean isManifest() {
+    return objectManifest != null || staticLargeObject;
+  }
+
   /**
    * Declare that the path represents a directory, which in the
-   * SwiftNativeFileSystem means "is a directory or a 0 byte file"
-   * @return true if the status is considered to be a file
+   * SwiftNativeFileSystem means "is a directory or a 0 byte file",
+   * unless the type is explicit
+   * @return true if the status is considered to be a directory
    */
   @Override
   public boolean isDir() {
-    return super.isDir() || getLen() == 0;
+    return super.isDir() || (!typeExplicit && getLen() == 0);
   }
 
   /**
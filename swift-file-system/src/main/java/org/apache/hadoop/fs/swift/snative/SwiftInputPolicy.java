@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.hadoop.fs.swift.exceptions.SwiftConfigurationException;
+import org.apache.hadoop.fs.swift.http.SwiftProtocolConstants;
+
+/**
+ * How an input stream sizes the ranges it requests.
+ */
+public enum SwiftInputPolicy {
+
+  /**
+   * Request the full read-ahead range: suited to reading files from
+   * start to end.
+   */
+  sequential,
+
+  /**
+   * Request ranges sized to each read: suited to columnar and indexed
+   * files, which are read in small pieces at scattered positions.
+   */
+  random,
+
+  /**
+   * Start sequential, and switch between the two policies as the
+   * pattern of seeks changes.
+   */
+  adaptive;
+
+  /**
+   * Parse a policy name, ignoring case
+   * @param name policy name
+   * @return the policy
+   * @throws SwiftConfigurationException if the name is unknown
+   */
+  public static SwiftInputPolicy fromString(String name)
+    throws SwiftConfigurationException {
+    try {
+      return valueOf(name.trim().toLowerCase());
+    } catch (IllegalArgumentException e) {
+      throw new SwiftConfigurationException(
+        "Unknown value of " + SwiftProtocolConstants.SWIFT_INPUT_POLICY
+        + ": " + name);
+    }
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+/**
+ * Iterator over the entries of a directory listing, fetching the listing
+ * from the store one page at a time. Each page is requested with the
+ * name of the last entry of the previous page as its <code>marker</code>,
+ * so only one page is ever held in memory, however many objects
+ * there are under the path.
+ * <p/>
+ * The directory itself, and entries which appear twice -as an object
+ * <code>dir</code> and a pseudo-directory <code>dir/</code>- are only
+ * returned once. As the listing is sorted, a name can only be duplicated
+ * by an entry close behind it; names are forgotten once the listing has
+ * moved past them.
+ */
+class SwiftListingIterator implements RemoteIterator<FileStatus> {
+  private static final Log LOG = LogFactory.getLog(SwiftListingIterator.class);
+
+  private final SwiftNativeFileSystemStore store;
+  private final SwiftObjectPath path;
+  private final boolean recursive;
+  private final boolean nameOnly;
+  private final int pageSize;
+
+  /**
+   * Source of the pages of a parallel listing, or null to list
+   * sequentially
+   */
+  private final SwiftParallelLister lister;
+
+  /**
+   * Names seen which could still be repeated by a later entry
+   */
+  private final TreeSet<String> recentNames = new TreeSet<String>();
+
+  /**
+   * Entries of the current page not yet returned
+   */
+  private Iterator<SwiftObjectFileStatus> page =
+    Collections.<SwiftObjectFileStatus>emptyList().iterator();
+
+  /**
+   * The name of the last entry received; the marker for the next page
+   */
+  private String marker;
+
+  /**
+   * Has the last page been fetched?
+   */
+  private boolean lastPage;
+
+  /**
+   * Number of pages fetched
+   */
+  private int pageCount;
+
+  /**
+   * The next status to return, or null if it is yet to be resolved
+   */
+  private FileStatus next;
+
+  /**
+   * Create an iterator. No request is made until the first call to
+   * {@link #hasNext()}.
+   * @param store store to list
+   * @param path directory to list
+   * @param recursive list everything under the path, not just the
+   * immediate children
+   * @param nameOnly should the status be minimal (name only)
+   */
+  SwiftListingIterator(SwiftNativeFileSystemStore store,
+                       SwiftObjectPath path,
+                       boolean recursive,
+                       boolean nameOnly) {
+    this.store = store;
+    this.path = path;
+    this.recursive = recursive;
+    this.nameOnly = nameOnly;
+    this.pageSize = store.getListingPageSize();
+    this.lister = null;
+    //skip own name
+    isRepeated(path.getObject());
+  }
+
+  /**
+   * Create an iterator over a recursive listing made in parallel,
+   * taking its pages in order.
+   * @param store store to list
+   * @param path directory to list
+   * @param nameOnly should the status be minimal (name only)
+   * @param lister lister of the directory
+   */
+  SwiftListingIterator(SwiftNativeFileSystemStore store,
+                       SwiftObjectPath path,
+                       boolean nameOnly,
+                       SwiftParallelLister lister) {
+    this.store = store;
+    this.path = path;
+    this.recursive = true;
+    this.nameOnly = nameOnly;
+    this.pageSize = store.getListingPageSize();
+    this.lister = lister;
+    //skip own name
+    isRepeated(path.getObject());
+  }
+
+  /**
+   * Probe for another entry, fetching the next page of the listing
+   * if needed.
+   * @return true if there is another entry
+   * @throws IOException on a failure to list the next page
+   * @throws FileNotFoundException if the container does not exist
+   */
+  @Override
+  public boolean hasNext() throws IOException {
+    while (next == null) {
+      if (page.hasNext()) {
+        next = resolve(page.next());
+      } else if (lastPage) {
+        return false;
+      } else {
+        fetchNextPage();
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public FileStatus next() throws IOException {
+    if (!hasNext()) {
+      throw new NoSuchElementException("No more entries in " + path);
+    }
+    FileStatus result = next;
+    next = null;
+    return result;
+  }
+
+  /**
+   * Get the number of listing pages fetched so far
+   * @return the page count
+   */
+  public int getPageCount() {
+    return pageCount;
+  }
+
+  private void fetchNextPage() throws IOException {
+    if (lister != null) {
+      List<SwiftObjectFileStatus> entries = lister.nextPage();
+      if (entries == null) {
+        lastPage = true;
+      } else {
+        pageCount++;
+        page = entries.iterator();
+      }
+      return;
+    }
+    List<SwiftObjectFileStatus> entries =
+      store.listPage(path, recursive, marker, null, pageSize);
+    pageCount++;
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Listing page " + pageCount + " of " + path
+                + " after " + marker + ": " + entries.size() + " entries");
+    }
+    lastPage = entries.size() < pageSize;
+    if (!entries.isEmpty()) {
+      marker = entries.get(entries.size() - 1).getEntryName();
+    }
+    page = entries.iterator();
+  }
+
+  /**
+   * Convert an entry to a status
+   * @param entry listing entry
+   * @return the status or null if the entry is to be skipped
+   * @throws IOException on a failure to probe the entry
+   */
+  private FileStatus resolve(SwiftObjectFileStatus entry) throws IOException {
+    String pathInSwift = entry.getEntryName();
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("entry: " + entry);
+    }
+    if (!pathInSwift.startsWith("/")) {
+      pathInSwift = "/".concat(pathInSwift);
+    }
+    if (isRepeated(pathInSwift)) {
+      LOG.debug("skipping adding self to path");
+      return null;
+    }
+    Path childPath = new Path(pathInSwift);
+    try {
+      return store.toFileStatus(entry, childPath, nameOnly);
+    } catch (FileNotFoundException e) {
+      //get Object metadata failed
+      LOG.info("Object " + childPath
+               + " was deleted during directory listing");
+      return null;
+    }
+  }
+
+  /**
+   * Check whether a name, or the name without its trailing /, has
+   * already been seen -and remember it if not.
+   * @param name name to check
+   * @return true if the name has been seen before
+   */
+  private boolean isRepeated(String name) {
+    String trimmed = name;
+    if (trimmed.length() > 1 && trimmed.endsWith("/")) {
+      trimmed = trimmed.substring(0, trimmed.length() - 1);
+    }
+    //forget names which sort before this one with their trailing slash;
+    //no later entry can repeat them
+    while (!recentNames.isEmpty()
+           && (recentNames.first() + "/").compareTo(name) < 0) {
+      recentNames.pollFirst();
+    }
+    return !recentNames.add(trimmed);
+  }
+}
@@ -0,0 +1,488 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded in-memory cache of blocks of objects, for the small reads
+ * which are repeated many times -such as those of the footers and indexes
+ * of columnar files.
+ * <p/>
+ * Blocks are keyed by the name and ETag of their object, and aligned to
+ * the block size. A block may hold only the start of its range of the
+ * object, if that is all that was read, or all there is; reads beyond it
+ * miss.
+ * <p/>
+ * A miss streams the rest of the requested range from the source, and
+ * captures the blocks it passes through. So that one large scan does
+ * not flush the cache, a block is only admitted the second time it is
+ * missed while its key is still in a bounded history of recent misses.
+ * The exception is the trailing bytes of files opened for random
+ * reading: these footers are admitted on their first read, and pinned
+ * -evicted only when nothing else is left to evict.
+ * <p/>
+ * Blocks are held in heap arrays or, if so configured, in direct
+ * buffers outside the heap.
+ */
+class SwiftMemoryCache {
+  private static final Log LOG = LogFactory.getLog(SwiftMemoryCache.class);
+
+  /**
+   * Number of objects whose footers are remembered: {@value}
+   */
+  private static final int MAX_FOOTERS = 4096;
+
+  private final long capacity;
+  private final int blockSize;
+  private final boolean direct;
+
+  /**
+   * Unpinned blocks, least recently used first
+   */
+  private final LinkedHashMap<String, ByteBuffer> blocks =
+    new LinkedHashMap<String, ByteBuffer>(16, 0.75f, true);
+
+  /**
+   * Blocks of footers, least recently used first
+   */
+  private final LinkedHashMap<String, ByteBuffer> pinned =
+    new LinkedHashMap<String, ByteBuffer>(16, 0.75f, true);
+  private long used;
+  private long pinnedUsed;
+
+  /**
+   * Keys of blocks missed recently but not admitted
+   */
+  private final LinkedHashMap<String, Boolean> history;
+
+  /**
+   * Start of the footer of objects, by object key
+   */
+  private final LinkedHashMap<String, Long> footers =
+    new LinkedHashMap<String, Long>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+        return size() > MAX_FOOTERS;
+      }
+    };
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong admissionCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * Create a cache
+   * @param capacity total size in bytes of the blocks to keep
+   * @param blockSize size of a block
+   * @param direct should blocks be held in direct buffers?
+   */
+  SwiftMemoryCache(long capacity, int blockSize, boolean direct) {
+    this.capacity = capacity;
+    this.blockSize = blockSize;
+    this.direct = direct;
+    //remember twice as many misses as there are blocks to hold
+    final long historySize = Math.max(1024, 2 * (capacity / blockSize));
+    history = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > historySize;
+      }
+    };
+  }
+
+  private static String objectKey(String object, String etag) {
+    return object + '\u0000' + etag;
+  }
+
+  private static String blockKey(String objectKey, long block) {
+    return objectKey + '#' + block;
+  }
+
+  /**
+   * Pin the trailing bytes of an object once they are read
+   * @param object name of the object, unique across stores
+   * @param etag ETag of the object
+   * @param footerStart offset of the first byte to pin
+   */
+  synchronized void pinFooter(String object, String etag, long footerStart) {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Pinning " + object + " from " + footerStart);
+    }
+    footers.put(objectKey(object, etag), footerStart);
+  }
+
+  /**
+   * Open a range of an object, reading from the cache while the blocks
+   * are cached, and from the source after the first miss.
+   * @param object name of the object, unique across stores
+   * @param etag ETag of the object
+   * @param start starting point
+   * @param length no. of bytes; the stream ends earlier if the object does
+   * @param source source of the data which is not cached
+   * @return a stream which must be closed
+   */
+  InputStream open(String object,
+                   String etag,
+                   long start,
+                   long length,
+                   SwiftRangeSource source) {
+    return new CachedRangeStream(objectKey(object, etag), start,
+                                 start + length, source);
+  }
+
+  int getBlockSize() {
+    return blockSize;
+  }
+
+  long getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Get the total size of the cached blocks, pinned or not
+   * @return the bytes used
+   */
+  synchronized long getUsed() {
+    return used + pinnedUsed;
+  }
+
+  /**
+   * Get the total size of the cached blocks of footers
+   * @return the bytes used by pinned blocks
+   */
+  synchronized long getPinnedUsed() {
+    return pinnedUsed;
+  }
+
+  /**
+   * Get the number of reads served from the cache
+   * @return the hit count
+   */
+  long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Get the number of reads which went to the source
+   * @return the miss count
+   */
+  long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Get the number of blocks admitted to the cache
+   * @return the admission count
+   */
+  long getAdmissionCount() {
+    return admissionCount.get();
+  }
+
+  /**
+   * Get the number of blocks evicted
+   * @return the eviction count
+   */
+  long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "SwiftMemoryCache: " + (blocks.size() + pinned.size())
+           + " blocks, " + (used + pinnedUsed) + " of " + capacity
+           + " bytes (" + pinnedUsed + " pinned); hits=" + hitCount
+           + " misses=" + missCount + " admissions=" + admissionCount
+           + " evictions=" + evictionCount;
+  }
+
+  private synchronized ByteBuffer get(String key) {
+    ByteBuffer data = pinned.get(key);
+    return data != null ? data : blocks.get(key);
+  }
+
+  /**
+   * Decide whether a block which was missed is to be admitted once read
+   * @param objectKey key of the object
+   * @param block index of the block
+   * @return true if the block is to be captured
+   */
+  private synchronized boolean admit(String objectKey, long block) {
+    String key = blockKey(objectKey, block);
+    if (isFooter(objectKey, block) || history.remove(key) != null) {
+      return true;
+    }
+    history.put(key, Boolean.TRUE);
+    return false;
+  }
+
+  private synchronized boolean isFooter(String objectKey, long block) {
+    Long footerStart = footers.get(objectKey);
+    return footerStart != null && (block + 1) * blockSize > footerStart;
+  }
+
+  /**
+   * Add a block, unless as much of it is already cached
+   * @param objectKey key of the object
+   * @param block index of the block
+   * @param data the start of the block
+   * @param length number of bytes of the block read
+   */
+  private void put(String objectKey, long block, byte[] data, int length) {
+    ByteBuffer buffer;
+    if (direct) {
+      buffer = ByteBuffer.allocateDirect(length);
+      buffer.put(data, 0, length);
+      buffer.flip();
+    } else {
+      buffer = ByteBuffer.wrap(length == data.length
+                               ? data
+                               : Arrays.copyOf(data, length));
+    }
+    String key = blockKey(objectKey, block);
+    synchronized (this) {
+      boolean pin = isFooter(objectKey, block);
+      ByteBuffer previous = get(key);
+      if (previous != null && previous.limit() >= length) {
+        return;
+      }
+      remove(key);
+      if (length > capacity) {
+        return;
+      }
+      if (pin) {
+        pinned.put(key, buffer);
+        pinnedUsed += length;
+      } else {
+        blocks.put(key, buffer);
+        used += length;
+      }
+      admissionCount.incrementAndGet();
+      evict(blocks, false);
+      evict(pinned, true);
+    }
+  }
+
+  private void remove(String key) {
+    ByteBuffer previous = pinned.remove(key);
+    if (previous != null) {
+      pinnedUsed -= previous.limit();
+    }
+    previous = blocks.remove(key);
+    if (previous != null) {
+      used -= previous.limit();
+    }
+  }
+
+  /**
+   * Evict blocks from a map until the cache is within its capacity
+   * @param map map to evict from
+   * @param isPinned does the map hold the pinned blocks?
+   */
+  private void evict(LinkedHashMap<String, ByteBuffer> map,
+                     boolean isPinned) {
+    Iterator<ByteBuffer> eldest = map.values().iterator();
+    while (used + pinnedUsed > capacity && eldest.hasNext()) {
+      long size = eldest.next().limit();
+      eldest.remove();
+      if (isPinned) {
+        pinnedUsed -= size;
+      } else {
+        used -= size;
+      }
+      evictionCount.incrementAndGet();
+    }
+  }
+
+  /**
+   * Stream of a range of an object which reads cached blocks until it
+   * reaches one which is not cached, then streams the rest of the range
+   * from the source, capturing the blocks which are to be admitted.
+   */
+  private final class CachedRangeStream extends InputStream {
+    private final String key;
+    private final long end;
+    private final SwiftRangeSource source;
+    private long pos;
+    private boolean closed;
+
+    //the stream from the source after a miss, and its position
+    private InputStream in;
+    private long inPos;
+    //position at which the next block of the source stream starts
+    private long nextBlockStart;
+
+    //the block being captured
+    private byte[] capture;
+    private long captureBlock;
+    private int captured;
+
+    private CachedRangeStream(String key, long start, long end,
+                              SwiftRangeSource source) {
+      this.key = key;
+      this.pos = start;
+      this.end = end;
+      this.source = source;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      int read = read(b, 0, 1);
+      return read < 0 ? -1 : (b[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      if (len == 0) {
+        return 0;
+      }
+      if (pos >= end) {
+        return -1;
+      }
+      int toRead = (int) Math.min(len, end - pos);
+      if (in == null) {
+        long block = pos / blockSize;
+        long blockStart = block * blockSize;
+        ByteBuffer data = get(blockKey(key, block));
+        if (data != null && pos < blockStart + data.limit()) {
+          hitCount.incrementAndGet();
+          int read = (int) Math.min(toRead, blockStart + data.limit() - pos);
+          ByteBuffer view = data.duplicate();
+          view.position((int) (pos - blockStart));
+          view.get(b, off, read);
+          pos += read;
+          return read;
+        }
+        missCount.incrementAndGet();
+        openSource(block, blockStart);
+      }
+      int read = in.read(b, off, toRead);
+      if (read < 0) {
+        //the object ended before the range
+        finishCapture();
+        return -1;
+      }
+      capture(b, off, read);
+      pos += read;
+      if (pos >= end) {
+        finishCapture();
+      }
+      return read;
+    }
+
+    /**
+     * Open the source after a miss. If the block is to be admitted and
+     * the position is not at its start, the request starts there instead,
+     * and the bytes before the position are captured.
+     * @param block block of the position
+     * @param blockStart start of the block
+     * @throws IOException on a failure to read the source
+     */
+    private void openSource(long block, long blockStart) throws IOException {
+      long from = pos;
+      if (pos == blockStart) {
+        nextBlockStart = blockStart;
+      } else {
+        nextBlockStart = blockStart + blockSize;
+        if (admit(key, block)) {
+          from = blockStart;
+          startCapture(block);
+        }
+      }
+      in = source.open(from, end - from);
+      inPos = from;
+      byte[] skipped = new byte[(int) Math.min(pos - from, 64 * 1024)];
+      while (inPos < pos) {
+        int read = in.read(skipped, 0,
+                           (int) Math.min(skipped.length, pos - inPos));
+        if (read < 0) {
+          //nothing left at the position
+          break;
+        }
+        capture(skipped, 0, read);
+      }
+      //whatever follows comes from the source
+      inPos = Math.max(inPos, pos);
+    }
+
+    /**
+     * Capture bytes read from the source, deciding at the start of each
+     * block whether to admit it
+     */
+    private void capture(byte[] b, int off, int len) {
+      while (len > 0) {
+        if (inPos == nextBlockStart) {
+          finishCapture();
+          long block = inPos / blockSize;
+          if (get(blockKey(key, block)) == null && admit(key, block)) {
+            startCapture(block);
+          }
+          nextBlockStart += blockSize;
+        }
+        int chunk = (int) Math.min(len, nextBlockStart - inPos);
+        if (capture != null) {
+          System.arraycopy(b, off, capture, captured, chunk);
+          captured += chunk;
+        }
+        inPos += chunk;
+        off += chunk;
+        len -= chunk;
+      }
+    }
+
+    private void startCapture(long block) {
+      capture = new byte[blockSize];
+      captureBlock = block;
+      captured = 0;
+    }
+
+    private void finishCapture() {
+      if (capture != null && captured > 0) {
+        put(key, captureBlock, capture, captured);
+      }
+      capture = null;
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      finishCapture();
+      IOUtils.closeStream(in);
+      in = null;
+    }
+  }
+}
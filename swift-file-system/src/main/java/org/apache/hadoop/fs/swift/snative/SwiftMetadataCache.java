@@ -0,0 +1,425 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of the metadata the store fetches: the statuses of
+ * objects, the knowledge that objects do not exist, and pages of
+ * listings. Entries expire after a time to live, so changes made by
+ * other clients are seen within that time; changes made through this
+ * store invalidate the entries they affect at once.
+ * <p/>
+ * A change to an object invalidates its own status, the statuses of its
+ * ancestors -which may be directories that exist only by having
+ * children- and the pages of every listing under which it appears.
+ * Pages are indexed by the directory they list, so finding those
+ * listings takes a lookup per ancestor.
+ * <p/>
+ * A request may be answered before a change and its result put into
+ * the cache after the change has invalidated it. Every invalidation
+ * therefore moves the cache on to a new generation; callers read the
+ * generation before making a request, and a put made with an older
+ * generation is dropped.
+ */
+class SwiftMetadataCache {
+  private static final Log LOG = LogFactory.getLog(SwiftMetadataCache.class);
+
+  private final long ttl;
+  private final long negativeTtl;
+
+  /**
+   * Statuses by object key; null statuses are cached absences
+   */
+  private final LinkedHashMap<String, Entry<FileStatus>> statuses;
+
+  /**
+   * Listing pages by listing key
+   */
+  private final LinkedHashMap<String, Entry<List<SwiftObjectFileStatus>>> pages;
+
+  /**
+   * Keys of the listing pages, by the directory prefix they list
+   */
+  private final Map<String, Set<String>> pagesByPrefix =
+    new HashMap<String, Set<String>>();
+
+  /**
+   * Number of invalidations made; puts made with an older
+   * generation are dropped
+   */
+  private long generation;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong negativeHitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong invalidationCount = new AtomicLong();
+  private final AtomicLong droppedPutCount = new AtomicLong();
+
+  /**
+   * Create a cache
+   * @param ttl time in milliseconds for which statuses and listings
+   * are cached
+   * @param negativeTtl time in milliseconds for which absences are cached
+   * @param maxEntries number of statuses, and of listing pages, to keep
+   */
+  SwiftMetadataCache(long ttl, long negativeTtl, final int maxEntries) {
+    this.ttl = ttl;
+    this.negativeTtl = negativeTtl;
+    statuses = new LinkedHashMap<String, Entry<FileStatus>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(
+        Map.Entry<String, Entry<FileStatus>> eldest) {
+        return size() > maxEntries;
+      }
+    };
+    pages = new LinkedHashMap<String, Entry<List<SwiftObjectFileStatus>>>(
+      16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(
+        Map.Entry<String, Entry<List<SwiftObjectFileStatus>>> eldest) {
+        if (size() > maxEntries) {
+          unindexPage(eldest.getKey());
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Get the current time; tests may override this
+   * @return the time in milliseconds
+   */
+  long now() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Get the key of an object: the container and object name, without
+   * any trailing slash, so that a directory and its marker share a key
+   */
+  static String keyOf(SwiftObjectPath path) {
+    String key = prefixOf(path);
+    while (key.endsWith("/")) {
+      key = key.substring(0, key.length() - 1);
+    }
+    return key;
+  }
+
+  /**
+   * Get the container and object name of a listing prefix, as
+   * <code>/container/object</code>
+   */
+  private static String prefixOf(SwiftObjectPath path) {
+    String object = path.getObject();
+    if (!object.startsWith("/")) {
+      object = "/" + object;
+    }
+    return "/" + path.getContainer() + object;
+  }
+
+  /**
+   * Get the generation of the cache, to be read before making a request
+   * whose result is to be put into it
+   * @return the generation
+   */
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Is a put made with a generation still valid? Counts those which
+   * are not.
+   */
+  private boolean isCurrent(long putGeneration) {
+    if (putGeneration != generation) {
+      droppedPutCount.incrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Look up the status of an object
+   * @param path path of the object
+   * @return the status, or null if it is not cached
+   * @throws FileNotFoundException if the object is cached as absent
+   */
+  synchronized FileStatus getStatus(SwiftObjectPath path)
+    throws FileNotFoundException {
+    String key = keyOf(path);
+    Entry<FileStatus> entry = statuses.get(key);
+    if (entry == null || entry.expires <= now()) {
+      if (entry != null) {
+        statuses.remove(key);
+      }
+      missCount.incrementAndGet();
+      return null;
+    }
+    if (entry.value == null) {
+      negativeHitCount.incrementAndGet();
+      throw new FileNotFoundException("Not Found " + path);
+    }
+    hitCount.incrementAndGet();
+    return entry.value;
+  }
+
+  /**
+   * Cache the status of an object
+   * @param path path of the object
+   * @param status its status
+   * @param putGeneration generation read before the status was requested
+   */
+  synchronized void putStatus(SwiftObjectPath path,
+                              FileStatus status,
+                              long putGeneration) {
+    if (ttl > 0 && isCurrent(putGeneration)) {
+      statuses.put(keyOf(path),
+                   new Entry<FileStatus>(status, now() + ttl));
+    }
+  }
+
+  /**
+   * Cache the absence of an object
+   * @param path path of the object
+   * @param putGeneration generation read before the object was requested
+   */
+  synchronized void putAbsent(SwiftObjectPath path, long putGeneration) {
+    if (isCurrent(putGeneration)) {
+      putAbsent(path);
+    }
+  }
+
+  private void putAbsent(SwiftObjectPath path) {
+    if (negativeTtl > 0) {
+      statuses.put(keyOf(path),
+                   new Entry<FileStatus>(null, now() + negativeTtl));
+    }
+  }
+
+  private static String pageKey(SwiftObjectPath prefix,
+                                boolean recursive,
+                                String marker,
+                                String endMarker,
+                                int limit) {
+    return prefixOf(prefix) + '\u0000' + recursive + '\u0000' + marker
+           + '\u0000' + endMarker + '\u0000' + limit;
+  }
+
+  /**
+   * Look up a page of a listing
+   * @param prefix prefix listed, ending with a slash
+   * @param recursive is the listing recursive?
+   * @param marker marker of the page; may be null
+   * @param endMarker end marker of the page; may be null
+   * @param limit maximum number of entries
+   * @return a copy of the page, or null if it is not cached
+   */
+  synchronized List<SwiftObjectFileStatus> getPage(SwiftObjectPath prefix,
+                                                   boolean recursive,
+                                                   String marker,
+                                                   String endMarker,
+                                                   int limit) {
+    String key = pageKey(prefix, recursive, marker, endMarker, limit);
+    Entry<List<SwiftObjectFileStatus>> entry = pages.get(key);
+    if (entry == null || entry.expires <= now()) {
+      if (entry != null) {
+        pages.remove(key);
+        unindexPage(key);
+      }
+      missCount.incrementAndGet();
+      return null;
+    }
+    hitCount.incrementAndGet();
+    return new ArrayList<SwiftObjectFileStatus>(entry.value);
+  }
+
+  /**
+   * Cache a page of a listing
+   * @param prefix prefix listed, ending with a slash
+   * @param recursive is the listing recursive?
+   * @param marker marker of the page; may be null
+   * @param endMarker end marker of the page; may be null
+   * @param limit maximum number of entries
+   * @param page the entries
+   * @param putGeneration generation read before the page was requested
+   */
+  synchronized void putPage(SwiftObjectPath prefix,
+                            boolean recursive,
+                            String marker,
+                            String endMarker,
+                            int limit,
+                            List<SwiftObjectFileStatus> page,
+                            long putGeneration) {
+    if (ttl > 0 && isCurrent(putGeneration)) {
+      String key = pageKey(prefix, recursive, marker, endMarker, limit);
+      pages.put(key, new Entry<List<SwiftObjectFileStatus>>(
+                  new ArrayList<SwiftObjectFileStatus>(page), now() + ttl));
+      String listed = prefixOf(prefix);
+      Set<String> keys = pagesByPrefix.get(listed);
+      if (keys == null) {
+        keys = new HashSet<String>();
+        pagesByPrefix.put(listed, keys);
+      }
+      keys.add(key);
+    }
+  }
+
+  /**
+   * Remove a page from the index by prefix
+   * @param key key of the page
+   */
+  private void unindexPage(String key) {
+    String listed = key.substring(0, key.indexOf('\u0000'));
+    Set<String> keys = pagesByPrefix.get(listed);
+    if (keys != null) {
+      keys.remove(key);
+      if (keys.isEmpty()) {
+        pagesByPrefix.remove(listed);
+      }
+    }
+  }
+
+  /**
+   * Remove the pages of the listings of a prefix
+   * @param listed prefix listed
+   */
+  private void removePages(String listed) {
+    Set<String> keys = pagesByPrefix.remove(listed);
+    if (keys != null) {
+      for (String key : keys) {
+        pages.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Invalidate everything a change to an object affects: its status,
+   * those of its ancestors and the listings it appears in
+   * @param path path of the object which was changed
+   */
+  synchronized void invalidate(SwiftObjectPath path) {
+    invalidationCount.incrementAndGet();
+    generation++;
+    String key = keyOf(path);
+    //the listings of the object as a directory
+    removePages(key + "/");
+    String ancestor = key;
+    while (true) {
+      statuses.remove(ancestor);
+      int slash = ancestor.lastIndexOf('/');
+      if (slash <= 0) {
+        break;
+      }
+      ancestor = ancestor.substring(0, slash);
+      //listings of ancestors, recursive or not, may include it
+      removePages(ancestor + "/");
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Invalidated " + key);
+    }
+  }
+
+  /**
+   * Record that an object has been deleted: invalidate what the change
+   * affects, then cache its absence
+   * @param path path of the object which was deleted
+   */
+  synchronized void deleted(SwiftObjectPath path) {
+    invalidate(path);
+    putAbsent(path);
+  }
+
+  /**
+   * Get the number of lookups answered with a status or page
+   * @return the hit count
+   */
+  long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Get the number of lookups answered with a cached absence
+   * @return the negative hit count
+   */
+  long getNegativeHitCount() {
+    return negativeHitCount.get();
+  }
+
+  /**
+   * Get the number of lookups which were not answered
+   * @return the miss count
+   */
+  long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Get the number of invalidations made by changes through the store
+   * @return the invalidation count
+   */
+  long getInvalidationCount() {
+    return invalidationCount.get();
+  }
+
+  /**
+   * Get the number of puts dropped as an invalidation came after
+   * their request was made
+   * @return the dropped put count
+   */
+  long getDroppedPutCount() {
+    return droppedPutCount.get();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "SwiftMetadataCache: " + statuses.size() + " statuses, "
+           + pages.size() + " listing pages; hits=" + hitCount
+           + " negative hits=" + negativeHitCount + " misses=" + missCount
+           + " invalidations=" + invalidationCount
+           + " dropped puts=" + droppedPutCount;
+  }
+
+  /**
+   * A cached value and its expiry time
+   */
+  private static final class Entry<T> {
+    private final T value;
+    private final long expires;
+
+    private Entry(T value, long expires) {
+      this.value = value;
+      this.expires = expires;
+    }
+  }
+}
@@ -24,10 +24,10 @@ import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.*;
 import org.apache.hadoop.fs.permission.FsPermission;
-import org.apache.hadoop.fs.swift.exceptions.SwiftException;
 import org.apache.hadoop.fs.swift.exceptions.SwiftNotDirectoryException;
 import org.apache.hadoop.fs.swift.exceptions.SwiftOperationFailedException;
 import org.apache.hadoop.fs.swift.exceptions.SwiftUnsupportedFeatureException;
+import org.apache.hadoop.fs.swift.http.SwiftProtocolConstants;
 import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
 import org.apache.hadoop.fs.swift.util.SwiftUtils;
 import org.apache.hadoop.util.Progressable;
@@ -36,7 +36,15 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Swift file system implementation. Extends Hadoop FileSystem
@@ -47,6 +55,16 @@ public class SwiftNativeFileSystem extends FileSystem {
   private static final Log LOG =
           LogFactory.getLog(SwiftNativeFileSystem.class);
 
+  /**
+   * Number of directories remembered as known to exist
+   */
+  private static final int KNOWN_DIRECTORY_LIMIT = 10000;
+
+  /**
+   * Number of threads creating the parent directories of new files
+   */
+  private static final int DIRECTORY_THREADS = 4;
+
   /**
    * path to user work directory for storing temporary files
    */
@@ -62,6 +80,30 @@ public class SwiftNativeFileSystem extends FileSystem {
    */
   private SwiftNativeFileSystemStore store;
 
+  /**
+   * Paths of the directories which this filesystem has created, or
+   * found to exist, and not since deleted or renamed; the eldest are
+   * forgotten first
+   */
+  private final Map<String, Boolean> knownDirectories =
+    new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > KNOWN_DIRECTORY_LIMIT;
+      }
+    };
+
+  /**
+   * Creations of parent directories under way, by path
+   */
+  private final Map<String, Future<?>> pendingDirectories =
+    new HashMap<String, Future<?>>();
+
+  /**
+   * Pool creating the parent directories of new files; created on demand
+   */
+  private ExecutorService directoryPool;
+
   /**
    * Default constructor for Hadoop
    */
@@ -112,6 +154,28 @@ public class SwiftNativeFileSystem extends FileSystem {
     LOG.debug("SwiftFileSystem initialized");
   }
 
+  /**
+   * Close the filesystem, then the store -and with it
+   * the pool of HTTP connections to the Swift service.
+   * @throws IOException on a problem
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      synchronized (this) {
+        if (directoryPool != null) {
+          //let creations which streams are waiting for finish
+          directoryPool.shutdown();
+        }
+      }
+      if (store != null) {
+        store.close();
+      }
+    }
+  }
+
   /**
    * @return path to Swift
    */
@@ -228,58 +292,99 @@ public class SwiftNativeFileSystem extends FileSystem {
 //    };
 //  }
 
+  /**
+   * Create a directory and any missing ancestors. The path is probed
+   * first, then its ancestors in turn until one is found to exist; the
+   * markers of the missing ones are then written concurrently. Directories
+   * found or created are remembered, so later calls under them make
+   * no probes at all.
+   *
+   * @param path path of the directory
+   * @param permission Currently ignored.
+   * @return true
+   * @throws SwiftNotDirectoryException if there is a file at the path or
+   * at any ancestor probed
+   * @throws IOException IO problems
+   */
   @Override
   public boolean mkdirs(Path path, FsPermission permission) throws IOException {
     if (LOG.isDebugEnabled()) {
       LOG.debug("SwiftFileSystem.mkdirs: " + path);
     }
-    Path absolutePath = makeAbsolute(path);
-    //build a list of paths to create, with shortest one at the front
-    List<Path> paths = new ArrayList<Path>();
-    while (absolutePath.getParent() != null) {	//(!absolutePath.isRoot()) {
-      paths.add(0, absolutePath);
-      absolutePath = absolutePath.getParent();
+    //probe from the path upwards until an existing directory is found;
+    //everything below it is missing
+    List<Path> missing = new ArrayList<Path>();
+    Path dir = makeAbsolute(path);
+    while (dir.getParent() != null && !isKnownDirectory(dir)) {
+      FileStatus fileStatus;
+      try {
+        fileStatus = getFileStatus(dir);
+      } catch (FileNotFoundException e) {
+        missing.add(dir);
+        dir = dir.getParent();
+        continue;
+      }
+      if (!SwiftUtils.isDirectory(fileStatus)) {
+        throw new SwiftNotDirectoryException(dir,
+                String.format(": can't mkdir since it is not a directory: %s",
+                        fileStatus));
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("skipping mkdir(" + dir + ") as it exists already");
+      }
+      knownDirectory(dir);
+      break;
     }
-
-    boolean result = true;
-    for (Path p : paths) {
-      if (p.getParent() != null) {
-        result &= mkdir(p);
+    if (!missing.isEmpty()) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Making dirs " + missing + " in Swift");
+      }
+      store.createDirectories(missing);
+      for (Path created : missing) {
+        knownDirectory(created);
       }
     }
-    return result;
+    return true;
+  }
+
+  private static String directoryKey(Path path) {
+    return path.toUri().getPath();
   }
 
   /**
-   * internal implementation of directory creation
-   *
-   * @param path path to file
-   * @return boolean file is created
-   * @throws IOException if specified path is file instead of directory
+   * Is a directory known to exist, so that mkdirs need not probe it?
+   * @param path absolute path of the directory
+   * @return true if it has been created or found by this filesystem
    */
-  private boolean mkdir(Path path) throws IOException {
-    Path absolutePath = makeAbsolute(path);
-    
-    FileStatus fileStatus;
-    try {
-      fileStatus = getFileStatus(absolutePath);
-      if (!SwiftUtils.isDirectory(fileStatus)) {
-        throw new SwiftNotDirectoryException(path,
-                String.format(": can't mkdir since it is not a directory: %s",
-                        fileStatus));
-      } else {
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("skipping mkdir(" + path + ") as it exists already");
+  private boolean isKnownDirectory(Path path) {
+    synchronized (knownDirectories) {
+      return knownDirectories.containsKey(directoryKey(path));
+    }
+  }
+
+  private void knownDirectory(Path path) {
+    synchronized (knownDirectories) {
+      knownDirectories.put(directoryKey(path), Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Forget the directories at and under a path which is being deleted
+   * or renamed
+   * @param path path
+   */
+  private void forgetDirectories(Path path) {
+    String key = directoryKey(makeAbsolute(path));
+    String prefix = key.endsWith("/") ? key : key + "/";
+    synchronized (knownDirectories) {
+      for (Iterator<String> it = knownDirectories.keySet().iterator();
+           it.hasNext(); ) {
+        String dir = it.next();
+        if (dir.equals(key) || dir.startsWith(prefix)) {
+          it.remove();
         }
       }
-    } catch (FileNotFoundException e) {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Making dir '" + path + "' in Swift");
-      }
-      //file is not found: it must be created
-      store.createDirectory(absolutePath);
     }
-    return true;
   }
 
   /**
@@ -317,45 +422,124 @@ public class SwiftNativeFileSystem extends FileSystem {
           throws IOException {
     LOG.debug("SwiftFileSystem.create");
 
-    FileStatus fileStatus = null;
-    try {
-      fileStatus = getFileStatus(makeAbsolute(file));
-    } catch (FileNotFoundException e) {
-      //nothing to do
-    }
-    if (fileStatus != null && !SwiftUtils.isDirectory(fileStatus)) {
-      if (overwrite) {
-        delete(file, true);
-      } else {
-        throw new SwiftException("File already exists: " + file);
+    //the PUT of the file replaces any existing object, or fails if it
+    //must not, and the parent directories are created while the data
+    //is being written; only a file which must not be overwritten is
+    //checked for here, unless that check too is deferred
+    if (!overwrite && (getConf() == null || !getConf().getBoolean(
+      SwiftProtocolConstants.SWIFT_CREATE_DEFERRED_CHECKS, false))) {
+      FileStatus fileStatus = null;
+      try {
+        fileStatus = getFileStatus(makeAbsolute(file));
+      } catch (FileNotFoundException e) {
+        //nothing to do
       }
-    } else {
-      Path parent = file.getParent();
-      if (parent != null && parent.getParent() != null) { // !parent.isRoot()) {
-        if (!mkdirs(parent)) {
-          throw new SwiftException("Mkdirs failed to create " + parent.toString());
-        }
+      if (fileStatus != null && !SwiftUtils.isDirectory(fileStatus)) {
+        throw new FileAlreadyExistsException("File already exists: " + file);
       }
     }
+    Future<?> parentDirectories = null;
+    Path parent = makeAbsolute(file).getParent();
+    if (parent != null && parent.getParent() != null) { // !parent.isRoot()) {
+      parentDirectories = mkdirsInBackground(parent);
+    }
 
     SwiftNativeOutputStream out = new SwiftNativeOutputStream(getConf(),
             store,
             file.toUri()
-                    .toString());
+                    .toString(),
+            overwrite,
+            parentDirectories);
     return new FSDataOutputStream(out, statistics);
   }
 
+  /**
+   * Create a directory and its ancestors in the background. A creation
+   * of the same directory which is still under way is shared.
+   *
+   * @param path path of the directory
+   * @return the creation, or null if the directory is known to exist
+   */
+  private Future<?> mkdirsInBackground(final Path path) {
+    if (isKnownDirectory(path)) {
+      return null;
+    }
+    final String key = directoryKey(path);
+    synchronized (pendingDirectories) {
+      Future<?> pending = pendingDirectories.get(key);
+      if (pending != null && !pending.isDone()) {
+        return pending;
+      }
+      pending = getDirectoryPool().submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          try {
+            mkdirs(path);
+          } finally {
+            synchronized (pendingDirectories) {
+              pendingDirectories.remove(key);
+            }
+          }
+          return null;
+        }
+      });
+      pendingDirectories.put(key, pending);
+      return pending;
+    }
+  }
+
+  private synchronized ExecutorService getDirectoryPool() {
+    if (directoryPool == null) {
+      directoryPool = Executors.newFixedThreadPool(DIRECTORY_THREADS,
+        SwiftUtils.newDaemonThreadFactory("swift-mkdirs"));
+    }
+    return directoryPool;
+  }
+
   /**
    * Opens an FSDataInputStream at the indicated Path.
    *
    * @param path       the file name to open
    * @param bufferSize the size of the buffer to be used.
+   * @throws FileNotFoundException if there is no object at the path
    */
   @Override
   public FSDataInputStream open(Path path, int bufferSize) throws IOException {
+    return open(path, bufferSize, store.getInputPolicy());
+  }
+
+  /**
+   * Opens an FSDataInputStream at the indicated Path, with an input
+   * policy other than the configured one.
+   *
+   * @param path       the file name to open
+   * @param bufferSize the size of the buffer to be used.
+   * @param policy     input policy of the stream
+   * @throws FileNotFoundException if there is no object at the path
+   */
+  public FSDataInputStream open(Path path, int bufferSize,
+                                SwiftInputPolicy policy) throws IOException {
+    //the length is needed to tell the end of a read-ahead range
+    //from the end of the object
+    FileStatus status = store.getObjectMetadata(path);
+    //large objects are read from their segments where possible
+    SwiftSegmentedObject segments = store.getSegments(path, status);
+    //the ETag of a manifest is not that of its data
+    String etag = null;
+    if (status instanceof SwiftFileStatus
+        && !((SwiftFileStatus) status).isManifest()) {
+      etag = ((SwiftFileStatus) status).getEtag();
+    }
+    if (policy == SwiftInputPolicy.random) {
+      //footers and indexes are read again and again
+      store.pinFooter(path, segments, etag, status.getLen());
+    }
     return new FSDataInputStream(
-            new BufferedFSInputStream(
-                    new SwiftNativeInputStream(store, statistics, path), bufferSize));
+            new SwiftBufferedInputStream(
+                    new SwiftNativeInputStream(store, statistics, path,
+                                               status.getLen(), policy,
+                                               segments, etag),
+                    bufferSize));
   }
 
   private static String pathToKey(Path path) {
@@ -386,6 +570,7 @@ public class SwiftNativeFileSystem extends FileSystem {
   @Override
   public boolean rename(Path src, Path dst) throws IOException {
 
+    forgetDirectories(src);
     try {
       store.rename(makeAbsolute(src), makeAbsolute(dst));
       //success
@@ -566,6 +751,7 @@ public class SwiftNativeFileSystem extends FileSystem {
    * @throws IOException IO problems
    */
   public boolean delete(Path path, boolean recursive) throws IOException {
+    forgetDirectories(path);
     try {
       return innerDelete(path, recursive);
     } catch (FileNotFoundException e) {
@@ -626,18 +812,20 @@ public class SwiftNativeFileSystem extends FileSystem {
         LOG.debug("Deleting directory '" + path + "'");
       }
 
-      //get all entries
-      List<FileStatus> children = store.listDirectory(target, true, true);
+      //iterate over all entries; the listing is paged, so this works
+      //however many children there are
+      RemoteIterator<FileStatus> children =
+        store.listDirectoryIterator(target, true, true);
 
       //look to see if there are now any children
-      if (!children.isEmpty() && !recursive) {
+      if (children.hasNext() && !recursive) {
         //if there are children, unless this is a recursive operation, fail immediately
         throw new SwiftOperationFailedException("Directory " + path + " is not empty.");
       }
 
       //delete the children
-      for (FileStatus child : children) {
-        Path childPath = child.getPath();
+      while (children.hasNext()) {
+        Path childPath = children.next().getPath();
         try {
           store.deleteObject(childPath);
         } catch (FileNotFoundException e) {
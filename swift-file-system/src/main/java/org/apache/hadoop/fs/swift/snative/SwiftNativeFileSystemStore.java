@@ -18,25 +18,30 @@
 package org.apache.hadoop.fs.swift.snative;
 
 import org.apache.commons.httpclient.Header;
-import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.swift.buffer.OutputBufferFactory;
 import org.apache.hadoop.fs.swift.exceptions.SwiftConfigurationException;
 import org.apache.hadoop.fs.swift.exceptions.SwiftException;
-import org.apache.hadoop.fs.swift.exceptions.SwiftInvalidResponseException;
+import org.apache.hadoop.fs.swift.exceptions.SwiftObjectChangedException;
 import org.apache.hadoop.fs.swift.exceptions.SwiftOperationFailedException;
 import org.apache.hadoop.fs.swift.http.SwiftProtocolConstants;
 import org.apache.hadoop.fs.swift.http.SwiftRestClient;
+import org.apache.hadoop.fs.swift.util.JSONUtil;
 import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
 import org.apache.hadoop.fs.swift.util.SwiftUtils;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.text.ParseException;
@@ -44,10 +49,15 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -58,11 +68,152 @@ import java.util.regex.Pattern;
 public class SwiftNativeFileSystemStore {
   private static final Pattern URI_PATTERN = Pattern.compile("\"\\S+?\"");
   private static final String PATTERN = "EEE, d MMM yyyy hh:mm:ss zzz";
+  private static final String LISTING_DATE_PATTERN = "yyyy-MM-dd'T'HH:mm:ss";
   private static final Log LOG =
           LogFactory.getLog(SwiftNativeFileSystemStore.class);
+  private static final int DEFAULT_LISTING_THREADS = 4;
+  private static final int DEFAULT_UPLOAD_THREADS = 4;
+  private static final int MARKER_THREADS = 4;
+  public static final long DEFAULT_UPLOAD_CLOSE_TIMEOUT = 60 * 1000;
+  public static final long DEFAULT_READAHEAD_RANGE = 64 * 1024 * 1024;
+  public static final long DEFAULT_SEEK_FORWARD_SKIP = 256 * 1024;
+  public static final int DEFAULT_PREFETCH_DEPTH = 0;
+  public static final int DEFAULT_PREFETCH_CHUNK_SIZE = 8 * 1024 * 1024;
+  public static final int DEFAULT_READ_THREADS = 8;
+  public static final int DEFAULT_VECTORED_READ_MIN_SEEK = 64 * 1024;
+  public static final int DEFAULT_VECTORED_READ_MAX_MERGED = 8 * 1024 * 1024;
+  public static final int DEFAULT_SEGMENT_READ_DEPTH = 4;
+  public static final int DEFAULT_READ_RETRY_LIMIT = 3;
+  public static final long DEFAULT_READ_RETRY_INTERVAL = 500;
+  public static final long DEFAULT_CACHE_DISK_SIZE = 1024L * 1024 * 1024;
+  public static final int DEFAULT_CACHE_DISK_BLOCK_SIZE = 4 * 1024 * 1024;
+  public static final int DEFAULT_CACHE_MEMORY_BLOCK_SIZE = 64 * 1024;
+  public static final int DEFAULT_CACHE_SHARED_SLOTS = 1024;
+  public static final int DEFAULT_METADATA_CACHE_SIZE = 10000;
+  public static final long DEFAULT_CONSISTENCY_WINDOW = 60 * 1000;
+  public static final int DEFAULT_CONSISTENCY_TRACKED = 10000;
+  public static final int DEFAULT_CACHE_SHARED_BLOCK_SIZE = 4 * 1024 * 1024;
+  public static final int DEFAULT_CACHE_MEMORY_FOOTER_SIZE = 64 * 1024;
+  public static final String MANIFEST_DLO = "dlo";
+  public static final String MANIFEST_SLO = "slo";
+
+  /**
+   * Width to which part numbers are zero-padded, so that the parts of a
+   * Dynamic Large Object sort in order
+   */
+  private static final int PART_NUMBER_WIDTH = 6;
   private URI uri;
   private SwiftRestClient swiftRestClient;
 
+  /**
+   * Pool for parallel recursive listings; null if they are sequential
+   */
+  private ExecutorService listingPool;
+
+  /**
+   * Number of ranges a parallel listing may list ahead of its reader
+   */
+  private int listingRangesAhead;
+
+  /**
+   * Pool for background uploads of file parts
+   */
+  private ExecutorService uploadPool;
+
+  /**
+   * Pool in which directory markers are written, kept apart from the
+   * upload pool so that mkdirs() never queues behind large file parts
+   */
+  private ExecutorService markerPool;
+
+  /**
+   * Time in milliseconds for which close() waits for uploads to finish
+   */
+  private long uploadCloseTimeout = DEFAULT_UPLOAD_CLOSE_TIMEOUT;
+
+  /**
+   * Factory of the buffers of output streams, shared so that they
+   * share one memory limit
+   */
+  private OutputBufferFactory bufferFactory;
+
+  /**
+   * Write Static Large Object manifests for files uploaded in parts,
+   * rather than Dynamic Large Object ones
+   */
+  private boolean staticLargeObjects;
+
+  /**
+   * Size of the range requested by each GET of an input stream
+   */
+  private long readAheadRange = DEFAULT_READAHEAD_RANGE;
+
+  /**
+   * Largest forward seek made by skipping data in an open stream
+   */
+  private long seekForwardSkip = DEFAULT_SEEK_FORWARD_SKIP;
+
+  /**
+   * Input policy of streams opened without one of their own
+   */
+  private SwiftInputPolicy inputPolicy = SwiftInputPolicy.adaptive;
+
+  /**
+   * Pool for the concurrent reads of input streams: prefetched chunks
+   * and vectored reads
+   */
+  private ExecutorService readPool;
+  private int prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+  private int prefetchChunkSize = DEFAULT_PREFETCH_CHUNK_SIZE;
+  private int vectoredReadMinSeek = DEFAULT_VECTORED_READ_MIN_SEEK;
+  private int vectoredReadMaxMerged = DEFAULT_VECTORED_READ_MAX_MERGED;
+
+  /**
+   * Read the segments of large objects directly
+   */
+  private boolean readSegments = true;
+  private int segmentReadDepth = DEFAULT_SEGMENT_READ_DEPTH;
+
+  /**
+   * Retry budget of a failed read, and the wait before the first retry
+   */
+  private int readRetryLimit = DEFAULT_READ_RETRY_LIMIT;
+  private long readRetryInterval = DEFAULT_READ_RETRY_INTERVAL;
+
+  /**
+   * Cache of statuses, absences and listing pages; null if disabled
+   */
+  private SwiftMetadataCache metadataCache;
+
+  /**
+   * Are directories marked with empty objects? If not, a directory
+   * exists only as the prefix of the objects under it
+   */
+  private boolean directoryMarkers = true;
+
+  /**
+   * Objects recently changed through this store, whose reads must ask
+   * for the newest replica; null if every read does
+   */
+  private SwiftRecentChanges recentChanges;
+
+  /**
+   * Local disk cache of blocks of objects; null if disabled
+   */
+  private SwiftDiskCache diskCache;
+
+  /**
+   * Memory-mapped cache of blocks of objects shared by the processes
+   * of the node; null if disabled
+   */
+  private SwiftSharedCache sharedCache;
+
+  /**
+   * In-memory cache of blocks of objects; null if disabled
+   */
+  private SwiftMemoryCache memoryCache;
+  private int footerSize = DEFAULT_CACHE_MEMORY_FOOTER_SIZE;
+
   /**
    * Initalize the filesystem store -this creates the REST client binding.
    *
@@ -74,6 +225,463 @@ public class SwiftNativeFileSystemStore {
   public void initialize(URI fsURI, Configuration configuration) throws IOException {
     this.uri = fsURI;
     this.swiftRestClient = SwiftRestClient.getInstance(fsURI, configuration);
+    int listingThreads = configuration.getInt(
+      SwiftProtocolConstants.SWIFT_LISTING_THREADS, DEFAULT_LISTING_THREADS);
+    if (listingThreads < 1) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_LISTING_THREADS
+        + ": " + listingThreads);
+    }
+    if (listingThreads > 1) {
+      listingPool = Executors.newFixedThreadPool(listingThreads,
+        SwiftUtils.newDaemonThreadFactory("swift-listing"));
+      listingRangesAhead = 2 * listingThreads;
+    }
+    int uploadThreads = configuration.getInt(
+      SwiftProtocolConstants.SWIFT_UPLOAD_THREADS, DEFAULT_UPLOAD_THREADS);
+    if (uploadThreads < 1) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_UPLOAD_THREADS
+        + ": " + uploadThreads);
+    }
+    uploadPool = Executors.newFixedThreadPool(uploadThreads,
+      SwiftUtils.newDaemonThreadFactory("swift-upload"));
+    //threads are only started as markers are submitted
+    markerPool = Executors.newFixedThreadPool(MARKER_THREADS,
+      SwiftUtils.newDaemonThreadFactory("swift-markers"));
+    uploadCloseTimeout = configuration.getLong(
+      SwiftProtocolConstants.SWIFT_UPLOAD_CLOSE_TIMEOUT,
+      DEFAULT_UPLOAD_CLOSE_TIMEOUT);
+    if (uploadCloseTimeout < 0) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_UPLOAD_CLOSE_TIMEOUT
+        + ": " + uploadCloseTimeout);
+    }
+    bufferFactory = new OutputBufferFactory(configuration);
+    String manifestType = configuration.get(
+      SwiftProtocolConstants.SWIFT_MANIFEST_TYPE, MANIFEST_DLO).trim();
+    if (MANIFEST_SLO.equalsIgnoreCase(manifestType)) {
+      staticLargeObjects = true;
+    } else if (!MANIFEST_DLO.equalsIgnoreCase(manifestType)) {
+      throw new SwiftConfigurationException(
+        "Unknown value of " + SwiftProtocolConstants.SWIFT_MANIFEST_TYPE
+        + ": " + manifestType);
+    }
+    readAheadRange = configuration.getLong(
+      SwiftProtocolConstants.SWIFT_READAHEAD_RANGE, DEFAULT_READAHEAD_RANGE);
+    if (readAheadRange < 1) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_READAHEAD_RANGE
+        + ": " + readAheadRange);
+    }
+    seekForwardSkip = configuration.getLong(
+      SwiftProtocolConstants.SWIFT_SEEK_FORWARD_SKIP, DEFAULT_SEEK_FORWARD_SKIP);
+    if (seekForwardSkip < 0) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_SEEK_FORWARD_SKIP
+        + ": " + seekForwardSkip);
+    }
+    inputPolicy = SwiftInputPolicy.fromString(configuration.get(
+      SwiftProtocolConstants.SWIFT_INPUT_POLICY,
+      SwiftInputPolicy.adaptive.name()));
+    prefetchDepth = configuration.getInt(
+      SwiftProtocolConstants.SWIFT_PREFETCH_DEPTH, DEFAULT_PREFETCH_DEPTH);
+    if (prefetchDepth < 0) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_PREFETCH_DEPTH
+        + ": " + prefetchDepth);
+    }
+    prefetchChunkSize = configuration.getInt(
+      SwiftProtocolConstants.SWIFT_PREFETCH_CHUNK_SIZE,
+      DEFAULT_PREFETCH_CHUNK_SIZE);
+    if (prefetchChunkSize < 1) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_PREFETCH_CHUNK_SIZE
+        + ": " + prefetchChunkSize);
+    }
+    vectoredReadMinSeek = configuration.getInt(
+      SwiftProtocolConstants.SWIFT_VECTORED_READ_MIN_SEEK,
+      DEFAULT_VECTORED_READ_MIN_SEEK);
+    if (vectoredReadMinSeek < 0) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_VECTORED_READ_MIN_SEEK
+        + ": " + vectoredReadMinSeek);
+    }
+    vectoredReadMaxMerged = configuration.getInt(
+      SwiftProtocolConstants.SWIFT_VECTORED_READ_MAX_MERGED,
+      DEFAULT_VECTORED_READ_MAX_MERGED);
+    if (vectoredReadMaxMerged < 1) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_VECTORED_READ_MAX_MERGED
+        + ": " + vectoredReadMaxMerged);
+    }
+    readSegments = configuration.getBoolean(
+      SwiftProtocolConstants.SWIFT_READ_SEGMENTS, true);
+    segmentReadDepth = configuration.getInt(
+      SwiftProtocolConstants.SWIFT_SEGMENT_READ_DEPTH,
+      DEFAULT_SEGMENT_READ_DEPTH);
+    if (segmentReadDepth < 0) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_SEGMENT_READ_DEPTH
+        + ": " + segmentReadDepth);
+    }
+    readRetryLimit = configuration.getInt(
+      SwiftProtocolConstants.SWIFT_READ_RETRY_LIMIT, DEFAULT_READ_RETRY_LIMIT);
+    if (readRetryLimit < 0) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_READ_RETRY_LIMIT
+        + ": " + readRetryLimit);
+    }
+    readRetryInterval = configuration.getLong(
+      SwiftProtocolConstants.SWIFT_READ_RETRY_INTERVAL,
+      DEFAULT_READ_RETRY_INTERVAL);
+    if (readRetryInterval < 0) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_READ_RETRY_INTERVAL
+        + ": " + readRetryInterval);
+    }
+    int readThreads = configuration.getInt(
+      SwiftProtocolConstants.SWIFT_READ_THREADS, DEFAULT_READ_THREADS);
+    if (readThreads < 1) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_READ_THREADS
+        + ": " + readThreads);
+    }
+    long metadataTtl = configuration.getLong(
+      SwiftProtocolConstants.SWIFT_METADATA_CACHE_TTL, 0);
+    long negativeTtl = configuration.getLong(
+      SwiftProtocolConstants.SWIFT_METADATA_CACHE_NEGATIVE_TTL, metadataTtl);
+    int metadataCacheSize = configuration.getInt(
+      SwiftProtocolConstants.SWIFT_METADATA_CACHE_SIZE,
+      DEFAULT_METADATA_CACHE_SIZE);
+    if (metadataTtl < 0 || negativeTtl < 0) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_METADATA_CACHE_TTL
+        + " or " + SwiftProtocolConstants.SWIFT_METADATA_CACHE_NEGATIVE_TTL
+        + ": " + metadataTtl + ", " + negativeTtl);
+    }
+    if (metadataCacheSize < 1) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_METADATA_CACHE_SIZE
+        + ": " + metadataCacheSize);
+    }
+    if (metadataTtl > 0 || negativeTtl > 0) {
+      metadataCache = new SwiftMetadataCache(metadataTtl, negativeTtl,
+                                             metadataCacheSize);
+    }
+    directoryMarkers = configuration.getBoolean(
+      SwiftProtocolConstants.SWIFT_DIRECTORY_MARKERS, true);
+    SwiftConsistencyMode consistencyMode = SwiftConsistencyMode.fromString(
+      configuration.get(SwiftProtocolConstants.SWIFT_CONSISTENCY_MODE,
+                        SwiftConsistencyMode.always.name()));
+    long consistencyWindow = configuration.getLong(
+      SwiftProtocolConstants.SWIFT_CONSISTENCY_WINDOW,
+      DEFAULT_CONSISTENCY_WINDOW);
+    if (consistencyWindow < 0) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_CONSISTENCY_WINDOW
+        + ": " + consistencyWindow);
+    }
+    int consistencyTracked = configuration.getInt(
+      SwiftProtocolConstants.SWIFT_CONSISTENCY_TRACKED,
+      DEFAULT_CONSISTENCY_TRACKED);
+    if (consistencyTracked < 1) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_CONSISTENCY_TRACKED
+        + ": " + consistencyTracked);
+    }
+    if (consistencyMode == SwiftConsistencyMode.recent) {
+      recentChanges = new SwiftRecentChanges(consistencyWindow,
+                                             consistencyTracked);
+    }
+    String[] cacheDirs = configuration.getTrimmedStrings(
+      SwiftProtocolConstants.SWIFT_CACHE_DISK_DIRS);
+    if (cacheDirs.length > 0) {
+      long cacheSize = configuration.getLong(
+        SwiftProtocolConstants.SWIFT_CACHE_DISK_SIZE, DEFAULT_CACHE_DISK_SIZE);
+      if (cacheSize < 1) {
+        throw new SwiftConfigurationException(
+          "Invalid value of " + SwiftProtocolConstants.SWIFT_CACHE_DISK_SIZE
+          + ": " + cacheSize);
+      }
+      int cacheBlockSize = configuration.getInt(
+        SwiftProtocolConstants.SWIFT_CACHE_DISK_BLOCK_SIZE,
+        DEFAULT_CACHE_DISK_BLOCK_SIZE);
+      if (cacheBlockSize < 1) {
+        throw new SwiftConfigurationException(
+          "Invalid value of "
+          + SwiftProtocolConstants.SWIFT_CACHE_DISK_BLOCK_SIZE
+          + ": " + cacheBlockSize);
+      }
+      File[] dirs = new File[cacheDirs.length];
+      for (int i = 0; i < cacheDirs.length; i++) {
+        dirs[i] = new File(cacheDirs[i]);
+      }
+      diskCache = new SwiftDiskCache(dirs, cacheSize, cacheBlockSize);
+    }
+    String sharedDir = configuration.getTrimmed(
+      SwiftProtocolConstants.SWIFT_CACHE_SHARED_DIR);
+    if (sharedDir != null && !sharedDir.isEmpty()) {
+      int slots = configuration.getInt(
+        SwiftProtocolConstants.SWIFT_CACHE_SHARED_SLOTS,
+        DEFAULT_CACHE_SHARED_SLOTS);
+      if (slots < 1) {
+        throw new SwiftConfigurationException(
+          "Invalid value of " + SwiftProtocolConstants.SWIFT_CACHE_SHARED_SLOTS
+          + ": " + slots);
+      }
+      int sharedBlockSize = configuration.getInt(
+        SwiftProtocolConstants.SWIFT_CACHE_SHARED_BLOCK_SIZE,
+        DEFAULT_CACHE_SHARED_BLOCK_SIZE);
+      if (sharedBlockSize < 1) {
+        throw new SwiftConfigurationException(
+          "Invalid value of "
+          + SwiftProtocolConstants.SWIFT_CACHE_SHARED_BLOCK_SIZE
+          + ": " + sharedBlockSize);
+      }
+      sharedCache = SwiftSharedCache.get(new File(sharedDir), slots,
+                                         sharedBlockSize);
+    }
+    long memoryCacheSize = configuration.getLong(
+      SwiftProtocolConstants.SWIFT_CACHE_MEMORY_SIZE, 0);
+    if (memoryCacheSize < 0) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_CACHE_MEMORY_SIZE
+        + ": " + memoryCacheSize);
+    }
+    if (memoryCacheSize > 0) {
+      int memoryBlockSize = configuration.getInt(
+        SwiftProtocolConstants.SWIFT_CACHE_MEMORY_BLOCK_SIZE,
+        DEFAULT_CACHE_MEMORY_BLOCK_SIZE);
+      if (memoryBlockSize < 1) {
+        throw new SwiftConfigurationException(
+          "Invalid value of "
+          + SwiftProtocolConstants.SWIFT_CACHE_MEMORY_BLOCK_SIZE
+          + ": " + memoryBlockSize);
+      }
+      footerSize = configuration.getInt(
+        SwiftProtocolConstants.SWIFT_CACHE_MEMORY_FOOTER_SIZE,
+        DEFAULT_CACHE_MEMORY_FOOTER_SIZE);
+      if (footerSize < 0) {
+        throw new SwiftConfigurationException(
+          "Invalid value of "
+          + SwiftProtocolConstants.SWIFT_CACHE_MEMORY_FOOTER_SIZE
+          + ": " + footerSize);
+      }
+      memoryCache = new SwiftMemoryCache(memoryCacheSize, memoryBlockSize,
+        configuration.getBoolean(
+          SwiftProtocolConstants.SWIFT_CACHE_MEMORY_DIRECT, false));
+    }
+    //threads are only started as reads are submitted
+    readPool = Executors.newFixedThreadPool(readThreads,
+      SwiftUtils.newDaemonThreadFactory("swift-read"));
+  }
+
+  /**
+   * Get the pool in which file parts are uploaded
+   * @return the pool
+   */
+  ExecutorService getUploadPool() {
+    return uploadPool;
+  }
+
+  /**
+   * Get the pool in which directory markers are written
+   * @return the pool
+   */
+  ExecutorService getMarkerPool() {
+    return markerPool;
+  }
+
+  /**
+   * Get the size of the range requested by each GET of an input stream
+   * @return the read-ahead range in bytes
+   */
+  long getReadAheadRange() {
+    return readAheadRange;
+  }
+
+  /**
+   * Get the largest forward seek which input streams make by skipping
+   * data rather than by opening a new request
+   * @return the limit in bytes
+   */
+  long getSeekForwardSkip() {
+    return seekForwardSkip;
+  }
+
+  /**
+   * Get the input policy of streams opened without one of their own
+   * @return the configured input policy
+   */
+  SwiftInputPolicy getInputPolicy() {
+    return inputPolicy;
+  }
+
+  /**
+   * Get the pool which fetches chunks ahead of sequential readers
+   * @return the pool, or null if prefetching is disabled
+   */
+  ExecutorService getPrefetchPool() {
+    return prefetchDepth > 0 ? readPool : null;
+  }
+
+  /**
+   * Get the pool for the concurrent requests of vectored reads
+   * @return the pool, or null if they are to be made in the reading thread
+   */
+  ExecutorService getReadPool() {
+    return readPool;
+  }
+
+  /**
+   * Get the largest gap between ranges of a vectored read which are
+   * fetched by a single request
+   * @return the gap in bytes
+   */
+  int getVectoredReadMinSeek() {
+    return vectoredReadMinSeek;
+  }
+
+  /**
+   * Get the largest range which ranges of a vectored read are merged into
+   * @return the size in bytes
+   */
+  int getVectoredReadMaxMerged() {
+    return vectoredReadMaxMerged;
+  }
+
+  /**
+   * Get the number of chunks to fetch ahead of a sequential reader
+   * @return the prefetch depth
+   */
+  int getPrefetchDepth() {
+    return prefetchDepth;
+  }
+
+  /**
+   * Get the size of a prefetched chunk
+   * @return the chunk size in bytes
+   */
+  int getPrefetchChunkSize() {
+    return prefetchChunkSize;
+  }
+
+  /**
+   * Get the number of chunks to fetch concurrently from the segments
+   * of a large object ahead of a sequential reader
+   * @return the segment read depth
+   */
+  int getSegmentReadDepth() {
+    return segmentReadDepth;
+  }
+
+  /**
+   * Get the number of times a failed read is resumed before giving up
+   * @return the retry limit
+   */
+  int getReadRetryLimit() {
+    return readRetryLimit;
+  }
+
+  /**
+   * Get the time to wait before the first retry of a failed read
+   * @return the interval in milliseconds
+   */
+  long getReadRetryInterval() {
+    return readRetryInterval;
+  }
+
+  /**
+   * Get the cache of statuses and listings
+   * @return the cache, or null if it is disabled
+   */
+  SwiftMetadataCache getMetadataCache() {
+    return metadataCache;
+  }
+
+  /**
+   * Set the cache of statuses and listings
+   * @param metadataCache the cache; null to disable caching
+   */
+  void setMetadataCache(SwiftMetadataCache metadataCache) {
+    this.metadataCache = metadataCache;
+  }
+
+  /**
+   * Are directories marked with empty objects?
+   * @return false if directories exist only as prefixes
+   */
+  boolean isDirectoryMarkers() {
+    return directoryMarkers;
+  }
+
+  /**
+   * Set whether directories are marked with empty objects
+   * @param directoryMarkers false to derive directories from prefixes
+   */
+  void setDirectoryMarkers(boolean directoryMarkers) {
+    this.directoryMarkers = directoryMarkers;
+  }
+
+  /**
+   * Get the objects recently changed through this store
+   * @return the changes, or null if every read asks for the newest replica
+   */
+  SwiftRecentChanges getRecentChanges() {
+    return recentChanges;
+  }
+
+  /**
+   * Set the objects recently changed through this store
+   * @param recentChanges the changes; null to ask for the newest replica
+   * on every read
+   */
+  void setRecentChanges(SwiftRecentChanges recentChanges) {
+    this.recentChanges = recentChanges;
+  }
+
+  SwiftDiskCache getDiskCache() {
+    return diskCache;
+  }
+
+  /**
+   * Set the disk cache of blocks of objects
+   * @param diskCache the cache; null to disable caching
+   */
+  void setDiskCache(SwiftDiskCache diskCache) {
+    this.diskCache = diskCache;
+  }
+
+  SwiftSharedCache getSharedCache() {
+    return sharedCache;
+  }
+
+  /**
+   * Set the shared cache of blocks of objects
+   * @param sharedCache the cache; null to disable caching
+   */
+  void setSharedCache(SwiftSharedCache sharedCache) {
+    this.sharedCache = sharedCache;
+  }
+
+  SwiftMemoryCache getMemoryCache() {
+    return memoryCache;
+  }
+
+  /**
+   * Set the in-memory cache of blocks of objects
+   * @param memoryCache the cache; null to disable caching
+   * @param footerSize number of trailing bytes of files opened for
+   * random reads to pin
+   */
+  void setMemoryCache(SwiftMemoryCache memoryCache, int footerSize) {
+    this.memoryCache = memoryCache;
+    this.footerSize = footerSize;
+  }
+
+  OutputBufferFactory getBufferFactory() {
+    return bufferFactory;
   }
 
   @Override
@@ -82,6 +690,73 @@ public class SwiftNativeFileSystemStore {
             + swiftRestClient;
   }
 
+  /**
+   * Close the store, releasing the pooled HTTP connections
+   * of the REST client. Uploads still in progress -the parts of streams
+   * which were not closed, directory markers- are given up to the
+   * upload close timeout to finish before they are abandoned.
+   * @throws IOException on a problem
+   */
+  public void close() throws IOException {
+    if (listingPool != null) {
+      listingPool.shutdownNow();
+    }
+    if (readPool != null) {
+      readPool.shutdownNow();
+    }
+    if (uploadPool != null) {
+      awaitUploads(uploadPool, uploadCloseTimeout);
+    }
+    if (markerPool != null) {
+      awaitUploads(markerPool, uploadCloseTimeout);
+    }
+    if (swiftRestClient != null) {
+      swiftRestClient.close();
+    }
+    if (LOG.isDebugEnabled()) {
+      if (metadataCache != null) {
+        LOG.debug("Closing " + this + " with " + metadataCache);
+      }
+      if (recentChanges != null) {
+        LOG.debug("Closing " + this + " with " + recentChanges);
+      }
+      if (diskCache != null) {
+        LOG.debug("Closing " + this + " with " + diskCache);
+      }
+      if (sharedCache != null) {
+        LOG.debug("Closing " + this + " with " + sharedCache);
+      }
+      if (memoryCache != null) {
+        LOG.debug("Closing " + this + " with " + memoryCache);
+      }
+    }
+  }
+
+  /**
+   * Shut down a pool of uploads, waiting for those already submitted
+   * to finish before the REST client they use is closed. Any still
+   * running when the timeout expires are interrupted.
+   * @param pool pool to shut down
+   * @param timeout time in milliseconds to wait
+   * @throws InterruptedIOException if interrupted while waiting
+   */
+  private void awaitUploads(ExecutorService pool, long timeout)
+    throws InterruptedIOException {
+    pool.shutdown();
+    try {
+      if (!pool.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+        LOG.warn("Abandoning uploads still in progress after " + timeout
+                 + " ms closing " + this);
+        pool.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      pool.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw (InterruptedIOException) new InterruptedIOException(
+        "Interrupted waiting for uploads closing " + this).initCause(e);
+    }
+  }
+
   /**
    * Upload a file
    *
@@ -91,7 +766,192 @@ public class SwiftNativeFileSystemStore {
    * @throws IOException on a problem
    */
   public void uploadFile(Path path, InputStream inputStream, long length) throws IOException {
-    swiftRestClient.upload(toObjectPath(path), inputStream, length);
+    uploadFile(path, inputStream, length, true);
+  }
+
+  /**
+   * Upload a file, unless overwriting is forbidden and there is already
+   * an object at the path. The check is made by Swift itself, as part
+   * of the PUT.
+   *
+   * @param path destination path in the swift filesystem
+   * @param inputStream input data
+   * @param length length of the data
+   * @param overwrite may an existing object be replaced?
+   * @throws FileAlreadyExistsException if there is an object at the path
+   * and overwrite is false
+   * @throws IOException on a problem
+   */
+  public void uploadFile(Path path, InputStream inputStream, long length,
+                         boolean overwrite) throws IOException {
+    SwiftObjectPath objectPath = toObjectPath(path);
+    try {
+      swiftRestClient.upload(objectPath, inputStream, length,
+                             writeHeaders(overwrite));
+    } catch (SwiftObjectChangedException e) {
+      throw alreadyExists(path, e);
+    } finally {
+      changed(objectPath);
+    }
+  }
+
+  /**
+   * Get the headers of a PUT of an object: those given, plus
+   * <code>If-None-Match: *</code> if it must not replace an existing one
+   * @param overwrite may an existing object be replaced?
+   * @param headers other headers of the PUT
+   * @return the headers
+   */
+  private static Header[] writeHeaders(boolean overwrite, Header... headers) {
+    if (overwrite) {
+      return headers;
+    }
+    Header[] all = new Header[headers.length + 1];
+    System.arraycopy(headers, 0, all, 0, headers.length);
+    all[headers.length] =
+      new Header(SwiftProtocolConstants.HEADER_IF_NONE_MATCH, "*");
+    return all;
+  }
+
+  /**
+   * Convert the precondition failure of a conditional PUT into the
+   * exception raised for a file which already exists
+   * @param path path written
+   * @param e the failure
+   * @return the exception to throw
+   */
+  private static IOException alreadyExists(Path path,
+                                           SwiftObjectChangedException e) {
+    return (IOException) new FileAlreadyExistsException(
+      "File already exists: " + path).initCause(e);
+  }
+
+  /**
+   * Note that an object has been written or copied over, or that an
+   * attempt has been made to: invalidate what the metadata cache holds
+   * about it
+   * @param path path of the object
+   */
+  private void changed(SwiftObjectPath path) {
+    if (metadataCache != null) {
+      metadataCache.invalidate(path);
+    }
+    if (recentChanges != null) {
+      recentChanges.changed(path);
+    }
+  }
+
+  /**
+   * Note that an object has been deleted, or that an attempt has been
+   * made to delete it
+   * @param path path of the object
+   * @param success did the deletion succeed?
+   */
+  private void deleted(SwiftObjectPath path, boolean success) {
+    if (metadataCache != null) {
+      if (success) {
+        metadataCache.deleted(path);
+      } else {
+        metadataCache.invalidate(path);
+      }
+    }
+    if (recentChanges != null) {
+      recentChanges.changed(path);
+    }
+  }
+
+  /**
+   * Should a read of an object ask for the newest replica?
+   * @param path path of the object
+   * @return true unless only recently changed objects need it and
+   * this is not one of them
+   */
+  private boolean isNewestNeeded(SwiftObjectPath path) {
+    return recentChanges == null || recentChanges.isRecent(path);
+  }
+
+  /**
+   * Get the headers of a read of an object: those given, plus
+   * <code>X-Newest</code> if the read needs the newest replica
+   * @param newest does the read need the newest replica?
+   * @param headers other headers of the read
+   * @return the headers
+   */
+  private static Header[] readHeaders(boolean newest, Header... headers) {
+    if (!newest) {
+      return headers;
+    }
+    Header[] all = new Header[headers.length + 1];
+    System.arraycopy(headers, 0, all, 0, headers.length);
+    all[headers.length] = SwiftRestClient.NEWEST;
+    return all;
+  }
+
+  /**
+   * GET an object or a range of one. A replica which has not yet seen
+   * the object may answer 404 to a read which did not ask for the newest
+   * one; as the caller expects the object to exist, the read is then
+   * retried with <code>X-Newest</code>.
+   * <p/>
+   * A read made with <code>If-Match</code> which finds another ETag
+   * means the status it was opened with is out of date: what the
+   * metadata cache holds about the object -including the status of the
+   * file a segment belongs to- is invalidated, so that the caller can
+   * open it again.
+   * @param path path of the object
+   * @param byteRangeStart starting point; ignored if the length is negative
+   * @param length no. of bytes; negative for the whole object
+   * @param headers other headers of the read
+   * @return an input stream that must be closed
+   * @throws IOException IO problems
+   * @throws FileNotFoundException if the newest replica has no object
+   * @throws SwiftObjectChangedException if the object has another ETag
+   */
+  private InputStream getData(SwiftObjectPath path,
+                              long byteRangeStart,
+                              long length,
+                              Header... headers) throws IOException {
+    boolean newest = isNewestNeeded(path);
+    try {
+      try {
+        return fetch(path, byteRangeStart, length,
+                     readHeaders(newest, headers));
+      } catch (FileNotFoundException e) {
+        if (newest) {
+          throw e;
+        }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Retrying read of " + path + " for the newest replica");
+        }
+        recentChanges.retried();
+        return fetch(path, byteRangeStart, length, readHeaders(true, headers));
+      }
+    } catch (SwiftObjectChangedException e) {
+      if (metadataCache != null) {
+        metadataCache.invalidate(path);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Make a GET of an object or a range of one
+   * @param path path of the object
+   * @param byteRangeStart starting point; ignored if the length is negative
+   * @param length no. of bytes; negative for the whole object
+   * @param headers headers of the request
+   * @return an input stream that must be closed
+   * @throws IOException IO problems
+   */
+  InputStream fetch(SwiftObjectPath path,
+                    long byteRangeStart,
+                    long length,
+                    Header[] headers) throws IOException {
+    if (length < 0) {
+      return swiftRestClient.getDataAsInputStream(path, headers);
+    }
+    return swiftRestClient.getDataAsInputStream(path, byteRangeStart, length,
+                                                headers);
   }
 
   /**
@@ -101,27 +961,103 @@ public class SwiftNativeFileSystemStore {
    * @param partNumber item number in the path
    * @param inputStream input data
    * @param length length of the data
+   * @return the segment written, for the manifest
    * @throws IOException on a problem
    */
-  public void uploadFilePart(Path path, int partNumber, InputStream inputStream, long length) throws IOException {
+  public SwiftSegment uploadFilePart(Path path, int partNumber, InputStream inputStream, long length) throws IOException {
     String stringPath = path.toUri().toString();
-    if (stringPath.endsWith("/")) {
-      stringPath = stringPath.concat(String.valueOf(partNumber));
-    } else {
-      stringPath = stringPath.concat("/").concat(String.valueOf(partNumber));
+    if (!stringPath.endsWith("/")) {
+      stringPath = stringPath.concat("/");
+    }
+    stringPath = stringPath.concat(partName(partNumber));
+
+    String container = toDirPath(path).getContainer();
+    SwiftObjectPath partPath = new SwiftObjectPath(container, stringPath);
+    String etag;
+    try {
+      etag = swiftRestClient.upload(partPath, inputStream, length);
+    } finally {
+      changed(partPath);
+    }
+    if (stringPath.startsWith("/")) {
+      stringPath = stringPath.substring(1);
     }
+    return new SwiftSegment("/" + container + "/" + stringPath, etag, length);
+  }
 
-    swiftRestClient.upload(new SwiftObjectPath(toDirPath(path).getContainer(), stringPath), inputStream, length);
+  /**
+   * Get the name of a part of a file uploaded in parts
+   * @param partNumber part number, starting at 1
+   * @return the part number, zero-padded
+   */
+  static String partName(int partNumber) {
+    return String.format("%0" + PART_NUMBER_WIDTH + "d", partNumber);
   }
 
   /**
-   * Tell the Swift server to expect a multi-part upload by submitting
-   * a 0-byte file with the X-Object-Manifest header
+   * Write the manifest of a file uploaded in parts.
+   * <p/>
+   * By default this is a Dynamic Large Object: a 0-byte file with the
+   * X-Object-Manifest header, which Swift resolves into its parts by
+   * listing the container on every read. If Static Large Objects are
+   * enabled, the manifest is instead a JSON list of the segments with
+   * their sizes and ETags, which reads use directly.
    *
    * @param path path of final final
+   * @param segments the parts uploaded, in order
    * @throws IOException
    */
-  public void createManifestForPartUpload(Path path) throws IOException {
+  public void createManifestForPartUpload(Path path, List<SwiftSegment> segments)
+    throws IOException {
+    createManifestForPartUpload(path, segments, true);
+  }
+
+  /**
+   * Write the manifest of a file uploaded in parts, unless overwriting
+   * is forbidden and there is already an object at the path.
+   *
+   * @param path path of the final file
+   * @param segments the parts uploaded, in order
+   * @param overwrite may an existing object be replaced?
+   * @throws FileAlreadyExistsException if there is an object at the path
+   * and overwrite is false
+   * @throws IOException on a problem
+   */
+  public void createManifestForPartUpload(Path path,
+                                          List<SwiftSegment> segments,
+                                          boolean overwrite)
+    throws IOException {
+    try {
+      writeManifest(path, segments, overwrite);
+    } catch (SwiftObjectChangedException e) {
+      throw alreadyExists(path, e);
+    }
+  }
+
+  private void writeManifest(Path path,
+                             List<SwiftSegment> segments,
+                             boolean overwrite) throws IOException {
+    if (staticLargeObjects) {
+      List<SwiftSegment> manifest = new ArrayList<SwiftSegment>(segments.size());
+      for (SwiftSegment segment : segments) {
+        //Swift rejects empty segments, and they add nothing to the file
+        if (segment.getSizeBytes() > 0) {
+          manifest.add(segment);
+        }
+      }
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Writing SLO manifest of " + path + " with "
+                  + manifest.size() + " segments");
+      }
+      try {
+        swiftRestClient.uploadStaticLargeObjectManifest(toObjectPath(path),
+          JSONUtil.toJSON(manifest).getBytes("UTF-8"),
+          writeHeaders(overwrite));
+      } finally {
+        changed(toObjectPath(path));
+      }
+      return;
+    }
     String pathString = toObjectPath(path).toString();
     if (!pathString.endsWith("/")) {
       pathString = pathString.concat("/");
@@ -130,10 +1066,15 @@ public class SwiftNativeFileSystemStore {
       pathString = pathString.substring(1);
     }
 
-    swiftRestClient.upload(toObjectPath(path),
-            new ByteArrayInputStream(new byte[0]),
-            0,
-            new Header(SwiftProtocolConstants.X_OBJECT_MANIFEST, pathString));
+    try {
+      swiftRestClient.upload(toObjectPath(path),
+              new ByteArrayInputStream(new byte[0]),
+              0,
+              writeHeaders(overwrite,
+                new Header(SwiftProtocolConstants.X_OBJECT_MANIFEST, pathString)));
+    } finally {
+      changed(toObjectPath(path));
+    }
   }
 
   /**
@@ -146,24 +1087,60 @@ public class SwiftNativeFileSystemStore {
    */
   public FileStatus getObjectMetadata(Path path) throws IOException {
     SwiftObjectPath objectPath = toObjectPath(path);
-    final Header[] headers;
-    headers = swiftRestClient.headRequest(objectPath,
-            SwiftRestClient.NEWEST);
+    long generation = 0;
+    if (metadataCache != null) {
+      //throws FileNotFoundException if the object is known to be absent
+      FileStatus cached = metadataCache.getStatus(objectPath);
+      if (cached != null) {
+        return cached;
+      }
+      generation = metadataCache.getGeneration();
+    }
+    Header[] headers;
+    try {
+      headers = swiftRestClient.headRequest(objectPath,
+              readHeaders(isNewestNeeded(objectPath)));
+    } catch (FileNotFoundException e) {
+      headers = new Header[0];
+    }
     //no headers is treated as a missing file
     if (headers.length == 0) {
+      if (!directoryMarkers) {
+        //it may be a directory with no marker
+        FileStatus status =
+          getPseudoDirectoryStatus(objectPath, getCorrectSwiftPath(path));
+        if (status != null) {
+          return status;
+        }
+      }
+      if (metadataCache != null) {
+        metadataCache.putAbsent(objectPath, generation);
+      }
       throw new FileNotFoundException("Not Found " + path.toUri());
     }
 
     boolean isDir = false;
     long length = 0;
     long lastModified = System.currentTimeMillis();
+    String objectManifest = null;
+    boolean staticLargeObject = false;
+    String etag = null;
     for (Header header : headers) {
       String headerName = header.getName();
+      if (SwiftProtocolConstants.X_OBJECT_MANIFEST.equalsIgnoreCase(headerName)) {
+        objectManifest = header.getValue();
+      }
+      if (SwiftProtocolConstants.X_STATIC_LARGE_OBJECT.equalsIgnoreCase(headerName)) {
+        staticLargeObject = Boolean.parseBoolean(header.getValue());
+      }
       if (headerName.equals(SwiftProtocolConstants.X_CONTAINER_OBJECT_COUNT) ||
               headerName.equals(SwiftProtocolConstants.X_CONTAINER_BYTES_USED)) {
         length = 0;
         isDir = true;
       }
+      if (SwiftProtocolConstants.HEADER_ETAG.equalsIgnoreCase(headerName)) {
+        etag = header.getValue();
+      }
       if (SwiftProtocolConstants.HEADER_CONTENT_LENGTH.equals(headerName)) {
         length = Long.parseLong(header.getValue());
       }
@@ -178,7 +1155,122 @@ public class SwiftNativeFileSystemStore {
     }
 
     Path correctSwiftPath = getCorrectSwiftPath(path);
-    return new SwiftFileStatus(length, isDir, 0, 0L, lastModified, correctSwiftPath);
+    SwiftFileStatus status =
+      new SwiftFileStatus(length, isDir, 0, 0L, lastModified, correctSwiftPath);
+    status.setObjectManifest(objectManifest);
+    status.setStaticLargeObject(staticLargeObject);
+    status.setEtag(etag);
+    status.setTypeExplicit(!directoryMarkers);
+    if (metadataCache != null) {
+      metadataCache.putStatus(objectPath, status, generation);
+    }
+    return status;
+  }
+
+  /**
+   * Get the status of a directory which has no marker, by listing
+   * a single object under its prefix.
+   *
+   * @param objectPath path of the directory
+   * @param path path to give the status
+   * @return the status of the directory, or null if there is nothing
+   * under it
+   * @throws IOException IO problems
+   */
+  FileStatus getPseudoDirectoryStatus(SwiftObjectPath objectPath, Path path)
+    throws IOException {
+    long generation =
+      metadataCache != null ? metadataCache.getGeneration() : 0;
+    List<SwiftObjectFileStatus> page;
+    try {
+      page = listPage(objectPath, true, null, null, 1);
+    } catch (FileNotFoundException e) {
+      //no container
+      return null;
+    }
+    if (page.isEmpty()) {
+      return null;
+    }
+    SwiftFileStatus status = new SwiftFileStatus(0, true, 0, 0L, 0L, path);
+    status.setTypeExplicit(true);
+    if (metadataCache != null) {
+      metadataCache.putStatus(objectPath, status, generation);
+    }
+    return status;
+  }
+
+  /**
+   * Resolve the segments of a large object, so that it can be read from
+   * them directly. For a Dynamic Large Object the segments are listed;
+   * for a Static one its manifest is read.
+   * <p/>
+   * Container listings are only eventually consistent, so if the
+   * segments do not add up to the length of the object, or cannot be
+   * found, the object is read through its manifest as usual.
+   *
+   * @param path path of the object
+   * @param status status of the object, from {@link #getObjectMetadata(Path)}
+   * @return the segments, or null if the object is to be read as a whole
+   * @throws IOException on a failure to list or read the manifest
+   */
+  SwiftSegmentedObject getSegments(Path path, FileStatus status)
+    throws IOException {
+    if (!readSegments || !(status instanceof SwiftFileStatus)
+        || !((SwiftFileStatus) status).isManifest()) {
+      return null;
+    }
+    SwiftFileStatus swiftStatus = (SwiftFileStatus) status;
+    List<SwiftObjectPath> paths = new ArrayList<SwiftObjectPath>();
+    List<Long> sizes = new ArrayList<Long>();
+    List<String> etags = new ArrayList<String>();
+    if (swiftStatus.isStaticLargeObject()) {
+      for (SwiftObjectFileStatus entry :
+        swiftRestClient.getStaticLargeObjectSegments(toObjectPath(path))) {
+        //names are /container/object
+        String name = entry.getName();
+        int slash = name.indexOf('/', 1);
+        if (!name.startsWith("/") || slash < 0) {
+          LOG.warn("Cannot read segment " + name + " of " + path
+                   + " directly");
+          return null;
+        }
+        paths.add(new SwiftObjectPath(name.substring(1, slash),
+                                      name.substring(slash)));
+        sizes.add(entry.getBytes());
+        etags.add(entry.getHash());
+      }
+    } else {
+      //the manifest is container/prefix
+      String manifest = swiftStatus.getObjectManifest();
+      int slash = manifest.indexOf('/');
+      if (slash <= 0) {
+        LOG.warn("Cannot read segments of " + path + " with manifest "
+                 + manifest + " directly");
+        return null;
+      }
+      String container = manifest.substring(0, slash);
+      SwiftObjectPath prefix =
+        new SwiftObjectPath(container, manifest.substring(slash));
+      for (SwiftObjectFileStatus entry :
+        swiftRestClient.findObjectsByPrefix(prefix, null)) {
+        paths.add(new SwiftObjectPath(container, "/" + entry.getName()));
+        sizes.add(entry.getBytes());
+        etags.add(entry.getHash());
+      }
+    }
+    SwiftSegmentedObject segments =
+      new SwiftSegmentedObject(paths, sizes, etags);
+    if (segments.getLength() != status.getLen()
+        || segments.getSegmentCount() == 0) {
+      LOG.warn("Segments of " + path + " add up to " + segments.getLength()
+               + " bytes rather than " + status.getLen()
+               + ": reading it through its manifest");
+      return null;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Reading " + path + " from " + segments);
+    }
+    return segments;
   }
 
 
@@ -191,8 +1283,7 @@ public class SwiftNativeFileSystemStore {
    * @throws FileNotFoundException path doesn't resolve to an object
    */
   public InputStream getObject(Path path) throws IOException {
-    return swiftRestClient.getDataAsInputStream(toObjectPath(path),
-            SwiftRestClient.NEWEST);
+    return getData(toObjectPath(path), 0, -1);
   }
 
   /**
@@ -206,8 +1297,264 @@ public class SwiftNativeFileSystemStore {
    */
   public InputStream getObject(Path path, long byteRangeStart, long length)
           throws IOException {
-    return swiftRestClient.getDataAsInputStream(
-            toObjectPath(path), byteRangeStart, length);
+    return getData(toObjectPath(path), byteRangeStart, length);
+  }
+
+  /**
+   * Get the input stream starting from a specific point, as long as the
+   * object still has a given ETag.
+   *
+   * @param path path to object
+   * @param byteRangeStart starting point
+   * @param length no. of bytes
+   * @param etag ETag which the object must have; null for any
+   * @return an input stream that must be closed
+   * @throws SwiftObjectChangedException if the object has another ETag
+   * @throws IOException IO problems
+   */
+  public InputStream getObject(Path path,
+                               long byteRangeStart,
+                               long length,
+                               String etag) throws IOException {
+    if (etag == null) {
+      return getObject(path, byteRangeStart, length);
+    }
+    return getData(toObjectPath(path), byteRangeStart, length,
+      new Header(SwiftProtocolConstants.HEADER_IF_MATCH, etag));
+  }
+
+  /**
+   * Get the input stream of a range of an object which may be read from
+   * its segments. If there is a disk cache, the range is read through it
+   * wherever the ETag of the object or segment is known.
+   *
+   * @param path path to object
+   * @param segments segments of the object; null to read it as a whole
+   * @param etag ETag which the object must have if it is read as a whole;
+   * null for any. Segments must have the ETags they were listed with.
+   * @param contentLength length of the object
+   * @param byteRangeStart starting point
+   * @param length no. of bytes; if there are segments, the range must
+   * lie within one of them
+   * @return an input stream that must be closed
+   * @throws SwiftObjectChangedException if the object or segment
+   * has another ETag
+   * @throws IOException IO problems
+   */
+  InputStream getObject(final Path path,
+                        SwiftSegmentedObject segments,
+                        final String etag,
+                        long contentLength,
+                        long byteRangeStart,
+                        long length) throws IOException {
+    if (segments == null) {
+      return openCached(cacheName(path.toUri().getPath()), etag,
+                        contentLength, byteRangeStart, length,
+                        new SwiftRangeSource() {
+        @Override
+        public InputStream open(long start, long len) throws IOException {
+          return getObject(path, start, len, etag);
+        }
+      });
+    }
+    int index = segments.indexOf(byteRangeStart);
+    if (byteRangeStart + length > segments.getEnd(index)) {
+      throw new IllegalArgumentException("Range of " + length + " bytes at "
+                                         + byteRangeStart + " of " + path
+                                         + " spans segments");
+    }
+    final SwiftObjectPath segment = segments.getPath(index);
+    final String segmentEtag = segments.getEtag(index);
+    long segmentStart = byteRangeStart - segments.getStart(index);
+    return openCached(cacheName(segment.toUriPath()), segmentEtag,
+                      segments.getEnd(index) - segments.getStart(index),
+                      segmentStart, length, new SwiftRangeSource() {
+      @Override
+      public InputStream open(long start, long len) throws IOException {
+        return getSegment(segment, start, len, segmentEtag);
+      }
+    });
+  }
+
+  /**
+   * Open a range of an object through the caches: the in-memory cache,
+   * falling back to the cache shared by the node, then the disk cache,
+   * then the store.
+   * Objects whose ETag is not known are not cached.
+   * @param name name of the object in the caches
+   * @param etag ETag of the object; null if not known
+   * @param objectLength length of the object
+   * @param start starting point
+   * @param length no. of bytes
+   * @param source source of the data in the store
+   * @return an input stream that must be closed
+   * @throws IOException IO problems
+   */
+  private InputStream openCached(final String name,
+                                 final String etag,
+                                 final long objectLength,
+                                 long start,
+                                 long length,
+                                 final SwiftRangeSource source)
+    throws IOException {
+    if (etag == null) {
+      return source.open(start, length);
+    }
+    SwiftRangeSource lower = source;
+    if (diskCache != null) {
+      lower = new SwiftRangeSource() {
+        @Override
+        public InputStream open(long start, long len) {
+          return diskCache.open(name, etag, objectLength, start, len, source);
+        }
+      };
+    }
+    if (sharedCache != null) {
+      final SwiftRangeSource below = lower;
+      lower = new SwiftRangeSource() {
+        @Override
+        public InputStream open(long start, long len) {
+          return sharedCache.open(name, etag, objectLength, start, len,
+                                  below);
+        }
+      };
+    }
+    if (memoryCache != null) {
+      return memoryCache.open(name, etag, start, length, lower);
+    }
+    return lower.open(start, length);
+  }
+
+  /**
+   * Have the in-memory cache pin the trailing bytes of a file which is
+   * being opened for random reads, such as the footer of a columnar file.
+   * @param path path to object
+   * @param segments segments of the object; null if it is read as a whole
+   * @param etag ETag of the object; null if not known
+   * @param length length of the object
+   */
+  void pinFooter(Path path,
+                 SwiftSegmentedObject segments,
+                 String etag,
+                 long length) {
+    if (memoryCache == null || footerSize == 0 || length == 0) {
+      return;
+    }
+    long footerStart = Math.max(0, length - footerSize);
+    if (segments == null) {
+      if (etag != null) {
+        memoryCache.pinFooter(cacheName(path.toUri().getPath()), etag,
+                              footerStart);
+      }
+      return;
+    }
+    //the footer may span the last few segments
+    for (int index = segments.indexOf(footerStart);
+         index < segments.getSegmentCount(); index++) {
+      String segmentEtag = segments.getEtag(index);
+      if (segmentEtag != null) {
+        long segmentStart = segments.getStart(index);
+        memoryCache.pinFooter(cacheName(segments.getPath(index).toUriPath()),
+                              segmentEtag,
+                              Math.max(0, footerStart - segmentStart));
+      }
+    }
+  }
+
+  /**
+   * Get the name under which an object is cached: its path, qualified
+   * by the filesystem it was read from
+   * @param object path of the object
+   * @return the name
+   */
+  private String cacheName(String object) {
+    return (uri != null ? uri.getAuthority() : "") + object;
+  }
+
+  /**
+   * Get the input stream of a range of a segment
+   *
+   * @param segment full path of the segment
+   * @param byteRangeStart starting point in the segment
+   * @param length no. of bytes
+   * @param etag ETag which the segment must have; null for any
+   * @return an input stream that must be closed
+   * @throws IOException IO problems
+   */
+  InputStream getSegment(SwiftObjectPath segment,
+                         long byteRangeStart,
+                         long length,
+                         String etag) throws IOException {
+    if (etag == null) {
+      return getData(segment, byteRangeStart, length);
+    }
+    return getData(segment, byteRangeStart, length,
+      new Header(SwiftProtocolConstants.HEADER_IF_MATCH, etag));
+  }
+
+  /**
+   * Read a range of an object into a new array.
+   *
+   * @param path path to object
+   * @param byteRangeStart starting point
+   * @param length no. of bytes; must be within the object
+   * @return the data
+   * @throws IOException IO problems, including the object ending early
+   */
+  byte[] readRange(Path path, long byteRangeStart, int length)
+          throws IOException {
+    //without an ETag, the range is not cached: its end will do as the length
+    return readRange(path, null, null, byteRangeStart + length,
+                     byteRangeStart, length);
+  }
+
+  /**
+   * Read a range of an object into a new array, one request for each
+   * segment it spans.
+   *
+   * @param path path to object
+   * @param segments segments of the object; null to read it as a whole
+   * @param etag ETag which the object must have; null for any
+   * @param contentLength length of the object
+   * @param byteRangeStart starting point
+   * @param length no. of bytes; must be within the object
+   * @return the data
+   * @throws IOException IO problems, including the object ending early
+   */
+  byte[] readRange(Path path,
+                   SwiftSegmentedObject segments,
+                   String etag,
+                   long contentLength,
+                   long byteRangeStart,
+                   int length) throws IOException {
+    byte[] data = new byte[length];
+    int total = 0;
+    while (total < length) {
+      long start = byteRangeStart + total;
+      int pieceLength = length - total;
+      if (segments != null) {
+        pieceLength = (int) Math.min(pieceLength,
+                                     segments.getSegmentEnd(start) - start);
+      }
+      InputStream in = getObject(path, segments, etag, contentLength, start,
+                                 pieceLength);
+      try {
+        int end = total + pieceLength;
+        while (total < end) {
+          int read = in.read(data, total, end - total);
+          if (read < 0) {
+            throw new SwiftException("Unexpected end of " + path + " at "
+                                     + (byteRangeStart + total) + ": expected "
+                                     + length + " bytes from "
+                                     + byteRangeStart);
+          }
+          total += read;
+        }
+      } finally {
+        in.close();
+      }
+    }
+    return data;
   }
 
   /**
@@ -252,12 +1599,74 @@ public class SwiftNativeFileSystemStore {
    * @throws IOException
    */
   public void createDirectory(Path path) throws IOException {
+    if (!directoryMarkers) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Not writing a marker for " + path);
+      }
+      return;
+    }
     innerCreateDirectory(toDirPath(path));
   }
 
+  /**
+   * Create a set of directories. Swift has no real hierarchy, so their
+   * markers may be written in any order: they are written concurrently
+   * in the marker pool.
+   *
+   * @param paths paths of the directories
+   * @throws IOException on a failure to create any of them, once all
+   * the others have been attempted
+   */
+  public void createDirectories(List<Path> paths) throws IOException {
+    if (paths.size() < 2 || !directoryMarkers) {
+      for (Path path : paths) {
+        createDirectory(path);
+      }
+      return;
+    }
+    List<Future<Void>> futures = new ArrayList<Future<Void>>(paths.size());
+    for (final Path path : paths) {
+      futures.add(getMarkerPool().submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          createDirectory(path);
+          return null;
+        }
+      }));
+    }
+    IOException failure = null;
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        futures.get(i).get();
+      } catch (InterruptedException e) {
+        for (Future<Void> future : futures) {
+          future.cancel(true);
+        }
+        Thread.currentThread().interrupt();
+        throw (IOException) new InterruptedIOException(
+          "Interrupted creating " + paths.get(i)).initCause(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (failure == null) {
+          failure = cause instanceof IOException
+                    ? (IOException) cause
+                    : new SwiftException("Failed to create " + paths.get(i),
+                                         cause);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
   private void innerCreateDirectory(SwiftObjectPath swiftObjectPath) throws
                                                                      IOException {
-    swiftRestClient.putRequest(swiftObjectPath);
+    try {
+      swiftRestClient.putRequest(swiftObjectPath);
+    } finally {
+      changed(swiftObjectPath);
+    }
   }
 
   private SwiftObjectPath toDirPath(Path path) throws
@@ -286,7 +1695,13 @@ public class SwiftNativeFileSystemStore {
   public boolean deleteObject(Path path) throws IOException {
     SwiftObjectPath swiftObjectPath = toObjectPath(path);
     if (!SwiftUtils.isRootDir(swiftObjectPath)) {
-      return swiftRestClient.delete(swiftObjectPath);
+      boolean deleted = false;
+      try {
+        deleted = swiftRestClient.delete(swiftObjectPath);
+      } finally {
+        deleted(swiftObjectPath, deleted);
+      }
+      return deleted;
     } else {
       if (LOG.isDebugEnabled()) {
         LOG.debug("Not deleting root directory entry");
@@ -304,6 +1719,10 @@ public class SwiftNativeFileSystemStore {
    * @throws IOException on a failure
    */
   public boolean rmdir(Path path) throws IOException {
+    if (!directoryMarkers) {
+      //there is no marker: the directory went with its last child
+      return true;
+    }
     return deleteObject(path);
   }
 
@@ -327,12 +1746,25 @@ public class SwiftNativeFileSystemStore {
    * is downgraded to an object does not exist return code
    */
   public boolean objectExists(SwiftObjectPath path) throws IOException {
+    long generation = 0;
     try {
+      if (metadataCache != null) {
+        if (metadataCache.getStatus(path) != null) {
+          return true;
+        }
+        generation = metadataCache.getGeneration();
+      }
       Header[] headers = swiftRestClient.headRequest(path,
-              SwiftRestClient.NEWEST);
+              readHeaders(isNewestNeeded(path)));
       //no headers is treated as a missing file
+      if (headers.length == 0 && metadataCache != null) {
+        metadataCache.putAbsent(path, generation);
+      }
       return headers.length != 0;
     } catch (FileNotFoundException e) {
+      if (metadataCache != null) {
+        metadataCache.putAbsent(path, generation);
+      }
       return false;
     }
   }
@@ -498,7 +1930,7 @@ public class SwiftNativeFileSystemStore {
           }
       }
       //now rename self. If missing, create the dest directory and warn
-      if (!SwiftUtils.isRootDir(srcObject)) {
+      if (directoryMarkers && !SwiftUtils.isRootDir(srcObject)) {
         try {
           copyThenDeleteObject(srcObject,
                                targetObjectPath);
@@ -531,7 +1963,11 @@ public class SwiftNativeFileSystemStore {
   public void copy(Path srcKey, Path dstKey) throws IOException {
     SwiftObjectPath srcObject = toObjectPath(srcKey);
     SwiftObjectPath destObject = toObjectPath(dstKey);
-    swiftRestClient.copyObject(srcObject, destObject);
+    try {
+      swiftRestClient.copyObject(srcObject, destObject);
+    } finally {
+      changed(destObject);
+    }
   }
 
 
@@ -548,10 +1984,20 @@ public class SwiftNativeFileSystemStore {
                                       SwiftObjectPath destObject) throws
                                                                   IOException {
     LOG.debug("Copying " + srcObject + " to " + destObject);
-    boolean copySucceeded = swiftRestClient.copyObject(srcObject, destObject);
+    boolean copySucceeded;
+    try {
+      copySucceeded = swiftRestClient.copyObject(srcObject, destObject);
+    } finally {
+      changed(destObject);
+    }
     if (copySucceeded) {
       //if the copy worked delete the original
-      swiftRestClient.delete(srcObject);
+      boolean deleted = false;
+      try {
+        deleted = swiftRestClient.delete(srcObject);
+      } finally {
+        deleted(srcObject, deleted);
+      }
     } else {
       throw new SwiftException("Copy of " + srcObject + " to "
                                + destObject + "failed");
@@ -560,11 +2006,17 @@ public class SwiftNativeFileSystemStore {
 
   /**
    * List a directory.
-   * This is O(n) for the number of objects in this path.
+   * This is O(n) for the number of objects in this path, but the status
+   * of each entry comes from the JSON listing itself; the only entries
+   * which are probed with a HEAD request are zero-byte objects,
+   * as these may be directory markers or large-file manifests
+   * -and only if <code>nameOnly</code> is false.
    *
    * @param path path to list
+   * @param recursive list everything under the path, not just the
+   * immediate children
    * @param nameOnly should the status be minimal (name) or should
-   * the (expensive) operation be made to ask for it.
+   * zero-byte entries be probed for their real status.
    * @return the filestats of all the entities in the directory -or
    * an empty list if no objects were found listed under that prefix
    * @throws IOException IO problems
@@ -572,91 +2024,199 @@ public class SwiftNativeFileSystemStore {
   private List<FileStatus> listDirectory(SwiftObjectPath path,
                                          boolean recursive,
                                          boolean nameOnly) throws IOException {
-    final byte[] bytes;
     final ArrayList<FileStatus> files = new ArrayList<FileStatus>();
+    RemoteIterator<FileStatus> statuses =
+      listDirectoryIterator(path, recursive, nameOnly);
+    while (statuses.hasNext()) {
+      files.add(statuses.next());
+    }
+    return files;
+  }
+
+  /**
+   * Iterate over the elements in a directory. The listing is fetched
+   * a page at a time as the iterator is consumed, so memory use is
+   * bounded by the page size rather than the size of the directory.
+   * The exception is a recursive listing when parallel listing is enabled:
+   * the key ranges of the directory are then listed concurrently, and the
+   * whole listing is fetched before the iterator is returned.
+   *
+   * @param path path to work with
+   * @param recursive list everything under the path, not just the
+   * immediate children
+   * @param nameOnly should the status be minimal and not make any calls
+   * to the system to determine attributes beyond the name?
+   * @return an iterator over the file statuses
+   * @throws IOException on IO problems
+   * @throws FileNotFoundException if the path is nonexistent
+   */
+  public RemoteIterator<FileStatus> listDirectoryIterator(Path path,
+                                                          boolean recursive,
+                                                          boolean nameOnly)
+    throws IOException {
+    return listDirectoryIterator(toDirPath(path), recursive, nameOnly);
+  }
+
+  private RemoteIterator<FileStatus> listDirectoryIterator(SwiftObjectPath path,
+                                                           boolean recursive,
+                                                           boolean nameOnly)
+    throws IOException {
+    SwiftListingIterator listing;
     try {
-      if (recursive) {
-      bytes = swiftRestClient.findObjectsByPrefix(path, null);
+      if (recursive && listingPool != null) {
+        listing = new SwiftListingIterator(this, path, nameOnly,
+          new SwiftParallelLister(this, listingPool, path, listingRangesAhead));
       } else {
-        bytes = swiftRestClient.listObjectsInDirectory(path);
+        listing = new SwiftListingIterator(this, path, recursive, nameOnly);
+      }
+      if (listing.hasNext()) {
+        return listing;
       }
     } catch (FileNotFoundException e) {
       if (LOG.isDebugEnabled()) {
         LOG.debug("" +
                 "File/Directory not found " + path);
       }
-      if (SwiftUtils.isRootDir(path)) {
-        return Collections.emptyList();
-      } else {
-        throw e;
-      }
-    } catch (SwiftInvalidResponseException e) {
-      //bad HTTP error code
-      if (e.getStatusCode() == HttpStatus.SC_NO_CONTENT) {
-        //this can come back on a root list if the container is empty
-        if (SwiftUtils.isRootDir(path)) {
-          return Collections.emptyList();
-        } else {
-          //NO_CONTENT returned on something other than the root directory;
-          //see if it is there, and convert to empty list or not found
-          //depending on whether the entry exists.
-          FileStatus stat = getObjectMetadata(getCorrectSwiftPath(path));
-
-          if (SwiftUtils.isDirectory(stat)) {
-            //it's an empty directory. state that
-            return Collections.emptyList();
-          } else {
-            //it's a file -return that as the status
-            files.add(stat);
-            return files;
-          }
-        }
-      } else {
-        //a different status code: rethrow immediately
+      if (!SwiftUtils.isRootDir(path)) {
         throw e;
       }
     }
 
-    //the byte array contains the files separated by newlines
-    final StringTokenizer tokenizer =
-            new StringTokenizer(new String(bytes), "\n");
+    //this can come back on a root list if the container is empty
+    final List<FileStatus> files = new ArrayList<FileStatus>(1);
+    if (!SwiftUtils.isRootDir(path)) {
+      //nothing under the path; see if it is there, and convert to
+      //empty list or not found depending on whether the entry exists.
+      FileStatus stat = getObjectMetadata(getCorrectSwiftPath(path));
 
-    Map<String, Boolean> names = new HashMap<String, Boolean>();
-    //insert own name as one to skip
-    names.put(path.getObject(), true);
-
-    while (tokenizer.hasMoreTokens()) {
-      String pathInSwift = tokenizer.nextToken();
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("entry: " + pathInSwift);
+      if (!SwiftUtils.isDirectory(stat)) {
+        //it's a file -return that as the status
+        files.add(stat);
       }
-      if (!pathInSwift.startsWith("/")) {
-        pathInSwift = "/".concat(pathInSwift);
+    }
+    return new StatusListIterator(files);
+  }
+
+  /**
+   * Get one page of the listing of a directory
+   * @param path directory to list
+   * @param recursive list everything under the path, not just the
+   * immediate children
+   * @param marker list entries after this name; may be null
+   * @param endMarker list entries before this name; may be null
+   * @param limit maximum number of entries in the page
+   * @return the entries
+   * @throws IOException on IO problems
+   * @throws FileNotFoundException if the container does not exist
+   */
+  List<SwiftObjectFileStatus> listPage(SwiftObjectPath path,
+                                       boolean recursive,
+                                       String marker,
+                                       String endMarker,
+                                       int limit) throws IOException {
+    //list under the directory prefix, so that siblings which share
+    //the name as a prefix ("dir2" for "dir") are not included
+    SwiftObjectPath prefix = toDirPrefix(path);
+    long generation = 0;
+    if (metadataCache != null) {
+      List<SwiftObjectFileStatus> page =
+        metadataCache.getPage(prefix, recursive, marker, endMarker, limit);
+      if (page != null) {
+        return page;
       }
-      Path childPath = new Path(pathInSwift);
-      if (!names.containsKey(pathInSwift)) {
-        names.put(pathInSwift, true);
-        names.put(pathInSwift + "/", true);
-        //For each entry, get the metadata.
-        try {
-          FileStatus metadata;
-          if (nameOnly) {
-            metadata = new SwiftFileStatus(0, false, 0, 0, 0, childPath);
-          } else {
-            metadata = getObjectMetadata(childPath);
-          }
-          files.add(metadata);
-        } catch (FileNotFoundException e) {
-          //get Object metadata failed
-          LOG.info( "Object " + childPath
-                    + " was deleted during directory listing");
-        }
-      } else {
-        //hash map
-        LOG.debug("skipping adding self to path");
+      generation = metadataCache.getGeneration();
+    }
+    List<SwiftObjectFileStatus> page =
+      swiftRestClient.findObjectsByPrefix(prefix, recursive ? null : "/",
+                                          marker, endMarker, limit);
+    if (metadataCache != null) {
+      metadataCache.putPage(prefix, recursive, marker, endMarker, limit, page,
+                            generation);
+    }
+    return page;
+  }
+
+  /**
+   * Get the number of entries to ask for in one page of a listing
+   * @return the listing page size
+   */
+  int getListingPageSize() {
+    return swiftRestClient.getListingPageSize();
+  }
+
+  /**
+   * Convert a listing entry to a file status.
+   * @param entry listing entry
+   * @param childPath path of the entry
+   * @param nameOnly should the status be minimal (name) or should
+   * zero-byte entries be probed for their real status.
+   * @return the status of the entry
+   * @throws IOException IO problems, including the entry having been
+   * deleted before a probe
+   */
+  FileStatus toFileStatus(SwiftObjectFileStatus entry,
+                          Path childPath,
+                          boolean nameOnly) throws IOException {
+    if (nameOnly) {
+      return new SwiftFileStatus(0, false, 0, 0, 0, childPath);
+    }
+    if (entry.isSubdir()) {
+      //a directory that exists only by having children
+      SwiftFileStatus status = new SwiftFileStatus(0, true, 0, 0, 0,
+                                 getCorrectSwiftPath(childPath));
+      status.setTypeExplicit(true);
+      return status;
+    }
+    if (entry.getBytes() == 0) {
+      //a directory marker, an empty file or the manifest of a
+      //partitioned file: only the object itself can tell
+      return getObjectMetadata(childPath);
+    }
+    return new SwiftFileStatus(entry.getBytes(), false, 0, 0L,
+                               parseListingTimestamp(entry.getLastModified()),
+                               getCorrectSwiftPath(childPath));
+  }
+
+  /**
+   * Parse the ISO-8601 UTC timestamp of a listing entry,
+   * such as <code>2013-02-04T10:39:14.123450</code>
+   * @param timestamp timestamp; may be null
+   * @return the time in milliseconds, or 0 if there was no timestamp
+   * @throws SwiftException if the timestamp cannot be parsed
+   */
+  static long parseListingTimestamp(String timestamp) throws SwiftException {
+    if (timestamp == null || timestamp.isEmpty()) {
+      return 0;
+    }
+    final SimpleDateFormat format = new SimpleDateFormat(LISTING_DATE_PATTERN);
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    try {
+      long millis = format.parse(timestamp).getTime();
+      int fraction = timestamp.indexOf('.');
+      if (fraction > 0) {
+        String digits = (timestamp.substring(fraction + 1) + "000").substring(0, 3);
+        millis += Integer.parseInt(digits);
       }
+      return millis;
+    } catch (ParseException e) {
+      throw new SwiftException("Failed to parse timestamp " + timestamp, e);
+    } catch (NumberFormatException e) {
+      throw new SwiftException("Failed to parse timestamp " + timestamp, e);
     }
-    return files;
+  }
+
+  /**
+   * Get the path of a directory with a trailing slash, for use as a
+   * listing prefix
+   * @param path directory path
+   * @return the path with a trailing slash
+   */
+  private static SwiftObjectPath toDirPrefix(SwiftObjectPath path) {
+    String object = path.getObject();
+    if (object.endsWith("/")) {
+      return path;
+    }
+    return new SwiftObjectPath(path.getContainer(), object + "/");
   }
 
   private Path getCorrectSwiftPath(Path path) throws
@@ -706,4 +2266,26 @@ public class SwiftNativeFileSystemStore {
     }
     return result;
   }
+
+  /**
+   * Iterator over a list of statuses which is already known
+   */
+  private static final class StatusListIterator
+    implements RemoteIterator<FileStatus> {
+    private final Iterator<FileStatus> statuses;
+
+    private StatusListIterator(List<FileStatus> statuses) {
+      this.statuses = statuses.iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return statuses.hasNext();
+    }
+
+    @Override
+    public FileStatus next() {
+      return statuses.next();
+    }
+  }
 }
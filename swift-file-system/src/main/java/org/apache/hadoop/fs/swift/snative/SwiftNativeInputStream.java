@@ -18,22 +18,90 @@
 
 package org.apache.hadoop.fs.swift.snative;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.fs.FSInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.fs.swift.exceptions.SwiftBadRequestException;
+import org.apache.hadoop.fs.swift.exceptions.SwiftException;
+import org.apache.hadoop.fs.swift.exceptions.SwiftObjectChangedException;
+import org.apache.hadoop.fs.swift.util.ByteBufferReadable;
+import org.apache.hadoop.fs.swift.util.SwiftFileRange;
+import org.apache.hadoop.fs.swift.util.VectoredReadable;
 
+import java.io.EOFException;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Wrapper for input stream
+ * <p/>
+ * The object is read as a sequence of ranged GET requests, each of the
+ * read-ahead range. Seeks are lazy: they only record the new position,
+ * and nothing is requested until the next read. That read carries on in
+ * the open request if the position lies a short way ahead within its
+ * range -skipping the bytes in between is cheaper than a new connection-
+ * and otherwise closes it and requests a range starting at the position.
+ * <p/>
+ * How large a range is requested depends on the input policy. Under the
+ * sequential policy it is the read-ahead range; under the random policy
+ * it is sized to the read, so that little is thrown away when the next
+ * read is somewhere else. The adaptive policy classifies every new
+ * request as continuing from the end of the previous one or as a jump,
+ * and reads randomly while at least half of the last few requests
+ * were jumps.
+ * <p/>
+ * If prefetching is enabled, sequential reads are instead served by a
+ * {@link SwiftPrefetcher}, which fetches several chunks ahead of the
+ * reader concurrently; reads under the random policy still go through
+ * a single ranged request.
+ * <p/>
+ * Positioned reads do not use or move the stream: each one makes its own
+ * ranged GET of the bytes asked for, without taking the stream's lock,
+ * so any number of threads can make them at the same time. Vectored
+ * reads likewise leave the stream alone: they are handed to a
+ * {@link SwiftVectoredReader}.
+ * <p/>
+ * Reads into a byte buffer go straight into the array behind a heap
+ * buffer. The HTTP client only reads from the socket into arrays, so
+ * data for a direct buffer passes through a small transfer array which
+ * the stream keeps for reuse.
+ * <p/>
+ * A read which fails part way -a connection reset, a truncated
+ * response- is resumed from the position reached with a new ranged
+ * request, up to the retry limit and with an exponential backoff.
+ * Every request carries an <code>If-Match</code> header with the ETag
+ * the object was opened with (or, for segments, the ETag each was
+ * listed with), so that resuming never mixes data of an object which
+ * has been overwritten: that fails with a
+ * {@link SwiftObjectChangedException} instead.
  */
-class SwiftNativeInputStream extends FSInputStream {
+class SwiftNativeInputStream extends FSInputStream
+  implements ByteBufferReadable, VectoredReadable {
+  private static final Log LOG = LogFactory.getLog(SwiftNativeInputStream.class);
 
   /**
-   * Default buffer size 64mb
+   * Smallest range requested under the random policy: {@value}
    */
-  private static final long BUFFER_SIZE = 64 * 1024 * 1024;
+  static final long MIN_RANDOM_RANGE = 64 * 1024;
+
+  /**
+   * Number of recent requests the adaptive policy looks at: {@value}
+   */
+  private static final int ACCESS_HISTORY = 4;
+
+  /**
+   * Size of the array through which data is read into direct buffers
+   */
+  static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
 
   /**
    * File nativeStore instance
@@ -46,7 +114,7 @@ class SwiftNativeInputStream extends FSInputStream {
   private FileSystem.Statistics statistics;
 
   /**
-   * Data input stream
+   * Data input stream; null if no request is open
    */
   private InputStream in;
 
@@ -56,61 +124,574 @@ class SwiftNativeInputStream extends FSInputStream {
   private final Path path;
 
   /**
-   * Current position
+   * Length of the object
+   */
+  private final long contentLength;
+
+  /**
+   * Size of the range requested by each GET
+   */
+  private final long readAheadRange;
+
+  /**
+   * Largest gap skipped by reading on in the open request
+   */
+  private final long forwardSkipLimit;
+
+  /**
+   * Input policy
+   */
+  private final SwiftInputPolicy policy;
+
+  /**
+   * Are ranges currently sized for random reads?
+   */
+  private boolean randomAccess;
+
+  /**
+   * Recent requests, one bit each, most recent lowest; set for a jump
+   */
+  private int accessHistory;
+
+  /**
+   * Prefetcher of sequential reads; null if prefetching is disabled
+   */
+  private final SwiftPrefetcher prefetcher;
+
+  /**
+   * Position after the last read; -1 before the first one
+   */
+  private long lastReadEnd = -1;
+
+  /**
+   * Current position: where the next read starts
    */
   private long pos = 0;
 
+  /**
+   * Position of the open request's stream
+   */
+  private long streamPos;
+
+  /**
+   * End (exclusive) of the range of the open request
+   */
+  private long rangeEnd;
+
+  /**
+   * Number of GET requests made
+   */
+  private int requestCount;
+
+  /**
+   * Number of seeks served by skipping forward in the open request
+   */
+  private int forwardSkipCount;
+
+  /**
+   * Number of requests made with sequential and with random ranges
+   */
+  private int sequentialRequestCount;
+  private int randomRequestCount;
+
+  /**
+   * Number of times the adaptive policy switched between the two
+   */
+  private int policySwitchCount;
+
+  /**
+   * Bytes received but not returned: skipped by forward seeks, or left
+   * unread in a range when its request was closed
+   */
+  private long bytesDiscarded;
+
+  private volatile boolean closed;
+
+  /**
+   * Number of positioned reads made
+   */
+  private final AtomicInteger positionedReadCount = new AtomicInteger();
+
+  /**
+   * Array through which data is read into direct buffers;
+   * created on first use
+   */
+  private byte[] transferBuffer;
+
+  /**
+   * Reader of vectored reads
+   */
+  private final SwiftVectoredReader vectoredReader;
+
+  /**
+   * Segments of a large object read from them directly; null if the
+   * object is read as a whole
+   */
+  private final SwiftSegmentedObject segments;
+
+  /**
+   * ETag the object must still have; null if not known
+   */
+  private final String etag;
+
+  /**
+   * Retry budget of each read, and the wait before its first retry
+   */
+  private final int retryLimit;
+  private final long retryInterval;
+
+  /**
+   * Number of times a failed read was resumed; updated by
+   * positioned reads without the lock
+   */
+  private final AtomicInteger retryCount = new AtomicInteger();
+
+  /**
+   * Create a stream. No request is made until the first read.
+   * @param storeNative store
+   * @param statistics statistics to update; may be null
+   * @param path object path
+   * @param contentLength length of the object
+   * @param policy input policy
+   */
   public SwiftNativeInputStream(SwiftNativeFileSystemStore storeNative,
                                 FileSystem.Statistics statistics,
-                                Path path)
-          throws IOException {
+                                Path path,
+                                long contentLength,
+                                SwiftInputPolicy policy) {
+    this(storeNative, statistics, path, contentLength, policy, null, null);
+  }
+
+  /**
+   * Create a stream of a large object which reads its segments directly.
+   * Sequential reads are served by a prefetcher at least as deep as the
+   * segment read depth, so several segments are read at once around
+   * segment boundaries and requests are made to the segments' servers
+   * in parallel.
+   * @param storeNative store
+   * @param statistics statistics to update; may be null
+   * @param path object path
+   * @param contentLength length of the object
+   * @param policy input policy
+   * @param segments segments of the object; null to read it as a whole
+   * @param etag ETag of the object, which every request requires it
+   * still to have; null to read whatever is there
+   */
+  SwiftNativeInputStream(SwiftNativeFileSystemStore storeNative,
+                         FileSystem.Statistics statistics,
+                         Path path,
+                         long contentLength,
+                         SwiftInputPolicy policy,
+                         SwiftSegmentedObject segments,
+                         String etag) {
     this.nativeStore = storeNative;
     this.statistics = statistics;
-    this.in = storeNative.getObject(path);
     this.path = path;
+    this.contentLength = contentLength;
+    this.readAheadRange = storeNative.getReadAheadRange();
+    this.forwardSkipLimit = storeNative.getSeekForwardSkip();
+    this.policy = policy;
+    this.randomAccess = policy == SwiftInputPolicy.random;
+    this.segments = segments;
+    this.etag = etag;
+    this.retryLimit = storeNative.getReadRetryLimit();
+    this.retryInterval = storeNative.getReadRetryInterval();
+    ExecutorService prefetchPool = storeNative.getPrefetchPool();
+    int prefetchDepth = storeNative.getPrefetchDepth();
+    if (segments != null
+        && storeNative.getSegmentReadDepth() > prefetchDepth) {
+      prefetchPool = storeNative.getReadPool();
+      prefetchDepth = storeNative.getSegmentReadDepth();
+    }
+    this.prefetcher = prefetchPool == null ? null
+      : new SwiftPrefetcher(storeNative, prefetchPool, path, contentLength,
+                            storeNative.getPrefetchChunkSize(),
+                            prefetchDepth, segments, etag);
+    this.vectoredReader =
+      new SwiftVectoredReader(storeNative, this, path, contentLength,
+                              segments, etag);
   }
 
   @Override
   public synchronized int read() throws IOException {
-    int result;
-    try {
-      result = in.read();
-    } catch (IOException e) {
-      seek(pos);
-      result = in.read();
+    byte[] b = new byte[1];
+    int result = read(b, 0, 1);
+    return result < 0 ? -1 : (b[0] & 0xff);
+  }
+
+  @Override
+  public synchronized int read(byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException("Invalid offset/length for read");
     }
-    if (result != -1) {
-      pos++;
+    verifyOpen();
+    if (len == 0) {
+      return 0;
     }
-    if (statistics != null && result != -1) {
-      statistics.incrementBytesRead(1);
+    if (pos >= contentLength) {
+      return -1;
+    }
+    classifyRead();
+    int result;
+    int retries = 0;
+    while (true) {
+      try {
+        result = readData(b, off, len);
+        break;
+      } catch (IOException e) {
+        //the connection may have been dropped: resume at the same
+        //position on a new one
+        try {
+          closeStream();
+        } catch (IOException closeFailure) {
+          LOG.debug("Failed to close " + path + ": " + closeFailure);
+        }
+        beforeRetry(e, retries++, pos);
+      }
+    }
+    if (result > 0) {
+      pos += result;
+      streamPos += result;
+      lastReadEnd = pos;
+      if (statistics != null) {
+        statistics.incrementBytesRead(result);
+      }
     }
     return result;
   }
 
+  /**
+   * Read into a byte buffer from the current position. A heap buffer is
+   * read into directly; a direct buffer through the transfer array.
+   * @param buf buffer to read into
+   * @return the number of bytes read, or -1 at the end of the file
+   * @throws IOException on a failure to read
+   */
   @Override
-  public synchronized int read(byte[] b, int off, int len) throws IOException {
+  public synchronized int read(ByteBuffer buf) throws IOException {
     int result;
-    result = in.read(b, off, len);
-    if (result > 0) {
-      pos += result;
+    if (buf.hasArray()) {
+      result = read(buf.array(), buf.arrayOffset() + buf.position(),
+                    buf.remaining());
+      if (result > 0) {
+        buf.position(buf.position() + result);
+      }
+    } else {
+      if (transferBuffer == null) {
+        transferBuffer = new byte[TRANSFER_BUFFER_SIZE];
+      }
+      result = read(transferBuffer, 0,
+                    Math.min(buf.remaining(), transferBuffer.length));
+      if (result > 0) {
+        buf.put(transferBuffer, 0, result);
+      }
+    }
+    return result;
+  }
+
+  private boolean isPrefetching() {
+    return prefetcher != null && !randomAccess;
+  }
+
+  private int readData(byte[] b, int off, int len) throws IOException {
+    if (isPrefetching()) {
+      //no ranged request is needed while prefetching
+      closeStream();
+      int result = prefetcher.read(pos, b, off, len);
+      if (prefetcher.isChunkEnd(pos + result)) {
+        //read through a chunk
+        recordAccess(false);
+      }
+      return result;
     }
-    if (statistics != null && result > 0) {
-      statistics.incrementBytesRead(result);
+    if (prefetcher != null) {
+      prefetcher.cancel();
     }
+    return readFromRange(b, off, len);
+  }
 
-    return result;
+  /**
+   * Before a read which cannot carry on from the data at hand, record
+   * whether it continues from the end of the previous read or jumps
+   * somewhere else. Under the adaptive policy this chooses the policy
+   * for the read.
+   */
+  private void classifyRead() {
+    boolean atHand;
+    if (isPrefetching()) {
+      atHand = prefetcher.isQueued(pos);
+    } else {
+      long gap = pos - streamPos;
+      atHand = in != null && pos < rangeEnd
+               && gap >= 0 && gap <= forwardSkipLimit;
+    }
+    if (!atHand && lastReadEnd >= 0) {
+      recordAccess(pos != lastReadEnd);
+    }
   }
 
   /**
-   * close the stream. After this the stream is not usable.
-   * This method is thread-safe and idempotent.
-   * @throws IOException on IO problems.
+   * Read from a position with a request of its own, leaving the
+   * position of the stream unchanged. This is not synchronized.
+   * @param position position to read from
+   * @param buffer buffer to read into
+   * @param offset offset in the buffer
+   * @param length number of bytes to read
+   * @return the number of bytes read, which is less than the length
+   * only at the end of the file, or -1 if the position is at or past
+   * the end
+   * @throws IOException on a failure to read
    */
   @Override
-  public synchronized void close() throws IOException {
+  public int read(long position, byte[] buffer, int offset, int length)
+    throws IOException {
+    if (offset < 0 || length < 0 || length > buffer.length - offset) {
+      throw new IndexOutOfBoundsException("Invalid offset/length for read");
+    }
+    verifyOpen();
+    if (position < 0) {
+      throw new EOFException("Cannot read from negative offset " + position);
+    }
+    if (length == 0) {
+      return 0;
+    }
+    if (position >= contentLength) {
+      return -1;
+    }
+    int toRead = (int) Math.min(length, contentLength - position);
+    positionedReadCount.incrementAndGet();
+    int total = 0;
+    int retries = 0;
+    //one request per segment spanned; a failed one is resumed where
+    //it stopped
+    while (total < toRead) {
+      long start = position + total;
+      int end = total + (int) Math.min(toRead - total,
+                                       segmentEnd(start) - start);
+      InputStream ranged = null;
+      try {
+        ranged = nativeStore.getObject(path, segments, etag, contentLength,
+                                       start, end - total);
+        while (total < end) {
+          int result = ranged.read(buffer, offset + total, end - total);
+          if (result < 0) {
+            throw new SwiftException("Unexpected end of " + path + " at "
+                                     + (position + total) + " of "
+                                     + contentLength + " bytes");
+          }
+          total += result;
+        }
+        ranged.close();
+      } catch (IOException e) {
+        IOUtils.closeStream(ranged);
+        beforeRetry(e, retries++, position + total);
+      }
+    }
+    if (statistics != null) {
+      statistics.incrementBytesRead(total);
+    }
+    return total;
+  }
+
+  /**
+   * Read the bytes at a position with a request of its own, leaving
+   * the position of the stream unchanged. This is not synchronized.
+   * @param position position to read from
+   * @param buffer buffer to read into
+   * @param offset offset in the buffer
+   * @param length number of bytes to read
+   * @throws EOFException if the file ends before all the bytes are read
+   * @throws IOException on a failure to read
+   */
+  @Override
+  public void readFully(long position, byte[] buffer, int offset, int length)
+    throws IOException {
+    if (length > 0 && position + length > contentLength) {
+      throw new EOFException("Cannot read " + length + " bytes at "
+                             + position + " of " + path + ": it is only "
+                             + contentLength + " bytes long");
+    }
+    read(position, buffer, offset, length);
+  }
+
+  /**
+   * Start reading a list of ranges, each merged group of them with a
+   * request of its own in the read pool. This is not synchronized
+   * and leaves the position of the stream unchanged.
+   * @param ranges ranges to read
+   * @throws IOException if the stream is closed
+   */
+  @Override
+  public void readVectored(List<? extends SwiftFileRange> ranges)
+    throws IOException {
+    verifyOpen();
+    vectoredReader.readVectored(ranges);
+  }
+
+  /**
+   * Read from the open request, first moving it to the current
+   * position or opening one there.
+   * @return the number of bytes read
+   * @throws IOException on a failure to read
+   */
+  private int readFromRange(byte[] b, int off, int len) throws IOException {
+    seekInStream(len);
+    int toRead = (int) Math.min(len, rangeEnd - streamPos);
+    int result = in.read(b, off, toRead);
+    if (result < 0) {
+      closeStream();
+      throw new SwiftException("Unexpected end of " + path + " at " + pos
+                               + " of " + contentLength + " bytes");
+    }
+    return result;
+  }
+
+  /**
+   * Make the open request's stream ready to read at the current
+   * position, reusing it where possible
+   * @param len length of the read about to be made
+   * @throws IOException on a failure to skip or to open a request
+   */
+  private void seekInStream(int len) throws IOException {
+    if (in != null && pos != streamPos) {
+      long gap = pos - streamPos;
+      if (gap > 0 && gap <= forwardSkipLimit && pos < rangeEnd) {
+        skipInStream(gap);
+        forwardSkipCount++;
+      } else {
+        closeStream();
+      }
+    }
+    if (in != null && streamPos >= rangeEnd) {
+      //range fully read
+      closeStream();
+    }
+    if (in == null) {
+      long range = randomAccess
+                   ? Math.min(Math.max(MIN_RANDOM_RANGE, len), readAheadRange)
+                   : readAheadRange;
+      long length = Math.min(Math.max(range, len), segmentEnd(pos) - pos);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Requesting " + path + " at " + pos + ": " + length
+                  + " bytes" + (randomAccess ? " (random)" : ""));
+      }
+      in = nativeStore.getObject(path, segments, etag, contentLength, pos,
+                                 length);
+      requestCount++;
+      if (randomAccess) {
+        randomRequestCount++;
+      } else {
+        sequentialRequestCount++;
+      }
+      streamPos = pos;
+      rangeEnd = pos + length;
+    }
+  }
+
+  /**
+   * Decide whether a failed read is to be resumed, and if so wait
+   * before it is. Failures which another request would only repeat
+   * -the end of the object, the object gone or changed- are not
+   * retried, nor is an interrupted read. Safe to call from the
+   * threads of a vectored read.
+   * @param e the failure
+   * @param retries number of retries of this read so far
+   * @param position position the read is to resume at
+   * @throws IOException the failure, if the read is not to be resumed
+   */
+  void beforeRetry(IOException e, int retries, long position)
+    throws IOException {
+    if (!isRetryable(e) || retries >= retryLimit) {
+      throw e;
+    }
+    retryCount.incrementAndGet();
+    long delay = retryInterval << Math.min(retries, 16);
+    LOG.info("Resuming read of " + path + " at " + position + " in "
+             + delay + " ms after " + e + " (retry " + (retries + 1)
+             + " of " + retryLimit + ")");
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Read failure", e);
+    }
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException interrupted) {
+        Thread.currentThread().interrupt();
+        throw (IOException) new InterruptedIOException(
+          "Interrupted before resuming read of " + path).initCause(e);
+      }
+    }
+  }
+
+  /**
+   * Can a read which failed be resumed with a new request?
+   * @param e the failure
+   * @return true if another request may succeed
+   */
+  static boolean isRetryable(IOException e) {
+    return !(e instanceof EOFException
+             || e instanceof FileNotFoundException
+             || e instanceof SwiftObjectChangedException
+             || e instanceof SwiftBadRequestException
+             || e instanceof InterruptedIOException);
+  }
+
+  /**
+   * Get the end of the data which a request starting at a position can
+   * cover: the end of its segment, or of the object if it is read
+   * as a whole
+   * @param start position
+   * @return the end
+   */
+  private long segmentEnd(long start) {
+    return segments == null ? contentLength : segments.getSegmentEnd(start);
+  }
+
+  /**
+   * Record whether a new source of data continues from the previous
+   * read, and under the adaptive policy choose the policy from the
+   * recent history
+   * @param jump true if the read is from anywhere else
+   */
+  private void recordAccess(boolean jump) {
+    accessHistory = ((accessHistory << 1) | (jump ? 1 : 0))
+                    & ((1 << ACCESS_HISTORY) - 1);
+    if (policy != SwiftInputPolicy.adaptive) {
+      return;
+    }
+    boolean random = 2 * Integer.bitCount(accessHistory) >= ACCESS_HISTORY;
+    if (random != randomAccess) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Switching to " + (random ? "random" : "sequential")
+                  + " reads of " + path);
+      }
+      randomAccess = random;
+      policySwitchCount++;
+    }
+  }
+
+  private void skipInStream(long gap) throws IOException {
+    byte[] skipBuffer = new byte[(int) Math.min(gap, 8192)];
+    while (gap > 0) {
+      int skipped = in.read(skipBuffer, 0, (int) Math.min(gap, skipBuffer.length));
+      if (skipped < 0) {
+        throw new SwiftException("Unexpected end of " + path + " at "
+                                 + streamPos);
+      }
+      gap -= skipped;
+      streamPos += skipped;
+      bytesDiscarded += skipped;
+    }
+  }
+
+  /**
+   * Close the open request, if any
+   * @throws IOException on a failure to release the connection
+   */
+  private void closeStream() throws IOException {
     try {
       if (in != null) {
+        bytesDiscarded += rangeEnd - streamPos;
         in.close();
       }
     } finally {
@@ -118,10 +699,40 @@ class SwiftNativeInputStream extends FSInputStream {
     }
   }
 
+  private void verifyOpen() throws SwiftException {
+    if (closed) {
+      throw new SwiftException("Input stream of " + path + " is closed");
+    }
+  }
+
+  /**
+   * close the stream. After this the stream is not usable.
+   * This method is thread-safe and idempotent.
+   * @throws IOException on IO problems.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed && LOG.isDebugEnabled()) {
+      LOG.debug("Closing " + this);
+    }
+    closed = true;
+    if (prefetcher != null) {
+      prefetcher.cancel();
+    }
+    closeStream();
+  }
+
+  /**
+   * Seek to a position. This makes no request: the position is
+   * used by the next read.
+   * @param targetPos position
+   * @throws EOFException if the position is negative
+   */
   @Override
   public synchronized void seek(long targetPos) throws IOException {
-    close();
-    in = nativeStore.getObject(path, targetPos, targetPos + BUFFER_SIZE);
+    if (targetPos < 0) {
+      throw new EOFException("Cannot seek to negative offset " + targetPos);
+    }
     this.pos = targetPos;
   }
 
@@ -134,4 +745,118 @@ class SwiftNativeInputStream extends FSInputStream {
   public boolean seekToNewSource(long targetPos) throws IOException {
     return false;
   }
-}
\ No newline at end of file
+
+  @Override
+  public synchronized int available() throws IOException {
+    verifyOpen();
+    long remaining = contentLength - pos;
+    return remaining <= 0 ? 0 : (int) Math.min(remaining, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Get the number of GET requests made
+   * @return the request count
+   */
+  synchronized int getRequestCount() {
+    return requestCount;
+  }
+
+  /**
+   * Get the number of seeks served by skipping forward in the open request
+   * @return the forward skip count
+   */
+  synchronized int getForwardSkipCount() {
+    return forwardSkipCount;
+  }
+
+  /**
+   * Get the number of positioned reads made
+   * @return the count
+   */
+  int getPositionedReadCount() {
+    return positionedReadCount.get();
+  }
+
+  /**
+   * Get the number of times a failed read was resumed
+   * @return the count
+   */
+  int getRetryCount() {
+    return retryCount.get();
+  }
+
+  /**
+   * Get the number of requests made by vectored reads
+   * @return the count
+   */
+  int getVectoredRequestCount() {
+    return vectoredReader.getRequestCount();
+  }
+
+  /**
+   * Is the stream currently requesting ranges sized for random reads?
+   * @return true if reading randomly
+   */
+  synchronized boolean isRandomAccess() {
+    return randomAccess;
+  }
+
+  /**
+   * Get the number of requests made with sequential read-ahead ranges
+   * @return the count
+   */
+  synchronized int getSequentialRequestCount() {
+    return sequentialRequestCount;
+  }
+
+  /**
+   * Get the number of requests made with ranges sized for random reads
+   * @return the count
+   */
+  synchronized int getRandomRequestCount() {
+    return randomRequestCount;
+  }
+
+  /**
+   * Get the number of times the adaptive policy switched policy
+   * @return the count
+   */
+  synchronized int getPolicySwitchCount() {
+    return policySwitchCount;
+  }
+
+  /**
+   * Get the number of bytes received but not returned
+   * @return the bytes skipped or left unread in closed requests
+   * or prefetched chunks
+   */
+  synchronized long getBytesDiscarded() {
+    return bytesDiscarded
+           + (prefetcher != null ? prefetcher.getBytesDiscarded() : 0);
+  }
+
+  /**
+   * Get the number of chunks prefetched
+   * @return the count
+   */
+  synchronized int getPrefetchChunkCount() {
+    return prefetcher != null ? prefetcher.getChunkCount() : 0;
+  }
+
+  @Override
+  public String toString() {
+    return "SwiftNativeInputStream " + path + " at " + pos
+           + " of " + contentLength + "; policy=" + policy
+           + " requests=" + requestCount
+           + " (sequential=" + sequentialRequestCount
+           + " random=" + randomRequestCount + ")"
+           + " switches=" + policySwitchCount
+           + " forward skips=" + forwardSkipCount
+           + " positioned reads=" + positionedReadCount.get()
+           + " retries=" + retryCount.get()
+           + " vectored requests=" + vectoredReader.getRequestCount()
+           + " prefetched chunks=" + getPrefetchChunkCount()
+           + " bytes discarded=" + getBytesDiscarded()
+           + (segments != null ? " read from " + segments : "");
+  }
+}
@@ -23,59 +23,161 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.swift.buffer.OutputBuffer;
+import org.apache.hadoop.fs.swift.buffer.OutputBufferFactory;
+import org.apache.hadoop.fs.swift.exceptions.SwiftConfigurationException;
 import org.apache.hadoop.fs.swift.exceptions.SwiftException;
+import org.apache.hadoop.fs.swift.http.SwiftProtocolConstants;
 
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 /**
- * Output stream, buffers data on local disk.
- * Writes to Swift on close() method
+ * Output stream, buffers data locally -in memory or on disk, as chosen
+ * by the store's buffer factory. Writes to Swift on close() method.
+ * <p/>
+ * Files larger than the partition size are uploaded as a sequence of
+ * parts. A part is handed to the store's upload pool as soon as it is
+ * complete, and the writer carries on filling the next part while it
+ * uploads. The number of parts in flight is limited, as each one holds
+ * a buffer; once the limit is reached, the writer blocks until a
+ * part has been uploaded. {@link #close()} waits for all the parts
+ * before writing the manifest.
+ * <p/>
+ * The checks of create() are deferred to the write: the stream waits
+ * for the parent directories, which are created in the background, and
+ * a file which must not replace an existing one is written with a
+ * conditional PUT.
  */
 class SwiftNativeOutputStream extends OutputStream {
-  private long filePartSize = 4768709000L; // files greater than 4.5Gb are divided into parts
+  /**
+   * files greater than 4.5Gb are divided into parts
+   */
+  public static final long DEFAULT_PARTITION_SIZE = 4768709000L;
+  public static final int DEFAULT_MAX_INFLIGHT_PARTS = 2;
+  private long filePartSize;
   private static final Log LOG =
     LogFactory.getLog(SwiftNativeOutputStream.class);
   private Configuration conf;
   private String key;
-  private File backupFile;
-  private OutputStream backupStream;
+  private final OutputBufferFactory bufferFactory;
+  private OutputBuffer buffer;
   private SwiftNativeFileSystemStore nativeStore;
   private boolean closed;
   private int partNumber;
   private long blockSize;
   private boolean partUpload = false;
 
+  /**
+   * May the file replace an existing object?
+   */
+  private final boolean overwrite;
+
+  /**
+   * Creation of the parent directories, running in the background;
+   * null if there is none to wait for
+   */
+  private Future<?> parentDirectories;
+
+  /**
+   * Pool to upload parts in; null to upload them in the writer's thread
+   */
+  private final ExecutorService uploadPool;
+
+  /**
+   * Permits for parts in flight
+   */
+  private final Semaphore inflightParts;
+
+  /**
+   * Uploads of parts which have been started
+   */
+  private final List<Future<Void>> partUploads = new ArrayList<Future<Void>>();
+
+  /**
+   * Set once the upload has failed: parts yet to start are skipped
+   */
+  private volatile boolean aborted;
+
+  /**
+   * Segments uploaded, by part number; guarded by itself
+   */
+  private final SortedMap<Integer, SwiftSegment> segments =
+    new TreeMap<Integer, SwiftSegment>();
+
   public SwiftNativeOutputStream(Configuration conf,
                                  SwiftNativeFileSystemStore nativeStore,
                                  String key) throws IOException {
+    this(conf, nativeStore, key, true, null);
+  }
+
+  /**
+   * Create an output stream whose checks are made when the file is
+   * written, rather than when it is created.
+   *
+   * @param conf configuration
+   * @param nativeStore store to write to
+   * @param key path of the file
+   * @param overwrite may the file replace an existing object? If not,
+   * the final PUT is made conditional on there being none
+   * @param parentDirectories creation of the parent directories, which
+   * must succeed before the file is written; null if there is none
+   * @throws IOException on a failure to set up the stream
+   */
+  public SwiftNativeOutputStream(Configuration conf,
+                                 SwiftNativeFileSystemStore nativeStore,
+                                 String key,
+                                 boolean overwrite,
+                                 Future<?> parentDirectories)
+    throws IOException {
+    this.overwrite = overwrite;
+    this.parentDirectories = parentDirectories;
     this.conf = conf;
     this.key = key;
-    this.backupFile = newBackupFile();
     this.nativeStore = nativeStore;
-    this.backupStream = new BufferedOutputStream(new FileOutputStream(backupFile));
+    OutputBufferFactory factory = nativeStore.getBufferFactory();
+    this.bufferFactory = factory != null ? factory : new OutputBufferFactory(conf);
     this.partNumber = 1;
     this.blockSize = 0;
-  }
-
-  private File newBackupFile() throws IOException {
-    File dir = new File(conf.get("hadoop.tmp.dir"));
-    if (!dir.mkdirs() && !dir.exists()) {
-      throw new SwiftException("Cannot create Swift buffer directory: " + dir);
+    this.filePartSize = conf.getLong(SwiftProtocolConstants.SWIFT_PARTITION_SIZE,
+                                     DEFAULT_PARTITION_SIZE);
+    if (filePartSize <= 0) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_PARTITION_SIZE
+        + ": " + filePartSize);
     }
-    File result = File.createTempFile("swift-output-", ".tmp", dir);
-    result.deleteOnExit();
-    return result;
+    int maxInflight = conf.getInt(SwiftProtocolConstants.SWIFT_UPLOAD_MAX_INFLIGHT,
+                                  DEFAULT_MAX_INFLIGHT_PARTS);
+    if (maxInflight < 1) {
+      throw new SwiftConfigurationException(
+        "Invalid value of " + SwiftProtocolConstants.SWIFT_UPLOAD_MAX_INFLIGHT
+        + ": " + maxInflight);
+    }
+    this.inflightParts = new Semaphore(maxInflight);
+    this.uploadPool = nativeStore.getUploadPool();
+    this.buffer = bufferFactory.create();
   }
 
   @Override
   public synchronized void flush() throws IOException {
-    backupStream.flush();
+    if (buffer != null) {
+      buffer.flush();
+    }
   }
 
   /**
@@ -95,29 +197,43 @@ class SwiftNativeOutputStream extends OutputStream {
     }
     //formally declare as closed.
     closed = true;
-    backupStream.close();
 
+    boolean success = false;
     try {
+      if (aborted) {
+        throw new SwiftException("Cannot complete the upload of " + key
+                                 + " after an earlier failure");
+      }
       if (partUpload) {
         partUpload();
-        nativeStore.createManifestForPartUpload(new Path(key));
+        waitForPartUploads();
+        List<SwiftSegment> uploaded;
+        synchronized (segments) {
+          uploaded = new ArrayList<SwiftSegment>(segments.values());
+        }
+        nativeStore.createManifestForPartUpload(new Path(key), uploaded,
+                                                overwrite);
       } else {
-        nativeStore.uploadFile(new Path(key),
-                               new FileInputStream(backupFile),
-                               backupFile.length());
+        awaitParentDirectories();
+        uploadFile(buffer);
       }
+      success = true;
     } finally {
-      if (!backupFile.delete()) {
-        LOG.warn("Could not delete " + backupFile);
+      if (!success) {
+        //no part may outlive the stream, holding its buffer
+        abortPartUploads();
+      }
+      if (buffer != null) {
+        buffer.release();
+        buffer = null;
       }
-      backupStream = null;
     }
   }
 
   @Override
   public synchronized void write(int b) throws IOException {
     verifyOpen();
-    backupStream.write(b);
+    buffer.write(b);
   }
 
   @Override
@@ -134,23 +250,219 @@ class SwiftNativeOutputStream extends OutputStream {
     }
 
     blockSize += len;
-    backupStream.write(b, off, len);
+    buffer.write(b, off, len);
   }
 
+  /**
+   * Hand the current buffer over as the next part, and start a
+   * new one. This blocks if the maximum number of parts is in flight.
+   * @throws IOException if an earlier part failed to upload, or
+   * on a failure to create the next buffer
+   */
   private synchronized void partUpload() throws IOException {
+    if (!partUpload) {
+      //parts are written before the manifest can be checked,
+      //so check before writing the first one
+      awaitParentDirectories();
+      if (!overwrite && nativeStore.objectExists(new Path(key))) {
+        throw new FileAlreadyExistsException("File already exists: " + key);
+      }
+    }
     partUpload = true;
-    backupStream.close();
-    nativeStore.uploadFilePart(new Path(key),
-                               partNumber,
-                               new FileInputStream(backupFile),
-                               backupFile.length());
-    backupFile.delete();
-    backupFile = newBackupFile();
-    backupStream = new BufferedOutputStream(new FileOutputStream(backupFile));
+    checkPartUploads();
+    final OutputBuffer partBuffer = buffer;
+    final int part = partNumber;
+    buffer = null;
+    if (uploadPool == null) {
+      try {
+        uploadFilePart(partBuffer, part);
+      } finally {
+        partBuffer.release();
+      }
+    } else {
+      acquireInflightPermit();
+      boolean submitted = false;
+      try {
+        partUploads.add(uploadPool.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            try {
+              if (!aborted) {
+                uploadFilePart(partBuffer, part);
+              }
+            } finally {
+              partBuffer.release();
+              inflightParts.release();
+            }
+            return null;
+          }
+        }));
+        submitted = true;
+      } catch (RejectedExecutionException e) {
+        aborted = true;
+        throw new SwiftException("Cannot upload part " + part + " of " + key
+                                 + ": the upload pool is shut down", e);
+      } finally {
+        if (!submitted) {
+          inflightParts.release();
+          partBuffer.release();
+        }
+      }
+    }
+    if (!closed) {
+      buffer = bufferFactory.create();
+    }
     blockSize = 0;
     partNumber++;
   }
 
+  private void uploadFile(OutputBuffer data) throws IOException {
+    InputStream in = data.getInputStream();
+    try {
+      nativeStore.uploadFile(new Path(key), in, data.length(), overwrite);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Upload a part and record its segment for the manifest
+   * @param data part data
+   * @param part part number
+   * @throws IOException on a failure to upload the part
+   */
+  private void uploadFilePart(OutputBuffer data, int part) throws IOException {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Uploading part " + part + " of " + key
+                + ": " + data);
+    }
+    InputStream in = data.getInputStream();
+    SwiftSegment segment;
+    try {
+      segment = nativeStore.uploadFilePart(new Path(key), part, in, data.length());
+    } finally {
+      in.close();
+    }
+    synchronized (segments) {
+      segments.put(part, segment);
+    }
+  }
+
+  /**
+   * Wait for the parent directories to be created, if that is still
+   * under way
+   * @throws IOException on a failure to create them
+   */
+  private void awaitParentDirectories() throws IOException {
+    if (parentDirectories == null) {
+      return;
+    }
+    try {
+      parentDirectories.get();
+      parentDirectories = null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (IOException) new InterruptedIOException(
+        "Interrupted waiting for the parent directories of " + key)
+        .initCause(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new SwiftException("Failed to create the parent directories of "
+                               + key, cause);
+    }
+  }
+
+  private void acquireInflightPermit() throws IOException {
+    try {
+      inflightParts.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (IOException) new InterruptedIOException(
+        "Interrupted waiting to upload a part of " + key).initCause(e);
+    }
+  }
+
+  /**
+   * Fail fast if any part has already failed to upload, dropping the
+   * uploads which have finished.
+   * @throws IOException the failure of the first failed part
+   */
+  private void checkPartUploads() throws IOException {
+    List<Future<Void>> finished = new ArrayList<Future<Void>>();
+    for (Future<Void> upload : partUploads) {
+      if (upload.isDone()) {
+        awaitPartUpload(upload);
+        finished.add(upload);
+      }
+    }
+    partUploads.removeAll(finished);
+  }
+
+  /**
+   * Wait for all outstanding part uploads to finish.
+   * @throws IOException the failure of the first failed part
+   */
+  private void waitForPartUploads() throws IOException {
+    boolean success = false;
+    try {
+      for (Future<Void> upload : partUploads) {
+        awaitPartUpload(upload);
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        abortPartUploads();
+      }
+      partUploads.clear();
+    }
+  }
+
+  /**
+   * Abandon the outstanding part uploads after a failure: parts which
+   * have not started are skipped, and those under way are waited for,
+   * so that every part buffer has been released on return. Their
+   * failures are not reported; the first failure already has been.
+   */
+  private void abortPartUploads() {
+    aborted = true;
+    try {
+      for (Future<Void> upload : partUploads) {
+        try {
+          upload.get();
+        } catch (ExecutionException e) {
+          LOG.debug("Abandoned upload of a part of " + key + " failed", e);
+        } catch (CancellationException e) {
+          //never ran
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      for (Future<Void> upload : partUploads) {
+        upload.cancel(false);
+      }
+    }
+    partUploads.clear();
+  }
+
+  private void awaitPartUpload(Future<Void> upload) throws IOException {
+    try {
+      upload.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (IOException) new InterruptedIOException(
+        "Interrupted waiting for the upload of " + key).initCause(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new SwiftException("Failed to upload a part of " + key, cause);
+    }
+  }
+
   /**
    * Partition size can be set for testing purposes.
    * @param filePartSize new partition size
@@ -162,12 +474,13 @@ class SwiftNativeOutputStream extends OutputStream {
   }
 
   /**
-   * Query the number of partitions written
-   * @return the of partitions already written to the remote FS
+   * Query the number of partitions written. Parts are uploaded in the
+   * background, so this includes parts still being uploaded.
+   * @return the number of partitions handed over for upload
    */
   @InterfaceAudience.Private
   @InterfaceStability.Unstable
   synchronized int getPartitionsWritten() {
     return partNumber - 1;
   }
-}
\ No newline at end of file
+}
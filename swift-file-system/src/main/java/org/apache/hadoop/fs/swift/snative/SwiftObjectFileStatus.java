@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.snative;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * One entry of a JSON container listing (<code>?format=json</code>).
+ * An entry is either an object -with a name, size, hash and modification
+ * time- or, in a delimited listing, a <code>subdir</code> pseudo-directory.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SwiftObjectFileStatus {
+
+  /**
+   * object name
+   */
+  private String name;
+
+  /**
+   * pseudo-directory name; only set in delimited listings
+   */
+  private String subdir;
+
+  /**
+   * object length
+   */
+  private long bytes;
+
+  /**
+   * MIME type of the object
+   */
+  private String contentType;
+
+  /**
+   * MD5 hash (ETag) of the object
+   */
+  private String hash;
+
+  /**
+   * last modified time, as an ISO-8601 UTC string
+   */
+  private String lastModified;
+
+  public SwiftObjectFileStatus() {
+  }
+
+  public SwiftObjectFileStatus(String name, long bytes, String contentType,
+                               String hash, String lastModified) {
+    this.name = name;
+    this.bytes = bytes;
+    this.contentType = contentType;
+    this.hash = hash;
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * @return object name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @param name object name
+   */
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return pseudo-directory name, or null if this entry is an object
+   */
+  public String getSubdir() {
+    return subdir;
+  }
+
+  /**
+   * @param subdir pseudo-directory name
+   */
+  public void setSubdir(String subdir) {
+    this.subdir = subdir;
+  }
+
+  /**
+   * @return object length
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @param bytes object length
+   */
+  public void setBytes(long bytes) {
+    this.bytes = bytes;
+  }
+
+  /**
+   * @return MIME type of the object
+   */
+  @JsonProperty("content_type")
+  public String getContentType() {
+    return contentType;
+  }
+
+  /**
+   * @param contentType MIME type of the object
+   */
+  @JsonProperty("content_type")
+  public void setContentType(String contentType) {
+    this.contentType = contentType;
+  }
+
+  /**
+   * @return MD5 hash (ETag) of the object
+   */
+  public String getHash() {
+    return hash;
+  }
+
+  /**
+   * @param hash MD5 hash (ETag) of the object
+   */
+  public void setHash(String hash) {
+    this.hash = hash;
+  }
+
+  /**
+   * @return last modified time, as an ISO-8601 UTC string
+   */
+  @JsonProperty("last_modified")
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @param lastModified last modified time, as an ISO-8601 UTC string
+   */
+  @JsonProperty("last_modified")
+  public void setLastModified(String lastModified) {
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * Is this entry a pseudo-directory from a delimited listing?
+   * @return true if the entry is a <code>subdir</code>
+   */
+  public boolean isSubdir() {
+    return subdir != null;
+  }
+
+  /**
+   * Get the path of the entry in the container: the object name or
+   * the subdir name
+   * @return the path of the entry
+   */
+  public String getEntryName() {
+    return isSubdir() ? subdir : name;
+  }
+
+  @Override
+  public String toString() {
+    return isSubdir() ? ("subdir " + subdir)
+                      : (name + " (" + bytes + " bytes, " + lastModified + ")");
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.swift.exceptions.SwiftException;
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
+import org.apache.hadoop.fs.swift.util.SwiftUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lists everything under a directory by listing ranges of the key space
+ * in parallel.
+ * <p/>
+ * Listing starts with a single range covering the whole directory.
+ * Each range is listed one page at a time using <code>marker</code>
+ * and <code>end_marker</code>. If a page comes back full, the range is
+ * dense, and the rest of it is split in two at a key between the last
+ * entry and the end of the range, picked from the run of names the page
+ * holds so that both halves hold entries; both halves are then listed
+ * concurrently, and are split again if they too are dense. Sparse
+ * listings therefore cost no more requests than a sequential listing,
+ * while large ones fan out across the pool.
+ * <p/>
+ * The ranges form a tree whose in-order traversal is the sorted listing,
+ * so merging the results is a matter of walking the tree, waiting for
+ * each range as it is reached. The walk hands out one page at a time,
+ * and at most a fixed number of ranges are listed ahead of it: beyond
+ * that, subranges are not submitted until the walk reaches them, so
+ * memory stays bounded however many objects there are. Listing tasks
+ * never wait on each other, so the pool cannot deadlock however small
+ * it is.
+ */
+class SwiftParallelLister {
+  private static final Log LOG = LogFactory.getLog(SwiftParallelLister.class);
+
+  /**
+   * Suffix making an end marker include the split key itself.
+   * Swift rejects object names containing NUL, so no name sorts between
+   * a key and the key followed by U+0001.
+   */
+  private static final String INCLUSIVE_SUFFIX = "\u0001";
+
+  private final SwiftNativeFileSystemStore store;
+  private final ExecutorService pool;
+  private final SwiftObjectPath path;
+  private final String prefix;
+  private final int pageSize;
+  private final int maxRanges;
+  private final Queue<Future<?>> submitted = new ConcurrentLinkedQueue<Future<?>>();
+
+  /**
+   * Ranges submitted whose pages the walk has not taken yet
+   */
+  private final AtomicInteger pendingCount = new AtomicInteger(0);
+
+  /**
+   * Ranges yet to be reached by the walk, the next one first
+   */
+  private final LinkedList<Range> toVisit = new LinkedList<Range>();
+  private boolean started;
+  private final AtomicInteger requestCount = new AtomicInteger(0);
+  private final AtomicInteger splitCount = new AtomicInteger(0);
+
+  /**
+   * Create a lister
+   * @param store store to list
+   * @param pool pool to run listing requests in
+   * @param path directory to list
+   * @param maxRanges number of ranges which may be listed ahead of
+   * the page last handed out
+   */
+  SwiftParallelLister(SwiftNativeFileSystemStore store,
+                      ExecutorService pool,
+                      SwiftObjectPath path,
+                      int maxRanges) {
+    this.store = store;
+    this.pool = pool;
+    this.path = path;
+    this.maxRanges = maxRanges;
+    this.pageSize = store.getListingPageSize();
+    String object = path.getObject();
+    if (object.startsWith("/")) {
+      object = object.substring(1);
+    }
+    if (!object.isEmpty() && !object.endsWith("/")) {
+      object = object + "/";
+    }
+    this.prefix = object;
+  }
+
+  /**
+   * Get the next page of the listing, in order. The first call
+   * starts the listing.
+   * @return the entries of the page, which may be empty, or null
+   * once the whole directory has been listed
+   * @throws IOException on a failure to list any range
+   */
+  List<SwiftObjectFileStatus> nextPage() throws IOException {
+    if (!started) {
+      started = true;
+      Range root = new Range(null, null);
+      pendingCount.incrementAndGet();
+      submit(root);
+      toVisit.add(root);
+    }
+    if (toVisit.isEmpty()) {
+      return null;
+    }
+    Range range = toVisit.removeFirst();
+    if (range.result == null) {
+      //deferred when it was split off
+      pendingCount.incrementAndGet();
+      submit(range);
+    }
+    RangeResult result;
+    boolean success = false;
+    try {
+      result = await(range.result);
+      success = true;
+    } finally {
+      if (!success) {
+        for (Future<?> future : submitted) {
+          future.cancel(true);
+        }
+      }
+    }
+    submitted.remove(range.result);
+    pendingCount.decrementAndGet();
+    for (int i = result.subranges.size() - 1; i >= 0; i--) {
+      toVisit.addFirst(result.subranges.get(i));
+    }
+    if (toVisit.isEmpty() && LOG.isDebugEnabled()) {
+      LOG.debug("Listed " + path + " in " + requestCount.get()
+                + " requests with " + splitCount.get() + " range splits");
+    }
+    return result.page;
+  }
+
+  /**
+   * List everything under the directory
+   * @return the entries, sorted by name
+   * @throws IOException on a failure to list any range
+   */
+  List<SwiftObjectFileStatus> list() throws IOException {
+    List<SwiftObjectFileStatus> entries = new ArrayList<SwiftObjectFileStatus>();
+    List<SwiftObjectFileStatus> page;
+    while ((page = nextPage()) != null) {
+      entries.addAll(page);
+    }
+    return entries;
+  }
+
+  /**
+   * Get the number of listing requests made
+   * @return the request count
+   */
+  int getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * Get the number of times a range was split
+   * @return the split count
+   */
+  int getSplitCount() {
+    return splitCount.get();
+  }
+
+  private void submit(final Range range) {
+    range.result = pool.submit(new Callable<RangeResult>() {
+      @Override
+      public RangeResult call() throws Exception {
+        return listRange(range);
+      }
+    });
+    submitted.add(range.result);
+  }
+
+  /**
+   * List the first page of a range, splitting the rest of it
+   * if the page is full.
+   * @param range range to list
+   * @return the page and any subranges, which have been submitted
+   * @throws IOException on a failure to list the range
+   */
+  private RangeResult listRange(Range range) throws IOException {
+    requestCount.incrementAndGet();
+    List<SwiftObjectFileStatus> page =
+      store.listPage(path, true, range.marker, range.endMarker, pageSize);
+    List<Range> subranges = new ArrayList<Range>(2);
+    if (page.size() >= pageSize) {
+      String first = page.get(0).getEntryName();
+      String last = page.get(page.size() - 1).getEntryName();
+      String split = SwiftUtils.splitKey(first, last, upperBound(range));
+      if (split == null) {
+        //no way to split the range: carry on sequentially
+        subranges.add(new Range(last, range.endMarker));
+      } else {
+        splitCount.incrementAndGet();
+        subranges.add(new Range(last, split + INCLUSIVE_SUFFIX));
+        subranges.add(new Range(split, range.endMarker));
+      }
+      for (Range subrange : subranges) {
+        if (pendingCount.incrementAndGet() <= maxRanges) {
+          submit(subrange);
+        } else {
+          //far enough ahead: leave it to the walk
+          pendingCount.decrementAndGet();
+        }
+      }
+    }
+    return new RangeResult(page, subranges);
+  }
+
+  /**
+   * Get the key to split a range below. For the final range, this
+   * is the end of the directory's own key space
+   * @param range range
+   * @return an upper bound of the keys in the range
+   */
+  private String upperBound(Range range) {
+    if (range.endMarker != null) {
+      return range.endMarker;
+    }
+    return prefix + (char) ('~' + 1);
+  }
+
+  private RangeResult await(Future<RangeResult> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw (IOException) new InterruptedIOException(
+        "Interrupted listing " + path).initCause(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new SwiftException("Failed to list " + path, cause);
+    }
+  }
+
+  /**
+   * A range of keys: everything after the marker and before the end
+   * marker. Null bounds are open.
+   */
+  private static final class Range {
+    private final String marker;
+    private final String endMarker;
+    private volatile Future<RangeResult> result;
+
+    private Range(String marker, String endMarker) {
+      this.marker = marker;
+      this.endMarker = endMarker;
+    }
+  }
+
+  /**
+   * The first page of a range, and the ranges covering the rest of it
+   */
+  private static final class RangeResult {
+    private final List<SwiftObjectFileStatus> page;
+    private final List<Range> subranges;
+
+    private RangeResult(List<SwiftObjectFileStatus> page,
+                        List<Range> subranges) {
+      this.page = page;
+      this.subranges = subranges;
+    }
+  }
+}
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.swift.exceptions.SwiftException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads an object ahead of a sequential reader by fetching the next
+ * chunks concurrently, each with a ranged GET of its own.
+ * <p/>
+ * The chunks in flight or waiting to be read form a queue which starts
+ * at the chunk holding the read position; it is topped up to its depth
+ * as the reader moves on, so memory use is bounded by the depth times
+ * the chunk size. A read outside the queued chunks -a backward seek,
+ * or a forward one past the last chunk- cancels them all and starts
+ * again from the new position.
+ * <p/>
+ * For a large object read from its segments, chunks end at segment
+ * boundaries, so that each is fetched from a single segment.
+ * <p/>
+ * This class is not thread safe; the input stream calls it while
+ * holding its own lock.
+ */
+class SwiftPrefetcher {
+  private static final Log LOG = LogFactory.getLog(SwiftPrefetcher.class);
+
+  private final SwiftNativeFileSystemStore store;
+  private final ExecutorService pool;
+  private final Path path;
+  private final long contentLength;
+  private final int chunkSize;
+  private final int depth;
+  private final SwiftSegmentedObject segments;
+  private final String etag;
+
+  /**
+   * Chunks in order of position
+   */
+  private final Deque<Chunk> chunks = new ArrayDeque<Chunk>();
+
+  private int chunkCount;
+  private int restartCount;
+  private long bytesDiscarded;
+
+  /**
+   * Create a prefetcher
+   * @param store store to read from
+   * @param pool pool to fetch chunks in
+   * @param path object path
+   * @param contentLength length of the object
+   * @param chunkSize size of a chunk
+   * @param depth number of chunks to keep queued
+   * @param segments segments of the object, which chunks do not span;
+   * null to read it as a whole
+   * @param etag ETag the object must have; null for any
+   */
+  SwiftPrefetcher(SwiftNativeFileSystemStore store,
+                  ExecutorService pool,
+                  Path path,
+                  long contentLength,
+                  int chunkSize,
+                  int depth,
+                  SwiftSegmentedObject segments,
+                  String etag) {
+    this.store = store;
+    this.pool = pool;
+    this.path = path;
+    this.contentLength = contentLength;
+    this.chunkSize = chunkSize;
+    this.depth = depth;
+    this.segments = segments;
+    this.etag = etag;
+  }
+
+  /**
+   * Read from a position, waiting for its chunk if it is still
+   * being fetched
+   * @param pos position; must be before the end of the object
+   * @param b buffer
+   * @param off offset in the buffer
+   * @param len maximum number of bytes to read
+   * @return the number of bytes read: at least one, and no more than
+   * remain in the chunk
+   * @throws IOException on a failure to fetch the chunk
+   */
+  int read(long pos, byte[] b, int off, int len) throws IOException {
+    //drop the chunks before the position
+    while (!chunks.isEmpty() && chunks.peekFirst().end() <= pos) {
+      discard(chunks.pollFirst(), pos);
+    }
+    if (!chunks.isEmpty() && chunks.peekFirst().start > pos) {
+      //backward seek
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Seek back to " + pos + " in " + path
+                  + ": cancelling prefetch");
+      }
+      cancel();
+    }
+    if (chunks.isEmpty()) {
+      if (chunkCount > 0) {
+        restartCount++;
+      }
+      chunks.add(fetch(pos));
+    }
+    fill();
+    Chunk chunk = chunks.peekFirst();
+    byte[] data = chunk.await();
+    int start = (int) (pos - chunk.start);
+    int toRead = Math.min(len, data.length - start);
+    System.arraycopy(data, start, b, off, toRead);
+    return toRead;
+  }
+
+  /**
+   * Top the queue up to its depth with the chunks which follow it
+   */
+  private void fill() {
+    while (chunks.size() < depth) {
+      long next = chunks.peekLast().end();
+      if (next >= contentLength) {
+        break;
+      }
+      chunks.add(fetch(next));
+    }
+  }
+
+  /**
+   * Start fetching a chunk
+   * @param start position of the chunk
+   * @return the chunk
+   */
+  private Chunk fetch(final long start) {
+    long end = segments == null ? contentLength
+                                : segments.getSegmentEnd(start);
+    final int length = (int) Math.min(chunkSize, end - start);
+    chunkCount++;
+    Future<byte[]> data = pool.submit(new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws Exception {
+        return store.readRange(path, segments, etag, contentLength, start,
+                               length);
+      }
+    });
+    return new Chunk(start, length, data);
+  }
+
+  /**
+   * Drop a chunk, counting what was not read of it
+   * @param chunk chunk
+   * @param pos read position, which is at or past the end of the chunk
+   * if it was read through
+   */
+  private void discard(Chunk chunk, long pos) {
+    if (chunk.data.isDone() && pos < chunk.end()) {
+      bytesDiscarded += chunk.end() - Math.max(pos, chunk.start);
+    } else if (!chunk.data.isDone()) {
+      bytesDiscarded += chunk.length;
+    }
+    chunk.data.cancel(true);
+  }
+
+  /**
+   * Can a read at a position be served from the queued chunks?
+   * @param pos position
+   * @return true if a queued chunk holds the position
+   */
+  boolean isQueued(long pos) {
+    return !chunks.isEmpty()
+           && pos >= chunks.peekFirst().start
+           && pos < chunks.peekLast().end();
+  }
+
+  /**
+   * Is a position the end of the chunk at the head of the queue?
+   * @param pos position
+   * @return true if the position is where the first chunk ends
+   */
+  boolean isChunkEnd(long pos) {
+    return !chunks.isEmpty() && chunks.peekFirst().end() == pos;
+  }
+
+  /**
+   * Cancel all the chunks
+   */
+  void cancel() {
+    for (Chunk chunk : chunks) {
+      discard(chunk, chunk.start);
+    }
+    chunks.clear();
+  }
+
+  /**
+   * Get the number of chunks fetched
+   * @return the count
+   */
+  int getChunkCount() {
+    return chunkCount;
+  }
+
+  /**
+   * Get the number of times the queue was cancelled and restarted
+   * at a new position
+   * @return the count
+   */
+  int getRestartCount() {
+    return restartCount;
+  }
+
+  /**
+   * Get the number of bytes fetched, or being fetched, but not read
+   * @return the count
+   */
+  long getBytesDiscarded() {
+    return bytesDiscarded;
+  }
+
+  /**
+   * A range of the object, fetched or being fetched
+   */
+  private final class Chunk {
+    private final long start;
+    private final int length;
+    private final Future<byte[]> data;
+
+    private Chunk(long start, int length, Future<byte[]> data) {
+      this.start = start;
+      this.length = length;
+      this.data = data;
+    }
+
+    private long end() {
+      return start + length;
+    }
+
+    private byte[] await() throws IOException {
+      try {
+        return data.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw (IOException) new InterruptedIOException(
+          "Interrupted reading " + path + " at " + start).initCause(e);
+      } catch (ExecutionException e) {
+        //start again next time rather than fail forever
+        cancel();
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new SwiftException("Failed to read " + path + " at " + start,
+                                 cause);
+      }
+    }
+  }
+}
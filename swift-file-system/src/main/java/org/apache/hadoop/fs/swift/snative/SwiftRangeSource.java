@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Source of ranges of one object, which a cache falls back to on a miss
+ */
+interface SwiftRangeSource {
+
+  /**
+   * Open a range of the object
+   * @param start starting point
+   * @param length no. of bytes; the stream may end earlier if
+   * the object does
+   * @return a stream which must be closed
+   * @throws IOException IO problems
+   */
+  InputStream open(long start, long length) throws IOException;
+}
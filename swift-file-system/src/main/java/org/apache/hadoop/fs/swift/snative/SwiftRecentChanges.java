@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The objects which this filesystem has recently written, copied over
+ * or deleted. Swift replicates changes asynchronously, so for a while
+ * after a change some replicas may still hold the old object, or none;
+ * reads of these objects must ask for the newest replica to see the
+ * change. Once the window has passed, any replica will do.
+ * <p/>
+ * The set is bounded: if it overflows, the oldest changes are forgotten
+ * first, which is no worse than their windows passing.
+ */
+class SwiftRecentChanges {
+
+  private final long window;
+
+  /**
+   * Expiry times of the changes, by object key
+   */
+  private final LinkedHashMap<String, Long> changes;
+
+  private final AtomicLong changeCount = new AtomicLong();
+  private final AtomicLong newestReadCount = new AtomicLong();
+  private final AtomicLong retryCount = new AtomicLong();
+
+  /**
+   * Create a set of changes
+   * @param window time in milliseconds for which a change is remembered
+   * @param maxEntries number of changes to remember
+   */
+  SwiftRecentChanges(long window, final int maxEntries) {
+    this.window = window;
+    changes = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Get the current time; tests may override this
+   * @return the time in milliseconds
+   */
+  long now() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * Record a change to an object
+   * @param path path of the object
+   */
+  synchronized void changed(SwiftObjectPath path) {
+    String key = SwiftMetadataCache.keyOf(path);
+    //re-insert so that the insertion order stays the expiry order
+    changes.remove(key);
+    changes.put(key, now() + window);
+    changeCount.incrementAndGet();
+  }
+
+  /**
+   * Has an object been changed within the window? A read of it then
+   * needs the newest replica
+   * @param path path of the object
+   * @return true if it has been changed recently
+   */
+  synchronized boolean isRecent(SwiftObjectPath path) {
+    String key = SwiftMetadataCache.keyOf(path);
+    Long expires = changes.get(key);
+    if (expires == null) {
+      return false;
+    }
+    if (expires <= now()) {
+      changes.remove(key);
+      return false;
+    }
+    newestReadCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Note that a read found nothing at a path and is being retried
+   * against the newest replica
+   */
+  void retried() {
+    retryCount.incrementAndGet();
+  }
+
+  /**
+   * Get the number of changes recorded
+   * @return the change count
+   */
+  long getChangeCount() {
+    return changeCount.get();
+  }
+
+  /**
+   * Get the number of reads which asked for the newest replica
+   * because of a recent change
+   * @return the count
+   */
+  long getNewestReadCount() {
+    return newestReadCount.get();
+  }
+
+  /**
+   * Get the number of reads retried against the newest replica
+   * after finding nothing
+   * @return the retry count
+   */
+  long getRetryCount() {
+    return retryCount.get();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "SwiftRecentChanges: " + changes.size() + " changes within "
+           + window + "ms; changes=" + changeCount
+           + " newest reads=" + newestReadCount + " retries=" + retryCount;
+  }
+}
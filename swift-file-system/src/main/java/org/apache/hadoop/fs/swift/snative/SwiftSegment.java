@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.snative;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+/**
+ * One segment of a Static Large Object, as it appears in the JSON
+ * manifest (<code>?multipart-manifest=put</code>): the full path of the
+ * segment, its ETag and its length. Swift checks each segment against
+ * these values when the manifest is written.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SwiftSegment {
+
+  /**
+   * segment path: /container/object
+   */
+  private String path;
+
+  /**
+   * MD5 hash (ETag) of the segment; null to skip the check
+   */
+  private String etag;
+
+  /**
+   * segment length
+   */
+  private long sizeBytes;
+
+  public SwiftSegment() {
+  }
+
+  public SwiftSegment(String path, String etag, long sizeBytes) {
+    this.path = path;
+    this.etag = etag;
+    this.sizeBytes = sizeBytes;
+  }
+
+  /**
+   * @return segment path: /container/object
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @param path segment path: /container/object
+   */
+  public void setPath(String path) {
+    this.path = path;
+  }
+
+  /**
+   * @return MD5 hash (ETag) of the segment
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * @param etag MD5 hash (ETag) of the segment
+   */
+  public void setEtag(String etag) {
+    this.etag = etag;
+  }
+
+  /**
+   * @return segment length
+   */
+  @JsonProperty("size_bytes")
+  public long getSizeBytes() {
+    return sizeBytes;
+  }
+
+  /**
+   * @param sizeBytes segment length
+   */
+  @JsonProperty("size_bytes")
+  public void setSizeBytes(long sizeBytes) {
+    this.sizeBytes = sizeBytes;
+  }
+
+  @Override
+  public String toString() {
+    return path + " (" + sizeBytes + " bytes, etag " + etag + ")";
+  }
+}
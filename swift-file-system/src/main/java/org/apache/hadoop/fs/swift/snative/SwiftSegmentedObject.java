@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The segments of a large object written as a manifest -Dynamic or
+ * Static- and where each lies in the object, so that ranges of the
+ * object can be read from the segments directly rather than through the
+ * manifest. Empty segments are left out.
+ */
+class SwiftSegmentedObject {
+
+  private final SwiftObjectPath[] paths;
+  private final String[] etags;
+
+  /**
+   * Start of each segment in the object, in ascending order
+   */
+  private final long[] starts;
+
+  private final long length;
+
+  /**
+   * Create an instance
+   * @param paths paths of the segments, in order
+   * @param sizes sizes of the segments
+   * @param etags ETags of the segments, any of which may be null;
+   * null if none are known
+   */
+  SwiftSegmentedObject(List<SwiftObjectPath> paths,
+                       List<Long> sizes,
+                       List<String> etags) {
+    List<SwiftObjectPath> nonEmpty = new ArrayList<SwiftObjectPath>(paths.size());
+    List<String> nonEmptyEtags = new ArrayList<String>(paths.size());
+    long[] offsets = new long[paths.size()];
+    long total = 0;
+    for (int i = 0; i < paths.size(); i++) {
+      long size = sizes.get(i);
+      if (size > 0) {
+        offsets[nonEmpty.size()] = total;
+        nonEmpty.add(paths.get(i));
+        nonEmptyEtags.add(etags != null ? etags.get(i) : null);
+        total += size;
+      }
+    }
+    this.paths = nonEmpty.toArray(new SwiftObjectPath[nonEmpty.size()]);
+    this.etags = nonEmptyEtags.toArray(new String[nonEmptyEtags.size()]);
+    this.starts = Arrays.copyOf(offsets, nonEmpty.size());
+    this.length = total;
+  }
+
+  /**
+   * Get the segment holding a position
+   * @param pos position in the object; must be before its end
+   * @return the index of the segment
+   * @throws IllegalArgumentException if the position is outside
+   * the object
+   */
+  int indexOf(long pos) {
+    if (pos < 0 || pos >= length) {
+      throw new IllegalArgumentException("Position " + pos
+                                         + " outside object of length "
+                                         + length);
+    }
+    int index = Arrays.binarySearch(starts, pos);
+    //not a segment start: the insertion point follows the segment
+    return index >= 0 ? index : -index - 2;
+  }
+
+  /**
+   * @param index segment index
+   * @return the path of the segment
+   */
+  SwiftObjectPath getPath(int index) {
+    return paths[index];
+  }
+
+  /**
+   * @param index segment index
+   * @return the ETag of the segment, or null if it is not known
+   */
+  String getEtag(int index) {
+    return etags[index];
+  }
+
+  /**
+   * @param index segment index
+   * @return the position in the object of the start of the segment
+   */
+  long getStart(int index) {
+    return starts[index];
+  }
+
+  /**
+   * @param index segment index
+   * @return the position in the object just past the end of the segment
+   */
+  long getEnd(int index) {
+    return index + 1 < starts.length ? starts[index + 1] : length;
+  }
+
+  /**
+   * Get the end of the segment holding a position
+   * @param pos position in the object
+   * @return the end of its segment
+   */
+  long getSegmentEnd(long pos) {
+    return getEnd(indexOf(pos));
+  }
+
+  /**
+   * @return the number of non-empty segments
+   */
+  int getSegmentCount() {
+    return paths.length;
+  }
+
+  /**
+   * @return the total length of the segments
+   */
+  long getLength() {
+    return length;
+  }
+
+  @Override
+  public String toString() {
+    return paths.length + " segments of " + length + " bytes";
+  }
+}
@@ -0,0 +1,604 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.swift.exceptions.SwiftException;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.MD5Hash;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of blocks of objects shared by all the processes on a node,
+ * held in files under a shared directory which are read through memory
+ * mappings -so the blocks are in the page cache once, however many
+ * task JVMs read them.
+ * <p/>
+ * The directory holds one file per block, named by the hash of its
+ * object, ETag and index, and a small index file, itself memory mapped
+ * by every process. The index is set associative: the hash of a block
+ * picks a set of {@link #WAYS} slots, and a block is cached if one of
+ * them holds its hash. Each slot records the hash, length and time of
+ * last access of its block. A new block replaces the least recently
+ * used block of its set, so the cache holds at most as many blocks as
+ * there are slots.
+ * <p/>
+ * Readers take no locks: each slot carries a sequence number which is
+ * odd while the slot is being written, and a reader retries until it
+ * sees the same even number before and after reading the slot. A slot
+ * which stays odd for {@link #MAX_SPINS} attempts -its writer may have
+ * died- is treated as a miss, and the next writer of the set, which
+ * holds its file lock, rounds the sequence up to even. Block files are
+ * written under a temporary name and renamed into place before the slot
+ * is written, so they are complete whenever they are visible; a reader
+ * which loses a race with an eviction finds the file gone, or keeps
+ * reading a mapping of the deleted file, and either way gets correct
+ * data. Writers of a set hold an exclusive lock on its region of the
+ * index file, so that writers in different processes do not replace
+ * each other's blocks.
+ */
+class SwiftSharedCache {
+  private static final Log LOG = LogFactory.getLog(SwiftSharedCache.class);
+
+  /**
+   * Number of slots in a set: {@value}
+   */
+  static final int WAYS = 4;
+
+  private static final int MAGIC = 0x53574643;
+  private static final int HEADER_SIZE = 16;
+
+  /**
+   * A slot is four longs: sequence, hash, length, last access
+   */
+  private static final int SLOT_SIZE = 32;
+  private static final int SEQUENCE = 0;
+  private static final int HASH = 8;
+  private static final int LENGTH = 16;
+  private static final int ACCESS = 24;
+
+  /**
+   * Number of times a reader retries a slot being written before
+   * treating it as a miss: {@value}
+   */
+  static final int MAX_SPINS = 1000;
+
+  private static final String BLOCK_SUFFIX = ".blk";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /**
+   * Number of block mappings each process keeps open: {@value}
+   */
+  private static final int MAX_MAPPINGS = 32;
+
+  /**
+   * The caches open in this process, by directory and geometry
+   */
+  private static final Map<String, SwiftSharedCache> CACHES =
+    new HashMap<String, SwiftSharedCache>();
+
+  private final File dir;
+  private final int sets;
+  private final int blockSize;
+  private final RandomAccessFile indexFile;
+  private final MappedByteBuffer index;
+
+  /**
+   * Locks of the sets within this process; file locks are held
+   * by the process, so they do not exclude its own threads
+   */
+  private final Object[] setLocks;
+
+  /**
+   * Open mappings of blocks, by hash
+   */
+  private final LinkedHashMap<Long, ByteBuffer> mappings =
+    new LinkedHashMap<Long, ByteBuffer>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, ByteBuffer> eldest) {
+        return size() > MAX_MAPPINGS;
+      }
+    };
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * Open the cache in a directory, creating it if need be. Caches with
+   * different geometries are kept in different subdirectories.
+   * Within a process, caches are to be got through
+   * {@link #get(File, int, int)}.
+   * @param parent shared directory
+   * @param slots number of blocks to hold; rounded up to a whole
+   * number of sets
+   * @param blockSize size of a block
+   * @throws IOException if the directory or index cannot be set up
+   */
+  SwiftSharedCache(File parent, int slots, int blockSize) throws IOException {
+    this.sets = (slots + WAYS - 1) / WAYS;
+    this.blockSize = blockSize;
+    this.dir = new File(parent, geometry(slots, blockSize));
+    if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+      throw new SwiftException("Cannot create cache directory " + dir);
+    }
+    setLocks = new Object[sets];
+    for (int i = 0; i < sets; i++) {
+      setLocks[i] = new Object();
+    }
+    long indexSize = HEADER_SIZE + (long) sets * WAYS * SLOT_SIZE;
+    indexFile = new RandomAccessFile(new File(dir, "index"), "rw");
+    boolean success = false;
+    try {
+      FileChannel channel = indexFile.getChannel();
+      //the first process to get here writes the header
+      FileLock lock = channel.lock();
+      try {
+        if (indexFile.length() < indexSize) {
+          indexFile.setLength(indexSize);
+          indexFile.seek(0);
+          indexFile.writeInt(MAGIC);
+          indexFile.writeInt(sets);
+          indexFile.writeInt(blockSize);
+        } else {
+          indexFile.seek(0);
+          if (indexFile.readInt() != MAGIC || indexFile.readInt() != sets
+              || indexFile.readInt() != blockSize) {
+            throw new SwiftException("Not a cache index: "
+                                     + new File(dir, "index"));
+          }
+        }
+      } finally {
+        lock.release();
+      }
+      index = channel.map(FileChannel.MapMode.READ_WRITE, 0, indexSize);
+      success = true;
+    } finally {
+      if (!success) {
+        indexFile.close();
+      }
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Opened " + this);
+    }
+  }
+
+  /**
+   * Get the cache of a directory shared by every filesystem of this
+   * process, opening it on first use. File locks are held by the whole
+   * process, so two caches of one directory in a process would fail to
+   * lock the index.
+   * @param parent shared directory
+   * @param slots number of blocks to hold
+   * @param blockSize size of a block
+   * @return the cache
+   * @throws IOException if the directory or index cannot be set up
+   */
+  static SwiftSharedCache get(File parent, int slots, int blockSize)
+    throws IOException {
+    //key on the directory the cache opens, as slot counts are rounded
+    String key = parent.getCanonicalPath() + File.separator
+                 + geometry(slots, blockSize);
+    synchronized (CACHES) {
+      SwiftSharedCache cache = CACHES.get(key);
+      if (cache == null) {
+        cache = new SwiftSharedCache(parent, slots, blockSize);
+        CACHES.put(key, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Name the subdirectory of a geometry, with the slot count
+   * rounded up to a whole number of sets
+   * @param slots number of blocks to hold
+   * @param blockSize size of a block
+   * @return the name of the subdirectory
+   */
+  private static String geometry(int slots, int blockSize) {
+    return blockSize + "-" + (slots + WAYS - 1) / WAYS * WAYS;
+  }
+
+  /**
+   * Open a range of an object, reading the blocks it covers from the
+   * cache and fetching those which are missing.
+   * @param object name of the object, unique across stores
+   * @param etag ETag of the object
+   * @param objectLength length of the object; blocks fetched short of it
+   * are not cached
+   * @param start starting point
+   * @param length no. of bytes; the stream ends earlier if the object does
+   * @param source source of blocks which are not cached
+   * @return a stream which must be closed
+   */
+  InputStream open(String object,
+                   String etag,
+                   long objectLength,
+                   long start,
+                   long length,
+                   SwiftRangeSource source) {
+    return new SharedRangeStream(object + '\u0000' + etag, objectLength,
+                                 start, Math.min(start + length, objectLength),
+                                 source);
+  }
+
+  int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * Get the number of blocks the cache holds at most
+   * @return the slot count
+   */
+  int getSlotCount() {
+    return sets * WAYS;
+  }
+
+  /**
+   * Get the number of blocks this process served from the cache
+   * @return the hit count
+   */
+  long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Get the number of blocks this process fetched from the store
+   * @return the miss count
+   */
+  long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Get the number of blocks this process evicted
+   * @return the eviction count
+   */
+  long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return "SwiftSharedCache in " + dir + ": " + getSlotCount() + " blocks of "
+           + blockSize + " bytes; hits=" + hitCount + " misses=" + missCount
+           + " evictions=" + evictionCount;
+  }
+
+  /**
+   * Hash a block; 0 marks an empty slot, so is never returned
+   */
+  private static long hashOf(String key, long block) {
+    byte[] digest = MD5Hash.digest(key + '#' + block).getDigest();
+    long hash = ByteBuffer.wrap(digest).getLong();
+    return hash == 0 ? 1 : hash;
+  }
+
+  private int setOf(long hash) {
+    return (int) ((hash & Long.MAX_VALUE) % sets);
+  }
+
+  private static int slotOffset(int slot) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  private File fileOf(long hash) {
+    return new File(dir, Long.toHexString(hash) + BLOCK_SUFFIX);
+  }
+
+  /**
+   * Find the slot holding a block, without locking
+   * @param hash hash of the block
+   * @return the length of the block, or -1 if it is not cached
+   */
+  private long lookup(long hash) {
+    int first = setOf(hash) * WAYS;
+    for (int slot = first; slot < first + WAYS; slot++) {
+      int offset = slotOffset(slot);
+      long length = readSlot(offset, hash);
+      if (length >= 0) {
+        index.putLong(offset + ACCESS, System.currentTimeMillis());
+        return length;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Read a slot consistently
+   * @param offset offset of the slot
+   * @param hash hash to match
+   * @return the length of the block if the slot holds it, else -1,
+   * which includes a slot left being written for too long
+   */
+  private long readSlot(int offset, long hash) {
+    for (int spin = 0; spin < MAX_SPINS; spin++) {
+      long sequence = index.getLong(offset + SEQUENCE);
+      if ((sequence & 1) != 0) {
+        //being written
+        Thread.yield();
+        continue;
+      }
+      long slotHash = index.getLong(offset + HASH);
+      long length = index.getLong(offset + LENGTH);
+      if (index.getLong(offset + SEQUENCE) == sequence) {
+        return slotHash == hash ? length : -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Map a cached block
+   * @param hash hash of the block
+   * @return the mapping, or null if the block is not cached
+   * @throws IOException on a failure to map the file
+   */
+  private ByteBuffer map(long hash) throws IOException {
+    long length = lookup(hash);
+    if (length < 0) {
+      return null;
+    }
+    synchronized (mappings) {
+      ByteBuffer mapping = mappings.get(hash);
+      if (mapping != null) {
+        return mapping.duplicate();
+      }
+    }
+    RandomAccessFile file;
+    try {
+      file = new RandomAccessFile(fileOf(hash), "r");
+    } catch (FileNotFoundException e) {
+      //evicted since the lookup
+      return null;
+    }
+    try {
+      if (file.length() != length) {
+        return null;
+      }
+      MappedByteBuffer mapping =
+        file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+      synchronized (mappings) {
+        mappings.put(hash, mapping);
+      }
+      return mapping.duplicate();
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Fetch a block into the cache
+   * @param hash hash of the block
+   * @param source source of the data
+   * @param start start of the block in the object
+   * @param objectLength length of the object
+   * @return a mapping of the new block
+   * @throws IOException on a failure to fetch or store the block,
+   * including the source ending before the block does
+   */
+  private ByteBuffer fetch(long hash,
+                           SwiftRangeSource source,
+                           long start,
+                           long objectLength) throws IOException {
+    File temp = File.createTempFile(Long.toHexString(hash), TEMP_SUFFIX, dir);
+    try {
+      InputStream in = source.open(start, blockSize);
+      OutputStream out = new FileOutputStream(temp);
+      try {
+        IOUtils.copyBytes(in, out, 64 * 1024, false);
+      } finally {
+        IOUtils.closeStream(out);
+        in.close();
+      }
+      long expected = Math.min(blockSize, objectLength - start);
+      if (temp.length() != expected) {
+        //a truncated response must not be shared with other readers
+        throw new SwiftException("Fetched " + temp.length() + " bytes of "
+                                 + "the block at " + start + " of "
+                                 + Long.toHexString(hash) + " instead of "
+                                 + expected);
+      }
+      RandomAccessFile file = new RandomAccessFile(temp, "r");
+      MappedByteBuffer mapping;
+      try {
+        mapping = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                                        file.length());
+      } finally {
+        file.close();
+      }
+      publish(hash, temp, mapping.limit());
+      synchronized (mappings) {
+        mappings.put(hash, mapping);
+      }
+      return mapping.duplicate();
+    } finally {
+      //only still there if another process published the block first
+      temp.delete();
+    }
+  }
+
+  /**
+   * Move a block file into place and record it in the index, replacing
+   * the least recently used block of its set
+   * @param hash hash of the block
+   * @param temp file holding the block
+   * @param length length of the block
+   * @throws IOException on a failure to lock the index
+   */
+  private void publish(long hash, File temp, long length) throws IOException {
+    int set = setOf(hash);
+    int first = set * WAYS;
+    synchronized (setLocks[set]) {
+      FileLock lock = indexFile.getChannel().lock(slotOffset(first),
+                                                  WAYS * SLOT_SIZE, false);
+      try {
+        int victim = first;
+        long oldest = Long.MAX_VALUE;
+        for (int slot = first; slot < first + WAYS; slot++) {
+          int offset = slotOffset(slot);
+          long slotHash = index.getLong(offset + HASH);
+          if (slotHash == hash) {
+            if ((index.getLong(offset + SEQUENCE) & 1) == 0) {
+              //published by another process meanwhile
+              return;
+            }
+            //left being written: rewrite it in place
+            victim = slot;
+            break;
+          }
+          long access = slotHash == 0 ? 0 : index.getLong(offset + ACCESS);
+          if (access < oldest) {
+            oldest = access;
+            victim = slot;
+          }
+        }
+        int offset = slotOffset(victim);
+        long evicted = index.getLong(offset + HASH);
+        //readers of the evicted block find its file gone and miss
+        if (evicted != 0 && evicted != hash) {
+          fileOf(evicted).delete();
+          evictionCount.incrementAndGet();
+        }
+        if (!temp.renameTo(fileOf(hash))) {
+          LOG.debug("Failed to rename " + temp + " to " + fileOf(hash));
+          hash = 0;
+        }
+        long sequence = index.getLong(offset + SEQUENCE);
+        if ((sequence & 1) != 0) {
+          //left odd by a writer which died; we hold the lock of the set
+          sequence++;
+        }
+        index.putLong(offset + SEQUENCE, sequence + 1);
+        index.putLong(offset + HASH, hash);
+        index.putLong(offset + LENGTH, length);
+        index.putLong(offset + ACCESS, System.currentTimeMillis());
+        index.putLong(offset + SEQUENCE, sequence + 2);
+      } finally {
+        lock.release();
+      }
+    }
+  }
+
+  /**
+   * Stream of a range of an object, mapping the blocks it spans as
+   * it reaches them
+   */
+  private final class SharedRangeStream extends InputStream {
+    private final String key;
+    private final long objectLength;
+    private final long end;
+    private final SwiftRangeSource source;
+    private long pos;
+    private ByteBuffer block;
+    private boolean lastBlock;
+    private boolean closed;
+
+    private SharedRangeStream(String key, long objectLength, long start,
+                              long end, SwiftRangeSource source) {
+      this.key = key;
+      this.objectLength = objectLength;
+      this.pos = start;
+      this.end = end;
+      this.source = source;
+    }
+
+    /**
+     * Map the block holding the current position, if need be
+     * @return false if the end of the range or object has been reached
+     * @throws IOException on a failure to fetch the block
+     */
+    private boolean nextBlock() throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      if (pos >= end) {
+        return false;
+      }
+      if (block != null && block.hasRemaining()) {
+        return true;
+      }
+      if (block != null && lastBlock) {
+        return false;
+      }
+      long index = pos / blockSize;
+      long hash = hashOf(key, index);
+      ByteBuffer mapping = map(hash);
+      if (mapping != null) {
+        hitCount.incrementAndGet();
+      } else {
+        missCount.incrementAndGet();
+        mapping = fetch(hash, source, index * blockSize, objectLength);
+      }
+      lastBlock = mapping.limit() < blockSize;
+      int offset = (int) (pos - index * blockSize);
+      if (offset >= mapping.limit()) {
+        //past the end of the object
+        block = null;
+        return false;
+      }
+      mapping.position(offset);
+      block = mapping;
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      int read = read(b, 0, 1);
+      return read < 0 ? -1 : (b[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!nextBlock()) {
+        return -1;
+      }
+      int read = (int) Math.min(Math.min(len, block.remaining()), end - pos);
+      block.get(b, off, read);
+      pos += read;
+      return read;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      block = null;
+    }
+  }
+}
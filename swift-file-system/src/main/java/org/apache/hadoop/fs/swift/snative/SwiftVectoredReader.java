@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.swift.util.SwiftFileRange;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads many ranges of an object at once.
+ * <p/>
+ * The ranges are sorted by offset and merged into groups: a range joins
+ * the group before it if the gap between them is no more than the
+ * minimum seek size and the group stays within the maximum merged size.
+ * Each group is fetched by one ranged GET in the store's read pool -or,
+ * for a large object read from its segments, one for each segment the
+ * group spans- and each range is given a future of its own slice of the
+ * group's data. A group whose request fails is fetched again, with the
+ * retry limit and backoff of the stream's own reads.
+ * <p/>
+ * The reader holds no lock and does not touch the position of the
+ * stream it reads for, so sequential reads can carry on meanwhile.
+ */
+class SwiftVectoredReader {
+  private static final Log LOG = LogFactory.getLog(SwiftVectoredReader.class);
+
+  private static final Comparator<SwiftFileRange> BY_OFFSET =
+    new Comparator<SwiftFileRange>() {
+      @Override
+      public int compare(SwiftFileRange r1, SwiftFileRange r2) {
+        return r1.getOffset() < r2.getOffset() ? -1
+          : r1.getOffset() == r2.getOffset() ? 0 : 1;
+      }
+    };
+
+  private final SwiftNativeFileSystemStore store;
+  private final SwiftNativeInputStream stream;
+  private final Path path;
+  private final long contentLength;
+  private final SwiftSegmentedObject segments;
+  private final String etag;
+  private final AtomicInteger requestCount = new AtomicInteger();
+
+  /**
+   * Create a reader
+   * @param store store to read from
+   * @param stream stream whose retry policy the reads follow
+   * @param path object path
+   * @param contentLength length of the object
+   * @param segments segments of the object; null to read it as a whole
+   * @param etag ETag the object must have; null for any
+   */
+  SwiftVectoredReader(SwiftNativeFileSystemStore store,
+                      SwiftNativeInputStream stream,
+                      Path path,
+                      long contentLength,
+                      SwiftSegmentedObject segments,
+                      String etag) {
+    this.store = store;
+    this.stream = stream;
+    this.path = path;
+    this.contentLength = contentLength;
+    this.segments = segments;
+    this.etag = etag;
+  }
+
+  /**
+   * Start reading the ranges. A range past the end of the object
+   * is given a future which fails with an {@link EOFException}.
+   * @param ranges ranges to read
+   * @throws IllegalArgumentException if a range has a negative offset
+   * or length
+   */
+  void readVectored(List<? extends SwiftFileRange> ranges) {
+    List<SwiftFileRange> sorted = new ArrayList<SwiftFileRange>(ranges.size());
+    for (SwiftFileRange range : ranges) {
+      if (range.getOffset() < 0 || range.getLength() < 0) {
+        throw new IllegalArgumentException("Invalid " + range);
+      }
+      if (range.getEnd() > contentLength) {
+        range.setData(failed(new EOFException(
+          "Cannot read " + range + " of " + path + " of length "
+          + contentLength)));
+      } else {
+        sorted.add(range);
+      }
+    }
+    Collections.sort(sorted, BY_OFFSET);
+    List<List<SwiftFileRange>> groups =
+      mergeRanges(sorted,
+                  store.getVectoredReadMinSeek(),
+                  store.getVectoredReadMaxMerged());
+    for (List<SwiftFileRange> group : groups) {
+      read(group);
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Reading " + ranges.size() + " ranges of " + path
+                + " in " + groups.size() + " requests");
+    }
+  }
+
+  /**
+   * Get the number of requests made
+   * @return the request count
+   */
+  int getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * Merge sorted ranges into the groups to fetch with one request each.
+   * Overlapping ranges always share a group.
+   * @param sorted ranges sorted by offset
+   * @param minSeek largest gap between two ranges of a group
+   * @param maxMerged largest span of a group, unless a single range
+   * is larger
+   * @return the groups, in order
+   */
+  static List<List<SwiftFileRange>> mergeRanges(List<SwiftFileRange> sorted,
+                                                long minSeek,
+                                                long maxMerged) {
+    List<List<SwiftFileRange>> groups = new ArrayList<List<SwiftFileRange>>();
+    List<SwiftFileRange> group = null;
+    long start = 0;
+    long end = 0;
+    for (SwiftFileRange range : sorted) {
+      long newEnd = Math.max(end, range.getEnd());
+      if (group != null
+          && (range.getOffset() < end
+              || (range.getOffset() - end <= minSeek
+                  && newEnd - start <= maxMerged))) {
+        group.add(range);
+        end = newEnd;
+      } else {
+        group = new ArrayList<SwiftFileRange>();
+        group.add(range);
+        groups.add(group);
+        start = range.getOffset();
+        end = range.getEnd();
+      }
+    }
+    return groups;
+  }
+
+  private void read(List<SwiftFileRange> group) {
+    final long start = group.get(0).getOffset();
+    long end = start;
+    for (SwiftFileRange range : group) {
+      end = Math.max(end, range.getEnd());
+    }
+    final int length = (int) (end - start);
+    Callable<byte[]> fetch = new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws Exception {
+        int retries = 0;
+        while (true) {
+          try {
+            return store.readRange(path, segments, etag, contentLength, start,
+                                   length);
+          } catch (IOException e) {
+            stream.beforeRetry(e, retries++, start);
+          }
+        }
+      }
+    };
+    Future<byte[]> future;
+    if (length == 0) {
+      FutureTask<byte[]> task = new FutureTask<byte[]>(fetch);
+      task.run();
+      future = task;
+    } else {
+      requestCount.incrementAndGet();
+      future = store.getReadPool().submit(fetch);
+    }
+    for (SwiftFileRange range : group) {
+      range.setData(new Slice(future, (int) (range.getOffset() - start),
+                              range.getLength()));
+    }
+  }
+
+  private static Future<ByteBuffer> failed(final Exception e) {
+    FutureTask<ByteBuffer> task = new FutureTask<ByteBuffer>(
+      new Callable<ByteBuffer>() {
+        @Override
+        public ByteBuffer call() throws Exception {
+          throw e;
+        }
+      });
+    task.run();
+    return task;
+  }
+
+  /**
+   * The data of one range: a slice of the data of its group.
+   * Cancelling is not supported, as other ranges may share the request.
+   */
+  private static final class Slice implements Future<ByteBuffer> {
+    private final Future<byte[]> group;
+    private final int offset;
+    private final int length;
+
+    private Slice(Future<byte[]> group, int offset, int length) {
+      this.group = group;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    private ByteBuffer slice(byte[] data) {
+      return ByteBuffer.wrap(data, offset, length).slice();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return group.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+      return group.isDone();
+    }
+
+    @Override
+    public ByteBuffer get() throws InterruptedException, ExecutionException {
+      return slice(group.get());
+    }
+
+    @Override
+    public ByteBuffer get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+      return slice(group.get(timeout, unit));
+    }
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A stream which can read straight into a byte buffer, heap or direct,
+ * rather than into an array which the caller then copies.
+ * <p/>
+ * The wrapped stream of an input stream opened by either Swift
+ * filesystem implements this:
+ * <pre>
+ *   InputStream wrapped = in.getWrappedStream();
+ *   if (wrapped instanceof ByteBufferReadable) {
+ *     ((ByteBufferReadable) wrapped).read(buffer);
+ *   }
+ * </pre>
+ */
+public interface ByteBufferReadable {
+
+  /**
+   * Read up to <code>buf.remaining()</code> bytes into the buffer,
+   * from its position onwards, and advance its position by the number
+   * of bytes read. The limit of the buffer is not changed.
+   * @param buf buffer to read into
+   * @return the number of bytes read, 0 only if the buffer has no space
+   * remaining, or -1 at the end of the stream
+   * @throws IOException on a failure to read
+   */
+  int read(ByteBuffer buf) throws IOException;
+}
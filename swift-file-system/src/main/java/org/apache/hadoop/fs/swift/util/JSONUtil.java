@@ -19,13 +19,19 @@
 package org.apache.hadoop.fs.swift.util;
 
 import org.codehaus.jackson.JsonGenerationException;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.JsonMappingException;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.type.TypeReference;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 
 
 public class JSONUtil {
@@ -95,4 +101,37 @@ public class JSONUtil {
       throw new RuntimeException("Error generating response", e);
     }
   }
+
+  /**
+   * Read a JSON array of objects from a stream. Each element is bound
+   * as soon as it is parsed, so the document is never buffered whole.
+   * An empty stream is treated as an empty array.
+   *
+   * @param in    stream to read; it is closed afterwards
+   * @param klazz class of the array elements
+   * @param <T>   type
+   * @return the list of elements
+   * @throws IOException on a read failure or if the JSON is not an array
+   */
+  public static <T> List<T> toObjectList(InputStream in, Class<T> klazz)
+    throws IOException {
+    JsonParser parser = jsonMapper.getJsonFactory().createJsonParser(in);
+    try {
+      List<T> result = new ArrayList<T>();
+      JsonToken token = parser.nextToken();
+      if (token == null) {
+        return result;
+      }
+      if (token != JsonToken.START_ARRAY) {
+        throw new JsonParseException("Expected a JSON array but got " + token,
+                                     parser.getCurrentLocation());
+      }
+      while (parser.nextToken() == JsonToken.START_OBJECT) {
+        result.add(jsonMapper.readValue(parser, klazz));
+      }
+      return result;
+    } finally {
+      parser.close();
+    }
+  }
 }
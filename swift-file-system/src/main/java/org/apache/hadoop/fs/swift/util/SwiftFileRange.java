@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+
+/**
+ * A range of a file to read in a vectored read, and the future of
+ * its data once the read has been started.
+ */
+public class SwiftFileRange {
+  private final long offset;
+  private final int length;
+  private volatile Future<ByteBuffer> data;
+
+  /**
+   * Create a range
+   * @param offset offset in the file
+   * @param length number of bytes
+   */
+  public SwiftFileRange(long offset, int length) {
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * @return offset in the file
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return number of bytes
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * @return the offset just past the end of the range
+   */
+  public long getEnd() {
+    return offset + length;
+  }
+
+  /**
+   * Get the data of the range. The buffer holds exactly the bytes of
+   * the range, from its position to its limit.
+   * @return the future of the data, or null if no read has been started
+   */
+  public Future<ByteBuffer> getData() {
+    return data;
+  }
+
+  /**
+   * @param data the future of the data
+   */
+  public void setData(Future<ByteBuffer> data) {
+    this.data = data;
+  }
+
+  @Override
+  public String toString() {
+    return "range " + offset + "+" + length;
+  }
+}
@@ -19,6 +19,10 @@
 package org.apache.hadoop.fs.swift.util;
 
 import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.swift.snative.SwiftFileStatus;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Various utility classes for SwiftFS support
@@ -64,11 +68,16 @@ public final class SwiftUtils {
 
   /**
    * Test for the entry being a file that is treated as if it is a
-   * directory
+   * directory: a 0 byte file, unless its status says explicitly
+   * whether it is a directory
    * @param fileStatus status
    * @return true if it meets the rules for being a directory
    */
   public static boolean isFilePretendingToBeDirectory(FileStatus fileStatus) {
+    if (fileStatus instanceof SwiftFileStatus
+        && ((SwiftFileStatus) fileStatus).isTypeExplicit()) {
+      return false;
+    }
     return fileStatus.getLen() == 0;
   }
 
@@ -88,4 +97,149 @@ public final class SwiftUtils {
                                   SwiftObjectPath possibleChild) {
     return possibleChild.getObject().startsWith(parent.getObject() + "/");
   }
+
+  /**
+   * Lowest character used when generating a key: {@value}
+   */
+  private static final char KEY_CHAR_MIN = ' ';
+
+  /**
+   * Highest character used when generating a key: {@value}
+   */
+  private static final char KEY_CHAR_MAX = '~';
+
+  /**
+   * Find a key which sorts strictly between two others, for splitting
+   * a key range in two. Beyond any prefix taken from the lower key,
+   * only printable ASCII characters are used in the generated key, so it
+   * sorts the same way as a Java string as it does in Swift's UTF-8
+   * byte order.
+   * <p/>
+   * The split is made on the first character where the keys differ,
+   * which is not the key-space midpoint of a real, clustered listing;
+   * callers are expected to split dense ranges again.
+   * @param low lower bound (exclusive)
+   * @param high upper bound (exclusive); null for no upper bound
+   * @return a key between the two, or null if no printable one was found
+   */
+  public static String keyBetween(String low, String high) {
+    StringBuilder key = new StringBuilder(low.length() + 1);
+    boolean bounded = high != null;
+    for (int i = 0; ; i++) {
+      int lowChar = i < low.length() ? low.charAt(i) : -1;
+      int highChar;
+      if (!bounded) {
+        highChar = KEY_CHAR_MAX + 1;
+      } else if (i < high.length()) {
+        highChar = high.charAt(i);
+      } else {
+        //the low key is not below the high key
+        return null;
+      }
+      if (bounded && lowChar == highChar) {
+        //common prefix
+        key.append((char) lowChar);
+        continue;
+      }
+      if (lowChar > highChar) {
+        return null;
+      }
+      int first = Math.max(lowChar + 1, KEY_CHAR_MIN);
+      int last = Math.min(highChar - 1, KEY_CHAR_MAX);
+      if (first <= last) {
+        key.append((char) ((first + last) / 2));
+        return key.toString();
+      }
+      if (lowChar < 0) {
+        //the low key is exhausted and there is no room below the high key
+        return null;
+      }
+      //no room at this position: keep the low key's character, after
+      //which the key is below the high key whatever follows
+      key.append((char) lowChar);
+      bounded = false;
+    }
+  }
+
+  /**
+   * Find a key to split the rest of a listing range at, given the first
+   * and last keys of a full page of it. Names in a dense listing are
+   * rarely spread across the key space; they tend to be runs such as
+   * <code>part-00000, part-00001, ...</code>, which vary in the trailing
+   * characters of a fixed-width counter. The characters seen where the
+   * first and last keys of the page differ are taken as the alphabet of
+   * the run. A block of the run one position further up holds about a
+   * page, so the split is made two or more positions up: halfway through
+   * the values left to the run at the least significant such position
+   * with at least two values left. Both halves are therefore expected
+   * to hold several pages, and their pages line up with the blocks of
+   * the run in turn. A run with no such position left is best listed
+   * on sequentially.
+   * <p/>
+   * If the keys of the page do not look like a run, this falls back to
+   * {@link #keyBetween(String, String)}.
+   * @param first first key of the page
+   * @param last last key of the page
+   * @param high upper bound of the range (exclusive); null for none
+   * @return a key between the last key and the upper bound, or null if
+   * the range is to be listed sequentially
+   */
+  public static String splitKey(String first, String last, String high) {
+    int varying = 0;
+    while (varying < first.length() && varying < last.length()
+           && first.charAt(varying) == last.charAt(varying)) {
+      varying++;
+    }
+    if (varying == 0 || varying == first.length()
+        || varying == last.length()) {
+      return keyBetween(last, high);
+    }
+    char lowest = first.charAt(varying);
+    char highest = last.charAt(varying);
+    char above = last.charAt(varying - 1);
+    if (above < lowest || above > highest) {
+      //not a run
+      return keyBetween(last, high);
+    }
+    for (int position = varying - 2; position >= 0; position--) {
+      char current = last.charAt(position);
+      if (current < lowest || current > highest) {
+        //the start of the run
+        break;
+      }
+      char top = highest;
+      if (high != null && high.length() > position
+          && high.regionMatches(0, last, 0, position)) {
+        //keep below the upper bound at this position
+        top = (char) Math.min(top, high.charAt(position) - 1);
+      }
+      if (top - current >= 2) {
+        String split = last.substring(0, position)
+                       + (char) (current + 1 + (top - current) / 2);
+        if (split.compareTo(last) > 0
+            && (high == null || split.compareTo(high) < 0)) {
+          return split;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Create a factory for daemon threads with numbered names
+   * @param name prefix of the thread names
+   * @return a thread factory
+   */
+  public static ThreadFactory newDaemonThreadFactory(final String name) {
+    return new ThreadFactory() {
+      private final AtomicInteger counter = new AtomicInteger(0);
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
 }
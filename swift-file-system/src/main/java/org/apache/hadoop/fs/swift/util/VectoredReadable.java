@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.util;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A stream which can read many ranges of a file at once.
+ * <p/>
+ * The wrapped stream of an input stream opened by the Swift filesystem
+ * implements this:
+ * <pre>
+ *   InputStream wrapped = in.getWrappedStream();
+ *   if (wrapped instanceof VectoredReadable) {
+ *     ((VectoredReadable) wrapped).readVectored(ranges);
+ *   }
+ * </pre>
+ */
+public interface VectoredReadable {
+
+  /**
+   * Start reading a list of ranges. This returns once the reads have
+   * been started; the data of each range is then available through
+   * {@link SwiftFileRange#getData()}. Ranges close to each other may be
+   * read by one request. The position of the stream is not changed.
+   * @param ranges ranges to read
+   * @throws IOException if the reads cannot be started
+   */
+  void readVectored(List<? extends SwiftFileRange> ranges) throws IOException;
+}
@@ -54,7 +54,8 @@ public class InMemorySwiftNativeStore extends SwiftNativeFileSystemStore {
   }
 
   @Override
-  public void uploadFile(Path path, InputStream inputStream, long length) {
+  public void uploadFile(Path path, InputStream inputStream, long length,
+                         boolean overwrite) {
     ByteArrayOutputStream out = new ByteArrayOutputStream();
     byte[] buf = new byte[8192];
     int numRead;
@@ -18,7 +18,9 @@
 package org.apache.hadoop.fs.swift;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.swift.exceptions.SwiftInternalStateException;
 import org.apache.hadoop.fs.swift.http.SwiftRestClient;
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -93,6 +95,37 @@ public class TestSwiftConfig {
     mkInstance(configuration);
   }
 
+  @Test(expected = org.apache.hadoop.fs.swift.exceptions.SwiftConfigurationException.class)
+  public void testBadMaxConnections() throws Exception {
+    final Configuration configuration = createCoreConfig();
+    configuration.set(SWIFT_MAX_CONNECTIONS, "0");
+    mkInstance(configuration);
+  }
+
+  @Test(expected = org.apache.hadoop.fs.swift.exceptions.SwiftConfigurationException.class)
+  public void testBadMaxConnectionsPerHost() throws Exception {
+    final Configuration configuration = createCoreConfig();
+    configuration.set(SWIFT_MAX_CONNECTIONS_PER_HOST, "-1");
+    mkInstance(configuration);
+  }
+
+  @Test(expected = org.apache.hadoop.fs.swift.exceptions.SwiftConfigurationException.class)
+  public void testBadIdleTimeout() throws Exception {
+    final Configuration configuration = createCoreConfig();
+    configuration.set(SWIFT_CONNECTION_IDLE_TIMEOUT, "forever");
+    mkInstance(configuration);
+  }
+
+  @Test(expected = SwiftInternalStateException.class)
+  public void testClosedClientRejectsRequests() throws Exception {
+    final Configuration configuration = createCoreConfig();
+    SwiftRestClient client = mkInstance(configuration);
+    client.close();
+    //close is idempotent
+    client.close();
+    client.headRequest(new SwiftObjectPath("container", "/file"));
+  }
+
   private Configuration createCoreConfig() {
     final Configuration configuration = new Configuration();
     set(configuration, DOT_AUTH_URL, "http://localhost:8080");
@@ -106,10 +139,10 @@ public class TestSwiftConfig {
     configuration.set(SWIFT_SERVICE_PREFIX + SERVICE + field, value);
   }
 
-  private void mkInstance(Configuration configuration) throws
+  private SwiftRestClient mkInstance(Configuration configuration) throws
                                                        IOException,
                                                        URISyntaxException {
     URI uri = new URI("swift://container.openstack/");
-    SwiftRestClient.getInstance(uri, configuration);
+    return SwiftRestClient.getInstance(uri, configuration);
   }
 }
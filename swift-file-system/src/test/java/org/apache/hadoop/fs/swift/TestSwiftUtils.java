@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift;
+
+import org.apache.hadoop.fs.swift.util.SwiftUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for SwiftUtils.
+ */
+public class TestSwiftUtils {
+
+  private void assertBetween(String low, String high) {
+    String key = SwiftUtils.keyBetween(low, high);
+    assertTrue("no key between " + low + " and " + high, key != null);
+    assertTrue(key + " is not above " + low, key.compareTo(low) > 0);
+    if (high != null) {
+      assertTrue(key + " is not below " + high, key.compareTo(high) < 0);
+    }
+  }
+
+  @Test
+  public void testKeyBetween() throws Exception {
+    assertBetween("a", "z");
+    assertBetween("dir/part-00001", "dir/~");
+    assertBetween("a", "b");
+    assertBetween("a", "a!");
+    assertBetween("a~~", "b");
+    assertBetween("", "a");
+    assertBetween("abc", null);
+    assertBetween("~~~", null);
+    assertBetween("é", "ê");
+  }
+
+  @Test
+  public void testSplitKeyFollowsRun() throws Exception {
+    assertEquals("d/part-005",
+                 SwiftUtils.splitKey("d/part-00000", "d/part-00009", "d/\u007f"));
+    //past the middle of the hundreds, so into the thousands
+    assertEquals("d/part-05",
+                 SwiftUtils.splitKey("d/part-00880", "d/part-00889", "d/\u007f"));
+    //kept below the upper bound
+    assertEquals("d/part-003",
+                 SwiftUtils.splitKey("d/part-00100", "d/part-00109",
+                                     "d/part-005\u0001"));
+    //too few pages left in the range to split
+    assertNull(SwiftUtils.splitKey("d/part-00100", "d/part-00109",
+                                   "d/part-002\u0001"));
+    //not a run: the same as keyBetween
+    assertEquals(SwiftUtils.keyBetween("d/b", "d/\u007f"),
+                 SwiftUtils.splitKey("d/a", "d/b", "d/\u007f"));
+  }
+
+  @Test
+  public void testNoKeyBetween() throws Exception {
+    assertNull(SwiftUtils.keyBetween("a", "a"));
+    assertNull(SwiftUtils.keyBetween("b", "a"));
+    assertNull(SwiftUtils.keyBetween("ab", "a"));
+    assertNull(SwiftUtils.keyBetween("a", "a "));
+    assertNull(SwiftUtils.keyBetween("é", null));
+  }
+}
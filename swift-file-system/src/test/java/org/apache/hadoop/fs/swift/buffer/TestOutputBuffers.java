@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.buffer;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.swift.exceptions.SwiftConfigurationException;
+import org.apache.hadoop.fs.swift.http.SwiftProtocolConstants;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the output buffers and their factory.
+ */
+public class TestOutputBuffers {
+
+  private static final int CHUNK = OutputBufferFactory.CHUNK_SIZE;
+
+  private final File dir =
+    new File(System.getProperty("java.io.tmpdir"), "swift-test-buffers");
+
+  private static byte[] data(int len) {
+    byte[] data = new byte[len];
+    for (int i = 0; i < len; i++) {
+      data[i] = (byte) (i % 251);
+    }
+    return data;
+  }
+
+  private static byte[] readBack(OutputBuffer buffer) throws IOException {
+    InputStream in = buffer.getInputStream();
+    try {
+      return IOUtils.toByteArray(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  private void assertRoundTrip(OutputBufferFactory factory, int len)
+    throws IOException {
+    byte[] data = data(len);
+    OutputBuffer buffer = factory.create();
+    try {
+      //write in uneven pieces to cross chunk boundaries
+      int off = 0;
+      while (off < len) {
+        int toWrite = Math.min(len - off, 1000 + off % 7);
+        buffer.write(data, off, toWrite);
+        off += toWrite;
+      }
+      assertEquals(len, buffer.length());
+      assertArrayEquals(data, readBack(buffer));
+    } finally {
+      buffer.release();
+    }
+  }
+
+  @Test
+  public void testRoundTripAllTypes() throws Exception {
+    for (String type : Arrays.asList(OutputBufferFactory.BUFFER_DISK,
+                                     OutputBufferFactory.BUFFER_ARRAY,
+                                     OutputBufferFactory.BUFFER_BYTEBUFFER)) {
+      OutputBufferFactory factory =
+        new OutputBufferFactory(type, 4 * CHUNK, dir);
+      assertRoundTrip(factory, 0);
+      assertRoundTrip(factory, 1);
+      assertRoundTrip(factory, 3 * CHUNK + 17);
+      assertEquals("memory leaked by " + type, 0, factory.getMemoryUsed());
+    }
+  }
+
+  @Test
+  public void testMemoryBufferStaysInMemory() throws Exception {
+    OutputBufferFactory factory =
+      new OutputBufferFactory(OutputBufferFactory.BUFFER_ARRAY, 4 * CHUNK, dir);
+    MemoryOutputBuffer buffer = (MemoryOutputBuffer) factory.create();
+    buffer.write(data(CHUNK + 1));
+    assertFalse(buffer.isSpilled());
+    assertEquals(2 * CHUNK, factory.getMemoryUsed());
+    buffer.release();
+    buffer.release();
+    assertEquals(0, factory.getMemoryUsed());
+  }
+
+  @Test
+  public void testSpillAtMemoryLimit() throws Exception {
+    OutputBufferFactory factory =
+      new OutputBufferFactory(OutputBufferFactory.BUFFER_BYTEBUFFER, 2 * CHUNK, dir);
+    MemoryOutputBuffer first = (MemoryOutputBuffer) factory.create();
+    MemoryOutputBuffer second = (MemoryOutputBuffer) factory.create();
+    try {
+      byte[] data = data(CHUNK + 5);
+      first.write(data);
+      assertFalse(first.isSpilled());
+      //the limit is shared: the second buffer gets no memory
+      second.write(data);
+      assertTrue(second.isSpilled());
+      assertEquals(2 * CHUNK, factory.getMemoryUsed());
+      //and the first spills once it needs more
+      first.write(data);
+      assertTrue(first.isSpilled());
+      assertEquals(0, factory.getMemoryUsed());
+      assertEquals(2 * data.length, first.length());
+      byte[] expected = new byte[2 * data.length];
+      System.arraycopy(data, 0, expected, 0, data.length);
+      System.arraycopy(data, 0, expected, data.length, data.length);
+      assertArrayEquals(expected, readBack(first));
+      assertArrayEquals(data, readBack(second));
+    } finally {
+      first.release();
+      second.release();
+    }
+  }
+
+  @Test
+  public void testNoMemoryMeansDisk() throws Exception {
+    OutputBufferFactory factory =
+      new OutputBufferFactory(OutputBufferFactory.BUFFER_ARRAY, 0, dir);
+    MemoryOutputBuffer buffer = (MemoryOutputBuffer) factory.create();
+    try {
+      buffer.write(1);
+      assertTrue(buffer.isSpilled());
+      assertArrayEquals(new byte[]{1}, readBack(buffer));
+    } finally {
+      buffer.release();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testNoWriteAfterRead() throws Exception {
+    OutputBufferFactory factory =
+      new OutputBufferFactory(OutputBufferFactory.BUFFER_ARRAY, CHUNK, dir);
+    OutputBuffer buffer = factory.create();
+    try {
+      buffer.getInputStream().close();
+      buffer.write(1);
+    } finally {
+      buffer.release();
+    }
+  }
+
+  @Test
+  public void testFactoryFromConfiguration() throws Exception {
+    Configuration conf = new Configuration();
+    assertEquals(OutputBufferFactory.DEFAULT_BUFFER,
+                 new OutputBufferFactory(conf).getBufferType());
+    conf.set(SwiftProtocolConstants.SWIFT_OUTPUT_BUFFER, "ByteBuffer");
+    assertEquals(OutputBufferFactory.BUFFER_BYTEBUFFER,
+                 new OutputBufferFactory(conf).getBufferType());
+  }
+
+  @Test(expected = SwiftConfigurationException.class)
+  public void testUnknownBufferType() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(SwiftProtocolConstants.SWIFT_OUTPUT_BUFFER, "tape");
+    new OutputBufferFactory(conf);
+  }
+
+  @Test(expected = SwiftConfigurationException.class)
+  public void testNegativeMemoryLimit() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(SwiftProtocolConstants.SWIFT_OUTPUT_BUFFER_MEMORY_LIMIT, -1);
+    new OutputBufferFactory(conf);
+  }
+}
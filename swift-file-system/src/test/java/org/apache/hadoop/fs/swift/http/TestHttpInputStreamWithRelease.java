@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.http;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of how response streams release their connections,
+ * run against a method serving an in-memory body.
+ */
+public class TestHttpInputStreamWithRelease {
+
+  private static final URI URI = java.net.URI.create("http://localhost/c/o");
+
+  private HttpInputStreamWithRelease open(StubMethod method,
+                                          long threshold,
+                                          HttpReleaseStatistics stats)
+    throws IOException {
+    return new HttpInputStreamWithRelease(URI, method, threshold, stats);
+  }
+
+  @Test
+  public void testSmallRemainderDrained() throws Exception {
+    StubMethod method = new StubMethod(1000, true);
+    HttpReleaseStatistics stats = new HttpReleaseStatistics();
+    HttpInputStreamWithRelease in = open(method, 500, stats);
+    in.read(new byte[600], 0, 600);
+    in.close();
+    assertFalse(method.aborted);
+    assertTrue(method.released);
+    assertEquals(1, stats.getDrainCount());
+    assertEquals(400, stats.getDrainedBytes());
+    assertEquals(0, stats.getAbortCount());
+  }
+
+  @Test
+  public void testLargeRemainderAborted() throws Exception {
+    StubMethod method = new StubMethod(1000, true);
+    HttpReleaseStatistics stats = new HttpReleaseStatistics();
+    HttpInputStreamWithRelease in = open(method, 500, stats);
+    in.read();
+    in.close();
+    assertTrue(method.aborted);
+    assertTrue(method.released);
+    assertEquals(0, stats.getDrainCount());
+    assertEquals(1, stats.getAbortCount());
+    assertEquals(999, stats.getAbortedBytes());
+  }
+
+  @Test
+  public void testUnknownLengthAborted() throws Exception {
+    StubMethod method = new StubMethod(10, false);
+    HttpReleaseStatistics stats = new HttpReleaseStatistics();
+    HttpInputStreamWithRelease in = open(method, 500, stats);
+    in.close();
+    assertTrue(method.aborted);
+    assertEquals(1, stats.getAbortCount());
+  }
+
+  @Test
+  public void testConsumedStreamNeitherDrainedNorAborted() throws Exception {
+    StubMethod method = new StubMethod(10, true);
+    HttpReleaseStatistics stats = new HttpReleaseStatistics();
+    HttpInputStreamWithRelease in = open(method, 0, stats);
+    byte[] buffer = new byte[20];
+    while (in.read(buffer, 0, buffer.length) >= 0) {
+      //read to the end
+    }
+    in.close();
+    assertFalse(method.aborted);
+    assertTrue(method.released);
+    assertEquals(0, stats.getDrainCount());
+    assertEquals(0, stats.getAbortCount());
+  }
+
+  @Test
+  public void testZeroThresholdAborts() throws Exception {
+    StubMethod method = new StubMethod(10, true);
+    HttpInputStreamWithRelease in = open(method, 0, null);
+    in.read();
+    in.close();
+    assertTrue(method.aborted);
+  }
+
+  @Test
+  public void testLeakedStreamReleased() throws Exception {
+    HttpStreamLeakTracker tracker = HttpStreamLeakTracker.get();
+    long leaks = tracker.getLeakCount();
+    StubMethod method = new StubMethod(1000, true);
+    open(method, 0, null).read();
+    long deadline = System.currentTimeMillis() + 30000;
+    while (!method.released && System.currentTimeMillis() < deadline) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertTrue("connection of leaked stream not released", method.released);
+    assertTrue(method.aborted);
+    assertEquals(leaks + 1, tracker.getLeakCount());
+  }
+
+  @Test
+  public void testClosedStreamNotTracked() throws Exception {
+    HttpStreamLeakTracker tracker = HttpStreamLeakTracker.get();
+    int openCount = tracker.getOpenCount();
+    HttpInputStreamWithRelease in = open(new StubMethod(10, true), 0, null);
+    assertEquals(openCount + 1, tracker.getOpenCount());
+    in.close();
+    assertEquals(openCount, tracker.getOpenCount());
+  }
+
+  /**
+   * A GET whose response body is an array of bytes, recording whether
+   * the connection was aborted and released
+   */
+  private static class StubMethod extends GetMethod {
+    private final InputStream body;
+    private final Header length;
+    private volatile boolean aborted;
+    private volatile boolean released;
+
+    private StubMethod(int size, boolean declareLength) {
+      body = new ByteArrayInputStream(new byte[size]);
+      length = declareLength
+               ? new Header(SwiftProtocolConstants.HEADER_CONTENT_LENGTH,
+                            Integer.toString(size))
+               : null;
+    }
+
+    @Override
+    public InputStream getResponseBodyAsStream() {
+      return body;
+    }
+
+    @Override
+    public Header getResponseHeader(String headerName) {
+      return SwiftProtocolConstants.HEADER_CONTENT_LENGTH.equals(headerName)
+             ? length
+             : null;
+    }
+
+    @Override
+    public void abort() {
+      aborted = true;
+    }
+
+    @Override
+    public void releaseConnection() {
+      released = true;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Store serving a sorted in-memory listing a page at a time, honouring
+ * the marker, end marker and limit of each request. It records the
+ * marker of every request, and is safe to list from multiple threads.
+ */
+class PagedListingStore extends SwiftNativeFileSystemStore {
+  private final List<SwiftObjectFileStatus> entries;
+  private final int pageSize;
+  private final List<String> markers =
+    Collections.synchronizedList(new ArrayList<String>());
+
+  PagedListingStore(int pageSize, String... names) {
+    this.pageSize = pageSize;
+    entries = new ArrayList<SwiftObjectFileStatus>();
+    for (String name : names) {
+      entries.add(new SwiftObjectFileStatus(name, 1, null, null, null));
+    }
+  }
+
+  @Override
+  List<SwiftObjectFileStatus> listPage(SwiftObjectPath path,
+                                       boolean recursive,
+                                       String marker,
+                                       String endMarker,
+                                       int limit) throws IOException {
+    markers.add(marker);
+    List<SwiftObjectFileStatus> page = new ArrayList<SwiftObjectFileStatus>();
+    for (SwiftObjectFileStatus entry : entries) {
+      if (page.size() == limit) {
+        break;
+      }
+      String name = entry.getName();
+      if ((marker == null || name.compareTo(marker) > 0)
+          && (endMarker == null || name.compareTo(endMarker) < 0)) {
+        page.add(entry);
+      }
+    }
+    return page;
+  }
+
+  @Override
+  int getListingPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Get the markers of the requests made, in the order they were made
+   * @return the markers
+   */
+  List<String> getMarkers() {
+    return markers;
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
+import org.apache.hadoop.fs.swift.util.SwiftUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the namespace without directory markers, run against
+ * a store which lists a fixed set of objects and has no REST client,
+ * so fails on any other request.
+ */
+public class TestSwiftDirectoryMarkers {
+
+  /**
+   * A store holding a single object
+   */
+  private static class MarkerFreeStore extends SwiftNativeFileSystemStore {
+    private final List<String> listings = new ArrayList<String>();
+
+    private MarkerFreeStore() {
+      setDirectoryMarkers(false);
+    }
+
+    @Override
+    List<SwiftObjectFileStatus> listPage(SwiftObjectPath path,
+                                         boolean recursive,
+                                         String marker,
+                                         String endMarker,
+                                         int limit) {
+      listings.add(path.getObject() + " " + recursive + " " + limit);
+      if ("/a/b/file".startsWith(path.getObject() + "/")) {
+        return Arrays.asList(
+          new SwiftObjectFileStatus("a/b/file", 10, null, null, null));
+      }
+      return Collections.emptyList();
+    }
+  }
+
+  @Test
+  public void testEmptyFileIsFileWhenTypeExplicit() throws Exception {
+    SwiftFileStatus status =
+      new SwiftFileStatus(0, false, 0, 0, 0, new Path("/file"));
+    assertTrue(SwiftUtils.isDirectory(status));
+    status.setTypeExplicit(true);
+    assertFalse(status.isDir());
+    assertTrue(status.isFile());
+    assertFalse(SwiftUtils.isDirectory(status));
+  }
+
+  @Test
+  public void testPseudoDirectoryFromOneEntryListing() throws Exception {
+    MarkerFreeStore store = new MarkerFreeStore();
+    FileStatus status = store.getPseudoDirectoryStatus(
+      new SwiftObjectPath("c", "/a"), new Path("/a"));
+    assertTrue(status.isDir());
+    assertEquals(new Path("/a"), status.getPath());
+    assertNull(store.getPseudoDirectoryStatus(
+      new SwiftObjectPath("c", "/a/c"), new Path("/a/c")));
+    assertEquals(Arrays.asList("/a true 1", "/a/c true 1"), store.listings);
+  }
+
+  @Test
+  public void testNoMarkersWrittenOrDeleted() throws IOException {
+    MarkerFreeStore store = new MarkerFreeStore();
+    store.createDirectory(new Path("/a"));
+    store.createDirectories(Arrays.asList(new Path("/a/b"), new Path("/a/c")));
+    assertTrue(store.rmdir(new Path("/a")));
+  }
+}
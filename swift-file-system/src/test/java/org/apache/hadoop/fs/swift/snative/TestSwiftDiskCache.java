@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.fs.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the disk cache of object blocks.
+ */
+public class TestSwiftDiskCache {
+
+  private static final int BLOCK = 100;
+
+  private final File dir =
+    new File(System.getProperty("java.io.tmpdir"), "swift-test-cache");
+  private final File[] dirs = {new File(dir, "a"), new File(dir, "b")};
+  private final byte[] data = new byte[450];
+
+  /**
+   * Serves blocks of the data, counting the requests
+   */
+  private final class CountingSource implements SwiftRangeSource {
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Override
+    public InputStream open(long start, long length) {
+      requests.incrementAndGet();
+      return new ByteArrayInputStream(data, (int) start, (int) length);
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    FileUtil.fullyDelete(dir);
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i % 251);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtil.fullyDelete(dir);
+  }
+
+  private byte[] read(SwiftDiskCache cache, String etag, int start, int len,
+                      SwiftRangeSource source) throws IOException {
+    InputStream in = cache.open("/c/file", etag, data.length, start, len,
+                                source);
+    try {
+      return IOUtils.toByteArray(in);
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testRepeatedReadIsServedFromCache() throws Exception {
+    SwiftDiskCache cache = new SwiftDiskCache(dirs, 10000, BLOCK);
+    CountingSource source = new CountingSource();
+    assertArrayEquals(Arrays.copyOfRange(data, 50, 260),
+                      read(cache, "e1", 50, 210, source));
+    assertEquals(3, source.requests.get());
+    assertArrayEquals(Arrays.copyOfRange(data, 120, 180),
+                      read(cache, "e1", 120, 60, source));
+    assertEquals(3, source.requests.get());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(3, cache.getMissCount());
+  }
+
+  @Test
+  public void testRangePastEndOfObject() throws Exception {
+    SwiftDiskCache cache = new SwiftDiskCache(dirs, 10000, BLOCK);
+    CountingSource source = new CountingSource();
+    assertArrayEquals(Arrays.copyOfRange(data, 380, 450),
+                      read(cache, "e1", 380, 500, source));
+    assertEquals(50, cache.getUsed() - 100);
+  }
+
+  @Test
+  public void testTruncatedBlockNotCached() throws Exception {
+    SwiftDiskCache cache = new SwiftDiskCache(dirs, 10000, BLOCK);
+    SwiftRangeSource truncating = new SwiftRangeSource() {
+      @Override
+      public InputStream open(long start, long length) {
+        return new ByteArrayInputStream(data, (int) start, (int) length / 2);
+      }
+    };
+    try {
+      read(cache, "e1", 0, 100, truncating);
+      fail("Expected a failure to read a truncated block");
+    } catch (IOException expected) {
+      //expected
+    }
+    assertEquals(0, cache.getBlockCount());
+    assertEquals(0, cache.getUsed());
+    CountingSource source = new CountingSource();
+    assertArrayEquals(Arrays.copyOfRange(data, 0, 100),
+                      read(cache, "e1", 0, 100, source));
+    assertEquals(1, source.requests.get());
+  }
+
+  @Test
+  public void testNewEtagMisses() throws Exception {
+    SwiftDiskCache cache = new SwiftDiskCache(dirs, 10000, BLOCK);
+    CountingSource source = new CountingSource();
+    read(cache, "e1", 0, 100, source);
+    read(cache, "e2", 0, 100, source);
+    assertEquals(2, source.requests.get());
+    assertEquals(0, cache.getHitCount());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted() throws Exception {
+    SwiftDiskCache cache = new SwiftDiskCache(dirs, 250, BLOCK);
+    CountingSource source = new CountingSource();
+    read(cache, "e1", 0, 200, source);
+    //touch block 0 so that block 1 is the eldest
+    read(cache, "e1", 0, 10, source);
+    read(cache, "e1", 200, 100, source);
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(200, cache.getUsed());
+    int requests = source.requests.get();
+    read(cache, "e1", 0, 10, source);
+    assertEquals(requests, source.requests.get());
+    read(cache, "e1", 100, 10, source);
+    assertEquals(requests + 1, source.requests.get());
+  }
+
+  @Test
+  public void testBlocksReloadedByNewCache() throws Exception {
+    CountingSource source = new CountingSource();
+    read(new SwiftDiskCache(dirs, 10000, BLOCK), "e1", 0, 300, source);
+    SwiftDiskCache cache = new SwiftDiskCache(dirs, 10000, BLOCK);
+    assertEquals(3, cache.getBlockCount());
+    assertArrayEquals(Arrays.copyOfRange(data, 0, 300),
+                      read(cache, "e1", 0, 300, source));
+    assertEquals(3, source.requests.get());
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit tests for the paged listing iterator, run against a store
+ * which serves pages from an in-memory listing.
+ */
+public class TestSwiftListingIterator {
+
+  private List<String> list(PagedListingStore store, String dir) throws IOException {
+    SwiftListingIterator iterator =
+      new SwiftListingIterator(store, new SwiftObjectPath("container", dir),
+                               true, true);
+    List<String> names = new ArrayList<String>();
+    while (iterator.hasNext()) {
+      names.add(iterator.next().getPath().toString());
+    }
+    return names;
+  }
+
+  @Test
+  public void testPagesWithMarker() throws Exception {
+    PagedListingStore store = new PagedListingStore(2, "d/a", "d/b", "d/c", "d/d", "d/e");
+    assertEquals(Arrays.asList("/d/a", "/d/b", "/d/c", "/d/d", "/d/e"),
+                 list(store, "/d"));
+    assertEquals(Arrays.asList(null, "d/b", "d/d"), store.getMarkers());
+  }
+
+  @Test
+  public void testFullLastPageEndsWithEmptyPage() throws Exception {
+    PagedListingStore store = new PagedListingStore(2, "d/a", "d/b", "d/c", "d/d");
+    assertEquals(4, list(store, "/d").size());
+    assertEquals(Arrays.asList(null, "d/b", "d/d"), store.getMarkers());
+  }
+
+  @Test
+  public void testSkipsSelfAndRepeatedDirectories() throws Exception {
+    PagedListingStore store = new PagedListingStore(2,
+                                      "d/", "d/a", "d/a-b", "d/a/",
+                                      "d/a/x", "d/b");
+    assertEquals(Arrays.asList("/d/a", "/d/a-b", "/d/a/x", "/d/b"),
+                 list(store, "/d"));
+  }
+
+  @Test
+  public void testParallelListingSkipsSelfAndRepeatedDirectories()
+    throws Exception {
+    PagedListingStore store = new PagedListingStore(2,
+                                      "d/", "d/a", "d/a-b", "d/a/",
+                                      "d/a/x", "d/b");
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      SwiftObjectPath path = new SwiftObjectPath("container", "/d");
+      SwiftListingIterator iterator =
+        new SwiftListingIterator(store, path, true,
+                                 new SwiftParallelLister(store, pool, path, 4));
+      List<String> names = new ArrayList<String>();
+      while (iterator.hasNext()) {
+        names.add(iterator.next().getPath().toString());
+      }
+      assertEquals(Arrays.asList("/d/a", "/d/a-b", "/d/a/x", "/d/b"), names);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testEmptyListing() throws Exception {
+    PagedListingStore store = new PagedListingStore(2);
+    SwiftListingIterator iterator =
+      new SwiftListingIterator(store, new SwiftObjectPath("container", "/d"),
+                               false, true);
+    assertFalse(iterator.hasNext());
+    assertEquals(1, iterator.getPageCount());
+    try {
+      FileStatus status = iterator.next();
+      throw new AssertionError("Expected no entry but got " + status);
+    } catch (NoSuchElementException expected) {
+      //expected
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the in-memory cache of object blocks.
+ */
+public class TestSwiftMemoryCache {
+
+  private static final int BLOCK = 100;
+
+  private final byte[] data = new byte[1000];
+  private final List<Long> requests = new ArrayList<Long>();
+
+  /**
+   * Serves ranges of the data, recording the offset of each request
+   */
+  private final SwiftRangeSource source = new SwiftRangeSource() {
+    @Override
+    public InputStream open(long start, long length) {
+      requests.add(start);
+      return new ByteArrayInputStream(data, (int) start, (int) length);
+    }
+  };
+
+  @Before
+  public void setUp() throws Exception {
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i % 251);
+    }
+  }
+
+  private void assertRead(SwiftMemoryCache cache, int start, int len)
+    throws IOException {
+    InputStream in = cache.open("/c/file", "e1", start, len, source);
+    try {
+      assertArrayEquals(Arrays.copyOfRange(data, start,
+                                           Math.min(start + len, data.length)),
+                        IOUtils.toByteArray(in));
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testBlockAdmittedOnSecondMiss() throws Exception {
+    SwiftMemoryCache cache = new SwiftMemoryCache(10000, BLOCK, false);
+    assertRead(cache, 100, 100);
+    assertEquals(0, cache.getAdmissionCount());
+    assertRead(cache, 100, 100);
+    assertEquals(1, cache.getAdmissionCount());
+    assertRead(cache, 120, 50);
+    assertEquals(2, requests.size());
+    assertEquals(1, cache.getHitCount());
+  }
+
+  @Test
+  public void testScanDoesNotFlushCache() throws Exception {
+    SwiftMemoryCache cache = new SwiftMemoryCache(300, BLOCK, false);
+    assertRead(cache, 0, 100);
+    assertRead(cache, 0, 100);
+    //a single scan of everything: seen once, so never admitted
+    assertRead(cache, 0, 1000);
+    assertEquals(1, cache.getAdmissionCount());
+    assertEquals(0, cache.getEvictionCount());
+    int count = requests.size();
+    assertRead(cache, 0, 100);
+    assertEquals(count, requests.size());
+  }
+
+  @Test
+  public void testFooterPinnedOnFirstRead() throws Exception {
+    SwiftMemoryCache cache = new SwiftMemoryCache(10000, BLOCK, false);
+    cache.pinFooter("/c/file", "e1", 850);
+    //an unaligned read is extended back to the start of its block
+    assertRead(cache, 900, 100);
+    assertEquals(Long.valueOf(900), requests.get(0));
+    assertRead(cache, 850, 150);
+    assertEquals(Long.valueOf(800), requests.get(1));
+    assertEquals(200, cache.getPinnedUsed());
+    int count = requests.size();
+    assertRead(cache, 820, 180);
+    assertRead(cache, 990, 10);
+    assertEquals(count, requests.size());
+  }
+
+  @Test
+  public void testPinnedBlocksEvictedLast() throws Exception {
+    SwiftMemoryCache cache = new SwiftMemoryCache(300, BLOCK, false);
+    cache.pinFooter("/c/file", "e1", 900);
+    assertRead(cache, 900, 100);
+    for (int i = 0; i < 2; i++) {
+      assertRead(cache, 0, 100);
+      assertRead(cache, 100, 100);
+      assertRead(cache, 200, 100);
+    }
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(100, cache.getPinnedUsed());
+    int count = requests.size();
+    assertRead(cache, 950, 50);
+    assertEquals(count, requests.size());
+  }
+
+  @Test
+  public void testPartialBlockServesItsPrefix() throws Exception {
+    SwiftMemoryCache cache = new SwiftMemoryCache(10000, BLOCK, true);
+    assertRead(cache, 300, 40);
+    assertRead(cache, 300, 40);
+    assertEquals(1, cache.getAdmissionCount());
+    assertRead(cache, 310, 30);
+    assertEquals(2, requests.size());
+    //beyond the cached prefix
+    assertRead(cache, 310, 60);
+    assertEquals(3, requests.size());
+    assertTrue(cache.getUsed() <= BLOCK);
+  }
+}
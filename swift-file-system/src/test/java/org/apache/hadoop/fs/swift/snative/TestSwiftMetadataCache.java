@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.swift.exceptions.SwiftObjectChangedException;
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit tests for the cache of statuses and listings, run against a
+ * clock which the tests move on.
+ */
+public class TestSwiftMetadataCache {
+
+  private static final SwiftObjectPath FILE =
+    new SwiftObjectPath("c", "/a/b/file");
+  private static final SwiftObjectPath DIR = new SwiftObjectPath("c", "/a");
+  private static final SwiftObjectPath DIR_PREFIX =
+    new SwiftObjectPath("c", "/a/");
+
+  private long time = 1000;
+
+  private SwiftMetadataCache cache(long ttl, long negativeTtl, int size) {
+    return new SwiftMetadataCache(ttl, negativeTtl, size) {
+      @Override
+      long now() {
+        return time;
+      }
+    };
+  }
+
+  private static FileStatus status(String path) {
+    return new SwiftFileStatus(10, false, 0, 0, 0, new Path(path));
+  }
+
+  private static List<SwiftObjectFileStatus> page(String... names) {
+    SwiftObjectFileStatus[] entries = new SwiftObjectFileStatus[names.length];
+    for (int i = 0; i < names.length; i++) {
+      entries[i] = new SwiftObjectFileStatus(names[i], 1, null, null, null);
+    }
+    return Arrays.asList(entries);
+  }
+
+  private static boolean isAbsent(SwiftMetadataCache cache,
+                                  SwiftObjectPath path) {
+    try {
+      cache.getStatus(path);
+      return false;
+    } catch (FileNotFoundException e) {
+      return true;
+    }
+  }
+
+  @Test
+  public void testStatusExpires() throws Exception {
+    SwiftMetadataCache cache = cache(100, 100, 10);
+    FileStatus status = status("/a/b/file");
+    cache.putStatus(FILE, status, cache.getGeneration());
+    time += 99;
+    assertSame(status, cache.getStatus(FILE));
+    time += 1;
+    assertNull(cache.getStatus(FILE));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void testAbsenceCached() throws Exception {
+    SwiftMetadataCache cache = cache(100, 10, 10);
+    cache.putAbsent(FILE, cache.getGeneration());
+    assertEquals(true, isAbsent(cache, FILE));
+    assertEquals(1, cache.getNegativeHitCount());
+    time += 10;
+    assertNull(cache.getStatus(FILE));
+  }
+
+  @Test
+  public void testDirectoryAndMarkerShareEntry() throws Exception {
+    SwiftMetadataCache cache = cache(100, 100, 10);
+    cache.putStatus(DIR, status("/a"), cache.getGeneration());
+    assertNotNull(cache.getStatus(DIR_PREFIX));
+  }
+
+  @Test
+  public void testChangeInvalidatesAncestorsAndListings() throws Exception {
+    SwiftMetadataCache cache = cache(100, 100, 10);
+    cache.putAbsent(FILE, cache.getGeneration());
+    cache.putAbsent(new SwiftObjectPath("c", "/a/b"), cache.getGeneration());
+    cache.putStatus(DIR, status("/a"), cache.getGeneration());
+    cache.putStatus(new SwiftObjectPath("c", "/a2"), status("/a2"),
+                    cache.getGeneration());
+    cache.putPage(DIR_PREFIX, true, null, null, 10, page("a/x"),
+                  cache.getGeneration());
+    cache.putPage(new SwiftObjectPath("c", "/a2/"), true, null, null, 10,
+                  page("a2/x"), cache.getGeneration());
+    cache.invalidate(FILE);
+    assertNull(cache.getStatus(FILE));
+    assertNull(cache.getStatus(new SwiftObjectPath("c", "/a/b")));
+    assertNull(cache.getStatus(DIR));
+    assertNull(cache.getPage(DIR_PREFIX, true, null, null, 10));
+    //siblings are unaffected
+    assertNotNull(cache.getStatus(new SwiftObjectPath("c", "/a2")));
+    assertNotNull(cache.getPage(new SwiftObjectPath("c", "/a2/"), true, null,
+                                null, 10));
+  }
+
+  @Test
+  public void testPutRequestedBeforeChangeDropped() throws Exception {
+    SwiftMetadataCache cache = cache(100, 100, 10);
+    long generation = cache.getGeneration();
+    //the change lands while the requests are in flight
+    cache.invalidate(new SwiftObjectPath("c", "/elsewhere"));
+    cache.putStatus(FILE, status("/a/b/file"), generation);
+    cache.putAbsent(DIR, generation);
+    cache.putPage(DIR_PREFIX, true, null, null, 10, page("a/x"), generation);
+    assertNull(cache.getStatus(FILE));
+    assertFalse(isAbsent(cache, DIR));
+    assertNull(cache.getPage(DIR_PREFIX, true, null, null, 10));
+    assertEquals(3, cache.getDroppedPutCount());
+  }
+
+  @Test
+  public void testChangeInvalidatesListingsOfEveryAncestor() throws Exception {
+    SwiftMetadataCache cache = cache(100, 100, 10);
+    SwiftObjectPath root = new SwiftObjectPath("c", "/");
+    SwiftObjectPath fileDir = new SwiftObjectPath("c", "/a/b/file/");
+    cache.putPage(root, true, null, null, 10, page("a/b/file"),
+                  cache.getGeneration());
+    cache.putPage(root, false, "a", null, 10, page("b"),
+                  cache.getGeneration());
+    cache.putPage(fileDir, true, null, null, 10, page("a/b/file/000001"),
+                  cache.getGeneration());
+    cache.invalidate(FILE);
+    assertNull(cache.getPage(root, true, null, null, 10));
+    assertNull(cache.getPage(root, false, "a", null, 10));
+    //the listing of its segments
+    assertNull(cache.getPage(fileDir, true, null, null, 10));
+  }
+
+  @Test
+  public void testChangedObjectInvalidatedByRead() throws Exception {
+    SwiftMetadataCache cache = cache(100, 100, 10);
+    SwiftNativeFileSystemStore store = new SwiftNativeFileSystemStore() {
+      @Override
+      InputStream fetch(SwiftObjectPath path, long byteRangeStart,
+                        long length, Header[] headers) throws IOException {
+        throw new SwiftObjectChangedException("Object changed: " + path);
+      }
+    };
+    store.setMetadataCache(cache);
+    cache.putStatus(FILE, status("/a/b/file"), cache.getGeneration());
+    try {
+      store.getSegment(new SwiftObjectPath("c", "/a/b/file/000001"), 0, 10,
+                       "etag").close();
+      throw new AssertionError("Expected the segment to have changed");
+    } catch (SwiftObjectChangedException expected) {
+      //expected
+    }
+    //the file the segment belongs to
+    assertNull(cache.getStatus(FILE));
+  }
+
+  @Test
+  public void testDeletionCachesAbsence() throws Exception {
+    SwiftMetadataCache cache = cache(100, 100, 10);
+    cache.putStatus(FILE, status("/a/b/file"), cache.getGeneration());
+    cache.deleted(FILE);
+    assertEquals(true, isAbsent(cache, FILE));
+  }
+
+  @Test
+  public void testPagesKeyedByMarkers() throws Exception {
+    SwiftMetadataCache cache = cache(100, 100, 10);
+    cache.putPage(DIR_PREFIX, false, null, null, 2, page("a/x", "a/y"),
+                  cache.getGeneration());
+    assertNull(cache.getPage(DIR_PREFIX, false, "a/y", null, 2));
+    assertNull(cache.getPage(DIR_PREFIX, true, null, null, 2));
+    List<SwiftObjectFileStatus> page =
+      cache.getPage(DIR_PREFIX, false, null, null, 2);
+    assertEquals(2, page.size());
+    //callers get a copy
+    page.clear();
+    assertEquals(2, cache.getPage(DIR_PREFIX, false, null, null, 2).size());
+  }
+
+  @Test
+  public void testBounded() throws Exception {
+    SwiftMetadataCache cache = cache(100, 100, 2);
+    cache.putStatus(new SwiftObjectPath("c", "/1"), status("/1"),
+                    cache.getGeneration());
+    cache.putStatus(new SwiftObjectPath("c", "/2"), status("/2"),
+                    cache.getGeneration());
+    cache.putStatus(new SwiftObjectPath("c", "/3"), status("/3"),
+                    cache.getGeneration());
+    assertNull(cache.getStatus(new SwiftObjectPath("c", "/1")));
+    assertNotNull(cache.getStatus(new SwiftObjectPath("c", "/3")));
+  }
+
+  @Test
+  public void testNothingCachedWithZeroTtl() throws Exception {
+    SwiftMetadataCache cache = cache(0, 0, 10);
+    cache.putStatus(FILE, status("/a/b/file"), cache.getGeneration());
+    cache.putAbsent(DIR, cache.getGeneration());
+    assertNull(cache.getStatus(FILE));
+    assertFalse(isAbsent(cache, DIR));
+  }
+}
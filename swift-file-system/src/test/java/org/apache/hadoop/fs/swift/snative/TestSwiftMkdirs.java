@@ -0,0 +1,259 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.swift.exceptions.SwiftNotDirectoryException;
+import org.apache.hadoop.fs.swift.http.SwiftProtocolConstants;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests of mkdirs and of the checks of create(), run against a
+ * store which holds statuses in memory and records the requests made
+ * of it.
+ */
+public class TestSwiftMkdirs {
+
+  private ExecutorService pool;
+
+  @After
+  public void shutdown() {
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * A store of directories and files, by path
+   */
+  private static class DirectoryStore extends SwiftNativeFileSystemStore {
+    private final Map<String, Boolean> entries = new HashMap<String, Boolean>();
+    private final List<String> probes =
+      Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> created =
+      Collections.synchronizedList(new ArrayList<String>());
+    private ExecutorService markerPool;
+    private final List<String> uploaded =
+      Collections.synchronizedList(new ArrayList<String>());
+
+    private DirectoryStore(String... dirs) {
+      for (String dir : dirs) {
+        entries.put(dir, true);
+      }
+    }
+
+    @Override
+    ExecutorService getMarkerPool() {
+      return markerPool;
+    }
+
+    @Override
+    public FileStatus getObjectMetadata(Path path) throws IOException {
+      String name = path.toUri().getPath();
+      probes.add(name);
+      Boolean dir;
+      synchronized (entries) {
+        dir = entries.get(name);
+      }
+      if (dir == null) {
+        throw new FileNotFoundException("Not found " + path);
+      }
+      return new SwiftFileStatus(dir ? 0 : 10, dir, 1, 0, 0, path);
+    }
+
+    @Override
+    public void uploadFile(Path path, InputStream inputStream, long length,
+                           boolean overwrite) throws IOException {
+      uploaded.add(path.toUri().getPath() + (overwrite ? "" : " once"));
+    }
+
+    @Override
+    public void createDirectory(Path path) throws IOException {
+      String name = path.toUri().getPath();
+      created.add(name);
+      synchronized (entries) {
+        entries.put(name, true);
+      }
+    }
+  }
+
+  private static List<String> sorted(List<String> names) {
+    List<String> copy = new ArrayList<String>(names);
+    Collections.sort(copy);
+    return copy;
+  }
+
+  @Test
+  public void testExistingDirectoryProbedOnce() throws Exception {
+    DirectoryStore store = new DirectoryStore("/a", "/a/b");
+    SwiftNativeFileSystem fs = new SwiftNativeFileSystem(store);
+    assertTrue(fs.mkdirs(new Path("/a/b")));
+    assertEquals(Arrays.asList("/a/b"), store.probes);
+    assertTrue(store.created.isEmpty());
+  }
+
+  @Test
+  public void testProbesUpToExistingAncestor() throws Exception {
+    DirectoryStore store = new DirectoryStore("/a");
+    pool = Executors.newFixedThreadPool(4);
+    store.markerPool = pool;
+    SwiftNativeFileSystem fs = new SwiftNativeFileSystem(store);
+    assertTrue(fs.mkdirs(new Path("/a/b/c/d")));
+    assertEquals(Arrays.asList("/a/b/c/d", "/a/b/c", "/a/b", "/a"),
+                 store.probes);
+    assertEquals(Arrays.asList("/a/b", "/a/b/c", "/a/b/c/d"),
+                 sorted(store.created));
+  }
+
+  @Test
+  public void testKnownDirectoriesNotProbedAgain() throws Exception {
+    DirectoryStore store = new DirectoryStore();
+    //one thread, so that the markers are written in order
+    pool = Executors.newSingleThreadExecutor();
+    store.markerPool = pool;
+    SwiftNativeFileSystem fs = new SwiftNativeFileSystem(store);
+    fs.mkdirs(new Path("/a/b"));
+    store.probes.clear();
+    fs.mkdirs(new Path("/a/b"));
+    fs.mkdirs(new Path("/a/b/c"));
+    assertEquals(Arrays.asList("/a/b/c"), store.probes);
+    assertEquals(Arrays.asList("/a/b", "/a", "/a/b/c"), store.created);
+  }
+
+  @Test
+  public void testDeleteForgetsKnownDirectories() throws Exception {
+    DirectoryStore store = new DirectoryStore();
+    pool = Executors.newSingleThreadExecutor();
+    store.markerPool = pool;
+    SwiftNativeFileSystem fs = new SwiftNativeFileSystem(store);
+    fs.mkdirs(new Path("/a/b"));
+    //the store holds nothing at the path, so the delete does nothing
+    store.entries.clear();
+    fs.delete(new Path("/a"), true);
+    store.probes.clear();
+    fs.mkdirs(new Path("/a/b"));
+    assertEquals(Arrays.asList("/a/b", "/a"), store.probes);
+  }
+
+  @Test
+  public void testInterruptedCreationCancelsMarkers() throws Exception {
+    final CountDownLatch never = new CountDownLatch(1);
+    DirectoryStore store = new DirectoryStore() {
+      @Override
+      public void createDirectory(Path path) throws IOException {
+        try {
+          never.await();
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted writing " + path);
+        }
+      }
+    };
+    pool = Executors.newFixedThreadPool(2);
+    store.markerPool = pool;
+    Thread.currentThread().interrupt();
+    try {
+      store.createDirectories(
+        Arrays.asList(new Path("/a"), new Path("/b"), new Path("/c")));
+      fail("Expected the interrupt to stop the creation");
+    } catch (InterruptedIOException expected) {
+      assertTrue(Thread.interrupted());
+    }
+    //every marker still waiting was interrupted or never started
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testCreateMakesParentsInBackground() throws Exception {
+    DirectoryStore store = new DirectoryStore("/a");
+    SwiftNativeFileSystem fs = new SwiftNativeFileSystem(store);
+    Configuration conf = new Configuration();
+    conf.setBoolean(SwiftProtocolConstants.SWIFT_CREATE_DEFERRED_CHECKS, true);
+    fs.setConf(conf);
+    OutputStream out = fs.create(new Path("/a/b/file"), false);
+    out.write(1);
+    out.close();
+    assertEquals(Arrays.asList("/a/b", "/a"), store.probes);
+    assertEquals(Arrays.asList("/a/b"), store.created);
+    assertEquals(Arrays.asList("/a/b/file once"), store.uploaded);
+    //the parent is now known, so nothing else is probed
+    store.probes.clear();
+    fs.create(new Path("/a/b/file2"), true).close();
+    assertTrue(store.probes.isEmpty());
+    assertEquals(Arrays.asList("/a/b/file once", "/a/b/file2"),
+                 store.uploaded);
+    fs.close();
+  }
+
+  @Test
+  public void testCreateChecksForExistingFile() throws Exception {
+    DirectoryStore store = new DirectoryStore("/a");
+    store.entries.put("/a/file", false);
+    SwiftNativeFileSystem fs = new SwiftNativeFileSystem(store);
+    fs.setConf(new Configuration());
+    try {
+      fs.create(new Path("/a/file"), false);
+      throw new AssertionError("Expected the existing file to be found");
+    } catch (FileAlreadyExistsException expected) {
+      //expected
+    }
+    fs.create(new Path("/a/file"), true).close();
+    //only the parent is probed when the file may be overwritten
+    assertEquals(Arrays.asList("/a/file", "/a"), store.probes);
+    assertEquals(Arrays.asList("/a/file"), store.uploaded);
+    fs.close();
+  }
+
+  @Test
+  public void testFileAncestorRejected() throws Exception {
+    DirectoryStore store = new DirectoryStore();
+    store.entries.put("/a", false);
+    SwiftNativeFileSystem fs = new SwiftNativeFileSystem(store);
+    try {
+      fs.mkdirs(new Path("/a/b"));
+      throw new AssertionError("Expected a failure to mkdir under a file");
+    } catch (SwiftNotDirectoryException expected) {
+      //expected
+    }
+    assertTrue(store.created.isEmpty());
+  }
+}
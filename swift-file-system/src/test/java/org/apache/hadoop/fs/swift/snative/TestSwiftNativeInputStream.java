@@ -0,0 +1,861 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.swift.exceptions.SwiftConfigurationException;
+import org.apache.hadoop.fs.swift.exceptions.SwiftException;
+import org.apache.hadoop.fs.swift.exceptions.SwiftObjectChangedException;
+import org.apache.hadoop.fs.swift.util.SwiftFileRange;
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
+import org.apache.hadoop.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the ranged reads and lazy seeks of the input stream,
+ * run against a store which serves ranges of an in-memory object.
+ */
+public class TestSwiftNativeInputStream {
+
+  private static final int LENGTH = 1000;
+  private static final Path PATH = new Path("/test/file");
+  private static final List<String> SEGMENT_NAMES =
+    Arrays.asList("/file/000001", "/file/000002", "/file/000003",
+                  "/file/000004");
+  private static final List<Long> SEGMENT_SIZES =
+    Arrays.asList(300L, 0L, 250L, 450L);
+
+  private byte[] data;
+  private RangeStore store;
+
+  /**
+   * Store serving ranges of the data and recording the requests
+   */
+  private class RangeStore extends SwiftNativeFileSystemStore {
+    private final List<Long> requestOffsets =
+      Collections.synchronizedList(new ArrayList<Long>());
+    private final List<Long> requestLengths =
+      Collections.synchronizedList(new ArrayList<Long>());
+    private final List<String> segmentRequests =
+      Collections.synchronizedList(new ArrayList<String>());
+    private long readAheadRange = 100;
+    private String etag = "etag-1";
+    private int failures;
+    private int failAfter = 10;
+    private ExecutorService prefetchPool;
+
+    @Override
+    ExecutorService getPrefetchPool() {
+      return prefetchPool;
+    }
+
+    @Override
+    int getPrefetchDepth() {
+      return 3;
+    }
+
+    @Override
+    int getPrefetchChunkSize() {
+      return 100;
+    }
+
+    @Override
+    ExecutorService getReadPool() {
+      return prefetchPool;
+    }
+
+    @Override
+    int getVectoredReadMinSeek() {
+      return 50;
+    }
+
+    @Override
+    int getVectoredReadMaxMerged() {
+      return 300;
+    }
+
+    @Override
+    long getReadRetryInterval() {
+      return 1;
+    }
+
+    @Override
+    long getReadAheadRange() {
+      return readAheadRange;
+    }
+
+    @Override
+    long getSeekForwardSkip() {
+      return 20;
+    }
+
+    @Override
+    public InputStream getObject(Path path, long byteRangeStart, long length)
+      throws IOException {
+      requestOffsets.add(byteRangeStart);
+      requestLengths.add(length);
+      InputStream in =
+        new ByteArrayInputStream(data, (int) byteRangeStart, (int) length);
+      synchronized (this) {
+        if (failures > 0) {
+          failures--;
+          return new FailingStream(in, failAfter);
+        }
+      }
+      return in;
+    }
+
+    @Override
+    public InputStream getObject(Path path, long byteRangeStart, long length,
+                                 String etag) throws IOException {
+      if (etag != null && !etag.equals(this.etag)) {
+        throw new SwiftObjectChangedException("Object changed: " + path);
+      }
+      return getObject(path, byteRangeStart, length);
+    }
+
+    @Override
+    InputStream getSegment(SwiftObjectPath segment, long byteRangeStart,
+                           long length, String etag) throws IOException {
+      int index = SEGMENT_NAMES.indexOf(segment.getObject());
+      long segmentStart = 0;
+      for (int i = 0; i < index; i++) {
+        segmentStart += SEGMENT_SIZES.get(i);
+      }
+      assertTrue("Range past the end of " + segment,
+                 byteRangeStart + length <= SEGMENT_SIZES.get(index));
+      segmentRequests.add(segment.getObject() + "@" + byteRangeStart);
+      return new ByteArrayInputStream(data,
+                                      (int) (segmentStart + byteRangeStart),
+                                      (int) length);
+    }
+  }
+
+  /**
+   * Stream which returns a few bytes, then fails as if the
+   * connection had been reset
+   */
+  private static class FailingStream extends InputStream {
+    private final InputStream in;
+    private int remaining;
+
+    private FailingStream(InputStream in, int remaining) {
+      this.in = in;
+      this.remaining = remaining;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining == 0) {
+        throw new IOException("connection reset");
+      }
+      int read = in.read(b, off, Math.min(len, remaining));
+      remaining -= read;
+      return read;
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    data = createData(LENGTH);
+    store = new RangeStore();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (store.prefetchPool != null) {
+      store.prefetchPool.shutdownNow();
+    }
+  }
+
+  private static byte[] createData(int length) {
+    byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) i;
+    }
+    return data;
+  }
+
+  private SwiftNativeInputStream open() {
+    return open(SwiftInputPolicy.sequential);
+  }
+
+  private SwiftNativeInputStream open(SwiftInputPolicy policy) {
+    return new SwiftNativeInputStream(store, null, PATH, LENGTH, policy);
+  }
+
+  @Test
+  public void testSequentialReadInRanges() throws Exception {
+    SwiftNativeInputStream in = open();
+    assertEquals("request made on open", 0, in.getRequestCount());
+    byte[] buffer = new byte[LENGTH];
+    int total = 0;
+    int read;
+    while ((read = in.read(buffer, total, Math.min(64, LENGTH - total))) > 0) {
+      total += read;
+    }
+    assertEquals(LENGTH, total);
+    assertArrayEquals(data, buffer);
+    assertEquals(-1, in.read());
+    assertEquals(10, in.getRequestCount());
+    in.close();
+  }
+
+  @Test
+  public void testSeekIsLazy() throws Exception {
+    SwiftNativeInputStream in = open();
+    in.seek(500);
+    in.seek(10);
+    assertEquals(0, in.getRequestCount());
+    assertEquals(10, in.read());
+    assertEquals(1, in.getRequestCount());
+    assertEquals(Long.valueOf(10), store.requestOffsets.get(0));
+  }
+
+  @Test
+  public void testShortForwardSeekSkips() throws Exception {
+    SwiftNativeInputStream in = open();
+    assertEquals(0, in.read());
+    in.seek(15);
+    assertEquals(15, in.read());
+    assertEquals(1, in.getRequestCount());
+    assertEquals(1, in.getForwardSkipCount());
+  }
+
+  @Test
+  public void testLongForwardSeekReopens() throws Exception {
+    SwiftNativeInputStream in = open();
+    assertEquals(0, in.read());
+    in.seek(50);
+    assertEquals(50, in.read());
+    assertEquals(2, in.getRequestCount());
+    assertEquals(0, in.getForwardSkipCount());
+  }
+
+  @Test
+  public void testBackwardSeekReopens() throws Exception {
+    SwiftNativeInputStream in = open();
+    in.seek(50);
+    assertEquals(50, in.read());
+    in.seek(45);
+    assertEquals(45, in.read());
+    assertEquals(2, in.getRequestCount());
+  }
+
+  @Test
+  public void testReadPastEnd() throws Exception {
+    SwiftNativeInputStream in = open();
+    in.seek(LENGTH - 1);
+    assertEquals(LENGTH - 1 & 0xff, in.read());
+    assertEquals(-1, in.read());
+    in.seek(LENGTH + 10);
+    assertEquals(-1, in.read(new byte[4], 0, 4));
+    assertEquals(1, in.getRequestCount());
+  }
+
+  @Test(expected = EOFException.class)
+  public void testNegativeSeek() throws Exception {
+    open().seek(-1);
+  }
+
+  @Test
+  public void testReadRetriedOnNewRequest() throws Exception {
+    store = new RangeStore() {
+      private boolean failed;
+
+      @Override
+      public InputStream getObject(Path path, long byteRangeStart, long length)
+        throws IOException {
+        InputStream in = super.getObject(path, byteRangeStart, length);
+        if (failed) {
+          return in;
+        }
+        failed = true;
+        return new InputStream() {
+          @Override
+          public int read() throws IOException {
+            throw new IOException("connection reset");
+          }
+        };
+      }
+    };
+    SwiftNativeInputStream in = open();
+    in.seek(5);
+    assertEquals(5, in.read());
+    assertEquals(2, in.getRequestCount());
+    assertEquals(Long.valueOf(5), store.requestOffsets.get(1));
+  }
+
+  @Test
+  public void testDiscardedBytes() throws Exception {
+    SwiftNativeInputStream in = open();
+    assertEquals(0, in.read());
+    in.seek(15);
+    assertEquals(15, in.read());
+    assertEquals(14, in.getBytesDiscarded());
+    in.seek(500);
+    assertEquals(500 & 0xff, in.read());
+    //the rest of the first range was thrown away
+    assertEquals(14 + 84, in.getBytesDiscarded());
+  }
+
+  @Test
+  public void testRandomPolicyRequestsSmallRanges() throws Exception {
+    data = createData(1024 * 1024);
+    store.readAheadRange = 512 * 1024;
+    SwiftNativeInputStream in =
+      new SwiftNativeInputStream(store, null, PATH, data.length,
+                                 SwiftInputPolicy.random);
+    in.seek(1000);
+    assertEquals(1000 & 0xff, in.read());
+    byte[] buffer = new byte[200 * 1024];
+    in.seek(300 * 1024);
+    assertEquals(buffer.length, in.read(buffer, 0, buffer.length));
+    assertEquals(Long.valueOf(SwiftNativeInputStream.MIN_RANDOM_RANGE),
+                 store.requestLengths.get(0));
+    assertEquals(Long.valueOf(buffer.length), store.requestLengths.get(1));
+    assertEquals(2, in.getRandomRequestCount());
+    assertEquals(0, in.getSequentialRequestCount());
+  }
+
+  @Test
+  public void testAdaptivePolicySwitches() throws Exception {
+    data = createData(1024 * 1024);
+    store.readAheadRange = 128 * 1024;
+    SwiftNativeInputStream in =
+      new SwiftNativeInputStream(store, null, PATH, data.length,
+                                 SwiftInputPolicy.adaptive);
+    assertEquals(0, in.read());
+    assertFalse(in.isRandomAccess());
+    //one jump is not enough to switch
+    in.seek(600 * 1024);
+    in.read();
+    assertFalse(in.isRandomAccess());
+    in.seek(100 * 1024);
+    in.read();
+    assertTrue(in.isRandomAccess());
+    assertEquals(Long.valueOf(SwiftNativeInputStream.MIN_RANDOM_RANGE),
+                 store.requestLengths.get(2));
+    //reading on from the end of each range switches back
+    byte[] buffer = new byte[4096];
+    while (in.getRequestCount() < 6) {
+      in.read(buffer, 0, buffer.length);
+    }
+    assertFalse(in.isRandomAccess());
+    assertEquals(2, in.getPolicySwitchCount());
+    assertEquals(Long.valueOf(store.readAheadRange), store.requestLengths.get(5));
+  }
+
+  @Test
+  public void testParsePolicy() throws Exception {
+    assertEquals(SwiftInputPolicy.random, SwiftInputPolicy.fromString(" Random"));
+  }
+
+  @Test(expected = SwiftConfigurationException.class)
+  public void testUnknownPolicy() throws Exception {
+    SwiftInputPolicy.fromString("backwards");
+  }
+
+  @Test
+  public void testPositionedReadLeavesStreamAlone() throws Exception {
+    SwiftNativeInputStream in = open();
+    assertEquals(0, in.read());
+    byte[] buffer = new byte[10];
+    assertEquals(10, in.read(500, buffer, 0, 10));
+    assertEquals((byte) 500, buffer[0]);
+    assertEquals(1, in.getPos());
+    assertEquals(1, in.read());
+    //the sequential request was not disturbed
+    assertEquals(2, store.requestOffsets.size());
+    assertEquals(Long.valueOf(10), store.requestLengths.get(1));
+    assertEquals(1, in.getPositionedReadCount());
+  }
+
+  @Test
+  public void testPositionedReadAtEnd() throws Exception {
+    SwiftNativeInputStream in = open();
+    byte[] buffer = new byte[10];
+    assertEquals(5, in.read(LENGTH - 5, buffer, 0, 10));
+    assertEquals(-1, in.read(LENGTH, buffer, 0, 10));
+    try {
+      in.readFully(LENGTH - 5, buffer, 0, 10);
+      fail("expected EOFException");
+    } catch (EOFException expected) {
+      //expected
+    }
+  }
+
+  @Test
+  public void testPositionedReadDoesNotLockStream() throws Exception {
+    final SwiftNativeInputStream in = open();
+    final CountDownLatch done = new CountDownLatch(1);
+    synchronized (in) {
+      Thread reader = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            in.readFully(100, new byte[50], 0, 50);
+            done.countDown();
+          } catch (IOException e) {
+            //reported by the latch not being counted down
+          }
+        }
+      });
+      reader.start();
+      assertTrue("positioned read blocked on the stream lock",
+                 done.await(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testPrefetchedSequentialRead() throws Exception {
+    store.prefetchPool = Executors.newFixedThreadPool(3);
+    SwiftNativeInputStream in = open();
+    byte[] buffer = new byte[LENGTH];
+    int total = 0;
+    int read;
+    while ((read = in.read(buffer, total, Math.min(64, LENGTH - total))) > 0) {
+      total += read;
+    }
+    assertArrayEquals(data, buffer);
+    assertEquals(10, in.getPrefetchChunkCount());
+    assertEquals("ranged requests made", 0, in.getRequestCount());
+    assertEquals(0, in.getBytesDiscarded());
+    in.close();
+  }
+
+  @Test
+  public void testPrefetchBackwardSeekRestarts() throws Exception {
+    store.prefetchPool = Executors.newFixedThreadPool(3);
+    SwiftNativeInputStream in = open();
+    assertEquals(0, in.read());
+    //within the queued chunks
+    in.seek(250);
+    assertEquals(250, in.read());
+    //chunks 0 and 100 were dropped; 300 and 400 queued behind 200
+    assertEquals(5, in.getPrefetchChunkCount());
+    in.seek(50);
+    assertEquals(50, in.read());
+    assertTrue(store.requestOffsets.contains(50L));
+    assertTrue(in.getBytesDiscarded() > 0);
+    in.close();
+  }
+
+  @Test
+  public void testNoPrefetchForRandomReads() throws Exception {
+    store.prefetchPool = Executors.newFixedThreadPool(3);
+    SwiftNativeInputStream in = open(SwiftInputPolicy.random);
+    assertEquals(0, in.read());
+    assertEquals(0, in.getPrefetchChunkCount());
+    assertEquals(1, in.getRequestCount());
+  }
+
+  private static List<Long> offsets(List<SwiftFileRange> group) {
+    List<Long> offsets = new ArrayList<Long>();
+    for (SwiftFileRange range : group) {
+      offsets.add(range.getOffset());
+    }
+    return offsets;
+  }
+
+  @Test
+  public void testMergeRanges() throws Exception {
+    List<SwiftFileRange> sorted = Arrays.asList(
+      new SwiftFileRange(0, 10),
+      new SwiftFileRange(40, 10),   //gap of 30: merged
+      new SwiftFileRange(45, 20),   //overlapping: merged
+      new SwiftFileRange(200, 10),  //gap of 135: new group
+      new SwiftFileRange(250, 100), //group would span 150 > 120: new group
+      new SwiftFileRange(350, 500));//larger than the limit on its own
+    List<List<SwiftFileRange>> groups =
+      SwiftVectoredReader.mergeRanges(sorted, 50, 120);
+    assertEquals(4, groups.size());
+    assertEquals(Arrays.asList(0L, 40L, 45L), offsets(groups.get(0)));
+    assertEquals(Arrays.asList(200L), offsets(groups.get(1)));
+    assertEquals(Arrays.asList(250L), offsets(groups.get(2)));
+    assertEquals(Arrays.asList(350L), offsets(groups.get(3)));
+  }
+
+  @Test
+  public void testVectoredRead() throws Exception {
+    store.prefetchPool = Executors.newFixedThreadPool(4);
+    SwiftNativeInputStream in = open();
+    in.seek(500);
+    List<SwiftFileRange> ranges = Arrays.asList(
+      new SwiftFileRange(900, 50),
+      new SwiftFileRange(0, 10),
+      new SwiftFileRange(20, 30),
+      new SwiftFileRange(600, 0),
+      new SwiftFileRange(400, 100));
+    in.readVectored(ranges);
+    for (SwiftFileRange range : ranges) {
+      ByteBuffer buffer = range.getData().get();
+      assertEquals(range.toString(), range.getLength(), buffer.remaining());
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      byte[] expected = new byte[range.getLength()];
+      System.arraycopy(data, (int) range.getOffset(), expected, 0,
+                       range.getLength());
+      assertArrayEquals(range.toString(), expected, bytes);
+    }
+    //0-50 in one request, 400-500 and 900-950 in one each,
+    //and nothing for the empty range
+    assertEquals(3, in.getVectoredRequestCount());
+    assertEquals(3, store.requestOffsets.size());
+    assertTrue(store.requestOffsets.containsAll(Arrays.asList(0L, 400L, 900L)));
+    assertEquals("stream moved", 500, in.getPos());
+    assertEquals("stream request made", 0, in.getRequestCount());
+  }
+
+  @Test
+  public void testVectoredReadPastEnd() throws Exception {
+    store.prefetchPool = Executors.newFixedThreadPool(2);
+    SwiftNativeInputStream in = open();
+    SwiftFileRange pastEnd = new SwiftFileRange(LENGTH - 10, 20);
+    SwiftFileRange inFile = new SwiftFileRange(0, 10);
+    in.readVectored(Arrays.asList(pastEnd, inFile));
+    try {
+      pastEnd.getData().get();
+      fail("Expected a failure reading " + pastEnd);
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof EOFException);
+    }
+    assertEquals(10, inFile.getData().get().remaining());
+    assertEquals(1, in.getVectoredRequestCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testVectoredReadNegativeOffset() throws Exception {
+    open().readVectored(Arrays.asList(new SwiftFileRange(-1, 10)));
+  }
+
+  private void assertBufferRead(ByteBuffer buffer, int len) throws Exception {
+    buffer.flip();
+    assertEquals(len, buffer.remaining());
+    for (int i = 0; i < len; i++) {
+      assertEquals("byte " + i, data[i], buffer.get());
+    }
+  }
+
+  @Test
+  public void testReadIntoHeapBuffer() throws Exception {
+    SwiftNativeInputStream in = open();
+    ByteBuffer buffer = ByteBuffer.allocate(LENGTH + 10);
+    while (in.read(buffer) > 0) {
+    }
+    assertEquals(-1, in.read(buffer));
+    assertBufferRead(buffer, LENGTH);
+    assertEquals(LENGTH, in.getPos());
+  }
+
+  @Test
+  public void testReadIntoDirectBuffer() throws Exception {
+    SwiftNativeInputStream in = open();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(LENGTH);
+    //the limit of the buffer bounds the read
+    buffer.limit(150);
+    assertEquals(150, in.read(buffer));
+    assertEquals(150, buffer.position());
+    buffer.limit(LENGTH);
+    while (buffer.hasRemaining() && in.read(buffer) > 0) {
+    }
+    assertEquals(0, in.read(buffer));
+    assertBufferRead(buffer, LENGTH);
+  }
+
+  @Test
+  public void testBufferedStreamReadIntoBuffer() throws Exception {
+    SwiftBufferedInputStream in =
+      new SwiftBufferedInputStream(open(), 64);
+    assertEquals(0, in.read());
+    //the rest of the buffered data comes first
+    ByteBuffer buffer = ByteBuffer.allocateDirect(LENGTH);
+    assertEquals(63, in.read(buffer));
+    assertEquals(64, in.getPos());
+    //then the wrapped stream is read directly
+    assertEquals(36, in.read(buffer));
+    assertEquals(100, in.getPos());
+    assertEquals(data[99], buffer.get(98));
+  }
+
+  @Test
+  public void testBufferedStreamReadIntoBufferKeepsMark() throws Exception {
+    SwiftBufferedInputStream in =
+      new SwiftBufferedInputStream(open(), 64);
+    in.mark(200);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(LENGTH);
+    while (buffer.position() < 80) {
+      assertTrue(in.read(buffer) > 0);
+    }
+    in.reset();
+    assertEquals(0, in.getPos());
+    byte[] reread = new byte[buffer.position()];
+    IOUtils.readFully(in, reread, 0, reread.length);
+    assertArrayEquals(Arrays.copyOf(data, reread.length), reread);
+  }
+
+  private SwiftSegmentedObject segments() {
+    List<SwiftObjectPath> paths = new ArrayList<SwiftObjectPath>();
+    for (String name : SEGMENT_NAMES) {
+      paths.add(new SwiftObjectPath("container", name));
+    }
+    return new SwiftSegmentedObject(paths, SEGMENT_SIZES, null);
+  }
+
+  @Test
+  public void testSegmentLookup() throws Exception {
+    SwiftSegmentedObject segments = segments();
+    assertEquals("empty segment kept", 3, segments.getSegmentCount());
+    assertEquals(LENGTH, segments.getLength());
+    assertEquals(0, segments.indexOf(0));
+    assertEquals(0, segments.indexOf(299));
+    assertEquals(1, segments.indexOf(300));
+    assertEquals(1, segments.indexOf(549));
+    assertEquals(2, segments.indexOf(550));
+    assertEquals(2, segments.indexOf(LENGTH - 1));
+    assertEquals("/file/000003", segments.getPath(1).getObject());
+    assertEquals(550, segments.getSegmentEnd(400));
+    assertEquals(LENGTH, segments.getSegmentEnd(600));
+  }
+
+  @Test
+  public void testSegmentedSequentialRead() throws Exception {
+    store.prefetchPool = Executors.newFixedThreadPool(4);
+    SwiftNativeInputStream in =
+      new SwiftNativeInputStream(store, null, PATH, LENGTH,
+                                 SwiftInputPolicy.sequential, segments(),
+                                 null);
+    byte[] buffer = new byte[LENGTH];
+    int total = 0;
+    int read;
+    while ((read = in.read(buffer, total, Math.min(64, LENGTH - total))) > 0) {
+      total += read;
+    }
+    assertEquals(LENGTH, total);
+    assertArrayEquals(data, buffer);
+    assertTrue("request to the manifest", store.requestOffsets.isEmpty());
+    //chunks of 100 bytes which stop at segment ends
+    assertEquals(11, in.getPrefetchChunkCount());
+    assertTrue(store.segmentRequests.contains("/file/000001@200"));
+    assertTrue(store.segmentRequests.contains("/file/000003@0"));
+    assertTrue(store.segmentRequests.contains("/file/000003@200"));
+    assertTrue(store.segmentRequests.contains("/file/000004@0"));
+    in.close();
+  }
+
+  @Test
+  public void testReadThroughDiskCache() throws Exception {
+    File dir = new File(System.getProperty("java.io.tmpdir"),
+                        "swift-test-stream-cache");
+    FileUtil.fullyDelete(dir);
+    try {
+      store.setDiskCache(new SwiftDiskCache(new File[]{dir}, 10000, 128));
+      for (int i = 0; i < 2; i++) {
+        SwiftNativeInputStream in =
+          new SwiftNativeInputStream(store, null, PATH, LENGTH,
+                                     SwiftInputPolicy.sequential, null,
+                                     "etag-1");
+        byte[] buffer = new byte[LENGTH];
+        in.readFully(0, buffer);
+        assertArrayEquals(data, buffer);
+        in.close();
+      }
+      //one request for each block, all made by the first pass
+      assertEquals(8, store.requestOffsets.size());
+      assertEquals(8, store.getDiskCache().getHitCount());
+    } finally {
+      FileUtil.fullyDelete(dir);
+    }
+  }
+
+  @Test
+  public void testSegmentedRandomAndPositionedReads() throws Exception {
+    store.prefetchPool = Executors.newFixedThreadPool(2);
+    SwiftNativeInputStream in =
+      new SwiftNativeInputStream(store, null, PATH, LENGTH,
+                                 SwiftInputPolicy.random, segments(), null);
+    //a positioned read across both boundaries
+    byte[] buffer = new byte[400];
+    in.readFully(250, buffer, 0, 400);
+    for (int i = 0; i < 400; i++) {
+      assertEquals(data[250 + i], buffer[i]);
+    }
+    assertEquals(Arrays.asList("/file/000001@250", "/file/000003@0",
+                               "/file/000004@0"),
+                 store.segmentRequests);
+    //a random read is clipped to the end of its segment
+    in.seek(540);
+    byte[] b = new byte[20];
+    assertEquals(10, in.read(b, 0, 20));
+    assertEquals(data[540], b[0]);
+    assertEquals("/file/000003@240",
+                 store.segmentRequests.get(store.segmentRequests.size() - 1));
+    //vectored reads span segments too
+    SwiftFileRange range = new SwiftFileRange(290, 20);
+    in.readVectored(Arrays.asList(range));
+    ByteBuffer slice = range.getData().get();
+    assertEquals(data[290], slice.get(0));
+    assertEquals(data[309], slice.get(19));
+    assertTrue(store.requestOffsets.isEmpty());
+  }
+
+  private SwiftNativeInputStream openWithEtag(SwiftInputPolicy policy) {
+    return new SwiftNativeInputStream(store, null, PATH, LENGTH, policy,
+                                      null, "etag-1");
+  }
+
+  private byte[] readAll(SwiftNativeInputStream in) throws IOException {
+    byte[] buffer = new byte[LENGTH];
+    int total = 0;
+    int read;
+    while ((read = in.read(buffer, total, LENGTH - total)) > 0) {
+      total += read;
+    }
+    assertEquals(LENGTH, total);
+    return buffer;
+  }
+
+  @Test
+  public void testReadResumedAfterFailures() throws Exception {
+    store.failures = 3;
+    SwiftNativeInputStream in = openWithEtag(SwiftInputPolicy.sequential);
+    assertArrayEquals(data, readAll(in));
+    assertEquals(3, in.getRetryCount());
+    //each retry resumed ten bytes on from where the last one started
+    assertEquals(Arrays.asList(0L, 10L, 20L, 30L),
+                 store.requestOffsets.subList(0, 4));
+  }
+
+  @Test
+  public void testReadFailsOnceRetriesAreSpent() throws Exception {
+    store.failures = 4;
+    store.failAfter = 0;
+    SwiftNativeInputStream in = openWithEtag(SwiftInputPolicy.sequential);
+    try {
+      in.read(new byte[50], 0, 50);
+      fail("Expected a failure after three retries");
+    } catch (IOException expected) {
+      assertEquals("connection reset", expected.getMessage());
+    }
+    assertEquals(3, in.getRetryCount());
+    //the next read has a budget of its own
+    assertEquals(0, in.read());
+  }
+
+  @Test
+  public void testChangedObjectNotRetried() throws Exception {
+    store.failures = 1;
+    SwiftNativeInputStream in = openWithEtag(SwiftInputPolicy.sequential);
+    assertEquals(10, in.read(new byte[50], 0, 50));
+    store.etag = "etag-2";
+    try {
+      in.read(new byte[50], 0, 50);
+      fail("Expected the changed object to be detected");
+    } catch (SwiftObjectChangedException expected) {
+      //expected
+    }
+    //the connection failure was retried, but not the change
+    assertEquals(1, in.getRetryCount());
+  }
+
+  @Test
+  public void testPositionedReadResumed() throws Exception {
+    store.failures = 2;
+    SwiftNativeInputStream in = openWithEtag(SwiftInputPolicy.random);
+    byte[] buffer = new byte[100];
+    in.readFully(200, buffer, 0, 100);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(data[200 + i], buffer[i]);
+    }
+    assertEquals(2, in.getRetryCount());
+    assertEquals(Arrays.asList(200L, 210L, 220L), store.requestOffsets);
+  }
+
+  @Test
+  public void testVectoredReadRetried() throws Exception {
+    store.prefetchPool = Executors.newFixedThreadPool(1);
+    store.failures = 2;
+    SwiftNativeInputStream in = openWithEtag(SwiftInputPolicy.random);
+    SwiftFileRange range = new SwiftFileRange(400, 100);
+    in.readVectored(Arrays.asList(range));
+    ByteBuffer buffer = range.getData().get();
+    assertEquals(100, buffer.remaining());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(data[400 + i], buffer.get(i));
+    }
+    assertEquals(2, in.getRetryCount());
+    assertEquals(Arrays.asList(400L, 400L, 400L), store.requestOffsets);
+  }
+
+  @Test
+  public void testVectoredReadFailsOnceRetriesAreSpent() throws Exception {
+    store.prefetchPool = Executors.newFixedThreadPool(1);
+    store.failures = 4;
+    SwiftNativeInputStream in = openWithEtag(SwiftInputPolicy.random);
+    SwiftFileRange range = new SwiftFileRange(400, 100);
+    in.readVectored(Arrays.asList(range));
+    try {
+      range.getData().get();
+      fail("Expected a failure after three retries");
+    } catch (ExecutionException expected) {
+      assertEquals("connection reset", expected.getCause().getMessage());
+    }
+    assertEquals(3, in.getRetryCount());
+  }
+
+  @Test
+  public void testRetryability() throws Exception {
+    assertTrue(SwiftNativeInputStream.isRetryable(new IOException()));
+    assertTrue(SwiftNativeInputStream.isRetryable(new SwiftException("")));
+    assertFalse(SwiftNativeInputStream.isRetryable(new EOFException()));
+    assertFalse(SwiftNativeInputStream.isRetryable(
+      new SwiftObjectChangedException("")));
+  }
+}
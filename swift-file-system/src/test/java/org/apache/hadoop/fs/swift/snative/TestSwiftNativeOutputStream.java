@@ -0,0 +1,356 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.swift.exceptions.SwiftConfigurationException;
+import org.apache.hadoop.fs.swift.exceptions.SwiftException;
+import org.apache.hadoop.fs.swift.exceptions.SwiftNotDirectoryException;
+import org.apache.hadoop.fs.swift.http.SwiftProtocolConstants;
+import org.apache.hadoop.fs.swift.util.JSONUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.hadoop.fs.swift.snative.SwiftNativeFileSystemStore.partName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the background part uploads of the output stream,
+ * run against a store which keeps parts in memory.
+ */
+public class TestSwiftNativeOutputStream {
+
+  private ExecutorService pool;
+  private Configuration conf;
+
+  /**
+   * Store recording the parts uploaded. Uploads wait for the gate
+   * to open, and can be made to fail.
+   */
+  private class PartRecordingStore extends SwiftNativeFileSystemStore {
+    private final Map<Integer, byte[]> parts = new TreeMap<Integer, byte[]>();
+    private final CountDownLatch gate;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final AtomicInteger maxInflight = new AtomicInteger();
+    private volatile boolean fail;
+    private volatile boolean manifestWritten;
+    private volatile int partsWhenManifestWritten;
+    private volatile List<SwiftSegment> manifest;
+    private volatile boolean exists;
+    private volatile Boolean uploadOverwrite;
+
+    private PartRecordingStore(CountDownLatch gate) {
+      this.gate = gate;
+    }
+
+    @Override
+    ExecutorService getUploadPool() {
+      return pool;
+    }
+
+    @Override
+    public SwiftSegment uploadFilePart(Path path, int partNumber,
+                                       InputStream inputStream, long length)
+      throws IOException {
+      int now = inflight.incrementAndGet();
+      synchronized (this) {
+        maxInflight.set(Math.max(maxInflight.get(), now));
+      }
+      try {
+        gate.await();
+        if (fail) {
+          throw new IOException("Simulated failure of part " + partNumber);
+        }
+        byte[] data = IOUtils.toByteArray(inputStream);
+        assertEquals(length, data.length);
+        synchronized (this) {
+          parts.put(partNumber, data);
+        }
+        return new SwiftSegment(path + "/" + partName(partNumber),
+                                "etag-" + partNumber, length);
+      } catch (InterruptedException e) {
+        throw new IOException(e.toString());
+      } finally {
+        inflight.decrementAndGet();
+      }
+    }
+
+    @Override
+    public boolean objectExists(Path path) throws IOException {
+      return exists;
+    }
+
+    @Override
+    public void uploadFile(Path path, InputStream inputStream, long length,
+                           boolean overwrite) throws IOException {
+      uploadOverwrite = overwrite;
+    }
+
+    @Override
+    public void createManifestForPartUpload(Path path,
+                                            List<SwiftSegment> segments,
+                                            boolean overwrite)
+      throws IOException {
+      synchronized (this) {
+        partsWhenManifestWritten = parts.size();
+      }
+      manifest = new ArrayList<SwiftSegment>(segments);
+      manifestWritten = true;
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    pool = Executors.newFixedThreadPool(4);
+    conf = new Configuration();
+    conf.setLong(SwiftProtocolConstants.SWIFT_PARTITION_SIZE, 1024);
+    conf.setInt(SwiftProtocolConstants.SWIFT_UPLOAD_MAX_INFLIGHT, 2);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    pool.shutdownNow();
+  }
+
+  private SwiftNativeOutputStream createStream(SwiftNativeFileSystemStore store)
+    throws IOException {
+    return new SwiftNativeOutputStream(conf, store, "/test/file");
+  }
+
+  @Test
+  public void testWriterOverlapsUploads() throws Exception {
+    CountDownLatch gate = new CountDownLatch(1);
+    PartRecordingStore store = new PartRecordingStore(gate);
+    SwiftNativeOutputStream out = createStream(store);
+    //two parts can be in flight without blocking the writer,
+    //although none of the uploads can complete
+    out.write(new byte[1000], 0, 1000);
+    out.write(new byte[1000], 0, 1000);
+    out.write(new byte[1000], 0, 1000);
+    assertEquals(2, out.getPartitionsWritten());
+    assertTrue("a part upload completed", store.parts.isEmpty());
+    gate.countDown();
+    out.close();
+    assertTrue("no manifest", store.manifestWritten);
+    assertEquals(3, store.partsWhenManifestWritten);
+    assertTrue("too many parts in flight: " + store.maxInflight.get(),
+               store.maxInflight.get() <= 2);
+  }
+
+  @Test
+  public void testInflightLimit() throws Exception {
+    CountDownLatch gate = new CountDownLatch(1);
+    final PartRecordingStore store = new PartRecordingStore(gate);
+    final SwiftNativeOutputStream out = createStream(store);
+    final CountDownLatch written = new CountDownLatch(1);
+    Thread writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < 4; i++) {
+            out.write(new byte[1000], 0, 1000);
+          }
+          written.countDown();
+        } catch (IOException e) {
+          //reported by the latch not being counted down
+        }
+      }
+    });
+    writer.start();
+    //the third part must wait for one of the first two
+    assertTrue("writer was not blocked",
+               !written.await(500, TimeUnit.MILLISECONDS));
+    gate.countDown();
+    assertTrue("writer did not resume",
+               written.await(10, TimeUnit.SECONDS));
+    out.close();
+    assertEquals(4, store.partsWhenManifestWritten);
+  }
+
+  @Test
+  public void testPartFailureFailsClose() throws Exception {
+    CountDownLatch gate = new CountDownLatch(0);
+    PartRecordingStore store = new PartRecordingStore(gate);
+    store.fail = true;
+    SwiftNativeOutputStream out = createStream(store);
+    out.write(new byte[1000], 0, 1000);
+    out.write(new byte[1000], 0, 1000);
+    try {
+      out.close();
+      fail("expected the part upload failure to be rethrown");
+    } catch (IOException expected) {
+      assertTrue(expected.getMessage().contains("Simulated failure"));
+    }
+    assertTrue("manifest written after a failure", !store.manifestWritten);
+  }
+
+  @Test
+  public void testFailedCloseLeavesNoUploadRunning() throws Exception {
+    final CountDownLatch gate = new CountDownLatch(1);
+    PartRecordingStore store = new PartRecordingStore(gate);
+    store.fail = true;
+    SwiftNativeOutputStream out = createStream(store);
+    out.write(new byte[1000], 0, 1000);
+    out.write(new byte[1000], 0, 1000);
+    out.write(new byte[1000], 0, 1000);
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(200);
+        } catch (InterruptedException e) {
+          //open the gate at once
+        }
+        gate.countDown();
+      }
+    }).start();
+    try {
+      out.close();
+      fail("expected the part upload failure to be rethrown");
+    } catch (IOException expected) {
+      assertTrue(expected.getMessage().contains("Simulated failure"));
+    }
+    assertEquals(0, store.inflight.get());
+  }
+
+  @Test
+  public void testShutDownPoolFailsWrite() throws Exception {
+    PartRecordingStore store = new PartRecordingStore(new CountDownLatch(0));
+    SwiftNativeOutputStream out = createStream(store);
+    pool.shutdown();
+    out.write(new byte[1000], 0, 1000);
+    try {
+      out.write(new byte[1000], 0, 1000);
+      fail("expected the part not to be accepted");
+    } catch (SwiftException expected) {
+      assertTrue(expected.getMessage().contains("upload pool"));
+    }
+    try {
+      out.close();
+      fail("expected the upload not to be completed");
+    } catch (SwiftException expected) {
+      //expected
+    }
+    assertTrue("manifest written after a failure", !store.manifestWritten);
+  }
+
+  @Test
+  public void testManifestListsSegmentsInOrder() throws Exception {
+    CountDownLatch gate = new CountDownLatch(0);
+    PartRecordingStore store = new PartRecordingStore(gate);
+    SwiftNativeOutputStream out = createStream(store);
+    for (int i = 0; i < 12; i++) {
+      out.write(new byte[1000], 0, 1000);
+    }
+    out.close();
+    assertEquals(12, store.manifest.size());
+    for (int i = 0; i < 12; i++) {
+      SwiftSegment segment = store.manifest.get(i);
+      assertEquals("/test/file/" + partName(i + 1), segment.getPath());
+      assertEquals("etag-" + (i + 1), segment.getEtag());
+      assertEquals(1000, segment.getSizeBytes());
+    }
+  }
+
+  @Test
+  public void testNoOverwriteCheckedBeforeFirstPart() throws Exception {
+    PartRecordingStore store = new PartRecordingStore(new CountDownLatch(0));
+    store.exists = true;
+    SwiftNativeOutputStream out =
+      new SwiftNativeOutputStream(conf, store, "/test/file", false, null);
+    out.write(new byte[1000], 0, 1000);
+    try {
+      out.write(new byte[1000], 0, 1000);
+      fail("expected the existing file to be detected");
+    } catch (FileAlreadyExistsException expected) {
+      //expected
+    }
+    assertTrue("a part was uploaded", store.parts.isEmpty());
+  }
+
+  @Test
+  public void testSmallFileUploadedConditionally() throws Exception {
+    PartRecordingStore store = new PartRecordingStore(new CountDownLatch(0));
+    SwiftNativeOutputStream out =
+      new SwiftNativeOutputStream(conf, store, "/test/file", false, null);
+    out.write(new byte[10], 0, 10);
+    out.close();
+    assertEquals(Boolean.FALSE, store.uploadOverwrite);
+  }
+
+  @Test
+  public void testParentFailureFailsClose() throws Exception {
+    PartRecordingStore store = new PartRecordingStore(new CountDownLatch(0));
+    Future<Void> parents = pool.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        throw new SwiftNotDirectoryException(new Path("/test"), ": a file");
+      }
+    });
+    SwiftNativeOutputStream out =
+      new SwiftNativeOutputStream(conf, store, "/test/file", true, parents);
+    out.write(new byte[10], 0, 10);
+    try {
+      out.close();
+      fail("expected the failure to create the parent to be rethrown");
+    } catch (SwiftNotDirectoryException expected) {
+      //expected
+    }
+    assertEquals("file written", null, store.uploadOverwrite);
+  }
+
+  @Test
+  public void testPartNamesSortInOrder() throws Exception {
+    assertEquals("000001", partName(1));
+    assertTrue(partName(2).compareTo(partName(10)) < 0);
+  }
+
+  @Test
+  public void testSegmentJSON() throws Exception {
+    assertEquals("[{\"path\":\"/c/file/000001\",\"etag\":\"e\",\"size_bytes\":10}]",
+                 JSONUtil.toJSON(Collections.singletonList(
+                   new SwiftSegment("/c/file/000001", "e", 10))));
+  }
+
+  @Test(expected = SwiftConfigurationException.class)
+  public void testBadPartitionSize() throws Exception {
+    conf.setLong(SwiftProtocolConstants.SWIFT_PARTITION_SIZE, 0);
+    createStream(new PartRecordingStore(new CountDownLatch(0)));
+  }
+}
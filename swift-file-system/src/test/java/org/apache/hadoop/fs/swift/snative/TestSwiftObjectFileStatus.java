@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.hadoop.fs.swift.exceptions.SwiftException;
+import org.apache.hadoop.fs.swift.util.JSONUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for parsing JSON container listings.
+ */
+public class TestSwiftObjectFileStatus {
+
+  private static final String LISTING =
+    "[{\"hash\": \"d41d8cd98f00b204e9800998ecf8427e\", " +
+    "\"last_modified\": \"2013-02-04T10:39:14.123450\", " +
+    "\"bytes\": 1024, \"name\": \"dir/file\", " +
+    "\"content_type\": \"application/octet-stream\", " +
+    "\"symlink_path\": \"ignored\"}," +
+    " {\"subdir\": \"dir/subdir/\"}]";
+
+  private List<SwiftObjectFileStatus> parse(String json) throws IOException {
+    return JSONUtil.toObjectList(new ByteArrayInputStream(json.getBytes("UTF-8")),
+                                 SwiftObjectFileStatus.class);
+  }
+
+  @Test
+  public void testParseListing() throws Exception {
+    List<SwiftObjectFileStatus> listing = parse(LISTING);
+    assertEquals(2, listing.size());
+
+    SwiftObjectFileStatus file = listing.get(0);
+    assertFalse(file.isSubdir());
+    assertEquals("dir/file", file.getEntryName());
+    assertEquals(1024, file.getBytes());
+    assertEquals("application/octet-stream", file.getContentType());
+    assertEquals("d41d8cd98f00b204e9800998ecf8427e", file.getHash());
+    assertEquals("2013-02-04T10:39:14.123450", file.getLastModified());
+
+    SwiftObjectFileStatus subdir = listing.get(1);
+    assertTrue(subdir.isSubdir());
+    assertNull(subdir.getName());
+    assertEquals("dir/subdir/", subdir.getEntryName());
+  }
+
+  @Test
+  public void testParseEmptyListing() throws Exception {
+    assertTrue(parse("[]").isEmpty());
+    assertTrue(parse("").isEmpty());
+  }
+
+  @Test(expected = IOException.class)
+  public void testParseNonArray() throws Exception {
+    parse("{\"name\": \"file\"}");
+  }
+
+  @Test
+  public void testParseListingTimestamp() throws Exception {
+    assertEquals(1359974354123L,
+                 SwiftNativeFileSystemStore.parseListingTimestamp(
+                   "2013-02-04T10:39:14.123450"));
+    assertEquals(1359974354000L,
+                 SwiftNativeFileSystemStore.parseListingTimestamp(
+                   "2013-02-04T10:39:14"));
+    assertEquals(0, SwiftNativeFileSystemStore.parseListingTimestamp(null));
+  }
+
+  @Test(expected = SwiftException.class)
+  public void testParseBadTimestamp() throws Exception {
+    SwiftNativeFileSystemStore.parseListingTimestamp("yesterday");
+  }
+}
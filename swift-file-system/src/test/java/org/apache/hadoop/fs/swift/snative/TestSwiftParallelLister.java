@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the key-range sharded listing, run against a store
+ * which serves pages from an in-memory listing.
+ */
+public class TestSwiftParallelLister {
+
+  private ExecutorService pool;
+
+  @Before
+  public void setUp() throws Exception {
+    pool = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    pool.shutdownNow();
+  }
+
+  private List<String> names(List<SwiftObjectFileStatus> entries) {
+    List<String> names = new ArrayList<String>(entries.size());
+    for (SwiftObjectFileStatus entry : entries) {
+      names.add(entry.getName());
+    }
+    return names;
+  }
+
+  @Test
+  public void testListingIsCompleteAndSorted() throws Exception {
+    List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < 500; i++) {
+      expected.add(String.format("d/part-%05d", i));
+    }
+    expected.add("d/a/x");
+    expected.add("d/a/y");
+    expected.add("d/~tilde");
+    expected.add("d/été");
+    Collections.sort(expected);
+    PagedListingStore store =
+      new PagedListingStore(10, expected.toArray(new String[expected.size()]));
+
+    SwiftParallelLister lister =
+      new SwiftParallelLister(store, pool, new SwiftObjectPath("container", "/d"), 8);
+    assertEquals(expected, names(lister.list()));
+    assertTrue("no range was split", lister.getSplitCount() > 0);
+    assertEquals(store.getMarkers().size(), lister.getRequestCount());
+  }
+
+  @Test
+  public void testRunOfNamesSplitsWithoutEmptyRanges() throws Exception {
+    //a sequential listing takes 200 full pages and one empty one
+    String[] names = new String[2000];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = String.format("d/part-%05d", i);
+    }
+    PagedListingStore store = new PagedListingStore(10, names);
+    SwiftParallelLister lister =
+      new SwiftParallelLister(store, pool, new SwiftObjectPath("container", "/d"), 8);
+    assertEquals(names.length, lister.list().size());
+    assertTrue("no range was split", lister.getSplitCount() > 0);
+    assertTrue("too many requests: " + lister.getRequestCount(),
+               lister.getRequestCount() <= 220);
+  }
+
+  @Test
+  public void testListingStaysBoundedAheadOfReader() throws Exception {
+    String[] names = new String[2000];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = String.format("d/part-%05d", i);
+    }
+    PagedListingStore store = new PagedListingStore(10, names);
+    SwiftParallelLister lister =
+      new SwiftParallelLister(store, pool, new SwiftObjectPath("container", "/d"), 4);
+    assertEquals(10, lister.nextPage().size());
+    Thread.sleep(200);
+    assertTrue("listed too far ahead: " + lister.getRequestCount(),
+               lister.getRequestCount() <= 1 + 4);
+    int count = 10;
+    List<SwiftObjectFileStatus> page;
+    while ((page = lister.nextPage()) != null) {
+      count += page.size();
+    }
+    assertEquals(names.length, count);
+  }
+
+  @Test
+  public void testSparseListingIsOneRequest() throws Exception {
+    PagedListingStore store = new PagedListingStore(10, "d/a", "d/b", "d/c");
+    SwiftParallelLister lister =
+      new SwiftParallelLister(store, pool, new SwiftObjectPath("container", "/d"), 8);
+    assertEquals(3, lister.list().size());
+    assertEquals(1, lister.getRequestCount());
+    assertEquals(0, lister.getSplitCount());
+  }
+
+  @Test
+  public void testSplitKeyIsListed() throws Exception {
+    //with two entries per page, the first split is made between "d/b"
+    //and the end of the directory; every possible split key exists
+    List<String> expected = new ArrayList<String>();
+    for (char c = ' '; c <= '~'; c++) {
+      expected.add("d/" + c);
+    }
+    PagedListingStore store =
+      new PagedListingStore(2, expected.toArray(new String[expected.size()]));
+    SwiftParallelLister lister =
+      new SwiftParallelLister(store, pool, new SwiftObjectPath("container", "/d"), 8);
+    assertEquals(expected, names(lister.list()));
+  }
+}
@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.hadoop.fs.swift.http.SwiftProtocolConstants;
+import org.apache.hadoop.fs.swift.util.SwiftObjectPath;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of the tracking of recent changes, and of the reads of a
+ * store which ask for the newest replica only where they need it.
+ */
+public class TestSwiftRecentChanges {
+
+  private static final SwiftObjectPath FILE =
+    new SwiftObjectPath("c", "/a/file");
+  private static final SwiftObjectPath OTHER =
+    new SwiftObjectPath("c", "/a/other");
+
+  private long time = 1000;
+
+  private SwiftRecentChanges changes(long window, int size) {
+    return new SwiftRecentChanges(window, size) {
+      @Override
+      long now() {
+        return time;
+      }
+    };
+  }
+
+  @Test
+  public void testChangeIsRecentWithinWindow() throws Exception {
+    SwiftRecentChanges changes = changes(100, 10);
+    assertFalse(changes.isRecent(FILE));
+    changes.changed(FILE);
+    assertTrue(changes.isRecent(FILE));
+    assertTrue(changes.isRecent(new SwiftObjectPath("c", "/a/file/")));
+    assertFalse(changes.isRecent(OTHER));
+    time += 99;
+    assertTrue(changes.isRecent(FILE));
+    time += 1;
+    assertFalse(changes.isRecent(FILE));
+    assertEquals(3, changes.getNewestReadCount());
+  }
+
+  @Test
+  public void testChangeExtendsWindow() throws Exception {
+    SwiftRecentChanges changes = changes(100, 10);
+    changes.changed(FILE);
+    time += 60;
+    changes.changed(FILE);
+    time += 60;
+    assertTrue(changes.isRecent(FILE));
+    assertEquals(2, changes.getChangeCount());
+  }
+
+  @Test
+  public void testOldestChangesForgottenFirst() throws Exception {
+    SwiftRecentChanges changes = changes(100, 2);
+    changes.changed(FILE);
+    changes.changed(OTHER);
+    changes.changed(FILE);
+    changes.changed(new SwiftObjectPath("c", "/a/third"));
+    assertTrue(changes.isRecent(FILE));
+    assertFalse(changes.isRecent(OTHER));
+  }
+
+  /**
+   * A store serving reads from a set of objects, recording whether
+   * each read asked for the newest replica. Replicas other than the
+   * newest have none of the objects.
+   */
+  private static class ReplicatedStore extends SwiftNativeFileSystemStore {
+    private final List<String> reads = new ArrayList<String>();
+
+    @Override
+    InputStream fetch(SwiftObjectPath path, long byteRangeStart, long length,
+                      Header[] headers) throws IOException {
+      boolean newest = false;
+      for (Header header : headers) {
+        newest |= SwiftProtocolConstants.X_NEWEST.equals(header.getName());
+      }
+      reads.add(path.getObject() + (newest ? " newest" : ""));
+      if (!newest || path.equals(OTHER)) {
+        throw new FileNotFoundException("Not found " + path);
+      }
+      return new ByteArrayInputStream(new byte[(int) length]);
+    }
+  }
+
+  @Test
+  public void testEveryReadIsNewestByDefault() throws Exception {
+    ReplicatedStore store = new ReplicatedStore();
+    store.getSegment(FILE, 0, 10, null).close();
+    assertEquals(Arrays.asList("/a/file newest"), store.reads);
+  }
+
+  @Test
+  public void testRecentChangeReadIsNewest() throws Exception {
+    ReplicatedStore store = new ReplicatedStore();
+    SwiftRecentChanges changes = changes(100, 10);
+    store.setRecentChanges(changes);
+    changes.changed(FILE);
+    store.getSegment(FILE, 0, 10, "etag").close();
+    assertEquals(Arrays.asList("/a/file newest"), store.reads);
+    assertEquals(0, changes.getRetryCount());
+  }
+
+  @Test
+  public void testReadRetriedAsNewestAfterNotFound() throws Exception {
+    ReplicatedStore store = new ReplicatedStore();
+    SwiftRecentChanges changes = changes(100, 10);
+    store.setRecentChanges(changes);
+    store.getSegment(FILE, 0, 10, null).close();
+    assertEquals(Arrays.asList("/a/file", "/a/file newest"), store.reads);
+    assertEquals(1, changes.getRetryCount());
+    try {
+      store.getSegment(OTHER, 0, 10, null).close();
+      throw new AssertionError("Expected nothing at " + OTHER);
+    } catch (FileNotFoundException expected) {
+      //expected
+    }
+    assertEquals(2, changes.getRetryCount());
+  }
+}
@@ -0,0 +1,188 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs.swift.snative;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.fs.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the memory-mapped cache shared by the processes of
+ * a node. Separate cache instances on one directory stand in for
+ * separate processes.
+ */
+public class TestSwiftSharedCache {
+
+  private static final int BLOCK = 100;
+
+  private final File dir =
+    new File(System.getProperty("java.io.tmpdir"), "swift-test-shared-cache");
+  private final byte[] data = new byte[950];
+  private final AtomicInteger requests = new AtomicInteger();
+
+  /**
+   * Serves ranges of the data, counting the requests
+   */
+  private final SwiftRangeSource source = new SwiftRangeSource() {
+    @Override
+    public InputStream open(long start, long length) {
+      requests.incrementAndGet();
+      return new ByteArrayInputStream(data, (int) start, (int) length);
+    }
+  };
+
+  @Before
+  public void setUp() throws Exception {
+    FileUtil.fullyDelete(dir);
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i % 251);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    FileUtil.fullyDelete(dir);
+  }
+
+  private void assertRead(SwiftSharedCache cache, int start, int len)
+    throws IOException {
+    InputStream in = cache.open("/c/file", "e1", data.length, start, len,
+                                source);
+    try {
+      assertArrayEquals(Arrays.copyOfRange(data, start,
+                                           Math.min(start + len, data.length)),
+                        IOUtils.toByteArray(in));
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testBlocksSharedBetweenInstances() throws Exception {
+    SwiftSharedCache first = new SwiftSharedCache(dir, 64, BLOCK);
+    assertRead(first, 50, 200);
+    assertEquals(3, requests.get());
+    SwiftSharedCache second = new SwiftSharedCache(dir, 64, BLOCK);
+    assertRead(second, 0, 300);
+    assertEquals(3, requests.get());
+    assertEquals(3, second.getHitCount());
+  }
+
+  @Test
+  public void testLastBlockOfObject() throws Exception {
+    SwiftSharedCache cache = new SwiftSharedCache(dir, 64, BLOCK);
+    assertRead(cache, 880, 500);
+    assertRead(cache, 900, 50);
+    assertEquals(2, requests.get());
+    InputStream in = cache.open("/c/file", "e1", data.length, 940, 100,
+                                source);
+    assertEquals(10, IOUtils.toByteArray(in).length);
+    in.close();
+  }
+
+  @Test
+  public void testTruncatedBlockNotCached() throws Exception {
+    SwiftSharedCache cache = new SwiftSharedCache(dir, 64, BLOCK);
+    SwiftRangeSource truncating = new SwiftRangeSource() {
+      @Override
+      public InputStream open(long start, long length) {
+        return new ByteArrayInputStream(data, (int) start, (int) length / 2);
+      }
+    };
+    InputStream in = cache.open("/c/file", "e1", data.length, 0, 100,
+                                truncating);
+    try {
+      IOUtils.toByteArray(in);
+      fail("Expected a failure to read a truncated block");
+    } catch (IOException expected) {
+      //expected
+    } finally {
+      in.close();
+    }
+    assertRead(cache, 0, 100);
+    assertEquals(1, requests.get());
+    assertEquals(0, cache.getHitCount());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedOfSetEvicted() throws Exception {
+    //a single set
+    SwiftSharedCache cache = new SwiftSharedCache(dir, SwiftSharedCache.WAYS,
+                                                  BLOCK);
+    assertRead(cache, 0, 400);
+    //touch the first block so that the second is the oldest
+    Thread.sleep(5);
+    assertRead(cache, 0, 10);
+    Thread.sleep(5);
+    assertRead(cache, 400, 100);
+    assertEquals(1, cache.getEvictionCount());
+    int count = requests.get();
+    assertRead(cache, 0, 10);
+    assertEquals(count, requests.get());
+    assertRead(cache, 100, 10);
+    assertEquals(count + 1, requests.get());
+  }
+
+  @Test
+  public void testSlotLeftBeingWrittenIsMissAndRepaired() throws Exception {
+    SwiftSharedCache cache = new SwiftSharedCache(dir, SwiftSharedCache.WAYS,
+                                                  BLOCK);
+    assertRead(cache, 0, 10);
+    assertEquals(1, requests.get());
+    //a writer which died between the two updates of the sequences
+    RandomAccessFile index =
+      new RandomAccessFile(new File(dir, BLOCK + "-" + SwiftSharedCache.WAYS
+                                         + "/index"), "rw");
+    try {
+      for (int slot = 0; slot < SwiftSharedCache.WAYS; slot++) {
+        index.seek(16 + slot * 32);
+        index.writeLong(1);
+      }
+    } finally {
+      index.close();
+    }
+    assertRead(cache, 0, 10);
+    assertEquals(2, requests.get());
+    assertRead(cache, 0, 10);
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  public void testCacheSharedWithinProcess() throws Exception {
+    assertSame(SwiftSharedCache.get(dir, 8, BLOCK),
+               SwiftSharedCache.get(new File(dir, "."), 8, BLOCK));
+    //rounded up to the same number of sets, so the same directory
+    assertSame(SwiftSharedCache.get(dir, 8, BLOCK),
+               SwiftSharedCache.get(dir, 7, BLOCK));
+  }
+}